@@ -84,6 +84,7 @@ public class DataDefender {
         options.addOption("P", "database properties", true, "define database property file");
         options.addOption("F", "file discovery properties", true, "define file discovery property file");
         options.addOption("debug", false, "enable debug output");
+        options.addOption("resume", false, "resume an interrupted anonymization from its checkpoint file");
 
         return options;
     }
@@ -206,6 +207,10 @@ public class DataDefender {
                 final Properties  anonymizerProperties   = loadProperties(anonymizerPropertyFile);
                 final IAnonymizer anonymizer             = new DatabaseAnonymizer();
 
+                if (line.hasOption("resume")) {
+                    anonymizerProperties.setProperty("resume", "true");
+                }
+
                 anonymizer.anonymize(dbFactory,anonymizerProperties);
 
                 break;
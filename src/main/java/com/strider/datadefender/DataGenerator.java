@@ -23,9 +23,9 @@ import java.io.File;
 import java.io.FileWriter;
 import java.io.IOException;
 
+import java.sql.PreparedStatement;
 import java.sql.ResultSet;
 import java.sql.SQLException;
-import java.sql.Statement;
 
 import java.util.Properties;
 
@@ -39,6 +39,7 @@ import com.strider.datadefender.requirement.Parameter;
 import com.strider.datadefender.requirement.Requirement;
 import com.strider.datadefender.requirement.Table;
 import com.strider.datadefender.utils.RequirementUtils;
+import com.strider.datadefender.utils.Throttle;
 
 /**
  * Entry point for RDBMS data generator
@@ -81,6 +82,7 @@ public class DataGenerator implements IGenerator {
 
         // Now we collect data from the requirement
         final Requirement requirement = RequirementUtils.load(anonymizerProperties.getProperty("requirement"));
+        final Throttle    throttle    = Throttle.fromProperties(anonymizerProperties, 1);
 
         // Iterate over the requirement and generate data sets
         log.info("Generating data for client " + requirement.getClient() + " Version " + requirement.getVersion());
@@ -107,12 +109,13 @@ public class DataGenerator implements IGenerator {
 
                     sql.append("SELECT DISTINCT(").append(column.getName()).append(") FROM ").append(table.getName()).append(" WHERE ").append(column.getName()).append(" IS NOT NULL");
 
-                    try (Statement stmt = dbFactory.getConnection().createStatement();
-                        ResultSet rs = stmt.executeQuery(sql.toString());
+                    try (PreparedStatement stmt = dbFactory.prepareStreamingQuery(sql.toString());
+                        ResultSet rs = throttle.execute(stmt::executeQuery);
                         BufferedWriter bw = new BufferedWriter(new FileWriter(fileParameter.getValue()));) {
 
                         // Write each column value to data set file
                         while (rs.next()) {
+                            throttle.acquireRows(1);
                             bw.write(rs.getString(1));
                             bw.newLine();
                         }
@@ -20,43 +20,74 @@ package com.strider.datadefender;
 
 import static org.apache.log4j.Logger.getLogger;
 
+import java.io.IOException;
 import java.lang.reflect.InvocationTargetException;
-import java.lang.reflect.Method;
+import java.nio.file.Files;
+import java.nio.file.Paths;
 import java.sql.Connection;
 import java.sql.PreparedStatement;
 import java.sql.ResultSet;
+import java.sql.ResultSetMetaData;
 import java.sql.SQLException;
-import java.sql.Types;
+import java.sql.Statement;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collection;
+import java.util.Collections;
 import java.util.HashMap;
 import java.util.HashSet;
+import java.util.LinkedHashMap;
 import java.util.LinkedHashSet;
 import java.util.LinkedList;
 import java.util.List;
 import java.util.Map;
 import java.util.Properties;
 import java.util.Set;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
 
-import org.apache.commons.lang3.ClassUtils;
 import org.apache.commons.lang3.StringUtils;
 import org.apache.log4j.Logger;
 
+import com.strider.datadefender.anonymizer.AnonymizerPipeline;
+import com.strider.datadefender.anonymizer.BatchSizeController;
+import com.strider.datadefender.anonymizer.BatchWriter;
+import com.strider.datadefender.anonymizer.BulkSession;
+import com.strider.datadefender.anonymizer.Checkpoint;
+import com.strider.datadefender.anonymizer.ExclusionPlanner;
+import com.strider.datadefender.anonymizer.CursorRowReader;
+import com.strider.datadefender.anonymizer.CursorUpdateWriter;
+import com.strider.datadefender.anonymizer.IRowReader;
+import com.strider.datadefender.anonymizer.IRowWriter;
+import com.strider.datadefender.anonymizer.KeysetRowReader;
+import com.strider.datadefender.anonymizer.Partition;
+import com.strider.datadefender.anonymizer.ProgressReporter;
+import com.strider.datadefender.anonymizer.ProgressReporter.TableProgress;
+import com.strider.datadefender.anonymizer.PushdownCompiler;
+import com.strider.datadefender.anonymizer.PushdownPlan;
+import com.strider.datadefender.anonymizer.RowBuffer;
+import com.strider.datadefender.anonymizer.TablePartitioner;
+import com.strider.datadefender.anonymizer.TablePlan;
+import com.strider.datadefender.anonymizer.TableRebuilder;
+import com.strider.datadefender.anonymizer.TableResult;
+import com.strider.datadefender.anonymizer.TableScheduler;
 import com.strider.datadefender.database.DatabaseAnonymizerException;
 import com.strider.datadefender.database.IDBFactory;
+import com.strider.datadefender.database.metadata.IndexMetaData;
 import com.strider.datadefender.database.metadata.MatchMetaData;
+import com.strider.datadefender.database.sqlbuilder.ISQLBuilder;
 import com.strider.datadefender.functions.CoreFunctions;
-import com.strider.datadefender.functions.Utils;
 import com.strider.datadefender.requirement.Column;
 import com.strider.datadefender.requirement.Exclude;
 import com.strider.datadefender.requirement.Key;
-import com.strider.datadefender.requirement.Parameter;
 import com.strider.datadefender.requirement.Requirement;
 import com.strider.datadefender.requirement.Table;
 import com.strider.datadefender.utils.CommonUtils;
-import com.strider.datadefender.utils.LikeMatcher;
 import com.strider.datadefender.utils.RequirementUtils;
+import com.strider.datadefender.utils.Throttle;
 
 /**
  * Entry point for RDBMS data anonymizer
@@ -68,6 +99,75 @@ public class DatabaseAnonymizer implements IAnonymizer {
     private static final Logger log = getLogger(DatabaseAnonymizer.class);
     private static final String AND = " AND ";
     
+    /**
+     * Number of rows updated per batch and commit, and the bounds within
+     * which they're tuned when 'adaptive_batch' is set.
+     */
+    private int batchSize;
+    private boolean adaptiveBatch;
+    private int minBatchSize;
+    private int maxBatchSize;
+    private int maxCommitInterval;
+    
+    /**
+     * Number of partitions each table is split into, and how.
+     */
+    private int partitions;
+    private String partitionMode;
+    
+    /**
+     * Number of threads running anonymizing functions when a table is
+     * pipelined (0 to anonymize on the reading thread), and the capacity of
+     * the queues between the read, transform and write stages.
+     */
+    private int pipelineTransformers;
+    private int pipelineQueueDepth;
+    
+    /**
+     * Number of rows selected per keyset page, or 0 to select all rows of a
+     * table with a single query.
+     */
+    private int pageSize;
+    
+    /**
+     * Progress saved after each committed batch, or null if the
+     * 'checkpoint_file' property isn't set.
+     */
+    private Checkpoint checkpoint;
+    private boolean resume;
+    
+    /**
+     * How anonymized rows are written: "batch" UPDATE statements, or the
+     * vendor's "bulk" path through a staging table.
+     */
+    private String writeStrategy;
+    private boolean pushdown;
+    
+    /**
+     * Whether the columns' Exclusions are also tested by the SELECT, where
+     * equality follows the database's collation rather than Java's.
+     */
+    private boolean exclusionFilter;
+    private boolean rowLocator;
+    
+    /**
+     * Whether the vendor's bulk session profile is applied while tables are
+     * updated, and secondary indexes on anonymized columns dropped.
+     */
+    private boolean bulkSession;
+    private boolean dropIndexes;
+    
+    /**
+     * Limits on the load put on the database, shared by all workers.
+     */
+    private Throttle throttle;
+    
+    /**
+     * Reports rows per second and the time left every 'progress_interval'
+     * seconds.
+     */
+    private ProgressReporter progress;
+    
     /**
      * Adds column names from the table to the passed collection of strings.
      * 
@@ -97,57 +197,52 @@ public class DatabaseAnonymizer implements IAnonymizer {
         }
     }
     
-    /**
-     * Creates the UPDATE query for a single row of results.
-     * 
-     * @param table
-     * @param columns
-     * @param keys
-     * @param updatableKeys
-     * @return the SQL statement
-     */
-    private String getUpdateQuery(final Table table, final Collection<String> updateColumns, final Collection<String> keys) {
-        final StringBuilder sql = new StringBuilder();
-        sql.append("UPDATE ").
-            append(table.getName()).
-            append(" SET ").
-            append(StringUtils.join(updateColumns, " = ?, ")).
-            append(" = ? WHERE ");
-
-        log.info("keys: " + keys.toString()); 
-        int iteration = 0;
-        final int collectionSize = keys.size();
-        final StringBuilder whereStmtp = new StringBuilder();
-        for (final String key: keys) {
-            ++iteration;
-            whereStmtp.append(key).append(" = ? ");
-            if (collectionSize > iteration) {
-                whereStmtp.append(AND);
-            }
-        }
-        sql.append(whereStmtp);
-
-        log.debug("getUpdateQuery: " + sql.toString());
-        return sql.toString();
-    }
-    
     /**
      * Creates the SELECT query for key and update columns.
      * 
-     * @param tableName
+     * @param table
      * @param keys
      * @param columns
-     * @return 
+     * @param partition the slice of the table to select, or null for all rows
+     * @param distinct false if the keys are known to be unique
+     * @param params filled with the query's parameters
+     * @return the query, containing " WHERE (" if it has a WHERE clause
      */
-    private PreparedStatement getSelectQueryStatement(final IDBFactory dbFactory, final Table table, final Collection<String> keys, final Collection<String> columns) throws SQLException {
+    private String getSelectQuery(final Table table, final Collection<String> keys, final Collection<String> columns,
+        final Partition partition, final boolean distinct, final List<Object> params) {
         
-        final List<String> params = new LinkedList<>();
-        final StringBuilder query = new StringBuilder("SELECT DISTINCT ");
+        final StringBuilder query = new StringBuilder(distinct ? "SELECT DISTINCT " : "SELECT ");
         query.append(StringUtils.join(keys, ", ")).
               append(", ").
               append(StringUtils.join(columns, ", ")).
               append(" FROM ").
               append(table.getName());
+        appendExclusions(table, query, params);
+        
+        final String changed = exclusionFilter ? ExclusionPlanner.buildChangedRowPredicate(table.getColumns(), params) : null;
+        if (changed != null) {
+            query.append(query.indexOf(" WHERE (") != -1 ? AND : " WHERE ").
+                  append('(').append(changed).append(')');
+        }
+        
+        if (partition != null) {
+            query.append(query.indexOf(" WHERE (") != -1 ? AND : " WHERE ").
+                  append('(').append(partition.getPredicate()).append(')');
+            params.addAll(partition.getParameters());
+        }
+
+        return query.toString();
+    }
+    
+    /**
+     * Appends a WHERE clause for the table's exclusions to the query, if it
+     * has any.
+     * 
+     * @param table
+     * @param query
+     * @param params filled with the clause's parameters
+     */
+    private void appendExclusions(final Table table, final StringBuilder query, final List<Object> params) {
         
         final List<Exclude> exclusions = table.getExclusions();
         if (exclusions != null) {
@@ -187,10 +282,12 @@ public class DatabaseAnonymizer implements IAnonymizer {
                 
                 if (neq != null) {
                     query.append(separator).append(col).append(" = ?");
+                    params.add(neq);
                     separator = " OR ";
                 }
                 if (nlk != null && nlk.length() != 0) {
                     query.append(separator).append(col).append(" LIKE ?");
+                    params.add(nlk);
                     separator = " OR ";
                 }
 
@@ -200,549 +297,696 @@ public class DatabaseAnonymizer implements IAnonymizer {
                 query.append(')');
             }
         }
-
-        final PreparedStatement stmt = dbFactory.getConnection().prepareStatement(
-                query.toString(),
-                ResultSet.TYPE_FORWARD_ONLY,
-                ResultSet.CONCUR_UPDATABLE
-        );
-        if (dbFactory.getVendorName().equalsIgnoreCase("mysql")) {
-            stmt.setFetchSize(Integer.MIN_VALUE);
+    }
+    
+    /**
+     * Returns true if the table has a primary key made up of the passed keys,
+     * so that rows can be selected without DISTINCT.
+     * 
+     * @param dbFactory
+     * @param table
+     * @param keys
+     * @return 
+     */
+    private boolean hasUniqueKeys(final IDBFactory dbFactory, final Table table, final Collection<String> keys)
+    throws SQLException, DatabaseDiscoveryException {
+        final List<String> pKeys = dbFactory.fetchMetaData().getPrimaryKeys(table.getName());
+        if (pKeys.isEmpty()) {
+            return false;
         }
-        
-        int paramIndex = 1;
-        for (final String param : params) {
-            stmt.setString(paramIndex, param);
-            ++paramIndex;
+        for (final String pKey : pKeys) {
+            if (keys.stream().noneMatch(pKey::equalsIgnoreCase)) {
+                return false;
+            }
         }
+        return true;
+    }
+    
+    /**
+     * Returns true if the table's rows should be selected and updated by
+     * their physical location: the 'row_locator' property is set, the table
+     * has no primary key and the database has a row locator.
+     * 
+     * @param dbFactory
+     * @param table
+     * @return 
+     */
+    private boolean useRowLocator(final IDBFactory dbFactory, final Table table)
+    throws SQLException, DatabaseDiscoveryException {
+        return rowLocator && dbFactory.createSQLBuilder().buildRowLocator() != null
+            && dbFactory.fetchMetaData().getPrimaryKeys(table.getName()).isEmpty();
+    }
+    
+    /**
+     * Creates the reader for the table's rows: a single cursor, or pages
+     * ordered by the keys if the 'page_size' property is set.  Rows selected
+     * by their physical locator, or for updates through the cursor, are
+     * always read with a single cursor.
+     * 
+     * @param dbFactory
+     * @param table
+     * @param plan
+     * @param located true if the plan's key is the row locator
+     * @param updatable true to select with an updatable cursor, held over
+     * commits
+     * @param partition the slice of the table to select, or null for all rows
+     * @param startKey key to resume a keyset scan after, or null
+     * @param startKeyTypes java.sql.Types of the startKey values
+     * @return 
+     */
+    private IRowReader createRowReader(final IDBFactory dbFactory, final Table table, final TablePlan plan,
+        final boolean located, final boolean updatable, final Partition partition, final String[] startKey,
+        final int[] startKeyTypes)
+    throws SQLException, DatabaseDiscoveryException {
+        
+        final List<String> keys = plan.getKeyNames();
+        final boolean distinct = !located && !hasUniqueKeys(dbFactory, table, keys);
+        final List<Object> params = new LinkedList<>();
+        final String query = getSelectQuery(table, keys, plan.getUpdateColumns(), partition, distinct, params);
         
-        log.debug("Querying for: " + query.toString());
         if (params.size() > 0) {
             log.debug("\t - with parameters: " + StringUtils.join(params, ','));
         }
         
-        return stmt;
+        if (pageSize > 0 && !located && !updatable) {
+            if (distinct) {
+                log.warn("Table " + table.getName() + " has no primary key on " + keys
+                    + ", rows sharing a key may be skipped between pages");
+            }
+            final ISQLBuilder sqlBuilder = dbFactory.createSQLBuilder();
+            final String nextQuery = query + (query.contains(" WHERE (") ? " AND (" : " WHERE (")
+                + sqlBuilder.buildKeysetPredicate(keys) + ")";
+            final String firstPage = sqlBuilder.buildKeysetPage(query, keys, pageSize);
+            final String nextPage = sqlBuilder.buildKeysetPage(nextQuery, keys, pageSize);
+            log.debug("Querying for: " + firstPage);
+            log.debug("Querying next pages for: " + nextPage);
+            return new KeysetRowReader(dbFactory.getConnection(), firstPage, nextPage, params, plan, pageSize,
+                startKey, startKeyTypes);
+        }
+        
+        log.debug("Querying for: " + query);
+        final PreparedStatement stmt;
+        if (updatable) {
+            stmt = dbFactory.getConnection().prepareStatement(
+                query,
+                ResultSet.TYPE_FORWARD_ONLY,
+                ResultSet.CONCUR_UPDATABLE,
+                ResultSet.HOLD_CURSORS_OVER_COMMIT
+            );
+            stmt.setFetchSize(dbFactory.createSQLBuilder().getFetchSize());
+        } else {
+            stmt = dbFactory.prepareStreamingQuery(query);
+        }
+        
+        int paramIndex = 1;
+        for (final Object param : params) {
+            stmt.setObject(paramIndex, param);
+            ++paramIndex;
+        }
+        
+        return new CursorRowReader(stmt, plan);
     }
     
     /**
-     * Calls the anonymization function for the given Column, and returns its
-     * anonymized value.
+     * Returns the java.sql.Types of the first keyCount columns of the result
+     * set.
      * 
-     * @param dbConn
-     * @param row
-     * @param column
-     * @return anonymized value
-     * @throws NoSuchMethodException
-     * @throws SecurityException
-     * @throws IllegalAccessException
-     * @throws IllegalArgumentException
-     * @throws InvocationTargetException 
-     */   
-    private Object callAnonymizingFunctionFor(final Connection dbConn, final ResultSet row, final Column column, final String vendor)
-        throws SQLException,
-               NoSuchMethodException,
-               SecurityException,
-               IllegalAccessException,
-               IllegalArgumentException,
-               InvocationTargetException {
-        
-        // Check if function has parameters
-        final List<Parameter> parms = column.getParameters();
-        if (parms != null) {
-            return callAnonymizingFunctionWithParameters(dbConn, row, column, vendor);
-        } else {
-            return callAnonymizingFunctionWithoutParameters(dbConn, column);
+     * @param rs
+     * @param keyCount
+     * @return 
+     */
+    private int[] getKeyTypes(final ResultSet rs, final int keyCount) throws SQLException {
+        final ResultSetMetaData rsmd = rs.getMetaData();
+        final int[] types = new int[keyCount];
+        for (int i = 0; i < keyCount; ++i) {
+            types[i] = rsmd.getColumnType(i + 1);
         }
-        
-    }    
+        return types;
+    }
     
     /**
-     * Calls the anonymization function for the given Column, and returns its
-     * anonymized value.
+     * Anonymizes a slice of a table, or the whole table if partition is null.
+     * 
+     * Sets up queries, loops over the selected rows and anonymizes columns for
+     * the passed Table, committing every batchSize rows, or as often as chosen
+     * by the adaptive batch size controller.  Keyset scans save
+     * their progress to the checkpoint, and resume from it if requested.
      * 
-     * @param dbConn
-     * @param row
-     * @param column
-     * @return
-     * @throws NoSuchMethodException
-     * @throws SecurityException
-     * @throws IllegalAccessException
-     * @throws IllegalArgumentException
-     * @throws InvocationTargetException 
+     * @param dbFactory
+     * @param table
+     * @param partition
+     * @param sliceId identifies the slice in the checkpoint
+     * @param tableProgress counts the rows committed
+     * @return the number of rows processed
      */
-    private Object callAnonymizingFunctionWithParameters(final Connection dbConn, final ResultSet row, 
-            final Column column, final String vendor)
-        throws SQLException,
-               NoSuchMethodException,
-               SecurityException,
-               IllegalAccessException,
-               IllegalArgumentException,
-               InvocationTargetException {
-        
-        final String function = column.getFunction();
-        if (function == null || function.equals("")) {
-            log.warn("Function is not defined for column [" + column + "]. Moving to the next column.");
-            return "";
-        } 
+    private long anonymizeSlice(final IDBFactory dbFactory, final Table table, final Partition partition,
+        final String sliceId, final TableProgress tableProgress)
+    throws SQLException,
+           NoSuchMethodException,
+           SecurityException,
+           IllegalAccessException,
+           IllegalArgumentException,
+           InvocationTargetException,
+           DatabaseDiscoveryException {
         
-        try {
-            final String className = Utils.getClassName(function);
-            final String methodName = Utils.getMethodName(function);
-            final Class<?> clazz = Class.forName(className);
-            
-            final CoreFunctions instance = (CoreFunctions) Class.forName(className).newInstance();
-            instance.setDatabaseConnection(dbConn);
-            instance.setVendor(vendor);
-            
-            final List<Parameter> parms = column.getParameters();
-            final Map<String, Object> paramValues = new HashMap<>(parms.size());
-            final String columnValue = row.getString(column.getName());
-
-            for (final Parameter param : parms) {
-                if (param.getValue().equals("@@value@@")) {
-                    paramValues.put(param.getName(), columnValue);
-                } else if (param.getValue().equals("@@row@@") && param.getType().equals("java.sql.ResultSet")) {
-                    paramValues.put(param.getName(), row);
-                } else {
-                    paramValues.put(param.getName(), param.getTypeValue());
-                }
+        final List<Column> tableColumns = table.getColumns();
+        // colNames is looked up with contains, and iterated over.  Using LinkedHashSet means
+        // duplicate column names won't be added to the query, so a check in the column loop
+        // below was created to ensure a reasonable warning message is logged if that happens.
+        final Set<String> colNames = new LinkedHashSet<>(tableColumns.size());
+        // keyNames is only iterated over, so no need for a hash set
+        final List<String> keyNames = new LinkedList<>();
+        
+        fillColumnNames(table, colNames);
+        final ISQLBuilder sqlBuilder = dbFactory.createSQLBuilder();
+        final boolean located = useRowLocator(dbFactory, table);
+        if (located) {
+            keyNames.add(sqlBuilder.buildRowLocator());
+        } else {
+            fillPrimaryKeyNamesList(table, keyNames);
+        }
+        
+        final Connection updateCon = dbFactory.getUpdateConnection();
+        final String vendor = dbFactory.getVendorName();
+        final int fetchSize = sqlBuilder.getFetchSize();
+        final TablePlan plan = TablePlan.compile(table, keyNames, colNames, updateCon, vendor, fetchSize);
+        if (located) {
+            plan.setKeyPredicates(Collections.singletonList(sqlBuilder.buildRowLocatorPredicate()));
+        }
+        
+        // MySQL's updatable result sets can't stream, and update by key anyway
+        final boolean cursorRequested = IRowWriter.CURSOR.equalsIgnoreCase(writeStrategy) && !located
+            && !"mysql".equalsIgnoreCase(vendor);
+        final boolean checkpointed = checkpoint != null && pageSize > 0 && !located && !cursorRequested;
+        String[] startKey = null;
+        int[] startKeyTypes = null;
+        long initialRows = 0;
+        if (checkpointed && resume) {
+            startKey = checkpoint.getLastKey(sliceId);
+            startKeyTypes = checkpoint.getKeyTypes(sliceId);
+            if (startKey != null) {
+                initialRows = checkpoint.getRows(sliceId);
+                log.info("Resuming " + sliceId + " after " + initialRows + " rows");
             }
+        }
+        
+        try (IRowReader reader = createRowReader(dbFactory, table, plan, located, cursorRequested, partition, startKey,
+            startKeyTypes)) {
             
-            final List<Object> fnArguments = new ArrayList<>(parms.size());
-            final Method[] methods = clazz.getMethods();
-            Method selectedMethod = null;
+            final List<MatchMetaData> columnMetaData = dbFactory.fetchMetaData().getMetaDataForRs(reader.getResultSet());
             
-            methodLoop:
-            for (final Method m : methods) {
-                if (m.getName().equals(methodName) && m.getReturnType() == String.class) {
-                    
-                    log.debug("  Found method: " + m.getName());
-                    log.debug("  Match w/: " + paramValues);
-                    
-                    final java.lang.reflect.Parameter[] mParams = m.getParameters();
-                    fnArguments.clear();
-                    for (final java.lang.reflect.Parameter par : mParams) {
-                        //log.debug("    Name present? " + par.isNamePresent());
-                        // Note: requires -parameter compiler flag
-                        log.debug("    Real param: " + par.getName());
-                        if (!paramValues.containsKey(par.getName())) {
-                            continue methodLoop;
-                        }
-                        
-                        final Object value = paramValues.get(par.getName());
-                        Class<?> fnParamType = par.getType();
-                        final Class<?> confParamType = (value == null) ? fnParamType : value.getClass();
-                        
-                        if (fnParamType.isPrimitive() && value == null) {
-                            continue methodLoop;
-                        }
-                        if (ClassUtils.isPrimitiveWrapper(confParamType)) {
-                            if (!ClassUtils.isPrimitiveOrWrapper(fnParamType)) {
-                                continue methodLoop;
-                            }
-                            fnParamType = ClassUtils.primitiveToWrapper(fnParamType);
-                        }
-                        if (!fnParamType.equals(confParamType)) {
-                            continue methodLoop;
-                        }
-                        fnArguments.add(value);
-                    }
-                    
-                    // actual parameters check less than xml defined parameters size, because values could be auto-assigned (like 'values' and 'row' params)
-                    if (fnArguments.size() != mParams.length || fnArguments.size() < paramValues.size()) {
-                        continue;
-                    }
-                    
-                    selectedMethod = m;
-                    break;
-                }
+            final boolean cursorWrites = cursorRequested
+                && reader.getResultSet().getConcurrency() == ResultSet.CONCUR_UPDATABLE;
+            if (IRowWriter.CURSOR.equalsIgnoreCase(writeStrategy) && !cursorWrites) {
+                log.warn("Rows of table " + table.getName() + " can't be updated through the cursor, using batched updates");
             }
             
-            if (selectedMethod == null) {
-                final StringBuilder s = new StringBuilder("Anonymization method: ");
-                s.append(methodName).append(" with parameters matching (");
-                String comma = "";
-                for (final Parameter p : parms) {
-                    s.append(comma).append(p.getType()).append(' ').append(p.getName());
-                    comma = ", ";
+            try (BatchWriter writer = cursorWrites
+                ? new CursorUpdateWriter(dbFactory.getConnection(), reader.getResultSet(), plan, columnMetaData, batchSize)
+                : dbFactory.createRowWriter(located || IRowWriter.CURSOR.equalsIgnoreCase(writeStrategy)
+                    ? IRowWriter.BATCH : writeStrategy, table.getName(), plan, columnMetaData, batchSize)) {
+                
+                final BatchSizeController controller = adaptiveBatch
+                    ? BatchSizeController.adaptive(batchSize, minBatchSize, maxBatchSize, maxCommitInterval)
+                    : BatchSizeController.fixed(batchSize);
+                writer.setBatchSizeController(controller);
+                writer.setThrottle(throttle);
+                writer.addCommitListener(tableProgress);
+                
+                if (checkpointed) {
+                    writer.addCommitListener(checkpoint.track(
+                        sliceId, getKeyTypes(reader.getResultSet(), keyNames.size()), initialRows));
                 }
-                s.append(") was not found in class ").append(className);
-                throw new NoSuchMethodException(s.toString());
-            }
-            
-            log.debug("Anonymizing function: " + methodName + " with parameters: " + Arrays.toString(fnArguments.toArray()));
-            final Object anonymizedValue = selectedMethod.invoke(instance, fnArguments.toArray());
-            if (anonymizedValue == null) {
-                return null;
+                
+                // functions taking the row as a parameter need the cursor, and can't be pipelined,
+                // nor can rows written through the cursor
+                if (pipelineTransformers > 0 && !plan.usesRow() && !cursorWrites) {
+                    final AnonymizerPipeline pipeline = new AnonymizerPipeline(
+                        () -> TablePlan.compile(table, keyNames, colNames, updateCon, vendor, fetchSize),
+                        pipelineTransformers,
+                        pipelineQueueDepth
+                    );
+                    final long rowCount = pipeline.run(reader, writer);
+                    log.info("Table [" + table.getName() + "] " + controller);
+                    return rowCount;
+                }
+                
+                long rowCount = 0;
+                for (RowBuffer row = reader.next(); row != null; row = reader.next()) {
+                    plan.anonymize(row, reader.getResultSet());
+                    writer.write(row);
+                    rowCount++;
+                }
+                log.debug("Rows processed: " + rowCount);
+                
+                writer.flush();
+                log.info("Table [" + table.getName() + "] " + controller);
+                return rowCount;
             }
-            return anonymizedValue.toString();
-            
-        } catch (InstantiationException | ClassNotFoundException ex) {
-            log.error(ex.toString());
         }
-        
-        return "";
     }
     
     /**
-     * Calls the anonymization function for the given Column, and returns its
-     * anonymized value.
+     * Sets the pushed down columns with a single UPDATE of the table, leaving
+     * out the rows excluded by the table's exclusions.
      * 
-     * @param dbConn
-     * @param row
-     * @param column
-     * @return
-     * @throws NoSuchMethodException
-     * @throws SecurityException
-     * @throws IllegalAccessException
-     * @throws IllegalArgumentException
-     * @throws InvocationTargetException 
+     * @param dbFactory
+     * @param table
+     * @param pushed
+     * @return the number of rows updated
      */
-    private Object callAnonymizingFunctionWithoutParameters(final Connection dbConn, final Column column)
-    throws SQLException, NoSuchMethodException, SecurityException, IllegalAccessException, IllegalArgumentException,
-           InvocationTargetException {
+    private int pushDown(final IDBFactory dbFactory, final Table table, final PushdownPlan pushed)
+    throws SQLException {
         
-        final String function = column.getFunction();
-        if (function == null || function.equals("")) {
-            log.warn("Function is not defined for column [" + column + "]. Moving to the next column.");
-            return "";
-        } 
+        final List<Object> params = new LinkedList<>(pushed.getParameters());
+        final StringBuilder sql = new StringBuilder("UPDATE ");
+        sql.append(table.getName()).append(" SET ").append(pushed.getSetClause());
+        appendExclusions(table, sql, params);
+        log.info("Pushing down " + pushed.getColumns() + " of table " + table.getName());
+        log.debug("Update query: " + sql);
         
-        try {
-            final String className = Utils.getClassName(function);
-            final String methodName = Utils.getMethodName(function);
-            final Class<?> clazz = Class.forName(className);
-            
-            final CoreFunctions instance = (CoreFunctions) Class.forName(className).newInstance();
-            instance.setDatabaseConnection(dbConn);
-
-            final Method[] methods = clazz.getMethods();
-            Method selectedMethod = null;
-            Object returnType = null;
-            
-            methodLoop:
-            for (final Method m : methods) {
-                //if (m.getName().equals(methodName) && m.getReturnType() == String.class) {
-                if (m.getName().equals(methodName)) {
-                    log.debug("  Found method: " + m.getName());
-                    selectedMethod = m;
-                    returnType = m.getReturnType();
-                    break;
-                }
-            }
-            
-            if (selectedMethod == null) {
-                final StringBuilder s = new StringBuilder("Anonymization method: ");
-                s.append(methodName).append(") was not found in class ").append(className);
-                throw new NoSuchMethodException(s.toString());
-            }
-            
-            log.debug("Anonymizing function name: " + methodName);
-            final Object anonymizedValue = selectedMethod.invoke(instance);
-            log.debug("anonymizedValue " + anonymizedValue);
-            if (anonymizedValue == null) {
-                return null;
-            }
-            
-            log.debug(returnType);
-            if (returnType == String.class) {
-                return anonymizedValue.toString();
-            } else if (returnType == java.sql.Date.class) {
-                return anonymizedValue;
-            } else if ("int".equals(returnType)) {
-                return anonymizedValue;
+        final Connection updateCon = dbFactory.getUpdateConnection();
+        try (PreparedStatement stmt = updateCon.prepareStatement(sql.toString())) {
+            int paramIndex = 1;
+            for (final Object param : params) {
+                stmt.setObject(paramIndex++, param);
             }
-        } catch (InstantiationException | ClassNotFoundException ex) {
-            log.error(ex.toString());
+            final int rowCount = throttle.execute(stmt::executeUpdate);
+            updateCon.commit();
+            return rowCount;
         }
-        
-        return "";
-    }    
+    }
     
     /**
-     * Returns true if the current column's value is excluded by the rulesets
-     * defined by the Requirements.
+     * Splits the table into partitions and anonymizes each of them on its own
+     * thread, with its own read and update connections.
      * 
-     * @param db
-     * @param row
-     * @param column
-     * @return the columns value
-     * @throws SQLException
+     * @param dbFactory
+     * @param table
+     * @param tableProgress counts the rows committed by all partitions
+     * @return the number of rows processed
      */
-    private boolean isExcludedColumn(final ResultSet row, final Column column) throws SQLException {
+    private long anonymizePartitioned(final IDBFactory dbFactory, final Table table, final TableProgress tableProgress)
+    throws SQLException, DatabaseDiscoveryException {
         
-        final String columnName = column.getName();
+        final List<String> keyNames = new LinkedList<>();
+        fillPrimaryKeyNamesList(table, keyNames);
         
-        final List<Exclude> exclusions = column.getExclusions();
-        boolean hasInclusions = false;
-        boolean passedInclusion = false;
+        final TablePartitioner partitioner = new TablePartitioner(dbFactory.getConnection(), dbFactory.createSQLBuilder());
+        final List<Partition> slices = partitioner.partition(table.getName(), keyNames, partitions, partitionMode);
+        log.info("Table [" + table.getName() + "] split into " + slices.size() + " partitions");
+        if (slices.isEmpty()) {
+            return 0;
+        }
         
-        if (exclusions != null) {
-            for (final Exclude exc : exclusions) {
-                String name = exc.getName();
-                final String eq = exc.getEqualsValue();
-                final String lk = exc.getLikeValue();
-                final String neq = exc.getNotEqualsValue();
-                final String nlk = exc.getNotLikeValue();
-                final boolean nl = exc.isExcludeNulls();
-                if (name == null || name.length() == 0) {
-                    name = columnName;
-                }
-                final String testValue = row.getString(name);
-
-                if (nl && testValue == null) {
-                    return true;
-                } else if (eq != null && eq.equals(testValue)) {
-                    return true;
-                } else if (lk != null && lk.length() != 0) {
-                    final LikeMatcher matcher = new LikeMatcher(lk);
-                    if (matcher.matches(testValue)) {
-                        return true;
-                    }
-                }
-                
-                if (neq != null) {
-                    hasInclusions = true;
-                    if (neq.equals(testValue)) {
-                        passedInclusion = true;
-                    }
-                }
-                if (nlk != null && nlk.length() != 0) {
-                    hasInclusions = true;
-                    final LikeMatcher matcher = new LikeMatcher(nlk);
-                    if (matcher.matches(testValue)) {
-                        passedInclusion = true;
-                    }
+        final ExecutorService executor = Executors.newFixedThreadPool(slices.size());
+        final List<Future<Long>> futures = new ArrayList<>(slices.size());
+        for (int i = 0; i < slices.size(); ++i) {
+            final Partition slice = slices.get(i);
+            final String sliceId = Checkpoint.sliceId(table.getName(), i);
+            futures.add(executor.submit(() -> {
+                try (IDBFactory sliceFactory = dbFactory.createWorkerFactory();
+                     BulkSession session = openSessionProfile(sliceFactory, sliceId)) {
+                    return anonymizeSlice(sliceFactory, table, slice, sliceId, tableProgress);
                 }
+            }));
+        }
+        executor.shutdown();
+        
+        long rowCount = 0;
+        Throwable error = null;
+        for (final Future<Long> future : futures) {
+            try {
+                rowCount += future.get();
+            } catch (ExecutionException ex) {
+                log.error("Partition of table " + table.getName() + " failed: " + ex.getCause());
+                error = ex.getCause();
+            } catch (InterruptedException ex) {
+                executor.shutdownNow();
+                Thread.currentThread().interrupt();
+                throw new DatabaseAnonymizerException("Interrupted while anonymizing " + table.getName(), ex);
             }
         }
-
-        return hasInclusions && !passedInclusion;
+        if (error != null) {
+            throw new DatabaseAnonymizerException(error.toString(), error);
+        }
+        return rowCount;
     }
     
     /**
-     * Returns the passed colValue truncated to the column's size in the table.
+     * Opens the table's bulk session on the update connection, if the
+     * 'bulk_session' or 'drop_indexes' properties are set.
      * 
-     * @param colValue
-     * @param index
-     * @param columnMetaData
-     * @return
-     * @throws SQLException 
+     * @param dbFactory
+     * @param table
+     * @return the session, restoring the table and connection when closed
      */
-    private String getTruncatedColumnValue(final String colValue, final int index, final List<MatchMetaData> columnMetaData) throws SQLException {
-        final MatchMetaData md = columnMetaData.get(index);
-        final int colSize = md.getColumnSize();
-        final String type = md.getColumnType();
-        if ("String".equals(type) && colValue.length() > colSize) {
-            return colValue.substring(0, colSize);
-        }
-        return colValue;
+    private BulkSession openBulkSession(final IDBFactory dbFactory, final Table table)
+    throws SQLException, DatabaseDiscoveryException {
+        
+        final Connection updateCon = dbFactory.getUpdateConnection();
+        if (!bulkSession && !dropIndexes) {
+            return BulkSession.open(updateCon, table.getName(), Collections.emptyList(), Collections.emptyList());
+        }
+        
+        final List<IndexMetaData> indexes = dropIndexes || "oracle".equalsIgnoreCase(dbFactory.getVendorName())
+            ? dbFactory.fetchMetaData().getIndexes(table.getName()) : Collections.emptyList();
+        return BulkSession.openForTable(updateCon, dbFactory.createSQLBuilder(), table, indexes, bulkSession,
+            dropIndexes);
     }
     
     /**
-     * Anonymizes a row of columns.
-     * 
-     * Sets query parameters on the passed updateStmt - this includes the key
-     * values - and calls anonymization functions for the columns.
+     * Applies the vendor's bulk session profile to the update connection of
+     * a partition, if the 'bulk_session' property is set.
      * 
-     * @param updateStmt
-     * @param tableColumns
-     * @param keyNames
-     * @param db
-     * @param row
-     * @param columnMetaData
-     * @throws SQLException
-     * @throws NoSuchMethodException
-     * @throws SecurityException
-     * @throws IllegalAccessException
-     * @throws IllegalArgumentException
-     * @throws InvocationTargetException 
+     * @param dbFactory
+     * @param sliceId
+     * @return the session, restoring the connection when closed
      */
-    private void anonymizeRow(
-        final PreparedStatement updateStmt,
-        final Collection<Column> tableColumns,
-        final Collection<String> keyNames,
-        final Connection db,
-        final ResultSet row,
-        final List<MatchMetaData> columnMetaData,
-        final String vendor
-    ) throws SQLException,
-             NoSuchMethodException,
-             SecurityException,
-             IllegalAccessException,
-             IllegalArgumentException,
-             InvocationTargetException,
-             DatabaseAnonymizerException {
-        
-        int fieldIndex = 0;
-        final Map<String, Integer> columnIndexes = new HashMap<>(tableColumns.size());
-        final Set<String> anonymized = new HashSet<>(tableColumns.size());
-
-        for (final Column column : tableColumns) {
-            final String columnName = column.getName();
-            if (anonymized.contains(columnName)) {
-                continue;
-            }
-            if (!columnIndexes.containsKey(columnName)) {
-                final int columnIndex = ++fieldIndex;
-                columnIndexes.put(columnName, columnIndex);
-            }
-            if (isExcludedColumn(row, column)) {
-                final String columnValue = row.getString(columnName);
-                updateStmt.setString(columnIndexes.get(columnName), columnValue);
-                log.debug("Excluding column: " + columnName + " with value: " + columnValue);
-                continue;
-            }
-            
-            anonymized.add(columnName);
-            final Object colValue = callAnonymizingFunctionFor(db, row, column, vendor);
-            log.debug("colValue = " + colValue);
-            log.debug("type= " + (colValue != null ? colValue.getClass() : "null"));
-            if (colValue == null) {
-                updateStmt.setNull(columnIndexes.get(columnName), Types.NULL);
-            } else if (colValue.getClass() == java.sql.Date.class) {
-                updateStmt.setDate(columnIndexes.get(columnName), CommonUtils.stringToDate(colValue.toString(), "dd-MM-yyyy") );
-            } else if (colValue.getClass() == java.lang.Integer.class) {
-                updateStmt.setInt(columnIndexes.get(columnName), (int) colValue);
-            } else {
-                updateStmt.setString(
-                    columnIndexes.get(columnName),
-                    getTruncatedColumnValue(
-                        (String) colValue,
-                        columnIndexes.get(columnName),
-                        columnMetaData
-                    )
-                );
-            }
-        }
-        
-        int whereIndex = fieldIndex;
-        for (final String key : keyNames) {
-            updateStmt.setString(++whereIndex, row.getString(key));
-        }
-        
-        updateStmt.addBatch();
+    private BulkSession openSessionProfile(final IDBFactory dbFactory, final String sliceId) {
+        final ISQLBuilder sqlBuilder = dbFactory.createSQLBuilder();
+        return BulkSession.open(dbFactory.getUpdateConnection(), sliceId,
+            bulkSession ? sqlBuilder.buildBulkSessionSetup() : Collections.emptyList(),
+            bulkSession ? sqlBuilder.buildBulkSessionRestore() : Collections.emptyList());
     }
     
     /**
      * Anonymization function for a single table.
      * 
-     * Sets up queries, loops over columns and anonymizes columns for the passed
-     * Table.
+     * Anonymizes the table in one pass, or in parallel partitions if the
+     * 'partitions' property is greater than 1.  Tables with the "rebuild"
+     * Strategy are copied into a new table instead, in a single pass.  If
+     * the 'pushdown' property is set, columns whose functions have an SQL
+     * equivalent are first set by a single UPDATE.  The bulk session
+     * profile, if enabled, is restored once the table is done, whether it
+     * succeeded or not.
      * 
+     * @param dbFactory
      * @param table 
+     * @return the outcome for the table
      */
-    private void anonymizeTable(final int batchSize, final IDBFactory dbFactory, final Table table) 
-    throws DatabaseAnonymizerException {
+    private TableResult anonymizeTable(final IDBFactory dbFactory, final Table table) {
         
         log.info("Table [" + table.getName() + "]. Start ...");
-        
-        final List<Column> tableColumns = table.getColumns();
-        // colNames is looked up with contains, and iterated over.  Using LinkedHashSet means
-        // duplicate column names won't be added to the query, so a check in the column loop
-        // below was created to ensure a reasonable warning message is logged if that happens.
-        final Set<String> colNames = new LinkedHashSet<>(tableColumns.size());
-        // keyNames is only iterated over, so no need for a hash set
-        final List<String> keyNames = new LinkedList<>();
-        
-        fillColumnNames(table, colNames);
-        fillPrimaryKeyNamesList(table, keyNames);
-        
-        // required in this scope for 'catch' block
-        PreparedStatement selectStmt = null;
-        PreparedStatement updateStmt = null;
-        ResultSet rs = null;
-        final Connection updateCon = dbFactory.getUpdateConnection();
+        final TableResult result = new TableResult(table.getName());
+        final TableProgress tableProgress = progress.start(table.getName());
+        result.setEstimatedRows(tableProgress.getEstimate());
         
         try {
-            selectStmt = getSelectQueryStatement(dbFactory, table, keyNames, colNames);
-            rs = selectStmt.executeQuery();
-            
-            final List<MatchMetaData> columnMetaData = dbFactory.fetchMetaData().getMetaDataForRs(rs);
-            
-            final String updateString = getUpdateQuery(table, colNames, keyNames);
-            updateStmt = updateCon.prepareStatement(updateString);
-            
-            int batchCounter = 0; 
-            int rowCount = 0;
-            
-            while (rs.next()) {
-                anonymizeRow(updateStmt, tableColumns, keyNames, updateCon, rs, columnMetaData, dbFactory.getVendorName());
-                batchCounter++;
-                if (batchCounter == batchSize) {
-                    updateStmt.executeBatch();
-                    updateCon.commit();
-                    batchCounter = 0;
+            if (TableRebuilder.REBUILD.equalsIgnoreCase(table.getStrategy())) {
+                final TableRebuilder rebuilder = new TableRebuilder(dbFactory, batchSize);
+                rebuilder.setThrottle(throttle);
+                rebuilder.setCommitListener(tableProgress);
+                result.finish(rebuilder.rebuild(table));
+            } else {
+                try (BulkSession session = openBulkSession(dbFactory, table)) {
+                    Table rowTable = table;
+                    long pushedRows = 0;
+                    if (pushdown) {
+                        final PushdownPlan pushed = new PushdownCompiler(dbFactory.createSQLBuilder()).compile(
+                            table, dbFactory.getConnection());
+                        if (!pushed.isEmpty()) {
+                            pushedRows = pushDown(dbFactory, table, pushed);
+                            rowTable = pushed.getRemainingTable();
+                        }
+                    }
+                    
+                    if (rowTable.getColumns().isEmpty()) {
+                        tableProgress.add(pushedRows);
+                        result.finish(pushedRows);
+                    } else if (partitions > 1 && !useRowLocator(dbFactory, rowTable)) {
+                        result.finish(anonymizePartitioned(dbFactory, rowTable, tableProgress));
+                    } else {
+                        result.finish(anonymizeSlice(dbFactory, rowTable, null,
+                            Checkpoint.sliceId(table.getName()), tableProgress));
+                    }
                 }
-                rowCount++;
             }
-            log.debug("Rows processed: " + rowCount);
-            
-            updateStmt.executeBatch();
-            log.debug("Batch executed");
-            updateCon.commit();
-            log.debug("Commit");
-            selectStmt.close();
-            updateStmt.close();
-            rs.close();
-            log.debug("Closing open resources");
-            
+            if (checkpoint != null) {
+                checkpoint.finish(table.getName());
+            }
         } catch (SQLException | NoSuchMethodException | SecurityException | IllegalAccessException | 
                  IllegalArgumentException | InvocationTargetException | DatabaseDiscoveryException ex ) {
             log.error(ex.toString());
             if (ex.getCause() != null) {
                 log.error(ex.getCause().toString());
             }
-            try {
-                if (selectStmt != null) {
-                    selectStmt.close();
-                }
-                if (updateStmt != null) {
-                    updateStmt.close();
-                }
-                if (rs != null) {
-                    rs.close();
-                }
-            } catch (SQLException sqlex) {
-                log.error(sqlex.toString());
-            }
+            result.fail(ex.toString());
         } finally {
-            try {
-                if (selectStmt != null) {
-                    selectStmt.close();
-                }
-                if (updateStmt != null) {
-                    updateStmt.close();
-                }
-                if (rs != null) {
-                    rs.close();
-                }
-            } catch (SQLException sqlex) {
-                log.error(sqlex.toString());
-            }            
+            progress.finish(tableProgress);
         }
         
+        log.info(result.toString());
         log.info("Table " + table.getName() + ". End ...");
         log.info("");
+        return result;
+    }
+    
+    /**
+     * Anonymizes the tables handed out by the scheduler until none remain.
+     * 
+     * @param scheduler
+     * @param dbFactory
+     * @param results the outcome of each table is added to
+     */
+    private void anonymizeScheduledTables(final TableScheduler scheduler, final IDBFactory dbFactory,
+        final List<TableResult> results) {
+        
+        try {
+            for (Table table = scheduler.next(); table != null; table = scheduler.next()) {
+                TableResult result = null;
+                try {
+                    result = anonymizeTable(dbFactory, table);
+                } catch (RuntimeException ex) {
+                    // e.g. thrown by a function, which would otherwise end the worker unreported
+                    log.error("Table [" + table.getName() + "] failed", ex);
+                    result = new TableResult(table.getName());
+                    result.fail(ex.toString());
+                } finally {
+                    if (result != null) {
+                        results.add(result);
+                    }
+                    scheduler.finished(table.getName(), result != null && result.isSuccess());
+                }
+            }
+        } catch (InterruptedException ex) {
+            log.error("Interrupted while waiting for the next table");
+            Thread.currentThread().interrupt();
+        }
+    }
+    
+    /**
+     * Anonymizes the scheduled tables on a pool of worker threads.
+     * 
+     * Each worker borrows its own read and update connections through a
+     * worker factory, and takes the next table from the shared scheduler
+     * until no tables remain.
+     * 
+     * @param parallelism the number of worker threads
+     * @param dbFactory
+     * @param scheduler
+     * @return the outcome for each table
+     */
+    private List<TableResult> anonymizeTablesInParallel(final int parallelism, final IDBFactory dbFactory,
+        final TableScheduler scheduler) {
+        
+        final List<TableResult> results = Collections.synchronizedList(new ArrayList<>());
+        final ExecutorService executor = Executors.newFixedThreadPool(parallelism);
+        
+        for (int i = 0; i < parallelism; ++i) {
+            executor.submit(() -> {
+                try (IDBFactory workerFactory = dbFactory.createWorkerFactory()) {
+                    anonymizeScheduledTables(scheduler, workerFactory, results);
+                } catch (DatabaseDiscoveryException ex) {
+                    log.error("Unable to create worker connections: " + ex.toString());
+                }
+            });
+        }
+        
+        executor.shutdown();
+        try {
+            executor.awaitTermination(Long.MAX_VALUE, TimeUnit.MILLISECONDS);
+        } catch (InterruptedException ex) {
+            log.error("Interrupted while waiting for tables to be anonymized");
+            executor.shutdownNow();
+            Thread.currentThread().interrupt();
+        }
+        
+        return results;
+    }
+    
+    /**
+     * Returns the number of rows of the table estimated from the catalog's
+     * statistics, or ProgressReporter.UNKNOWN if it has none.
+     * 
+     * @param dbFactory
+     * @param tableName
+     * @return long
+     */
+    private long estimateRows(final IDBFactory dbFactory, final String tableName) {
+        final String query = dbFactory.createSQLBuilder().buildRowEstimate(tableName);
+        log.debug("Estimating rows: " + query);
+        
+        try {
+            final Connection con = dbFactory.getMetaDataConnection();
+            try (Statement stmt = con.createStatement();
+                 ResultSet rs = stmt.executeQuery(query)) {
+                final long estimate = rs.next() ? rs.getLong(1) : ProgressReporter.UNKNOWN;
+                return rs.wasNull() || estimate < 0 ? ProgressReporter.UNKNOWN : estimate;
+            } catch (SQLException ex) {
+                con.rollback();
+                throw ex;
+            }
+        } catch (SQLException | DatabaseDiscoveryException ex) {
+            log.warn("Unable to estimate the rows of table " + tableName + ": " + ex.toString());
+            return ProgressReporter.UNKNOWN;
+        }
     }
     
+    /**
+     * Logs a per-table and overall summary of the run.
+     * 
+     * @param results 
+     */
+    private void logSummary(final List<TableResult> results) {
+        int failed = 0;
+        long rows = 0;
+        log.info("Anonymization summary:");
+        for (final TableResult result : results) {
+            rows += result.getRowCount();
+            if (result.isSuccess()) {
+                log.info("  " + result);
+            } else {
+                log.error("  " + result);
+                ++failed;
+            }
+        }
+        log.info("Tables processed: " + results.size() + ", succeeded: " + (results.size() - failed) + ", failed: " + failed);
+        log.info("Rows processed: " + rows + ", " + Math.round(progress.getRowsPerSecond()) + " rows/s");
+    }
+    
+    @Override
     public void anonymize(final IDBFactory dbFactory, final Properties anonymizerProperties) 
     throws DatabaseAnonymizerException{
 
-        final int batchSize           = Integer.parseInt(anonymizerProperties.getProperty("batch_size"));
+        batchSize                     = Integer.parseInt(anonymizerProperties.getProperty("batch_size"));
+        adaptiveBatch                 = Boolean.parseBoolean(anonymizerProperties.getProperty("adaptive_batch"));
+        minBatchSize                  = Integer.parseInt(anonymizerProperties.getProperty("min_batch_size", "100"));
+        maxBatchSize                  = Integer.parseInt(anonymizerProperties.getProperty("max_batch_size", "10000"));
+        maxCommitInterval             = Integer.parseInt(anonymizerProperties.getProperty("max_commit_interval", "100000"));
+        partitions                    = Integer.parseInt(anonymizerProperties.getProperty("partitions", "1"));
+        partitionMode                 = anonymizerProperties.getProperty("partition_mode", TablePartitioner.RANGE);
+        pipelineTransformers          = Integer.parseInt(anonymizerProperties.getProperty("pipeline_transformers", "0"));
+        pipelineQueueDepth            = Integer.parseInt(anonymizerProperties.getProperty("pipeline_queue_depth", "1000"));
+        writeStrategy                 = anonymizerProperties.getProperty("write_strategy", IRowWriter.BATCH);
+        pageSize                      = Integer.parseInt(anonymizerProperties.getProperty("page_size", "0"));
+        pushdown                      = Boolean.parseBoolean(anonymizerProperties.getProperty("pushdown"));
+        exclusionFilter               = Boolean.parseBoolean(anonymizerProperties.getProperty("exclusion_filter"));
+        rowLocator                    = Boolean.parseBoolean(anonymizerProperties.getProperty("row_locator"));
+        bulkSession                   = Boolean.parseBoolean(anonymizerProperties.getProperty("bulk_session"));
+        dropIndexes                   = Boolean.parseBoolean(anonymizerProperties.getProperty("drop_indexes"));
+        final int parallelism         = Integer.parseInt(anonymizerProperties.getProperty("parallelism", "1"));
         final Requirement requirement = RequirementUtils.load(anonymizerProperties.getProperty("requirement"));
         String tablesStr              = anonymizerProperties.getProperty("tables");
+        final String checkpointFile   = anonymizerProperties.getProperty("checkpoint_file");
+        throttle                      = Throttle.fromProperties(anonymizerProperties, parallelism * partitions);
+        final long progressInterval   = Long.parseLong(anonymizerProperties.getProperty("progress_interval", "60"));
+        final String historyFile      = anonymizerProperties.getProperty("schedule_history");
+        final String mappingDir       = anonymizerProperties.getProperty("mapping_dir");
+        resume                        = Boolean.parseBoolean(anonymizerProperties.getProperty("resume"));
+        
+        if (CommonUtils.isEmptyString(checkpointFile)) {
+            checkpoint = null;
+            if (resume) {
+                log.warn("Unable to resume, the 'checkpoint_file' property is not set");
+            }
+        } else if (resume) {
+            try {
+                checkpoint = Checkpoint.load(checkpointFile);
+            } catch (IOException e) {
+                throw new DatabaseAnonymizerException("Unable to load checkpoint " + checkpointFile, e);
+            }
+        } else {
+            checkpoint = Checkpoint.create(checkpointFile);
+        }
+        
+        if (CommonUtils.isEmptyString(mappingDir)) {
+            CoreFunctions.setMappingDirectory(null);
+        } else {
+            try {
+                CoreFunctions.setMappingDirectory(Files.createDirectories(Paths.get(mappingDir)));
+            } catch (IOException e) {
+                throw new DatabaseAnonymizerException("Unable to create mapping directory " + mappingDir, e);
+            }
+        }
         
         Set<String> tables = null;
         if (tablesStr != null && !tablesStr.isEmpty()) {
             tables = new HashSet<>(Arrays.asList(tablesStr.split(",")));
         }
         
-        // Iterate over the requirement
-        log.info("Anonymizing data for client " + requirement.getClient() + " Version " + requirement.getVersion());
+        final List<Table> reqTables = new ArrayList<>();
         for(final Table reqTable : requirement.getTables()) {
             if (CommonUtils.isEmptyString(tablesStr) || ( tables != null && tables.contains(reqTable.getName()))) {
-                anonymizeTable(batchSize, dbFactory, reqTable);
+                if (resume && checkpoint != null && checkpoint.isFinished(reqTable.getName())) {
+                    log.info("Table [" + reqTable.getName() + "] was finished by a previous run, skipping");
+                    continue;
+                }
+                reqTables.add(reqTable);
+            }
+        }
+        
+        final Map<String, Long> estimates = new LinkedHashMap<>();
+        for (final Table reqTable : reqTables) {
+            estimates.put(reqTable.getName(), estimateRows(dbFactory, reqTable.getName()));
+        }
+        log.info("Estimated rows per table: " + estimates);
+        progress = new ProgressReporter(estimates, TimeUnit.SECONDS.toMillis(progressInterval));
+        
+        final Map<String, Long> durations;
+        try {
+            durations = CommonUtils.isEmptyString(historyFile)
+                ? new HashMap<>() : TableScheduler.loadDurations(historyFile);
+        } catch (IOException | NumberFormatException e) {
+            throw new DatabaseAnonymizerException("Unable to load schedule history " + historyFile, e);
+        }
+        final TableScheduler scheduler = new TableScheduler(reqTables,
+            TableScheduler.estimateCosts(reqTables, estimates, durations));
+        final int workers = reqTables.size() > 1 ? parallelism : 1;
+        log.info("Planned schedule on " + workers + " worker(s):");
+        for (final String line : scheduler.plan(workers)) {
+            log.info("  " + line);
+        }
+        
+        // Iterate over the requirement
+        log.info("Anonymizing data for client " + requirement.getClient() + " Version " + requirement.getVersion());
+        final List<TableResult> results;
+        if (workers > 1) {
+            log.info("Anonymizing " + reqTables.size() + " tables with " + parallelism + " workers");
+            results = anonymizeTablesInParallel(parallelism, dbFactory, scheduler);
+        } else {
+            results = new ArrayList<>(reqTables.size());
+            anonymizeScheduledTables(scheduler, dbFactory, results);
+        }
+        
+        // tables skipped for a failed dependency, or left over if every worker failed to connect
+        for (final Table table : scheduler.getUnstarted()) {
+            final TableResult result = new TableResult(table.getName());
+            result.fail("Table was not processed");
+            results.add(result);
+        }
+        logSummary(results);
+        
+        if (!CommonUtils.isEmptyString(historyFile)) {
+            for (final TableResult result : results) {
+                if (result.isSuccess()) {
+                    durations.put(result.getTableName(), result.getElapsedTime());
+                }
+            }
+            try {
+                TableScheduler.saveDurations(historyFile, durations);
+            } catch (IOException e) {
+                log.error("Unable to save schedule history " + historyFile + ": " + e.toString());
             }
         }
     }
@@ -21,9 +21,9 @@ package com.strider.datadefender;
 import java.lang.reflect.InvocationTargetException;
 import java.lang.reflect.Method;
 
+import java.sql.PreparedStatement;
 import java.sql.ResultSet;
 import java.sql.SQLException;
-import java.sql.Statement;
 
 import java.text.DateFormat;
 import java.text.DecimalFormat;
@@ -61,6 +61,7 @@ import com.strider.datadefender.report.ReportUtil;
 import com.strider.datadefender.specialcase.SpecialCase;
 import com.strider.datadefender.utils.CommonUtils;
 import com.strider.datadefender.utils.Score;
+import com.strider.datadefender.utils.Throttle;
 
 /**
  *
@@ -290,6 +291,7 @@ public class DatabaseDiscoverer extends Discoverer {
         }
 
         final ISQLBuilder sqlBuilder = factory.createSQLBuilder();
+        final Throttle    throttle   = Throttle.fromProperties(dataDiscoveryProperties, 1);
         List<Probability> probabilityList;
 
         for (final MatchMetaData data : map) {
@@ -333,9 +335,11 @@ public class DatabaseDiscoverer extends Discoverer {
 
             LOG.debug("Executing query against database: " + query);
 
-            try (Statement stmt = factory.getConnection().createStatement();
-                ResultSet resultSet = stmt.executeQuery(query);) {
+            try (PreparedStatement stmt = factory.prepareStreamingQuery(query);
+                ResultSet resultSet = throttle.execute(stmt::executeQuery);) {
                 while (resultSet.next()) {
+                    throttle.acquireRows(1);
+
                     if (data.getColumnType().equals("BLOB") || data.getColumnType().equals("GEOMETRY")) {
                         continue;
                     }
@@ -0,0 +1,248 @@
+/*
+ *
+ * Copyright 2014-2018, Armenak Grigoryan, and individual contributors as indicated
+ * by the @authors tag. See the copyright.txt in the distribution for a
+ * full listing of individual contributors.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ */
+
+package com.strider.datadefender.anonymizer;
+
+import java.sql.SQLException;
+
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+
+import org.apache.log4j.Logger;
+
+import static org.apache.log4j.Logger.getLogger;
+
+import com.strider.datadefender.database.DatabaseAnonymizerException;
+
+/**
+ * Anonymizes a table in three stages connected by bounded queues, so the
+ * select cursor keeps reading while updates are being executed.
+ *
+ * The calling thread reads rows from the cursor, a configurable number of
+ * transformer threads run the anonymizing functions, and a single writer
+ * thread writes the rows with the passed IRowWriter.  When a queue is full
+ * the stage feeding it blocks, keeping at most 2 * queueDepth rows in memory.
+ *
+ * Functions taking the ResultSet as a parameter can't be run off the reader
+ * thread, so tables using them should not be pipelined.
+ *
+ * @author Armenak Grigoryan
+ */
+public class AnonymizerPipeline {
+    private static final Logger log = getLogger(AnonymizerPipeline.class);
+
+    /** Marks the end of the rows in a queue. */
+    private static final RowBuffer END = new RowBuffer(null, null);
+
+    /** Interval at which blocked stages check if another stage has failed. */
+    private static final long POLL_MILLIS = 100;
+
+    private final Callable<TablePlan>        planFactory;
+    private final int                        transformers;
+    private final int                        queueDepth;
+    private final AtomicReference<Throwable> error = new AtomicReference<>();
+
+    /**
+     * @param planFactory compiles a TablePlan for each transformer thread, so
+     * function instances aren't shared between threads
+     * @param transformers number of transformer threads
+     * @param queueDepth capacity of each of the queues between stages
+     */
+    public AnonymizerPipeline(final Callable<TablePlan> planFactory, final int transformers, final int queueDepth) {
+        this.planFactory  = planFactory;
+        this.transformers = Math.max(1, transformers);
+        this.queueDepth   = Math.max(1, queueDepth);
+    }
+
+    /**
+     * Records the first error raised by any stage.  The other stages stop
+     * at their next queue operation.
+     *
+     * @param t
+     */
+    private void fail(final Throwable t) {
+        if (error.compareAndSet(null, t)) {
+            log.error("Anonymizer pipeline failed: " + t.toString());
+        }
+    }
+
+    /**
+     * Adds the row to the queue, waiting for space if necessary.
+     *
+     * @param queue
+     * @param row
+     * @return false if the pipeline failed before the row could be added
+     */
+    private boolean put(final BlockingQueue<RowBuffer> queue, final RowBuffer row) {
+        try {
+            while (!queue.offer(row, POLL_MILLIS, TimeUnit.MILLISECONDS)) {
+                if (error.get() != null) {
+                    return false;
+                }
+            }
+
+            return true;
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+            fail(ex);
+
+            return false;
+        }
+    }
+
+    /**
+     * Removes the next row from the queue, waiting for one if necessary.
+     *
+     * @param queue
+     * @return the next row, or null if the pipeline failed
+     */
+    private RowBuffer take(final BlockingQueue<RowBuffer> queue) {
+        try {
+            RowBuffer row = queue.poll(POLL_MILLIS, TimeUnit.MILLISECONDS);
+
+            while (row == null) {
+                if (error.get() != null) {
+                    return null;
+                }
+
+                row = queue.poll(POLL_MILLIS, TimeUnit.MILLISECONDS);
+            }
+
+            return row;
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+            fail(ex);
+
+            return null;
+        }
+    }
+
+    /**
+     * Transformer stage: anonymizes rows until the end marker is read.  The
+     * last transformer to finish passes the end marker on to the writer.
+     */
+    private void transform(final BlockingQueue<RowBuffer> readQueue, final BlockingQueue<RowBuffer> writeQueue,
+                           final AtomicInteger running) {
+        try {
+            final TablePlan plan = planFactory.call();
+
+            for (RowBuffer row = take(readQueue); row != null && row != END; row = take(readQueue)) {
+                plan.anonymize(row, null);
+
+                if (!put(writeQueue, row)) {
+                    return;
+                }
+            }
+        } catch (Exception ex) {
+            fail(ex);
+        } finally {
+            if (running.decrementAndGet() == 0) {
+                put(writeQueue, END);
+            }
+        }
+    }
+
+    /**
+     * Writer stage: writes rows until the end marker is read, then flushes
+     * the writer.
+     */
+    private void write(final BlockingQueue<RowBuffer> writeQueue, final IRowWriter writer) {
+        try {
+            for (RowBuffer row = take(writeQueue); row != null; row = take(writeQueue)) {
+                if (row == END) {
+                    if (error.get() == null) {
+                        writer.flush();
+                    }
+
+                    return;
+                }
+
+                writer.write(row);
+            }
+        } catch (Exception ex) {
+            fail(ex);
+        }
+    }
+
+    /**
+     * Reads all rows from the passed reader, anonymizes and writes them.
+     *
+     * @param reader
+     * @param writer
+     * @return the number of rows processed
+     * @throws DatabaseAnonymizerException if any of the stages failed
+     */
+    public long run(final IRowReader reader, final IRowWriter writer)
+            throws DatabaseAnonymizerException {
+        final BlockingQueue<RowBuffer> readQueue  = new ArrayBlockingQueue<>(queueDepth);
+        final BlockingQueue<RowBuffer> writeQueue = new ArrayBlockingQueue<>(queueDepth);
+        final AtomicInteger            running    = new AtomicInteger(transformers);
+        final ExecutorService          executor   = Executors.newFixedThreadPool(transformers + 1);
+        long                           rowCount   = 0;
+
+        log.debug("Starting pipeline with " + transformers + " transformers and queue depth " + queueDepth);
+
+        try {
+            for (int i = 0; i < transformers; ++i) {
+                executor.submit(() -> transform(readQueue, writeQueue, running));
+            }
+
+            executor.submit(() -> write(writeQueue, writer));
+
+            try {
+                for (RowBuffer row = reader.next(); row != null && error.get() == null; row = reader.next()) {
+                    if (!put(readQueue, row)) {
+                        break;
+                    }
+
+                    rowCount++;
+                }
+            } catch (SQLException ex) {
+                fail(ex);
+            }
+
+            for (int i = 0; i < transformers; ++i) {
+                put(readQueue, END);
+            }
+
+            executor.shutdown();
+            executor.awaitTermination(Long.MAX_VALUE, TimeUnit.MILLISECONDS);
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+            fail(ex);
+        } finally {
+            executor.shutdownNow();
+        }
+
+        final Throwable t = error.get();
+
+        if (t != null) {
+            throw new DatabaseAnonymizerException(t.toString(), t);
+        }
+
+        log.debug("Rows processed: " + rowCount);
+
+        return rowCount;
+    }
+}
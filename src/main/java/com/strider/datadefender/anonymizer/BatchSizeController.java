@@ -0,0 +1,188 @@
+/*
+ *
+ * Copyright 2014-2018, Armenak Grigoryan, and individual contributors as indicated
+ * by the @authors tag. See the copyright.txt in the distribution for a
+ * full listing of individual contributors.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ */
+
+package com.strider.datadefender.anonymizer;
+
+/**
+ * Chooses the number of rows per JDBC batch, and the number of rows between
+ * commits, for a table's writer.
+ *
+ * A fixed controller keeps both at the configured batch size.  An adaptive
+ * controller measures the rows per second of each full batch: the batch size
+ * keeps growing (or shrinking) while throughput doesn't drop, and turns back
+ * when it does, staying between its bounds.  Batches taking longer than
+ * MAX_BATCH_MILLIS are always shrunk.  The commit interval grows while
+ * commits take more than a tenth of the time spent executing batches, and
+ * shrinks back towards the batch size when they are cheap, so transactions
+ * aren't kept open longer than needed.
+ *
+ * @author Armenak Grigoryan
+ */
+public class BatchSizeController {
+
+    /** Factor the batch size is grown or shrunk by. */
+    static final double GROWTH = 1.5;
+
+    /** Relative drop in throughput treated as noise. */
+    static final double TOLERANCE = 0.05;
+
+    /** Latency above which a batch is always shrunk. */
+    static final long MAX_BATCH_MILLIS = 5000;
+
+    private static final double MAX_COMMIT_OVERHEAD = 0.1;
+    private static final double MIN_COMMIT_OVERHEAD = 0.02;
+
+    private final boolean adaptive;
+    private final int     minBatchSize;
+    private final int     maxBatchSize;
+    private final int     maxCommitInterval;
+    private int           batchSize;
+    private int           commitInterval;
+    private boolean       growing = true;
+    private double        lastThroughput;
+    private long          executeNanosSinceCommit;
+    private long          totalRows;
+    private long          totalNanos;
+
+    private BatchSizeController(final boolean adaptive, final int batchSize, final int minBatchSize,
+                                final int maxBatchSize, final int maxCommitInterval) {
+        this.adaptive          = adaptive;
+        this.minBatchSize      = Math.max(1, minBatchSize);
+        this.maxBatchSize      = Math.max(this.minBatchSize, maxBatchSize);
+        this.maxCommitInterval = Math.max(this.maxBatchSize, maxCommitInterval);
+        this.batchSize         = Math.min(this.maxBatchSize, Math.max(this.minBatchSize, batchSize));
+        this.commitInterval    = this.batchSize;
+    }
+
+    /**
+     * Returns a controller executing and committing every batchSize rows.
+     *
+     * @param batchSize
+     * @return BatchSizeController
+     */
+    public static BatchSizeController fixed(final int batchSize) {
+        return new BatchSizeController(false, batchSize, batchSize, batchSize, batchSize);
+    }
+
+    /**
+     * Returns a controller tuning the batch size between minBatchSize and
+     * maxBatchSize, and the commit interval up to maxCommitInterval.
+     *
+     * @param batchSize initial batch size and commit interval
+     * @param minBatchSize
+     * @param maxBatchSize
+     * @param maxCommitInterval
+     * @return BatchSizeController
+     */
+    public static BatchSizeController adaptive(final int batchSize, final int minBatchSize, final int maxBatchSize,
+                                               final int maxCommitInterval) {
+        return new BatchSizeController(true, batchSize, minBatchSize, maxBatchSize, maxCommitInterval);
+    }
+
+    /**
+     * Records the execution of a batch.  Only batches of the current batch
+     * size are used to tune it, as the final batch of a table is usually
+     * smaller.
+     *
+     * @param rows the number of rows executed
+     * @param nanos time taken by the execution
+     */
+    public void batchExecuted(final int rows, final long nanos) {
+        totalRows               += rows;
+        totalNanos              += nanos;
+        executeNanosSinceCommit += nanos;
+
+        if (!adaptive || rows < batchSize) {
+            return;
+        }
+
+        final double throughput = rows * 1e9 / Math.max(1, nanos);
+
+        if (nanos > MAX_BATCH_MILLIS * 1000000L) {
+            growing = false;
+        } else if (lastThroughput > 0 && throughput < lastThroughput * (1 - TOLERANCE)) {
+            growing = !growing;
+        }
+
+        lastThroughput = throughput;
+
+        final int next = growing ? (int) Math.ceil(batchSize * GROWTH) : (int) (batchSize / GROWTH);
+
+        batchSize = Math.min(maxBatchSize, Math.max(minBatchSize, next));
+
+        // keep climbing from the bounds instead of sticking to them
+        if (batchSize == maxBatchSize) {
+            growing = false;
+        } else if (batchSize == minBatchSize) {
+            growing = true;
+        }
+
+        commitInterval = Math.max(commitInterval, batchSize);
+    }
+
+    /**
+     * Records a commit, tuning the commit interval against the time spent
+     * executing batches since the previous commit.
+     *
+     * @param nanos time taken by the commit
+     */
+    public void committed(final long nanos) {
+        if (adaptive && executeNanosSinceCommit > 0) {
+            final double overhead = nanos / (double) executeNanosSinceCommit;
+
+            if (overhead > MAX_COMMIT_OVERHEAD) {
+                commitInterval = Math.min(maxCommitInterval, commitInterval * 2);
+            } else if (overhead < MIN_COMMIT_OVERHEAD) {
+                commitInterval = Math.max(batchSize, commitInterval / 2);
+            }
+        }
+
+        executeNanosSinceCommit = 0;
+    }
+
+    /**
+     * Returns the number of rows to add before executing the batch.
+     *
+     * @return int
+     */
+    public int getBatchSize() {
+        return batchSize;
+    }
+
+    /**
+     * Returns the number of rows to write before committing.
+     *
+     * @return int
+     */
+    public int getCommitInterval() {
+        return commitInterval;
+    }
+
+    @Override
+    public String toString() {
+        final StringBuilder sb = new StringBuilder("batch size ").append(batchSize)
+                                                                   .append(", commit interval ")
+                                                                   .append(commitInterval);
+
+        if (totalNanos > 0) {
+            sb.append(", ").append(Math.round(totalRows * 1e9 / totalNanos)).append(" rows/s executed");
+        }
+
+        return sb.toString();
+    }
+}
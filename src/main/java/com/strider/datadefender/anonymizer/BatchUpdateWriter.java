@@ -0,0 +1,165 @@
+/*
+ *
+ * Copyright 2014-2018, Armenak Grigoryan, and individual contributors as indicated
+ * by the @authors tag. See the copyright.txt in the distribution for a
+ * full listing of individual contributors.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ */
+
+package com.strider.datadefender.anonymizer;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.apache.commons.lang3.StringUtils;
+import org.apache.log4j.Logger;
+
+import static org.apache.log4j.Logger.getLogger;
+
+import com.strider.datadefender.database.metadata.MatchMetaData;
+
+/**
+ * Writes rows with batched "UPDATE ... WHERE key = ?" statements, executing
+ * the batches and committing every batchSize rows.
+ *
+ * Rows only set the columns that were anonymized, so columns excluded for a
+ * row aren't rewritten: one statement is prepared for each set of changed
+ * columns.  Past MAX_SHAPES statements, further rows set all the columns,
+ * writing excluded values back unchanged.
+ *
+ * @author Armenak Grigoryan
+ */
+public class BatchUpdateWriter extends BatchWriter {
+    private static final Logger log = getLogger(BatchUpdateWriter.class);
+
+    /** Maximum number of differently shaped UPDATE statements per table. */
+    static final int MAX_SHAPES = 16;
+
+    private final Map<BitSet, PreparedStatement> updateStmts = new LinkedHashMap<>();
+    private final String                         tableName;
+    private final BitSet                         allColumns;
+
+    /**
+     * @param updateCon
+     * @param tableName
+     * @param plan
+     * @param columnMetaData metadata of the selected columns, keys first
+     * @param batchSize
+     * @throws SQLException
+     */
+    public BatchUpdateWriter(final Connection updateCon, final String tableName, final TablePlan plan,
+                             final List<MatchMetaData> columnMetaData, final int batchSize)
+            throws SQLException {
+        super(updateCon, plan, columnMetaData, batchSize);
+        this.tableName  = tableName;
+        this.allColumns = new BitSet();
+        this.allColumns.set(0, plan.getUpdateColumns().size());
+        getStatement(allColumns);
+    }
+
+    /**
+     * Creates the UPDATE query for a single row of results.
+     *
+     * @param tableName
+     * @param updateColumns
+     * @param keyPredicates
+     * @return the SQL statement
+     */
+    private static String getUpdateQuery(final String tableName, final Collection<String> updateColumns,
+                                         final Collection<String> keyPredicates) {
+        final StringBuilder sql = new StringBuilder();
+
+        sql.append("UPDATE ")
+           .append(tableName)
+           .append(" SET ")
+           .append(StringUtils.join(updateColumns, " = ?, "))
+           .append(" = ? WHERE ")
+           .append(StringUtils.join(keyPredicates, " AND "));
+        log.debug("getUpdateQuery: " + sql.toString());
+
+        return sql.toString();
+    }
+
+    /**
+     * Returns the statement setting the passed columns, preparing it if
+     * necessary.
+     *
+     * @param columns positions in the plan's update columns
+     * @return PreparedStatement
+     * @throws SQLException
+     */
+    private PreparedStatement getStatement(final BitSet columns) throws SQLException {
+        PreparedStatement stmt = updateStmts.get(columns);
+
+        if (stmt == null) {
+            if (updateStmts.size() >= MAX_SHAPES) {
+                return updateStmts.get(allColumns);
+            }
+
+            final List<String> names = new ArrayList<>(columns.cardinality());
+
+            for (int i = columns.nextSetBit(0); i >= 0; i = columns.nextSetBit(i + 1)) {
+                names.add(plan.getUpdateColumns().get(i));
+            }
+
+            stmt = updateCon.prepareStatement(getUpdateQuery(tableName, names, plan.getKeyPredicates()));
+            updateStmts.put(columns, stmt);
+        }
+
+        return stmt;
+    }
+
+    @Override
+    protected void addBatch(final RowBuffer row) throws SQLException {
+        BitSet                  columns    = row.getChanged();
+        final PreparedStatement updateStmt = getStatement(columns);
+
+        if (updateStmt == updateStmts.get(allColumns)) {
+            columns = allColumns;
+        }
+
+        int paramIndex = 0;
+
+        for (int i = columns.nextSetBit(0); i >= 0; i = columns.nextSetBit(i + 1)) {
+            setParameter(updateStmt, ++paramIndex, i, row.getValue(i));
+        }
+
+        for (int i = 0; i < plan.getKeyNames().size(); ++i) {
+            updateStmt.setString(++paramIndex, row.getKey(i));
+        }
+
+        updateStmt.addBatch();
+    }
+
+    @Override
+    protected void executeBatch() throws SQLException {
+        for (final PreparedStatement updateStmt : updateStmts.values()) {
+            updateStmt.executeBatch();
+        }
+    }
+
+    @Override
+    public void close() throws SQLException {
+        for (final PreparedStatement updateStmt : updateStmts.values()) {
+            updateStmt.close();
+        }
+    }
+}
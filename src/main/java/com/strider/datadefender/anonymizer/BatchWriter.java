@@ -0,0 +1,230 @@
+/*
+ *
+ * Copyright 2014-2018, Armenak Grigoryan, and individual contributors as indicated
+ * by the @authors tag. See the copyright.txt in the distribution for a
+ * full listing of individual contributors.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ */
+
+package com.strider.datadefender.anonymizer;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.sql.Types;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.apache.log4j.Logger;
+
+import static org.apache.log4j.Logger.getLogger;
+
+import com.strider.datadefender.database.metadata.MatchMetaData;
+import com.strider.datadefender.utils.CommonUtils;
+import com.strider.datadefender.utils.Throttle;
+
+/**
+ * Provides the batching common to row writers: rows are added to a batch
+ * which is executed every batchSize rows, and committed every commit
+ * interval rows, as chosen by the writer's BatchSizeController.
+ *
+ * @author Armenak Grigoryan
+ */
+public abstract class BatchWriter implements IRowWriter {
+    private static final Logger log = getLogger(BatchWriter.class);
+
+    protected final Connection          updateCon;
+    protected final TablePlan           plan;
+    private final List<MatchMetaData>   columnMetaData;
+    private final List<RowBuffer>       uncommitted;
+    private final List<ICommitListener> commitListeners = new ArrayList<>();
+    private BatchSizeController         controller;
+    private Throttle                    throttle = Throttle.NONE;
+    private int                         batchRows;
+    private int                         pending;
+
+    /**
+     * @param updateCon
+     * @param plan
+     * @param columnMetaData metadata of the selected columns, keys first
+     * @param batchSize used by the default, fixed, BatchSizeController
+     */
+    protected BatchWriter(final Connection updateCon, final TablePlan plan, final List<MatchMetaData> columnMetaData,
+                          final int batchSize) {
+        this.updateCon      = updateCon;
+        this.plan           = plan;
+        this.columnMetaData = columnMetaData;
+        this.controller     = BatchSizeController.fixed(Math.max(1, batchSize));
+        this.uncommitted    = new ArrayList<>(controller.getBatchSize());
+    }
+
+    /**
+     * Returns the passed colValue truncated to the column's size in the table.
+     *
+     * @param colValue
+     * @param index zero-based index in the plan's update columns
+     * @return
+     */
+    protected String getTruncatedColumnValue(final String colValue, final int index) {
+        final MatchMetaData md      = columnMetaData.get(plan.getKeyNames().size() + index);
+        final int           colSize = md.getColumnSize();
+        final String        type    = md.getColumnType();
+
+        if ("String".equals(type) && colValue.length() > colSize) {
+            return colValue.substring(0, colSize);
+        }
+
+        return colValue;
+    }
+
+    /**
+     * Sets the statement's parameter to the anonymized value of the column.
+     *
+     * @param stmt
+     * @param paramIndex
+     * @param index zero-based index in the plan's update columns
+     * @param colValue
+     * @throws SQLException
+     */
+    protected void setParameter(final PreparedStatement stmt, final int paramIndex, final int index,
+                                final Object colValue)
+            throws SQLException {
+        if (colValue == null) {
+            stmt.setNull(paramIndex, Types.NULL);
+        } else if (colValue.getClass() == java.sql.Date.class) {
+            stmt.setDate(paramIndex, CommonUtils.stringToDate(colValue.toString(), "dd-MM-yyyy"));
+        } else if (colValue.getClass() == java.lang.Integer.class) {
+            stmt.setInt(paramIndex, (int) colValue);
+        } else {
+            stmt.setString(paramIndex, getTruncatedColumnValue(colValue.toString(), index));
+        }
+    }
+
+    /**
+     * Adds the row to the statement(s) executed by executeBatch.
+     *
+     * @param row
+     * @throws SQLException
+     */
+    protected abstract void addBatch(RowBuffer row) throws SQLException;
+
+    /**
+     * Executes the rows added since the last call.
+     *
+     * @throws SQLException
+     */
+    protected abstract void executeBatch() throws SQLException;
+
+    /**
+     * Returns true if rows whose columns were all excluded are left out of
+     * the batch, as writing them back wouldn't change anything.
+     *
+     * @return boolean
+     */
+    protected boolean skipsUnchangedRows() {
+        return true;
+    }
+
+    @Override
+    public void write(final RowBuffer row) throws SQLException {
+        // unchanged rows are still counted, so commit listeners see every row read
+        if (row.hasChanges() || !skipsUnchangedRows()) {
+            addBatch(row);
+            ++pending;
+        }
+
+        uncommitted.add(row);
+        ++batchRows;
+
+        if (batchRows >= controller.getBatchSize()) {
+            execute();
+
+            if (uncommitted.size() >= controller.getCommitInterval()) {
+                commit();
+            }
+        }
+    }
+
+    @Override
+    public void flush() throws SQLException {
+        execute();
+        commit();
+    }
+
+    /**
+     * Executes the rows added since the last execution, if any.
+     */
+    private void execute() throws SQLException {
+        if (pending > 0) {
+            throttle.acquireRows(batchRows);
+
+            final long elapsed = throttle.execute(() -> {
+                final long start = System.nanoTime();
+
+                executeBatch();
+
+                return System.nanoTime() - start;
+            });
+
+            controller.batchExecuted(batchRows, elapsed);
+            log.debug("Batch executed");
+        }
+
+        batchRows = 0;
+        pending   = 0;
+    }
+
+    private void commit() throws SQLException {
+        final long start = System.nanoTime();
+
+        updateCon.commit();
+        controller.committed(System.nanoTime() - start);
+        log.debug("Commit");
+
+        if (!uncommitted.isEmpty()) {
+            for (final ICommitListener listener : commitListeners) {
+                listener.committed(uncommitted);
+            }
+        }
+
+        uncommitted.clear();
+    }
+
+    /**
+     * Replaces the fixed batch size passed to the constructor.
+     *
+     * @param controller
+     */
+    public void setBatchSizeController(final BatchSizeController controller) {
+        this.controller = controller;
+    }
+
+    /**
+     * Sets the throttle limiting the rate at which batches are executed.
+     *
+     * @param throttle
+     */
+    public void setThrottle(final Throttle throttle) {
+        this.throttle = throttle;
+    }
+
+    /**
+     * Adds a listener notified after each commit.
+     *
+     * @param commitListener
+     */
+    public void addCommitListener(final ICommitListener commitListener) {
+        commitListeners.add(commitListener);
+    }
+}
@@ -0,0 +1,224 @@
+/*
+ *
+ * Copyright 2014-2018, Armenak Grigoryan, and individual contributors as indicated
+ * by the @authors tag. See the copyright.txt in the distribution for a
+ * full listing of individual contributors.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ */
+
+package com.strider.datadefender.anonymizer;
+
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.sql.Statement;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Set;
+import java.util.TreeSet;
+
+import org.apache.commons.lang3.StringUtils;
+
+import org.apache.log4j.Logger;
+
+import static org.apache.log4j.Logger.getLogger;
+
+import com.strider.datadefender.database.metadata.IndexMetaData;
+import com.strider.datadefender.database.sqlbuilder.ISQLBuilder;
+import com.strider.datadefender.requirement.Column;
+import com.strider.datadefender.requirement.Table;
+
+/**
+ * Changes applied to a connection, or a table, while it is anonymized, and
+ * the statements undoing them when the session is closed.
+ *
+ * Closing the session always runs every restore statement, whether the
+ * table's updates succeeded or not: the connection's pending transaction is
+ * rolled back first, so restoring works after a failed statement, and a
+ * failing restore statement is logged and doesn't stop the others.  If a
+ * setup statement fails, the changes already made are restored and the
+ * table is anonymized without the profile.
+ *
+ * @author Armenak Grigoryan
+ */
+public class BulkSession implements AutoCloseable {
+    private static final Logger log = getLogger(BulkSession.class);
+
+    private final Connection   con;
+    private final String       name;
+    private final List<String> restore;
+
+    private BulkSession(final Connection con, final String name, final List<String> restore) {
+        this.con     = con;
+        this.name    = name;
+        this.restore = restore;
+    }
+
+    /**
+     * Runs the setup statements on the connection, committing them.
+     *
+     * @param con
+     * @param name what the session applies to, for logging
+     * @param setup
+     * @param restore statements run when the session is closed
+     * @return BulkSession
+     */
+    public static BulkSession open(final Connection con, final String name, final List<String> setup,
+                                   final List<String> restore) {
+        final BulkSession session = new BulkSession(con, name, restore);
+
+        if (setup.isEmpty()) {
+            return session;
+        }
+
+        log.info("Bulk session for " + name + ", to be restored with: " + restore);
+
+        try {
+            for (final String sql : setup) {
+                execute(con, sql);
+            }
+
+            con.commit();
+        } catch (SQLException e) {
+            log.warn("Unable to set up bulk session for " + name + ", continuing without it: " + e);
+            session.close();
+
+            return new BulkSession(con, name, Collections.emptyList());
+        }
+
+        return session;
+    }
+
+    /**
+     * Opens the bulk session for a table: the vendor's session and table
+     * profiles if bulk is true, and if dropIndexes is true, dropping the
+     * table's non unique indexes on anonymized columns, recreated on close.
+     *
+     * @param con the update connection
+     * @param sqlBuilder
+     * @param table
+     * @param indexes the table's indexes
+     * @param bulk
+     * @param dropIndexes
+     * @return BulkSession
+     */
+    public static BulkSession openForTable(final Connection con, final ISQLBuilder sqlBuilder, final Table table,
+                                           final List<IndexMetaData> indexes, final boolean bulk,
+                                           final boolean dropIndexes) {
+        final String              tableName  = table.getName();
+        final List<IndexMetaData> anonymized = getAnonymizedIndexes(table, indexes);
+        final List<String>        setup      = new ArrayList<>();
+        final List<String>        restore    = new ArrayList<>();
+
+        if (bulk) {
+            setup.addAll(sqlBuilder.buildBulkSessionSetup());
+        }
+
+        if (dropIndexes) {
+            for (final IndexMetaData index : anonymized) {
+                setup.add(sqlBuilder.buildDropIndex(tableName, index.getName()));
+            }
+        }
+
+        if (bulk) {
+            final List<IndexMetaData> deferred = dropIndexes ? Collections.emptyList() : anonymized;
+
+            setup.addAll(sqlBuilder.buildBulkTableSetup(tableName, deferred));
+            restore.addAll(sqlBuilder.buildBulkTableRestore(tableName, deferred));
+        }
+
+        if (dropIndexes) {
+            for (final IndexMetaData index : anonymized) {
+                restore.add("CREATE INDEX " + index.getName() + " ON " + tableName + " ("
+                            + StringUtils.join(index.getColumns(), ", ") + ")");
+            }
+        }
+
+        if (bulk) {
+            restore.addAll(sqlBuilder.buildBulkSessionRestore());
+        }
+
+        return open(con, "table " + tableName, setup, restore);
+    }
+
+    /**
+     * Returns the non unique indexes including one of the table's
+     * anonymized columns.  Unique indexes are left alone, as they enforce
+     * constraints.
+     */
+    static List<IndexMetaData> getAnonymizedIndexes(final Table table, final List<IndexMetaData> indexes) {
+        final Set<String> anonymized = new TreeSet<>(String.CASE_INSENSITIVE_ORDER);
+
+        for (final Column column : table.getColumns()) {
+            anonymized.add(column.getName());
+        }
+
+        final List<IndexMetaData> result = new ArrayList<>();
+
+        for (final IndexMetaData index : indexes) {
+            if (index.isUnique()) {
+                continue;
+            }
+
+            for (final String column : index.getColumns()) {
+                if (anonymized.contains(column)) {
+                    result.add(index);
+
+                    break;
+                }
+            }
+        }
+
+        return result;
+    }
+
+    /**
+     * Runs every restore statement, logging those that fail.
+     */
+    @Override
+    public void close() {
+        if (restore.isEmpty()) {
+            return;
+        }
+
+        try {
+            con.rollback();
+        } catch (SQLException e) {
+            log.error("Unable to roll back before restoring " + name + ": " + e);
+        }
+
+        for (final String sql : restore) {
+            try {
+                execute(con, sql);
+                con.commit();
+            } catch (SQLException e) {
+                log.error("Unable to restore " + name + ", run manually: " + sql + " (" + e + ")");
+
+                try {
+                    con.rollback();
+                } catch (SQLException ex) {
+                    log.error(ex.toString());
+                }
+            }
+        }
+    }
+
+    private static void execute(final Connection con, final String sql) throws SQLException {
+        log.debug("Executing: " + sql);
+
+        try (Statement stmt = con.createStatement()) {
+            stmt.execute(sql);
+        }
+    }
+}
@@ -0,0 +1,289 @@
+/*
+ *
+ * Copyright 2014-2018, Armenak Grigoryan, and individual contributors as indicated
+ * by the @authors tag. See the copyright.txt in the distribution for a
+ * full listing of individual contributors.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ */
+
+package com.strider.datadefender.anonymizer;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+
+import org.apache.log4j.Logger;
+
+import static org.apache.log4j.Logger.getLogger;
+
+/**
+ * Progress of an anonymization run, saved to a local file after every
+ * committed batch so an interrupted run can be resumed.
+ *
+ * For each table (or each partition of a table) the file holds the last
+ * committed key and the number of rows done, and finished tables are marked
+ * as done.  The file is a properties file, replaced atomically on each save.
+ *
+ * @author Armenak Grigoryan
+ */
+public class Checkpoint {
+    private static final Logger log = getLogger(Checkpoint.class);
+
+    private final Path       file;
+    private final Properties state = new Properties();
+
+    private Checkpoint(final Path file) {
+        this.file = file;
+    }
+
+    /**
+     * Creates an empty checkpoint, replacing any previous file on the first
+     * save.
+     *
+     * @param fileName
+     * @return Checkpoint
+     */
+    public static Checkpoint create(final String fileName) {
+        return new Checkpoint(Paths.get(fileName));
+    }
+
+    /**
+     * Loads the checkpoint saved by a previous run, or an empty one if the
+     * file doesn't exist.
+     *
+     * @param fileName
+     * @return Checkpoint
+     * @throws IOException
+     */
+    public static Checkpoint load(final String fileName) throws IOException {
+        final Checkpoint checkpoint = create(fileName);
+
+        if (Files.exists(checkpoint.file)) {
+            try (InputStream in = Files.newInputStream(checkpoint.file)) {
+                checkpoint.state.load(in);
+            }
+
+            log.info("Loaded checkpoint " + fileName);
+        } else {
+            log.warn("Checkpoint " + fileName + " not found, starting from the beginning");
+        }
+
+        return checkpoint;
+    }
+
+    /**
+     * Escapes the characters used as separators in the checkpoint's keys, so
+     * a table named "a" can't be confused with a table "a.b" or "a#1".
+     */
+    private static String escape(final String table) {
+        return table.replace("%", "%25").replace(".", "%2E").replace("#", "%23");
+    }
+
+    /**
+     * Returns the id of a table that isn't partitioned.
+     *
+     * @param table
+     * @return String
+     */
+    public static String sliceId(final String table) {
+        return escape(table);
+    }
+
+    /**
+     * Returns the id of a partition of the table.
+     *
+     * @param table
+     * @param partition the partition's index
+     * @return String
+     */
+    public static String sliceId(final String table, final int partition) {
+        return escape(table) + "#" + partition;
+    }
+
+    private static String tableKey(final String table) {
+        return "table." + escape(table) + ".done";
+    }
+
+    private static String sliceKey(final String slice, final String property) {
+        return "slice." + slice + "." + property;
+    }
+
+    private void save() {
+        final Path tmp = file.resolveSibling(file.getFileName() + ".tmp");
+
+        try {
+            try (OutputStream out = Files.newOutputStream(tmp)) {
+                state.store(out, "DataDefender anonymizer checkpoint");
+            }
+
+            Files.move(tmp, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } catch (IOException e) {
+            log.error("Unable to save checkpoint " + file + ": " + e.toString());
+        }
+    }
+
+    /**
+     * Returns true if the table was finished by a previous run.
+     *
+     * @param table
+     * @return boolean
+     */
+    public synchronized boolean isFinished(final String table) {
+        return Boolean.parseBoolean(state.getProperty(tableKey(table)));
+    }
+
+    /**
+     * Marks the table as finished, discarding the progress of its slices.
+     *
+     * @param table
+     */
+    public synchronized void finish(final String table) {
+        final String prefix          = "slice." + sliceId(table) + ".";
+        final String partitionPrefix = "slice." + sliceId(table) + "#";
+
+        state.stringPropertyNames()
+             .stream()
+             .filter(name -> name.startsWith(prefix) || name.startsWith(partitionPrefix))
+             .forEach(state::remove);
+        state.setProperty(tableKey(table), "true");
+        save();
+    }
+
+    /**
+     * Returns the last key committed for the slice, or null if the slice
+     * hasn't been started.
+     *
+     * @param slice
+     * @return String[]
+     */
+    public synchronized String[] getLastKey(final String slice) {
+        final int keyCount = Integer.parseInt(state.getProperty(sliceKey(slice, "keys"), "0"));
+
+        if (keyCount == 0) {
+            return null;
+        }
+
+        final String[] key = new String[keyCount];
+
+        for (int i = 0; i < keyCount; ++i) {
+            key[i] = state.getProperty(sliceKey(slice, "key." + i));
+        }
+
+        return key;
+    }
+
+    /**
+     * Returns the java.sql.Types of the slice's key columns.
+     *
+     * @param slice
+     * @return int[], or null if the slice hasn't been started
+     */
+    public synchronized int[] getKeyTypes(final String slice) {
+        final String[] key = getLastKey(slice);
+
+        if (key == null) {
+            return null;
+        }
+
+        final int[] types = new int[key.length];
+
+        for (int i = 0; i < types.length; ++i) {
+            types[i] = Integer.parseInt(state.getProperty(sliceKey(slice, "type." + i)));
+        }
+
+        return types;
+    }
+
+    /**
+     * Returns the number of rows committed for the slice.
+     *
+     * @param slice
+     * @return long
+     */
+    public synchronized long getRows(final String slice) {
+        return Long.parseLong(state.getProperty(sliceKey(slice, "rows"), "0"));
+    }
+
+    private synchronized void save(final String slice, final int[] keyTypes, final String[] key, final long rows) {
+        for (final String value : key) {
+
+            // a null key can't be resumed from
+            if (value == null) {
+                return;
+            }
+        }
+
+        state.setProperty(sliceKey(slice, "keys"), String.valueOf(key.length));
+
+        for (int i = 0; i < key.length; ++i) {
+            state.setProperty(sliceKey(slice, "key." + i), key[i]);
+            state.setProperty(sliceKey(slice, "type." + i), String.valueOf(keyTypes[i]));
+        }
+
+        state.setProperty(sliceKey(slice, "rows"), String.valueOf(rows));
+        save();
+    }
+
+    /**
+     * Returns a listener saving the slice's progress after each commit.
+     *
+     * Rows may be committed out of the order they were read in (for instance
+     * by a pipeline with several transformers), so the saved key is the one of
+     * the last row read before which every row has been committed.
+     *
+     * @param slice the table's or partition's id, from sliceId
+     * @param keyTypes the java.sql.Types of the key columns
+     * @param initialRows rows done before the slice was started or resumed
+     * @return ICommitListener
+     */
+    public ICommitListener track(final String slice, final int[] keyTypes, final long initialRows) {
+        return new ICommitListener() {
+            private final Map<Long, String[]> pending = new HashMap<>();
+            private long                      nextSequence;
+
+            @Override
+            public synchronized void committed(final List<RowBuffer> rows) {
+                for (final RowBuffer row : rows) {
+                    final String[] key = new String[keyTypes.length];
+
+                    for (int i = 0; i < key.length; ++i) {
+                        key[i] = row.getKey(i);
+                    }
+
+                    pending.put(row.getSequence(), key);
+                }
+
+                String[] lastKey = null;
+
+                for (String[] key = pending.remove(nextSequence); key != null; key = pending.remove(nextSequence)) {
+                    lastKey = key;
+                    nextSequence++;
+                }
+
+                if (lastKey != null) {
+                    save(slice, keyTypes, lastKey, initialRows + nextSequence);
+                }
+            }
+        };
+    }
+}
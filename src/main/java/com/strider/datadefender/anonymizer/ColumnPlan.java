@@ -0,0 +1,437 @@
+/*
+ *
+ * Copyright 2014-2018, Armenak Grigoryan, and individual contributors as indicated
+ * by the @authors tag. See the copyright.txt in the distribution for a
+ * full listing of individual contributors.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ */
+
+package com.strider.datadefender.anonymizer;
+
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+
+import java.sql.ResultSet;
+import java.sql.SQLException;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.apache.commons.lang3.ClassUtils;
+import org.apache.log4j.Logger;
+
+import static org.apache.log4j.Logger.getLogger;
+
+import com.strider.datadefender.functions.CoreFunctions;
+import com.strider.datadefender.functions.Utils;
+import com.strider.datadefender.requirement.Column;
+import com.strider.datadefender.requirement.Exclude;
+import com.strider.datadefender.requirement.Parameter;
+import com.strider.datadefender.utils.LikeMatcher;
+
+/**
+ * A Column's anonymizing function, resolved once and bound to a method handle.
+ *
+ * Constant parameter values from the requirement are bound into the handle
+ * when the plan is compiled, leaving only the column's current value
+ * (@@value@@) and the current row (@@row@@) to be passed in for each row.
+ *
+ * @see TablePlan
+ * @author Armenak Grigoryan
+ */
+public class ColumnPlan {
+    private static final Logger     log         = getLogger(ColumnPlan.class);
+    private static final String     VALUE       = "@@value@@";
+    private static final String     ROW         = "@@row@@";
+    private static final MethodType INVOKE_TYPE = MethodType.methodType(Object.class, String.class, ResultSet.class);
+
+    private final Column       column;
+    private final MethodHandle handle;
+    private final boolean      usesValue;
+    private final boolean      usesRow;
+    private int                updateIndex;
+
+    private ColumnPlan(final Column column, final MethodHandle handle, final boolean usesValue, final boolean usesRow) {
+        this.column    = column;
+        this.handle    = handle;
+        this.usesValue = usesValue;
+        this.usesRow   = usesRow;
+    }
+
+    /**
+     * Resolves the column's function to a method on the (shared) instance of
+     * its class.
+     *
+     * @param column
+     * @param instances function class instances by class name, shared
+     * between columns of the same table
+     * @param factory creates a configured instance for a class name
+     * @return the compiled plan
+     * @throws NoSuchMethodException
+     * @throws IllegalAccessException
+     * @throws InvocationTargetException
+     */
+    static ColumnPlan compile(final Column column, final Map<String, CoreFunctions> instances,
+                              final FunctionFactory factory)
+            throws NoSuchMethodException, IllegalAccessException, InvocationTargetException {
+        final String function = column.getFunction();
+
+        if (function == null || function.equals("")) {
+            log.warn("Function is not defined for column [" + column + "]. Moving to the next column.");
+
+            return new ColumnPlan(column, null, false, false);
+        }
+
+        final String className  = Utils.getClassName(function);
+        final String methodName = Utils.getMethodName(function);
+        CoreFunctions instance  = instances.get(className);
+
+        try {
+            if (instance == null) {
+                instance = factory.create(className);
+                instances.put(className, instance);
+            }
+        } catch (InstantiationException | ClassNotFoundException ex) {
+            log.error(ex.toString());
+
+            return new ColumnPlan(column, null, false, false);
+        }
+
+        if (column.getParameters() != null) {
+            return compileWithParameters(column, instance, methodName);
+        }
+
+        return compileWithoutParameters(column, instance, methodName);
+    }
+
+    private static ColumnPlan compileWithoutParameters(final Column column, final CoreFunctions instance,
+                                                       final String methodName)
+            throws NoSuchMethodException, IllegalAccessException {
+        for (final Method m : instance.getClass().getMethods()) {
+            if (m.getName().equals(methodName) && m.getParameterCount() == 0) {
+                log.debug("  Found method: " + m.getName());
+
+                final Class<?> returnType = m.getReturnType();
+                MethodHandle   mh         = MethodHandles.publicLookup().unreflect(m).bindTo(instance);
+
+                if (returnType != String.class && returnType != java.sql.Date.class && returnType != int.class
+                        && returnType != Integer.class) {
+                    log.warn("Anonymization method: " + methodName + " has unsupported return type " + returnType);
+                    mh = MethodHandles.filterReturnValue(mh.asType(MethodType.methodType(Object.class)),
+                                                         MethodHandles.dropArguments(
+                                                             MethodHandles.constant(Object.class, ""), 0,
+                                                             Object.class));
+                }
+
+                mh = mh.asType(MethodType.methodType(Object.class));
+
+                return new ColumnPlan(column, MethodHandles.dropArguments(mh, 0, String.class, ResultSet.class),
+                                      false, false);
+            }
+        }
+
+        throw new NoSuchMethodException("Anonymization method: " + methodName + ") was not found in class "
+                                        + instance.getClass().getName());
+    }
+
+    private static ColumnPlan compileWithParameters(final Column column, final CoreFunctions instance,
+                                                    final String methodName)
+            throws NoSuchMethodException, IllegalAccessException, InvocationTargetException {
+        final List<Parameter>     parms       = column.getParameters();
+        final Map<String, Object> paramValues = new HashMap<>(parms.size());
+        final Map<String, String> dynamic     = new HashMap<>(parms.size());
+
+        for (final Parameter param : parms) {
+            if (param.getValue() != null && param.getValue().equals(VALUE)) {
+                dynamic.put(param.getName(), VALUE);
+            } else if (param.getValue() != null && param.getValue().equals(ROW)
+                       && "java.sql.ResultSet".equals(param.getType())) {
+                dynamic.put(param.getName(), ROW);
+            } else {
+                try {
+                    paramValues.put(param.getName(), param.getTypeValue());
+                } catch (ClassNotFoundException | InstantiationException ex) {
+                    throw new InvocationTargetException(ex, "Invalid value for parameter " + param.getName());
+                }
+            }
+        }
+
+        methodLoop:
+        for (final Method m : instance.getClass().getMethods()) {
+            if (!m.getName().equals(methodName) || m.getReturnType() != String.class) {
+                continue;
+            }
+
+            log.debug("  Found method: " + m.getName());
+            log.debug("  Match w/: " + paramValues + " " + dynamic);
+
+            final java.lang.reflect.Parameter[] mParams = m.getParameters();
+
+            // actual parameters check less than xml defined parameters size, because values could be auto-assigned
+            if (mParams.length != paramValues.size() + dynamic.size()) {
+                continue;
+            }
+
+            final List<Object> constants = new ArrayList<>(mParams.length);
+            final int[]        reorder   = new int[mParams.length];
+            final Class<?>[]   types     = new Class<?>[mParams.length];
+            int                nDynamic  = 0;
+            boolean            usesValue = false;
+            boolean            usesRow   = false;
+
+            for (int i = 0; i < mParams.length; ++i) {
+                final java.lang.reflect.Parameter par = mParams[i];
+
+                // Note: requires -parameter compiler flag
+                log.debug("    Real param: " + par.getName());
+
+                final String kind = dynamic.get(par.getName());
+
+                if (VALUE.equals(kind)) {
+                    if (par.getType().isPrimitive() || !par.getType().isAssignableFrom(String.class)) {
+                        continue methodLoop;
+                    }
+
+                    reorder[nDynamic] = 0;
+                    types[nDynamic++] = String.class;
+                    usesValue         = true;
+                    constants.add(null);
+
+                    continue;
+                } else if (ROW.equals(kind)) {
+                    if (!par.getType().isAssignableFrom(ResultSet.class)) {
+                        continue methodLoop;
+                    }
+
+                    reorder[nDynamic] = 1;
+                    types[nDynamic++] = ResultSet.class;
+                    usesRow           = true;
+                    constants.add(null);
+
+                    continue;
+                } else if (!paramValues.containsKey(par.getName())) {
+                    continue methodLoop;
+                }
+
+                final Object value         = paramValues.get(par.getName());
+                Class<?>     fnParamType   = par.getType();
+                final Class<?> confParamType = (value == null) ? fnParamType : value.getClass();
+
+                if (fnParamType.isPrimitive() && value == null) {
+                    continue methodLoop;
+                }
+
+                if (ClassUtils.isPrimitiveWrapper(confParamType)) {
+                    if (!ClassUtils.isPrimitiveOrWrapper(fnParamType)) {
+                        continue methodLoop;
+                    }
+
+                    fnParamType = ClassUtils.primitiveToWrapper(fnParamType);
+                }
+
+                if (!fnParamType.equals(confParamType)) {
+                    continue methodLoop;
+                }
+
+                constants.add(value);
+            }
+
+            MethodHandle mh = MethodHandles.publicLookup().unreflect(m).bindTo(instance);
+
+            // bind constants from the right, so indexes of earlier arguments don't shift
+            for (int i = mParams.length - 1; i >= 0; --i) {
+                final String kind = dynamic.get(mParams[i].getName());
+
+                if (kind == null) {
+                    mh = MethodHandles.insertArguments(mh, i, constants.get(i));
+                }
+            }
+
+            mh = mh.asType(MethodType.methodType(Object.class, Arrays.copyOf(types, nDynamic)));
+            mh = MethodHandles.permuteArguments(mh, INVOKE_TYPE, Arrays.copyOf(reorder, nDynamic));
+
+            return new ColumnPlan(column, mh, usesValue, usesRow);
+        }
+
+        final StringBuilder s = new StringBuilder("Anonymization method: ");
+
+        s.append(methodName).append(" with parameters matching (");
+
+        String comma = "";
+
+        for (final Parameter p : parms) {
+            s.append(comma).append(p.getType()).append(' ').append(p.getName());
+            comma = ", ";
+        }
+
+        s.append(") was not found in class ").append(instance.getClass().getName());
+
+        throw new NoSuchMethodException(s.toString());
+    }
+
+    /**
+     * Returns true if the current column's value is excluded by the rulesets
+     * defined by the Requirements.
+     *
+     * @param row
+     * @return boolean
+     * @throws SQLException
+     */
+    public boolean isExcluded(final RowBuffer row) throws SQLException {
+        return isExcluded(column.getExclusions(), column.getName(), row);
+    }
+
+    /**
+     * Returns true if the row is excluded by the passed rules.  Exclude
+     * elements without a name test the defaultName column, or are skipped if
+     * defaultName is null.
+     *
+     * @param exclusions may be null
+     * @param defaultName
+     * @param row
+     * @return boolean
+     * @throws SQLException
+     */
+    static boolean isExcluded(final List<Exclude> exclusions, final String defaultName, final RowBuffer row)
+            throws SQLException {
+        boolean hasInclusions   = false;
+        boolean passedInclusion = false;
+
+        if (exclusions != null) {
+            for (final Exclude exc : exclusions) {
+                String       name = exc.getName();
+                final String eq   = exc.getEqualsValue();
+                final String lk   = exc.getLikeValue();
+                final String neq  = exc.getNotEqualsValue();
+                final String nlk  = exc.getNotLikeValue();
+                final boolean nl  = exc.isExcludeNulls();
+
+                if (name == null || name.length() == 0) {
+                    if (defaultName == null) {
+                        continue;
+                    }
+
+                    name = defaultName;
+                }
+
+                final String testValue = row.getString(name);
+
+                if (nl && testValue == null) {
+                    return true;
+                } else if (eq != null && eq.equals(testValue)) {
+                    return true;
+                } else if (lk != null && lk.length() != 0 && testValue != null) {
+                    final LikeMatcher matcher = new LikeMatcher(lk);
+
+                    if (matcher.matches(testValue)) {
+                        return true;
+                    }
+                }
+
+                if (neq != null) {
+                    hasInclusions = true;
+
+                    if (neq.equals(testValue)) {
+                        passedInclusion = true;
+                    }
+                }
+
+                if (nlk != null && nlk.length() != 0) {
+                    hasInclusions = true;
+
+                    final LikeMatcher matcher = new LikeMatcher(nlk);
+
+                    if (testValue != null && matcher.matches(testValue)) {
+                        passedInclusion = true;
+                    }
+                }
+            }
+        }
+
+        return hasInclusions && !passedInclusion;
+    }
+
+    /**
+     * Calls the anonymizing function with the passed column value and row.
+     *
+     * @param columnValue
+     * @param row may be null if the function doesn't use the row
+     * @return anonymized value
+     * @throws InvocationTargetException if the function throws an exception
+     */
+    public Object anonymize(final String columnValue, final ResultSet row) throws InvocationTargetException {
+        if (handle == null) {
+            return "";
+        }
+
+        try {
+            return (Object) handle.invokeExact(columnValue, row);
+        } catch (RuntimeException | Error ex) {
+            throw ex;
+        } catch (Throwable ex) {
+            throw new InvocationTargetException(ex);
+        }
+    }
+
+    public Column getColumn() {
+        return this.column;
+    }
+
+    /**
+     * Returns the position of the column in the UPDATE statement.
+     *
+     * @return zero-based index in the plan's update columns
+     */
+    public int getUpdateIndex() {
+        return this.updateIndex;
+    }
+
+    void setUpdateIndex(final int updateIndex) {
+        this.updateIndex = updateIndex;
+    }
+
+    /**
+     * Returns true if the function takes the column's current value
+     * (@@value@@) as a parameter.
+     *
+     * @return boolean
+     */
+    public boolean usesValue() {
+        return this.usesValue;
+    }
+
+    /**
+     * Returns true if the function takes the current row (@@row@@) as a
+     * parameter.
+     *
+     * @return boolean
+     */
+    public boolean usesRow() {
+        return this.usesRow;
+    }
+
+    /**
+     * Creates configured function class instances.
+     */
+    @FunctionalInterface
+    interface FunctionFactory {
+        CoreFunctions create(String className)
+                throws ClassNotFoundException, InstantiationException, IllegalAccessException;
+    }
+}
@@ -0,0 +1,76 @@
+/*
+ *
+ * Copyright 2014-2018, Armenak Grigoryan, and individual contributors as indicated
+ * by the @authors tag. See the copyright.txt in the distribution for a
+ * full listing of individual contributors.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ */
+
+package com.strider.datadefender.anonymizer;
+
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+
+/**
+ * Reads all rows with a single query, over one open cursor.
+ *
+ * @author Armenak Grigoryan
+ */
+public class CursorRowReader implements IRowReader {
+    private final PreparedStatement stmt;
+    private final ResultSet         rs;
+    private final TablePlan         plan;
+    private long                    sequence;
+
+    /**
+     * Executes the passed statement, which must select the plan's select
+     * columns.
+     *
+     * @param stmt
+     * @param plan
+     * @throws SQLException
+     */
+    public CursorRowReader(final PreparedStatement stmt, final TablePlan plan) throws SQLException {
+        this.stmt = stmt;
+        this.rs   = stmt.executeQuery();
+        this.plan = plan;
+    }
+
+    @Override
+    public RowBuffer next() throws SQLException {
+        if (!rs.next()) {
+            return null;
+        }
+
+        final RowBuffer row = RowBuffer.read(rs, plan);
+
+        row.setSequence(sequence++);
+
+        return row;
+    }
+
+    @Override
+    public ResultSet getResultSet() {
+        return rs;
+    }
+
+    @Override
+    public void close() throws SQLException {
+        try {
+            rs.close();
+        } finally {
+            stmt.close();
+        }
+    }
+}
@@ -0,0 +1,93 @@
+/*
+ *
+ * Copyright 2014-2018, Armenak Grigoryan, and individual contributors as indicated
+ * by the @authors tag. See the copyright.txt in the distribution for a
+ * full listing of individual contributors.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ */
+
+package com.strider.datadefender.anonymizer;
+
+import java.sql.Connection;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+
+import java.util.BitSet;
+import java.util.List;
+
+import com.strider.datadefender.database.metadata.MatchMetaData;
+import com.strider.datadefender.utils.CommonUtils;
+
+/**
+ * Writes rows through the updatable ResultSet they were read from, with
+ * updateRow(), so rows don't have to be located again by their keys.
+ *
+ * Rows must be written while the cursor is still positioned on them, so this
+ * writer can't be used by the pipeline.  The cursor's connection is committed
+ * every batchSize rows; the select must hold its cursor over commits.
+ *
+ * @author Armenak Grigoryan
+ */
+public class CursorUpdateWriter extends BatchWriter {
+    private final ResultSet rs;
+
+    /**
+     * @param con the connection of the cursor
+     * @param rs an updatable ResultSet selecting the plan's select columns
+     * @param plan
+     * @param columnMetaData metadata of the selected columns, keys first
+     * @param batchSize
+     */
+    public CursorUpdateWriter(final Connection con, final ResultSet rs, final TablePlan plan,
+                              final List<MatchMetaData> columnMetaData, final int batchSize) {
+        super(con, plan, columnMetaData, batchSize);
+        this.rs = rs;
+    }
+
+    @Override
+    protected void addBatch(final RowBuffer row) throws SQLException {
+        final int    nKeys   = plan.getKeyNames().size();
+        final BitSet changed = row.getChanged();
+
+        for (int i = changed.nextSetBit(0); i >= 0; i = changed.nextSetBit(i + 1)) {
+            final int    columnIndex = nKeys + i + 1;
+            final Object colValue    = row.getValue(i);
+
+            if (colValue == null) {
+                rs.updateNull(columnIndex);
+            } else if (colValue.getClass() == java.sql.Date.class) {
+                rs.updateDate(columnIndex, CommonUtils.stringToDate(colValue.toString(), "dd-MM-yyyy"));
+            } else if (colValue.getClass() == java.lang.Integer.class) {
+                rs.updateInt(columnIndex, (int) colValue);
+            } else {
+                rs.updateString(columnIndex, getTruncatedColumnValue(colValue.toString(), i));
+            }
+        }
+
+        rs.updateRow();
+    }
+
+    /**
+     * Rows are updated as they are added, leaving only the commit.
+     */
+    @Override
+    protected void executeBatch() {
+    }
+
+    /**
+     * The ResultSet is closed by its reader.
+     */
+    @Override
+    public void close() {
+    }
+}
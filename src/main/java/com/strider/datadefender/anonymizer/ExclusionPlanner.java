@@ -0,0 +1,153 @@
+/*
+ *
+ * Copyright 2014-2018, Armenak Grigoryan, and individual contributors as indicated
+ * by the @authors tag. See the copyright.txt in the distribution for a
+ * full listing of individual contributors.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ */
+
+package com.strider.datadefender.anonymizer;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+
+import org.apache.commons.lang3.StringUtils;
+
+import com.strider.datadefender.requirement.Column;
+import com.strider.datadefender.requirement.Exclude;
+
+/**
+ * Translates the Exclude rules of a table's columns into an SQL predicate
+ * selecting only the rows where at least one column would be anonymized.
+ *
+ * A row is only filtered out if the rules of every column exclude it, so
+ * columns without rules disable the filter.  LIKE patterns are compared in
+ * lower case like LikeMatcher; equality follows the database's collation, as
+ * for the table's Exclusions.
+ *
+ * @see ColumnPlan#isExcluded(RowBuffer)
+ * @author Armenak Grigoryan
+ */
+public final class ExclusionPlanner {
+    private ExclusionPlanner() {
+    }
+
+    /**
+     * Returns the predicate selecting rows with a column to anonymize, adding
+     * its parameters, or null if the columns' rules can't filter any row.
+     *
+     * @param columns
+     * @param params filled with the predicate's parameters
+     * @return String
+     */
+    public static String buildChangedRowPredicate(final List<Column> columns, final List<Object> params) {
+        final List<String> changed      = new ArrayList<>(columns.size());
+        final List<Object> columnParams = new ArrayList<>();
+
+        for (final Column column : columns) {
+            final String excluded = buildExcludedPredicate(column, columnParams);
+
+            if (excluded == null) {
+                return null;
+            }
+
+            changed.add("NOT " + excluded);
+        }
+
+        if (changed.isEmpty()) {
+            return null;
+        }
+
+        params.addAll(columnParams);
+
+        return StringUtils.join(changed, " OR ");
+    }
+
+    /**
+     * Returns the predicate true for rows excluded by the column's rules, or
+     * null if the column has no rules or a rule can't be translated.  Every
+     * term is false rather than unknown for NULL values, as in isExcluded.
+     */
+    private static String buildExcludedPredicate(final Column column, final List<Object> params) {
+        final List<Exclude> exclusions = column.getExclusions();
+
+        if (exclusions == null || exclusions.isEmpty()) {
+            return null;
+        }
+
+        final List<String> excluded       = new ArrayList<>();
+        final List<String> included       = new ArrayList<>();
+        final List<Object> excludedParams = new ArrayList<>();
+        final List<Object> includedParams = new ArrayList<>();
+
+        for (final Exclude exc : exclusions) {
+            final String name = StringUtils.isEmpty(exc.getName()) ? column.getName() : exc.getName();
+
+            if (exc.isExcludeNulls()) {
+                excluded.add(name + " IS NULL");
+            }
+
+            if (exc.getEqualsValue() != null) {
+                excluded.add("(" + name + " IS NOT NULL AND " + name + " = ?)");
+                excludedParams.add(exc.getEqualsValue());
+            }
+
+            if (!StringUtils.isEmpty(exc.getLikeValue())) {
+                if (!addLike(name, exc.getLikeValue(), excluded, excludedParams)) {
+                    return null;
+                }
+            }
+
+            if (exc.getNotEqualsValue() != null) {
+                included.add("(" + name + " IS NOT NULL AND " + name + " = ?)");
+                includedParams.add(exc.getNotEqualsValue());
+            }
+
+            if (!StringUtils.isEmpty(exc.getNotLikeValue())) {
+                if (!addLike(name, exc.getNotLikeValue(), included, includedParams)) {
+                    return null;
+                }
+            }
+        }
+
+        if (!included.isEmpty()) {
+            excluded.add("NOT (" + StringUtils.join(included, " OR ") + ")");
+            excludedParams.addAll(includedParams);
+        }
+
+        if (excluded.isEmpty()) {
+            return null;
+        }
+
+        params.addAll(excludedParams);
+
+        return "(" + StringUtils.join(excluded, " OR ") + ")";
+    }
+
+    /**
+     * Adds a case insensitive LIKE term, returning false if the pattern uses
+     * characters escaped differently by the databases.
+     */
+    private static boolean addLike(final String name, final String pattern, final List<String> terms,
+                                   final List<Object> params) {
+        if (pattern.indexOf('\\') != -1 || pattern.indexOf('[') != -1) {
+            return false;
+        }
+
+        terms.add("(" + name + " IS NOT NULL AND LOWER(" + name + ") LIKE ?)");
+        params.add(pattern.toLowerCase(Locale.ENGLISH).replace('?', '_'));
+
+        return true;
+    }
+}
@@ -0,0 +1,35 @@
+/*
+ *
+ * Copyright 2014-2018, Armenak Grigoryan, and individual contributors as indicated
+ * by the @authors tag. See the copyright.txt in the distribution for a
+ * full listing of individual contributors.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ */
+
+package com.strider.datadefender.anonymizer;
+
+import java.util.List;
+
+/**
+ * Notified by a writer after a batch of rows has been committed.
+ *
+ * @author Armenak Grigoryan
+ */
+@FunctionalInterface
+public interface ICommitListener {
+
+    /**
+     * @param rows the rows committed, in the order they were written
+     */
+    void committed(List<RowBuffer> rows);
+}
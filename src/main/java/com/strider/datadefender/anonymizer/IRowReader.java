@@ -0,0 +1,50 @@
+/*
+ *
+ * Copyright 2014-2018, Armenak Grigoryan, and individual contributors as indicated
+ * by the @authors tag. See the copyright.txt in the distribution for a
+ * full listing of individual contributors.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ */
+
+package com.strider.datadefender.anonymizer;
+
+import java.sql.ResultSet;
+import java.sql.SQLException;
+
+/**
+ * Reads the rows of a table (or slice of a table) to anonymize.
+ *
+ * @author Armenak Grigoryan
+ */
+public interface IRowReader extends AutoCloseable {
+
+    /**
+     * Returns a copy of the next row.
+     *
+     * @return RowBuffer, or null if there are no more rows
+     * @throws SQLException
+     */
+    RowBuffer next() throws SQLException;
+
+    /**
+     * Returns the ResultSet positioned on the row last returned by next().
+     * Before the first call to next(), the ResultSet can be used for its
+     * metadata.
+     *
+     * @return ResultSet
+     */
+    ResultSet getResultSet();
+
+    @Override
+    void close() throws SQLException;
+}
@@ -0,0 +1,62 @@
+/*
+ *
+ * Copyright 2014-2018, Armenak Grigoryan, and individual contributors as indicated
+ * by the @authors tag. See the copyright.txt in the distribution for a
+ * full listing of individual contributors.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ */
+
+package com.strider.datadefender.anonymizer;
+
+import java.sql.SQLException;
+
+/**
+ * Writes anonymized rows back to a table.
+ *
+ * Implementations may buffer rows, but must have written and committed all of
+ * them once flush() returns.
+ *
+ * @author Armenak Grigoryan
+ */
+public interface IRowWriter extends AutoCloseable {
+
+    /** Write strategy executing batched UPDATE statements. */
+    String BATCH = "batch";
+
+    /** Write strategy using the vendor's bulk path, through a staging table. */
+    String BULK = "bulk";
+
+    /** Former name of the PostgreSQL bulk strategy. */
+    String COPY = "copy";
+
+    /** Write strategy updating rows through the select's updatable cursor. */
+    String CURSOR = "cursor";
+
+    /**
+     * Writes (or queues for writing) the anonymized values of the row.
+     *
+     * @param row
+     * @throws SQLException
+     */
+    void write(RowBuffer row) throws SQLException;
+
+    /**
+     * Writes any pending rows and commits.
+     *
+     * @throws SQLException
+     */
+    void flush() throws SQLException;
+
+    @Override
+    void close() throws SQLException;
+}
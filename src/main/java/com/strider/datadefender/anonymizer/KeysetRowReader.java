@@ -0,0 +1,191 @@
+/*
+ *
+ * Copyright 2014-2018, Armenak Grigoryan, and individual contributors as indicated
+ * by the @authors tag. See the copyright.txt in the distribution for a
+ * full listing of individual contributors.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ */
+
+package com.strider.datadefender.anonymizer;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+
+import java.util.List;
+
+import org.apache.commons.lang3.StringUtils;
+import org.apache.log4j.Logger;
+
+import static org.apache.log4j.Logger.getLogger;
+
+/**
+ * Reads rows a page at a time, ordered by the table's keys.
+ *
+ * Each page after the first selects the rows whose keys sort after the last
+ * row of the previous page ("WHERE key > ? ORDER BY key LIMIT n"), so each
+ * query is short, can use the key's index, and holds no more than a page of
+ * rows.
+ *
+ * @see com.strider.datadefender.database.sqlbuilder.ISQLBuilder#buildKeysetPage
+ * @author Armenak Grigoryan
+ */
+public class KeysetRowReader implements IRowReader {
+    private static final Logger log = getLogger(KeysetRowReader.class);
+
+    private final Connection   connection;
+    private final String       nextPageQuery;
+    private final List<Object> params;
+    private final TablePlan    plan;
+    private final int          pageSize;
+    private final Object[]     lastKey;
+    private int[]              lastKeyTypes;
+    private PreparedStatement  stmt;
+    private ResultSet          rs;
+    private int                pageRows;
+    private long               sequence;
+
+    /**
+     * Executes the first page's query.
+     *
+     * @param connection
+     * @param firstPageQuery query selecting the first page of rows
+     * @param nextPageQuery query selecting the following pages, with the
+     * keyset predicate's parameters following the other parameters
+     * @param params parameters common to both queries
+     * @param plan plan whose select columns are selected, keys first
+     * @param pageSize maximum number of rows returned by each page
+     * @throws SQLException
+     */
+    public KeysetRowReader(final Connection connection, final String firstPageQuery, final String nextPageQuery,
+                           final List<Object> params, final TablePlan plan, final int pageSize)
+            throws SQLException {
+        this(connection, firstPageQuery, nextPageQuery, params, plan, pageSize, null, null);
+    }
+
+    /**
+     * Executes the query for the first page following the passed key, or
+     * the first page's query if startKey is null.
+     *
+     * @param connection
+     * @param firstPageQuery query selecting the first page of rows
+     * @param nextPageQuery query selecting the following pages, with the
+     * keyset predicate's parameters following the other parameters
+     * @param params parameters common to both queries
+     * @param plan plan whose select columns are selected, keys first
+     * @param pageSize maximum number of rows returned by each page
+     * @param startKey the key values to resume after, as strings
+     * @param startKeyTypes the java.sql.Types of the key columns, used to
+     * convert startKey
+     * @throws SQLException
+     */
+    public KeysetRowReader(final Connection connection, final String firstPageQuery, final String nextPageQuery,
+                           final List<Object> params, final TablePlan plan, final int pageSize,
+                           final String[] startKey, final int[] startKeyTypes)
+            throws SQLException {
+        this.connection    = connection;
+        this.nextPageQuery = nextPageQuery;
+        this.params        = params;
+        this.plan          = plan;
+        this.pageSize      = pageSize;
+        this.lastKey       = new Object[plan.getKeyNames().size()];
+
+        if (startKey == null) {
+            openPage(firstPageQuery, false);
+        } else {
+            System.arraycopy(startKey, 0, lastKey, 0, lastKey.length);
+            this.lastKeyTypes = startKeyTypes;
+            log.info("Resuming after key: " + StringUtils.join(startKey, ','));
+            openPage(nextPageQuery, true);
+        }
+    }
+
+    private void openPage(final String query, final boolean bindLastKey) throws SQLException {
+        close();
+        // pages are read whole: a fetch size would make PostgreSQL use a
+        // cursor, which doesn't survive commits on the same connection
+        stmt = connection.prepareStatement(query, ResultSet.TYPE_FORWARD_ONLY, ResultSet.CONCUR_READ_ONLY);
+
+        int paramIndex = 1;
+
+        for (final Object param : params) {
+            stmt.setObject(paramIndex++, param);
+        }
+
+        if (bindLastKey) {
+            for (int i = 0; i < lastKey.length; ++i) {
+                for (int j = 0; j <= i; ++j) {
+                    if (lastKeyTypes == null) {
+                        stmt.setObject(paramIndex++, lastKey[j]);
+                    } else {
+                        stmt.setObject(paramIndex++, lastKey[j], lastKeyTypes[j]);
+                    }
+                }
+            }
+
+            log.debug("Next page after key: " + StringUtils.join(lastKey, ','));
+        }
+
+        rs       = stmt.executeQuery();
+        pageRows = 0;
+    }
+
+    @Override
+    public RowBuffer next() throws SQLException {
+        while (!rs.next()) {
+
+            // a short page is the last one
+            if (pageRows < pageSize) {
+                return null;
+            }
+
+            openPage(nextPageQuery, true);
+        }
+
+        pageRows++;
+
+        for (int i = 0; i < lastKey.length; ++i) {
+            lastKey[i] = rs.getObject(i + 1);
+        }
+
+        lastKeyTypes = null;
+
+        final RowBuffer row = RowBuffer.read(rs, plan);
+
+        row.setSequence(sequence++);
+
+        return row;
+    }
+
+    @Override
+    public ResultSet getResultSet() {
+        return rs;
+    }
+
+    @Override
+    public void close() throws SQLException {
+        try {
+            if (rs != null) {
+                rs.close();
+            }
+        } finally {
+            if (stmt != null) {
+                stmt.close();
+            }
+
+            rs   = null;
+            stmt = null;
+        }
+    }
+}
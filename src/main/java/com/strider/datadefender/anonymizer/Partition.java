@@ -0,0 +1,64 @@
+/*
+ *
+ * Copyright 2014-2018, Armenak Grigoryan, and individual contributors as indicated
+ * by the @authors tag. See the copyright.txt in the distribution for a
+ * full listing of individual contributors.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ */
+
+package com.strider.datadefender.anonymizer;
+
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * A slice of a table, defined by an SQL predicate over the table's key.
+ *
+ * The predicate is added to the WHERE clause of the slice's SELECT query, and
+ * its parameters are bound in order after any exclusion parameters.
+ *
+ * @see TablePartitioner
+ * @author Armenak Grigoryan
+ */
+public class Partition {
+    private final String       predicate;
+    private final List<Object> parameters;
+
+    public Partition(final String predicate, final List<Object> parameters) {
+        this.predicate  = predicate;
+        this.parameters = parameters;
+    }
+
+    /**
+     * Returns the SQL predicate selecting rows of this partition.
+     *
+     * @return String
+     */
+    public String getPredicate() {
+        return this.predicate;
+    }
+
+    /**
+     * Returns the values to bind to the predicate's '?' placeholders.
+     *
+     * @return List<Object>
+     */
+    public List<Object> getParameters() {
+        return Collections.unmodifiableList(this.parameters);
+    }
+
+    @Override
+    public String toString() {
+        return predicate + " " + parameters;
+    }
+}
@@ -0,0 +1,185 @@
+/*
+ *
+ * Copyright 2014-2018, Armenak Grigoryan, and individual contributors as indicated
+ * by the @authors tag. See the copyright.txt in the distribution for a
+ * full listing of individual contributors.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ */
+
+package com.strider.datadefender.anonymizer;
+
+import java.io.IOException;
+import java.io.StringReader;
+
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.sql.Statement;
+
+import java.util.List;
+
+import org.apache.log4j.Logger;
+
+import org.postgresql.PGConnection;
+import org.postgresql.copy.CopyManager;
+
+import static org.apache.log4j.Logger.getLogger;
+
+import com.strider.datadefender.database.metadata.MatchMetaData;
+import com.strider.datadefender.database.sqlbuilder.ISQLBuilder;
+
+/**
+ * Writes rows to PostgreSQL by streaming each batch into a temporary staging
+ * table with COPY, and then applying the batch with a single
+ * "UPDATE ... FROM staging" statement.
+ *
+ * @author Armenak Grigoryan
+ */
+public class PostgreSQLCopyWriter extends BatchWriter {
+    private static final Logger log = getLogger(PostgreSQLCopyWriter.class);
+
+    private final CopyManager   copyManager;
+    private final ISQLBuilder   sqlBuilder;
+    private final String        stagingTable;
+    private final String        copySql;
+    private final String        updateSql;
+    private final StringBuilder buffer = new StringBuilder();
+
+    /**
+     * Creates the staging table.
+     *
+     * @param updateCon a PostgreSQL connection
+     * @param sqlBuilder
+     * @param tableName
+     * @param plan
+     * @param columnMetaData metadata of the selected columns, keys first
+     * @param batchSize
+     * @throws SQLException
+     */
+    public PostgreSQLCopyWriter(final Connection updateCon, final ISQLBuilder sqlBuilder, final String tableName,
+                                final TablePlan plan, final List<MatchMetaData> columnMetaData,
+                                final int batchSize)
+            throws SQLException {
+        super(updateCon, plan, columnMetaData, batchSize);
+        this.copyManager  = updateCon.unwrap(PGConnection.class).getCopyAPI();
+        this.sqlBuilder   = sqlBuilder;
+        this.stagingTable = sqlBuilder.buildStagingTableName(tableName);
+        this.copySql      = "COPY " + stagingTable + " FROM STDIN";
+        this.updateSql    = sqlBuilder.buildStagingUpdate(tableName, stagingTable, plan.getKeyNames(),
+                                                          plan.getUpdateColumns());
+
+        try (Statement stmt = updateCon.createStatement()) {
+            stmt.execute(sqlBuilder.buildDropStagingTable(stagingTable));
+            stmt.execute(sqlBuilder.buildCreateStagingTable(stagingTable, tableName, plan.getKeyNames(),
+                                                            plan.getUpdateColumns()));
+        }
+
+        log.debug("Staging updates of " + tableName + " in " + stagingTable + " with: " + updateSql);
+    }
+
+    /**
+     * Appends the value in COPY's text format.
+     *
+     * @param value
+     */
+    private void appendValue(final String value) {
+        if (value == null) {
+            buffer.append("\\N");
+
+            return;
+        }
+
+        for (int i = 0; i < value.length(); ++i) {
+            final char c = value.charAt(i);
+
+            switch (c) {
+            case '\\' :
+                buffer.append("\\\\");
+
+                break;
+
+            case '\t' :
+                buffer.append("\\t");
+
+                break;
+
+            case '\n' :
+                buffer.append("\\n");
+
+                break;
+
+            case '\r' :
+                buffer.append("\\r");
+
+                break;
+
+            default :
+                buffer.append(c);
+            }
+        }
+    }
+
+    @Override
+    protected void addBatch(final RowBuffer row) {
+        final int nKeys = plan.getKeyNames().size();
+
+        for (int i = 0; i < nKeys; ++i) {
+            appendValue(row.getKey(i));
+            buffer.append('\t');
+        }
+
+        final int nColumns = plan.getUpdateColumns().size();
+
+        for (int i = 0; i < nColumns; ++i) {
+            final Object colValue = row.getValue(i);
+
+            if (colValue == null) {
+                appendValue(null);
+            } else if (colValue instanceof String) {
+                appendValue(getTruncatedColumnValue((String) colValue, i));
+            } else {
+                appendValue(colValue.toString());
+            }
+
+            buffer.append(i + 1 < nColumns ? '\t' : '\n');
+        }
+    }
+
+    @Override
+    protected void executeBatch() throws SQLException {
+        try {
+            final long copied = copyManager.copyIn(copySql, new StringReader(buffer.toString()));
+
+            log.debug("Copied " + copied + " rows into " + stagingTable);
+        } catch (IOException e) {
+            throw new SQLException("Unable to copy rows into " + stagingTable, e);
+        } finally {
+            buffer.setLength(0);
+        }
+
+        // the staging table is only emptied on commit, which may come
+        // several batches later
+        try (Statement stmt = updateCon.createStatement()) {
+            stmt.executeUpdate(updateSql);
+            stmt.executeUpdate("TRUNCATE TABLE " + stagingTable);
+        }
+    }
+
+    @Override
+    public void close() throws SQLException {
+        try (Statement stmt = updateCon.createStatement()) {
+            stmt.execute(sqlBuilder.buildDropStagingTable(stagingTable));
+        }
+
+        updateCon.commit();
+    }
+}
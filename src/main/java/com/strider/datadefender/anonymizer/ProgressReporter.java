@@ -0,0 +1,305 @@
+/*
+ *
+ * Copyright 2014-2018, Armenak Grigoryan, and individual contributors as indicated
+ * by the @authors tag. See the copyright.txt in the distribution for a
+ * full listing of individual contributors.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ */
+
+package com.strider.datadefender.anonymizer;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.apache.commons.lang3.time.DurationFormatUtils;
+import org.apache.log4j.Logger;
+
+import static org.apache.log4j.Logger.getLogger;
+
+/**
+ * Reports the progress of an anonymization run: the rows processed per
+ * second and the time left, for each table being anonymized and for the
+ * whole run, logged at most once per interval as rows are committed.
+ *
+ * The number of rows of each table is estimated up front from the catalog's
+ * statistics rather than counted, so it may be stale: percentages can pass
+ * 100, and the time left is only indicative.  Tables without statistics are
+ * reported without either, and left out of the run's time left.
+ *
+ * @author Armenak Grigoryan
+ */
+public class ProgressReporter {
+    private static final Logger log = getLogger(ProgressReporter.class);
+
+    /** Estimate of tables without statistics. */
+    public static final long UNKNOWN = -1;
+
+    private final Map<String, Long>          estimates;
+    private final long                       totalEstimate;
+    private final long                       intervalNanos;
+    private final long                       startTime;
+    private final AtomicLong                 lastReport;
+    private final AtomicLong                 rows              = new AtomicLong();
+    private final AtomicLong                 finishedEstimates = new AtomicLong();
+    private final Map<String, TableProgress> running           = Collections.synchronizedMap(new LinkedHashMap<>());
+
+    /**
+     * @param estimates estimated number of rows of each table to anonymize,
+     * or UNKNOWN
+     * @param intervalMillis minimum time between reports, 0 to only report
+     * the end of each table
+     */
+    public ProgressReporter(final Map<String, Long> estimates, final long intervalMillis) {
+        this(estimates, intervalMillis, System.nanoTime());
+    }
+
+    ProgressReporter(final Map<String, Long> estimates, final long intervalMillis, final long now) {
+        long total = 0;
+
+        for (final long estimate : estimates.values()) {
+            total += Math.max(0, estimate);
+        }
+
+        this.estimates     = new LinkedHashMap<>(estimates);
+        this.totalEstimate = total;
+        this.intervalNanos = TimeUnit.MILLISECONDS.toNanos(intervalMillis);
+        this.startTime     = now;
+        this.lastReport    = new AtomicLong(now);
+    }
+
+    /**
+     * Starts tracking the progress of a table.
+     *
+     * @param tableName
+     * @return the table's progress, to be passed to finish
+     */
+    public TableProgress start(final String tableName) {
+        return start(tableName, System.nanoTime());
+    }
+
+    TableProgress start(final String tableName, final long now) {
+        final Long          estimate = estimates.get(tableName);
+        final TableProgress progress = new TableProgress(tableName, estimate == null ? UNKNOWN : estimate, now);
+
+        running.put(tableName, progress);
+
+        return progress;
+    }
+
+    /**
+     * Stops tracking the progress of a table.
+     *
+     * @param progress
+     */
+    public void finish(final TableProgress progress) {
+        running.remove(progress.getTableName());
+        finishedEstimates.addAndGet(Math.max(0, progress.getEstimate()));
+    }
+
+    /**
+     * Logs the progress of the running tables and of the run, if the
+     * interval has elapsed since the last report.
+     */
+    private void report() {
+        final long now  = System.nanoTime();
+        final long last = lastReport.get();
+
+        if ((intervalNanos <= 0) || (now - last < intervalNanos) || !lastReport.compareAndSet(last, now)) {
+            return;
+        }
+
+        final List<TableProgress> tables;
+
+        synchronized (running) {
+            tables = new ArrayList<>(running.values());
+        }
+
+        for (final TableProgress table : tables) {
+            log.info(table.describe(now));
+        }
+
+        log.info(describe(now));
+    }
+
+    /**
+     * Returns the estimated number of rows of the tables left to anonymize.
+     *
+     * @return long
+     */
+    long getRemainingEstimate() {
+        long done = finishedEstimates.get();
+
+        synchronized (running) {
+            for (final TableProgress table : running.values()) {
+                if (table.getEstimate() > 0) {
+                    done += Math.min(table.getRows(), table.getEstimate());
+                }
+            }
+        }
+
+        return Math.max(0, totalEstimate - done);
+    }
+
+    public long getTotalEstimate() {
+        return totalEstimate;
+    }
+
+    public long getRows() {
+        return rows.get();
+    }
+
+    /**
+     * Returns the number of rows processed per second since the run started.
+     *
+     * @return double
+     */
+    public double getRowsPerSecond() {
+        return rate(rows.get(), System.nanoTime() - startTime);
+    }
+
+    /**
+     * Describes the progress of the run at the passed time.
+     *
+     * @param now
+     * @return String
+     */
+    String describe(final long now) {
+        final long          rowCount = rows.get();
+        final double        rate     = rate(rowCount, now - startTime);
+        final StringBuilder sb       = new StringBuilder("All tables: ").append(rowCount);
+
+        if (totalEstimate > 0) {
+            sb.append(" of ~").append(totalEstimate);
+        }
+
+        sb.append(" rows, ").append(Math.round(rate)).append(" rows/s");
+
+        if (totalEstimate > 0) {
+            sb.append(timeLeft(getRemainingEstimate(), rate));
+        }
+
+        return sb.toString();
+    }
+
+    @Override
+    public String toString() {
+        return describe(System.nanoTime());
+    }
+
+    /**
+     * Returns the rows per second of the passed number of rows processed in
+     * the passed time.
+     */
+    private static double rate(final long rows, final long nanos) {
+        return (nanos > 0) ? rows * (double) TimeUnit.SECONDS.toNanos(1) / nanos : 0;
+    }
+
+    /**
+     * Describes the time left to process the remaining rows at the passed
+     * rate, or returns an empty string if it can't be estimated.
+     */
+    private static String timeLeft(final long remaining, final double rate) {
+        if (rate <= 0) {
+            return "";
+        }
+
+        return ", " + DurationFormatUtils.formatDuration(Math.round(remaining * 1000 / rate), "HH:mm:ss") + " left";
+    }
+
+    /**
+     * Progress of a single table, counting the rows committed by its
+     * writers.  Partitions of a table share the same progress.
+     */
+    public class TableProgress implements ICommitListener {
+        private final String     tableName;
+        private final long       estimate;
+        private final long       tableStartTime;
+        private final AtomicLong tableRows = new AtomicLong();
+
+        private TableProgress(final String tableName, final long estimate, final long now) {
+            this.tableName      = tableName;
+            this.estimate       = estimate;
+            this.tableStartTime = now;
+        }
+
+        /**
+         * Adds the passed number of processed rows, reporting progress if
+         * the interval has elapsed.
+         *
+         * @param count
+         */
+        public void add(final long count) {
+            tableRows.addAndGet(count);
+            rows.addAndGet(count);
+            report();
+        }
+
+        @Override
+        public void committed(final List<RowBuffer> committed) {
+            add(committed.size());
+        }
+
+        public String getTableName() {
+            return tableName;
+        }
+
+        /**
+         * Returns the estimated number of rows of the table, or UNKNOWN.
+         *
+         * @return long
+         */
+        public long getEstimate() {
+            return estimate;
+        }
+
+        public long getRows() {
+            return tableRows.get();
+        }
+
+        /**
+         * Describes the progress of the table at the passed time.
+         *
+         * @param now
+         * @return String
+         */
+        String describe(final long now) {
+            final long          rowCount = tableRows.get();
+            final double        rate     = rate(rowCount, now - tableStartTime);
+            final StringBuilder sb       = new StringBuilder("Table [").append(tableName).append("] ").append(rowCount);
+
+            if (estimate > 0) {
+                sb.append(" of ~").append(estimate).append(" rows (").append(rowCount * 100 / estimate).append("%), ");
+            } else {
+                sb.append(" rows, ");
+            }
+
+            sb.append(Math.round(rate)).append(" rows/s");
+
+            if (estimate > 0) {
+                sb.append(timeLeft(Math.max(0, estimate - rowCount), rate));
+            }
+
+            return sb.toString();
+        }
+
+        @Override
+        public String toString() {
+            return describe(System.nanoTime());
+        }
+    }
+}
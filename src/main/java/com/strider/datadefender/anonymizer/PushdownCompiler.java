@@ -0,0 +1,236 @@
+/*
+ *
+ * Copyright 2014-2018, Armenak Grigoryan, and individual contributors as indicated
+ * by the @authors tag. See the copyright.txt in the distribution for a
+ * full listing of individual contributors.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ */
+
+package com.strider.datadefender.anonymizer;
+
+import java.sql.Connection;
+import java.sql.ResultSet;
+import java.sql.ResultSetMetaData;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.sql.Types;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeSet;
+
+import org.apache.commons.lang3.StringUtils;
+import org.apache.log4j.Logger;
+
+import static org.apache.log4j.Logger.getLogger;
+
+import com.strider.datadefender.database.sqlbuilder.ISQLBuilder;
+import com.strider.datadefender.functions.CoreFunctions;
+import com.strider.datadefender.functions.Utils;
+import com.strider.datadefender.requirement.Column;
+import com.strider.datadefender.requirement.Exclude;
+import com.strider.datadefender.requirement.Parameter;
+import com.strider.datadefender.requirement.Table;
+
+/**
+ * Translates anonymizing functions that have an SQL equivalent into
+ * expressions, so their columns can be set by one UPDATE statement instead of
+ * row by row.
+ *
+ * Only CoreFunctions methods without a Java-only dependency are translated:
+ * setEmptyString, staticEmail and randomPostalCode.  Columns with their own
+ * exclusions, or listed more than once, are left to the row by row path.
+ *
+ * @author Armenak Grigoryan
+ */
+public class PushdownCompiler {
+    private static final Logger log = getLogger(PushdownCompiler.class);
+
+    private static final String CORE_FUNCTIONS = CoreFunctions.class.getName();
+
+    private final ISQLBuilder sqlBuilder;
+
+    public PushdownCompiler(final ISQLBuilder sqlBuilder) {
+        this.sqlBuilder = sqlBuilder;
+    }
+
+    /**
+     * Splits the table's columns into those set by SQL expressions and those
+     * needing their Java functions.
+     *
+     * @param table
+     * @param con used to look up the columns' sizes
+     * @return PushdownPlan
+     * @throws SQLException
+     */
+    public PushdownPlan compile(final Table table, final Connection con) throws SQLException {
+        final Map<String, Integer> sizes       = getColumnSizes(table, con);
+        final Set<String>          seen        = new LinkedHashSet<>();
+        final Set<String>          duplicates  = new LinkedHashSet<>();
+        final List<String>         columns     = new ArrayList<>();
+        final List<String>         expressions = new ArrayList<>();
+        final List<Object>         parameters  = new ArrayList<>();
+        final List<Column>         remaining   = new ArrayList<>();
+
+        for (final Column column : table.getColumns()) {
+            if (!seen.add(column.getName())) {
+                duplicates.add(column.getName());
+            }
+        }
+
+        // columns tested by exclusions keep their values until the rows are read
+        final Set<String> excluded = getExcludedColumns(table);
+
+        for (final Column column : table.getColumns()) {
+            final List<Object> columnParameters = new ArrayList<>(1);
+            final String       expression       = (duplicates.contains(column.getName())
+                                                   || excluded.contains(column.getName()))
+                                                  ? null
+                                                  : compile(column, sizes.get(column.getName()), columnParameters);
+
+            if (expression == null) {
+                remaining.add(column);
+            } else {
+                log.debug("Pushing down " + column.getName() + " = " + expression);
+                columns.add(column.getName());
+                expressions.add(expression);
+                parameters.addAll(columnParameters);
+            }
+        }
+
+        final Table remainingTable = new Table();
+
+        remainingTable.setName(table.getName());
+        remainingTable.setPkey(table.getPKey());
+        remainingTable.setPrimaryKeys(table.getPrimaryKeys());
+        remainingTable.setExclusions(table.getExclusions());
+        remainingTable.setStrategy(table.getStrategy());
+        remainingTable.setColumns(remaining);
+
+        return new PushdownPlan(columns, expressions, parameters, remainingTable);
+    }
+
+    /**
+     * Returns the names of the columns the table's and its columns'
+     * exclusions are tested against.
+     */
+    private static Set<String> getExcludedColumns(final Table table) {
+        final Set<String> names = new TreeSet<>(String.CASE_INSENSITIVE_ORDER);
+
+        addExcludedColumns(table.getExclusions(), names);
+
+        for (final Column column : table.getColumns()) {
+            addExcludedColumns(column.getExclusions(), names);
+        }
+
+        return names;
+    }
+
+    private static void addExcludedColumns(final List<Exclude> exclusions, final Set<String> names) {
+        if (exclusions != null) {
+            for (final Exclude exclude : exclusions) {
+                if (!StringUtils.isEmpty(exclude.getName())) {
+                    names.add(exclude.getName());
+                }
+            }
+        }
+    }
+
+    /**
+     * Returns the SQL expression for the column's function, adding the
+     * values of its placeholders to parameters, or null if the function
+     * has no SQL equivalent.
+     *
+     * @param column
+     * @param size maximum length of the column, or 0 if it isn't a
+     * character column
+     * @param parameters
+     * @return String
+     */
+    String compile(final Column column, final int size, final List<Object> parameters) {
+        final String function = column.getFunction();
+
+        if (StringUtils.isEmpty(function) || (column.getExclusions() != null && !column.getExclusions().isEmpty())
+                || !CORE_FUNCTIONS.equals(Utils.getClassName(function))) {
+            return null;
+        }
+
+        final List<Parameter> params     = (column.getParameters() == null)
+                                           ? new ArrayList<>()
+                                           : column.getParameters();
+        final String          methodName = Utils.getMethodName(function);
+
+        if ("setEmptyString".equals(methodName) && params.isEmpty()) {
+            return "''";
+        } else if ("staticEmail".equals(methodName) && params.size() == 1 && "email".equals(params.get(0).getName())
+                   && params.get(0).getValue() != null && !params.get(0).getValue().startsWith("@@")) {
+            final String value = params.get(0).getValue();
+
+            parameters.add((size > 0 && value.length() > size) ? value.substring(0, size) : value);
+
+            return "?";
+        } else if ("randomPostalCode".equals(methodName) && params.isEmpty() && (size == 0 || size >= 6)) {
+            final String letter = sqlBuilder.buildChar(sqlBuilder.buildRandomInt('A', 'Z'));
+            final String digit  = sqlBuilder.buildRandomInt(1, 9);
+
+            return sqlBuilder.buildConcat(Arrays.asList(letter, digit, letter, digit, letter, digit));
+        }
+
+        return null;
+    }
+
+    /**
+     * Returns the maximum length of the table's character columns by name, 0
+     * for other columns.
+     */
+    private static Map<String, Integer> getColumnSizes(final Table table, final Connection con)
+            throws SQLException {
+        final Set<String>          names = new LinkedHashSet<>();
+        final Map<String, Integer> sizes = new HashMap<>();
+
+        for (final Column column : table.getColumns()) {
+            names.add(column.getName());
+        }
+
+        try (Statement stmt = con.createStatement();
+            ResultSet rs = stmt.executeQuery("SELECT " + StringUtils.join(names, ", ") + " FROM " + table.getName()
+                                             + " WHERE 1 = 0")) {
+            final ResultSetMetaData rsmd = rs.getMetaData();
+            int                     i    = 0;
+
+            for (final String name : names) {
+                ++i;
+
+                switch (rsmd.getColumnType(i)) {
+                case Types.CHAR:
+                case Types.VARCHAR:
+                case Types.NCHAR:
+                case Types.NVARCHAR:
+                    sizes.put(name, rsmd.getPrecision(i));
+
+                    break;
+
+                default:
+                    sizes.put(name, 0);
+                }
+            }
+        }
+
+        return sizes;
+    }
+}
@@ -0,0 +1,103 @@
+/*
+ *
+ * Copyright 2014-2018, Armenak Grigoryan, and individual contributors as indicated
+ * by the @authors tag. See the copyright.txt in the distribution for a
+ * full listing of individual contributors.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ */
+
+package com.strider.datadefender.anonymizer;
+
+import java.util.Collections;
+import java.util.List;
+
+import com.strider.datadefender.requirement.Table;
+
+/**
+ * The columns of a table anonymized by SQL expressions in a single UPDATE,
+ * and the table's remaining columns, which need their Java functions.
+ *
+ * @see PushdownCompiler
+ * @author Armenak Grigoryan
+ */
+public class PushdownPlan {
+    private final List<String> columns;
+    private final List<String> expressions;
+    private final List<Object> parameters;
+    private final Table        remainingTable;
+
+    PushdownPlan(final List<String> columns, final List<String> expressions, final List<Object> parameters,
+                 final Table remainingTable) {
+        this.columns        = columns;
+        this.expressions    = expressions;
+        this.parameters     = parameters;
+        this.remainingTable = remainingTable;
+    }
+
+    /**
+     * Returns true if no column can be anonymized in SQL.
+     *
+     * @return boolean
+     */
+    public boolean isEmpty() {
+        return columns.isEmpty();
+    }
+
+    /**
+     * Returns the names of the columns set in SQL.
+     *
+     * @return List<String>
+     */
+    public List<String> getColumns() {
+        return Collections.unmodifiableList(this.columns);
+    }
+
+    /**
+     * Returns the SET clause of the UPDATE statement, without "SET".
+     *
+     * @return String
+     */
+    public String getSetClause() {
+        final StringBuilder sb = new StringBuilder();
+
+        for (int i = 0; i < columns.size(); ++i) {
+            sb.append(i == 0 ? "" : ", ").append(columns.get(i)).append(" = ").append(expressions.get(i));
+        }
+
+        return sb.toString();
+    }
+
+    /**
+     * Returns the values to bind to the SET clause's '?' placeholders.
+     *
+     * @return List<Object>
+     */
+    public List<Object> getParameters() {
+        return Collections.unmodifiableList(this.parameters);
+    }
+
+    /**
+     * Returns a copy of the table with only the columns left to anonymize
+     * row by row.  The copy has no columns if every column was pushed down.
+     *
+     * @return Table
+     */
+    public Table getRemainingTable() {
+        return this.remainingTable;
+    }
+
+    @Override
+    public String toString() {
+        return getSetClause() + " " + parameters;
+    }
+}
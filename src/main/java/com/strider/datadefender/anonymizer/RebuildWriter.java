@@ -0,0 +1,125 @@
+/*
+ *
+ * Copyright 2014-2018, Armenak Grigoryan, and individual contributors as indicated
+ * by the @authors tag. See the copyright.txt in the distribution for a
+ * full listing of individual contributors.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ */
+
+package com.strider.datadefender.anonymizer;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+
+import java.util.BitSet;
+import java.util.Collections;
+import java.util.List;
+
+import org.apache.commons.lang3.StringUtils;
+import org.apache.log4j.Logger;
+
+import static org.apache.log4j.Logger.getLogger;
+
+import com.strider.datadefender.database.metadata.MatchMetaData;
+
+/**
+ * Writes complete rows into the copy of a table being rebuilt, with a
+ * batched INSERT.  The plan's key names are the columns copied as read, and
+ * its update columns are the anonymized ones.  Columns that aren't changed
+ * are written back as the objects read by the driver.
+ *
+ * @see TableRebuilder
+ * @author Armenak Grigoryan
+ */
+public class RebuildWriter extends BatchWriter {
+    private static final Logger log = getLogger(RebuildWriter.class);
+
+    private final PreparedStatement insertStmt;
+    private final int[]             columnTypes;
+
+    /**
+     * @param updateCon
+     * @param newTable the table to insert into
+     * @param plan
+     * @param columnMetaData metadata of the selected columns, keys first
+     * @param columnTypes java.sql.Types of the selected columns, used to bind
+     * nulls
+     * @param batchSize
+     * @throws SQLException
+     */
+    public RebuildWriter(final Connection updateCon, final String newTable, final TablePlan plan,
+                         final List<MatchMetaData> columnMetaData, final int[] columnTypes, final int batchSize)
+            throws SQLException {
+        super(updateCon, plan, columnMetaData, batchSize);
+        this.columnTypes = columnTypes;
+
+        final List<String> columns = plan.getSelectColumns();
+        final String       sql     = "INSERT INTO " + newTable + " (" + StringUtils.join(columns, ", ")
+                                     + ") VALUES (" + StringUtils.join(Collections.nCopies(columns.size(), "?"), ", ")
+                                     + ")";
+
+        log.debug("Insert query: " + sql);
+        this.insertStmt = updateCon.prepareStatement(sql);
+    }
+
+    /**
+     * Every row is copied to the new table, changed or not.
+     */
+    @Override
+    protected boolean skipsUnchangedRows() {
+        return false;
+    }
+
+    /**
+     * Binds the object read by the driver.
+     */
+    private void setObject(final int index, final Object value) throws SQLException {
+        if (value == null) {
+            insertStmt.setNull(index + 1, columnTypes[index]);
+        } else {
+            insertStmt.setObject(index + 1, value);
+        }
+    }
+
+    @Override
+    protected void addBatch(final RowBuffer row) throws SQLException {
+        final int nKeys = plan.getKeyNames().size();
+
+        for (int i = 0; i < nKeys; ++i) {
+            setObject(i, row.getObject(i));
+        }
+
+        final BitSet changed = row.getChanged();
+
+        for (int i = 0; i < plan.getUpdateColumns().size(); ++i) {
+            if (changed.get(i)) {
+                setParameter(insertStmt, nKeys + i + 1, i, row.getValue(i));
+            } else {
+                setObject(nKeys + i, row.getObject(nKeys + i));
+            }
+        }
+
+        insertStmt.addBatch();
+    }
+
+    @Override
+    protected void executeBatch() throws SQLException {
+        insertStmt.executeBatch();
+    }
+
+    @Override
+    public void close() throws SQLException {
+        insertStmt.close();
+    }
+}
@@ -0,0 +1,220 @@
+/*
+ *
+ * Copyright 2014-2018, Armenak Grigoryan, and individual contributors as indicated
+ * by the @authors tag. See the copyright.txt in the distribution for a
+ * full listing of individual contributors.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ */
+
+package com.strider.datadefender.anonymizer;
+
+import java.sql.Blob;
+import java.sql.Clob;
+import java.sql.ResultSet;
+import java.sql.ResultSetMetaData;
+import java.sql.SQLException;
+import java.sql.Types;
+
+import java.util.BitSet;
+
+/**
+ * A copy of a selected row's key and column values, together with the
+ * anonymized values to write back.
+ *
+ * Rows are copied out of the ResultSet so they can be handed between threads
+ * after the cursor has moved on.
+ *
+ * @see TablePlan
+ * @author Armenak Grigoryan
+ */
+public class RowBuffer {
+    private final TablePlan plan;
+    private final String[]  source;
+    private final Object[]  values;
+    private Object[]        objects;
+    private BitSet          changed;
+    private long            sequence;
+
+    RowBuffer(final TablePlan plan, final String[] source) {
+        this.plan   = plan;
+        this.source = source;
+        this.values = (plan == null) ? null : new Object[plan.getUpdateColumns().size()];
+    }
+
+    /**
+     * Copies the current row of the passed ResultSet.  The ResultSet must
+     * have been selected with the plan's select columns, keys first.
+     *
+     * @param rs
+     * @param plan
+     * @return RowBuffer
+     * @throws SQLException
+     */
+    public static RowBuffer read(final ResultSet rs, final TablePlan plan) throws SQLException {
+        final String[] source = new String[plan.getSelectColumns().size()];
+
+        for (int i = 0; i < source.length; ++i) {
+            source[i] = rs.getString(i + 1);
+        }
+
+        return new RowBuffer(plan, source);
+    }
+
+    /**
+     * Copies the current row of the passed ResultSet, also keeping every
+     * column as the object returned by the driver so it can be written back
+     * with its own type.  LOBs are read into byte arrays and strings, as
+     * their locators may not outlive the cursor, and binary columns have no
+     * string value.
+     *
+     * @param rs
+     * @param plan
+     * @return RowBuffer
+     * @throws SQLException
+     */
+    public static RowBuffer readWithObjects(final ResultSet rs, final TablePlan plan) throws SQLException {
+        final ResultSetMetaData rsmd    = rs.getMetaData();
+        final String[]          source  = new String[plan.getSelectColumns().size()];
+        final Object[]          objects = new Object[source.length];
+
+        for (int i = 0; i < source.length; ++i) {
+            switch (rsmd.getColumnType(i + 1)) {
+            case Types.BLOB :
+                final Blob blob = rs.getBlob(i + 1);
+
+                objects[i] = (blob == null) ? null : blob.getBytes(1, (int) blob.length());
+
+                break;
+
+            case Types.BINARY :
+            case Types.VARBINARY :
+            case Types.LONGVARBINARY :
+                objects[i] = rs.getBytes(i + 1);
+
+                break;
+
+            case Types.CLOB :
+            case Types.NCLOB :
+                final Clob clob = rs.getClob(i + 1);
+
+                source[i]  = (clob == null) ? null : clob.getSubString(1, (int) clob.length());
+                objects[i] = source[i];
+
+                break;
+
+            default :
+                objects[i] = rs.getObject(i + 1);
+                source[i]  = rs.getString(i + 1);
+            }
+        }
+
+        final RowBuffer row = new RowBuffer(plan, source);
+
+        row.objects = objects;
+
+        return row;
+    }
+
+    /**
+     * Returns the selected value of the named key or column.
+     *
+     * @param name
+     * @return String
+     * @throws SQLException if the column wasn't selected
+     */
+    public String getString(final String name) throws SQLException {
+        return source[plan.getSelectIndex(name)];
+    }
+
+    /**
+     * Returns the selected value of the key at the passed position.
+     *
+     * @param index zero-based index in the plan's key names
+     * @return String
+     */
+    public String getKey(final int index) {
+        return source[index];
+    }
+
+    /**
+     * Returns the driver's object for the selected column at the passed
+     * position, if the row was read with readWithObjects.
+     *
+     * @param index zero-based index in the plan's select columns
+     * @return Object
+     */
+    public Object getObject(final int index) {
+        return objects[index];
+    }
+
+    /**
+     * Returns the value to write for the update column at the passed
+     * position.
+     *
+     * @param index zero-based index in the plan's update columns
+     * @return Object
+     */
+    public Object getValue(final int index) {
+        return values[index];
+    }
+
+    void setValue(final int index, final Object value) {
+        values[index] = value;
+    }
+
+    /**
+     * Returns the positions, in the plan's update columns, of the columns
+     * that were anonymized rather than excluded.  Rows that haven't been
+     * anonymized by a TablePlan report every column as changed.
+     *
+     * @return BitSet
+     */
+    public BitSet getChanged() {
+        if (changed == null) {
+            final BitSet all = new BitSet(values.length);
+
+            all.set(0, values.length);
+
+            return all;
+        }
+
+        return (BitSet) changed.clone();
+    }
+
+    /**
+     * Returns false if every column was excluded, so writing the row would
+     * leave it unchanged.
+     *
+     * @return boolean
+     */
+    public boolean hasChanges() {
+        return changed == null || !changed.isEmpty();
+    }
+
+    void setChanged(final BitSet changed) {
+        this.changed = changed;
+    }
+
+    /**
+     * Returns the position of the row in the order it was read, starting at 0.
+     *
+     * @return long
+     */
+    public long getSequence() {
+        return sequence;
+    }
+
+    void setSequence(final long sequence) {
+        this.sequence = sequence;
+    }
+}
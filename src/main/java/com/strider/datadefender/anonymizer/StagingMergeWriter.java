@@ -0,0 +1,137 @@
+/*
+ *
+ * Copyright 2014-2018, Armenak Grigoryan, and individual contributors as indicated
+ * by the @authors tag. See the copyright.txt in the distribution for a
+ * full listing of individual contributors.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ */
+
+package com.strider.datadefender.anonymizer;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.sql.Statement;
+
+import java.util.Collections;
+import java.util.List;
+
+import org.apache.commons.lang3.StringUtils;
+import org.apache.log4j.Logger;
+
+import static org.apache.log4j.Logger.getLogger;
+
+import com.strider.datadefender.database.metadata.MatchMetaData;
+import com.strider.datadefender.database.sqlbuilder.ISQLBuilder;
+
+/**
+ * Writes rows by inserting each batch into a temporary staging table, and
+ * then applying the batch to the table with a single set-based statement
+ * (UPDATE ... JOIN or MERGE, depending on the vendor's ISQLBuilder).
+ *
+ * The staging inserts are executed as a JDBC batch, which drivers send as
+ * array binds (Oracle) or multi-row inserts (MySQL, with
+ * rewriteBatchedStatements=true).
+ *
+ * @author Armenak Grigoryan
+ */
+public class StagingMergeWriter extends BatchWriter {
+    private static final Logger log = getLogger(StagingMergeWriter.class);
+
+    private final ISQLBuilder       sqlBuilder;
+    private final String            stagingTable;
+    private final String            mergeSql;
+    private final PreparedStatement insertStmt;
+
+    /**
+     * Creates the staging table.
+     *
+     * @param updateCon
+     * @param sqlBuilder
+     * @param tableName
+     * @param plan
+     * @param columnMetaData metadata of the selected columns, keys first
+     * @param batchSize
+     * @throws SQLException
+     */
+    public StagingMergeWriter(final Connection updateCon, final ISQLBuilder sqlBuilder, final String tableName,
+                              final TablePlan plan, final List<MatchMetaData> columnMetaData, final int batchSize)
+            throws SQLException {
+        super(updateCon, plan, columnMetaData, batchSize);
+        this.sqlBuilder   = sqlBuilder;
+        this.stagingTable = sqlBuilder.buildStagingTableName(tableName);
+        this.mergeSql     = sqlBuilder.buildStagingUpdate(tableName, stagingTable, plan.getKeyNames(),
+                                                          plan.getUpdateColumns());
+
+        try (Statement stmt = updateCon.createStatement()) {
+            stmt.execute(sqlBuilder.buildCreateStagingTable(stagingTable, tableName, plan.getKeyNames(),
+                                                            plan.getUpdateColumns()));
+        }
+
+        final int nParams = plan.getKeyNames().size() + plan.getUpdateColumns().size();
+
+        this.insertStmt = updateCon.prepareStatement("INSERT INTO " + stagingTable + " VALUES ("
+                + StringUtils.join(Collections.nCopies(nParams, "?"), ", ") + ")");
+        log.debug("Staging updates of " + tableName + " in " + stagingTable + " with: " + mergeSql);
+    }
+
+    @Override
+    protected void addBatch(final RowBuffer row) throws SQLException {
+        final int nKeys = plan.getKeyNames().size();
+
+        for (int i = 0; i < nKeys; ++i) {
+            insertStmt.setString(i + 1, row.getKey(i));
+        }
+
+        for (int i = 0; i < plan.getUpdateColumns().size(); ++i) {
+            setParameter(insertStmt, nKeys + i + 1, i, row.getValue(i));
+        }
+
+        insertStmt.addBatch();
+    }
+
+    @Override
+    protected void executeBatch() throws SQLException {
+        insertStmt.executeBatch();
+
+        try (Statement stmt = updateCon.createStatement()) {
+            stmt.executeUpdate(mergeSql);
+            stmt.executeUpdate("DELETE FROM " + stagingTable);
+        }
+    }
+
+    /**
+     * Commits, or rolls back if the commit fails, before dropping the staging
+     * table: Oracle can't drop a global temporary table holding rows of the
+     * session's transaction.
+     */
+    @Override
+    public void close() throws SQLException {
+        try {
+            insertStmt.close();
+            updateCon.commit();
+        } catch (SQLException e) {
+            updateCon.rollback();
+
+            throw e;
+        } finally {
+            final String sql = sqlBuilder.buildDropStagingTable(stagingTable);
+
+            try (Statement stmt = updateCon.createStatement()) {
+                stmt.execute(sql);
+            } catch (SQLException e) {
+                log.error("Unable to drop staging table " + stagingTable + ", run manually: " + sql + " (" + e + ")");
+            }
+        }
+    }
+}
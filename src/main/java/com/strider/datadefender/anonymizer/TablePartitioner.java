@@ -0,0 +1,167 @@
+/*
+ *
+ * Copyright 2014-2018, Armenak Grigoryan, and individual contributors as indicated
+ * by the @authors tag. See the copyright.txt in the distribution for a
+ * full listing of individual contributors.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ */
+
+package com.strider.datadefender.anonymizer;
+
+import java.math.BigDecimal;
+import java.math.BigInteger;
+
+import java.sql.Connection;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import org.apache.log4j.Logger;
+
+import static org.apache.log4j.Logger.getLogger;
+
+import com.strider.datadefender.database.sqlbuilder.ISQLBuilder;
+
+/**
+ * Splits a table into slices that can be anonymized independently.
+ *
+ * In "range" mode, a table with a single integral key column is split into
+ * contiguous key ranges between the key's MIN and MAX values.  In "hash" mode,
+ * or when a range can't be computed for the key, rows are assigned to slices
+ * by a vendor-specific hash of the key columns.
+ *
+ * @author Armenak Grigoryan
+ */
+public class TablePartitioner {
+    private static final Logger log = getLogger(TablePartitioner.class);
+
+    public static final String RANGE = "range";
+    public static final String HASH  = "hash";
+
+    private final Connection  connection;
+    private final ISQLBuilder sqlBuilder;
+
+    public TablePartitioner(final Connection connection, final ISQLBuilder sqlBuilder) {
+        this.connection = connection;
+        this.sqlBuilder = sqlBuilder;
+    }
+
+    /**
+     * Returns up to 'count' partitions for the table.  An empty list is
+     * returned if the table is empty.
+     *
+     * @param tableName
+     * @param keyNames
+     * @param count
+     * @param mode either RANGE or HASH
+     * @return List<Partition>
+     * @throws SQLException
+     */
+    public List<Partition> partition(final String tableName, final List<String> keyNames, final int count,
+                                     final String mode)
+            throws SQLException {
+        if (RANGE.equalsIgnoreCase(mode) && keyNames.size() == 1) {
+            final List<Partition> ranges = partitionByRange(tableName, keyNames.get(0), count);
+
+            if (ranges != null) {
+                return ranges;
+            }
+
+            log.info("Key " + keyNames.get(0) + " of table " + tableName
+                     + " is not an integral value, partitioning by hash instead");
+        }
+
+        return partitionByHash(keyNames, count);
+    }
+
+    private List<Partition> partitionByHash(final List<String> keyNames, final int count) {
+        final List<Partition> partitions = new ArrayList<>(count);
+
+        for (int i = 0; i < count; ++i) {
+            partitions.add(new Partition(sqlBuilder.buildHashPartitionPredicate(keyNames, count, i),
+                                         Collections.emptyList()));
+        }
+
+        return partitions;
+    }
+
+    /**
+     * Returns range partitions for the key, or null if the key's values are
+     * not integral.
+     */
+    private List<Partition> partitionByRange(final String tableName, final String key, final int count)
+            throws SQLException {
+        final String query = "SELECT MIN(" + key + "), MAX(" + key + ") FROM " + tableName;
+        Object       min;
+        Object       max;
+
+        log.debug("Querying for key range: " + query);
+
+        try (Statement stmt = connection.createStatement();
+            ResultSet rs = stmt.executeQuery(query)) {
+            rs.next();
+            min = rs.getObject(1);
+            max = rs.getObject(2);
+        }
+
+        if (min == null || max == null) {
+            return Collections.emptyList();
+        }
+
+        if (!isIntegral(min) || !isIntegral(max)) {
+            return null;
+        }
+
+        final BigInteger lower = new BigInteger(min.toString());
+        final BigInteger upper = new BigInteger(max.toString());
+        final BigInteger size  = upper.subtract(lower).add(BigInteger.ONE);
+        final BigInteger step  = size.add(BigInteger.valueOf(count - 1)).divide(BigInteger.valueOf(count));
+
+        final List<Partition> partitions = new ArrayList<>(count);
+
+        for (BigInteger start = lower; start.compareTo(upper) <= 0; start = start.add(step)) {
+            final BigInteger end = start.add(step);
+
+            if (end.compareTo(upper) > 0) {
+                partitions.add(new Partition(key + " >= ? AND " + key + " <= ?",
+                                             Arrays.asList(bindable(start), bindable(upper))));
+            } else {
+                partitions.add(new Partition(key + " >= ? AND " + key + " < ?",
+                                             Arrays.asList(bindable(start), bindable(end))));
+            }
+        }
+
+        log.debug("Key ranges for " + tableName + ": " + partitions);
+
+        return partitions;
+    }
+
+    /**
+     * Returns the bound as a Long, or as a BigDecimal beyond the range of
+     * long, e.g. for BIGINT UNSIGNED or NUMERIC keys.
+     */
+    private static Object bindable(final BigInteger bound) {
+        return (bound.bitLength() < Long.SIZE) ? (Object) bound.longValue() : new BigDecimal(bound);
+    }
+
+    private boolean isIntegral(final Object value) {
+        return value instanceof Long || value instanceof Integer || value instanceof Short || value instanceof Byte
+               || value instanceof BigInteger
+               || (value instanceof BigDecimal && ((BigDecimal) value).scale() <= 0);
+    }
+}
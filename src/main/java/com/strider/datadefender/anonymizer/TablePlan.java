@@ -0,0 +1,261 @@
+/*
+ *
+ * Copyright 2014-2018, Armenak Grigoryan, and individual contributors as indicated
+ * by the @authors tag. See the copyright.txt in the distribution for a
+ * full listing of individual contributors.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ */
+
+package com.strider.datadefender.anonymizer;
+
+import java.lang.reflect.InvocationTargetException;
+
+import java.sql.Connection;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+import org.apache.log4j.Logger;
+
+import static org.apache.log4j.Logger.getLogger;
+
+import com.strider.datadefender.database.sqlbuilder.ISQLBuilder;
+import com.strider.datadefender.functions.CoreFunctions;
+import com.strider.datadefender.requirement.Column;
+import com.strider.datadefender.requirement.Table;
+
+/**
+ * The compiled anonymizing functions for a table's columns.
+ *
+ * Compiling resolves each Column's function once per table, with one shared
+ * instance of each function class, so the row loop only has to invoke the
+ * precompiled method handles.  The plan also defines the layout of selected
+ * rows: key columns first, followed by the (distinct) update columns.
+ *
+ * @author Armenak Grigoryan
+ */
+public class TablePlan {
+    private static final Logger log = getLogger(TablePlan.class);
+
+    private final List<ColumnPlan>     columns;
+    private final List<String>         keyNames;
+    private final List<String>         updateColumns;
+    private final List<String>         selectColumns;
+    private final Map<String, Integer> selectIndexes;
+    private List<String>               keyPredicates;
+
+    private TablePlan(final List<ColumnPlan> columns, final Collection<String> keyNames,
+                      final Collection<String> updateColumns) {
+        this.columns       = columns;
+        this.keyNames      = new ArrayList<>(keyNames);
+        this.updateColumns = new ArrayList<>(updateColumns);
+        this.selectColumns = new ArrayList<>(keyNames.size() + updateColumns.size());
+        this.selectColumns.addAll(keyNames);
+        this.selectColumns.addAll(updateColumns);
+        this.keyPredicates = new ArrayList<>(keyNames.size());
+
+        for (final String key : keyNames) {
+            keyPredicates.add(key + " = ?");
+        }
+
+        // ResultSet column lookups are case insensitive
+        this.selectIndexes = new TreeMap<>(String.CASE_INSENSITIVE_ORDER);
+
+        for (int i = selectColumns.size() - 1; i >= 0; --i) {
+            selectIndexes.put(selectColumns.get(i), i);
+        }
+
+        for (final ColumnPlan column : columns) {
+            column.setUpdateIndex(this.updateColumns.indexOf(column.getColumn().getName()));
+        }
+    }
+
+    /**
+     * Compiles the anonymizing functions of the table's columns, with the
+     * default fetch size.
+     *
+     * @see #compile(Table, Collection, Collection, Connection, String, int)
+     */
+    public static TablePlan compile(final Table table, final Collection<String> keyNames,
+                                    final Collection<String> updateColumns, final Connection dbConn,
+                                    final String vendor)
+            throws NoSuchMethodException, IllegalAccessException, InvocationTargetException {
+        return compile(table, keyNames, updateColumns, dbConn, vendor, ISQLBuilder.DEFAULT_FETCH_SIZE);
+    }
+
+    /**
+     * Compiles the anonymizing functions of the table's columns.
+     *
+     * @param table
+     * @param keyNames the table's key columns
+     * @param updateColumns the distinct names of the table's columns
+     * @param dbConn connection passed to the function class instances
+     * @param vendor database vendor passed to the function class instances
+     * @param fetchSize fetch size of the function class instances' queries
+     * @return TablePlan
+     * @throws NoSuchMethodException if a column's function can't be found
+     * @throws IllegalAccessException
+     * @throws InvocationTargetException
+     */
+    public static TablePlan compile(final Table table, final Collection<String> keyNames,
+                                    final Collection<String> updateColumns, final Connection dbConn,
+                                    final String vendor, final int fetchSize)
+            throws NoSuchMethodException, IllegalAccessException, InvocationTargetException {
+        final Map<String, CoreFunctions> instances = new HashMap<>();
+        final List<ColumnPlan>           columns   = new ArrayList<>(table.getColumns().size());
+
+        for (final Column column : table.getColumns()) {
+            columns.add(ColumnPlan.compile(column, instances, className -> {
+                final CoreFunctions instance = (CoreFunctions) Class.forName(className).newInstance();
+
+                instance.setDatabaseConnection(dbConn);
+                instance.setVendor(vendor);
+                instance.setFetchSize(fetchSize);
+
+                return instance;
+            }));
+        }
+
+        return new TablePlan(columns, keyNames, updateColumns);
+    }
+
+    /**
+     * Anonymizes a row of columns, setting the row's update values.
+     *
+     * Columns excluded by the requirement's rules keep their current value,
+     * and are left out of the row's changed columns.  If a column is listed
+     * more than once, the first definition that isn't excluded is used.
+     *
+     * @param row
+     * @param rs the ResultSet positioned on the row, only required if a
+     * function takes the row as a parameter
+     * @throws SQLException
+     * @throws InvocationTargetException
+     */
+    public void anonymize(final RowBuffer row, final ResultSet rs) throws SQLException, InvocationTargetException {
+        final BitSet anonymized = new BitSet(updateColumns.size());
+
+        row.setChanged(anonymized);
+
+        for (final ColumnPlan columnPlan : columns) {
+            final String columnName = columnPlan.getColumn().getName();
+            final int    index      = columnPlan.getUpdateIndex();
+
+            if (anonymized.get(index)) {
+                continue;
+            }
+
+            if (columnPlan.isExcluded(row)) {
+                final String columnValue = row.getString(columnName);
+
+                row.setValue(index, columnValue);
+                log.debug("Excluding column: " + columnName + " with value: " + columnValue);
+
+                continue;
+            }
+
+            anonymized.set(index);
+
+            final Object colValue = columnPlan.anonymize(columnPlan.usesValue() ? row.getString(columnName) : null, rs);
+
+            log.debug("colValue = " + colValue);
+            row.setValue(index, colValue);
+        }
+    }
+
+    /**
+     * Returns the compiled columns, in the order defined by the requirement.
+     *
+     * @return List<ColumnPlan>
+     */
+    public List<ColumnPlan> getColumns() {
+        return Collections.unmodifiableList(this.columns);
+    }
+
+    public List<String> getKeyNames() {
+        return Collections.unmodifiableList(this.keyNames);
+    }
+
+    /**
+     * Returns the predicates matching each key to its value in the WHERE
+     * clause of the UPDATE statement, "key = ?" by default.
+     *
+     * @return List<String>
+     */
+    public List<String> getKeyPredicates() {
+        return Collections.unmodifiableList(this.keyPredicates);
+    }
+
+    /**
+     * Replaces the key predicates, for keys that aren't columns such as
+     * physical row locators.
+     *
+     * @param keyPredicates one predicate with a single parameter per key
+     */
+    public void setKeyPredicates(final List<String> keyPredicates) {
+        this.keyPredicates = new ArrayList<>(keyPredicates);
+    }
+
+    /**
+     * Returns the distinct column names set by the UPDATE statement.
+     *
+     * @return List<String>
+     */
+    public List<String> getUpdateColumns() {
+        return Collections.unmodifiableList(this.updateColumns);
+    }
+
+    /**
+     * Returns the column names to select, keys first.
+     *
+     * @return List<String>
+     */
+    public List<String> getSelectColumns() {
+        return Collections.unmodifiableList(this.selectColumns);
+    }
+
+    /**
+     * Returns the position of the named column in a selected row.
+     *
+     * @param name
+     * @return zero-based index
+     * @throws SQLException if the column isn't selected
+     */
+    int getSelectIndex(final String name) throws SQLException {
+        final Integer index = selectIndexes.get(name);
+
+        if (index == null) {
+            throw new SQLException("Column " + name + " is neither a key nor an anonymized column");
+        }
+
+        return index;
+    }
+
+    /**
+     * Returns true if any column's function takes the current row as a
+     * parameter.
+     *
+     * @return boolean
+     */
+    public boolean usesRow() {
+        return columns.stream().anyMatch(ColumnPlan::usesRow);
+    }
+}
@@ -0,0 +1,386 @@
+/*
+ *
+ * Copyright 2014-2018, Armenak Grigoryan, and individual contributors as indicated
+ * by the @authors tag. See the copyright.txt in the distribution for a
+ * full listing of individual contributors.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ */
+
+package com.strider.datadefender.anonymizer;
+
+import java.lang.reflect.InvocationTargetException;
+
+import java.sql.Connection;
+import java.sql.DatabaseMetaData;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.ResultSetMetaData;
+import java.sql.SQLException;
+import java.sql.Statement;
+
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+
+import org.apache.commons.lang3.StringUtils;
+import org.apache.log4j.Logger;
+
+import static org.apache.log4j.Logger.getLogger;
+
+import com.strider.datadefender.DatabaseDiscoveryException;
+import com.strider.datadefender.database.DatabaseAnonymizerException;
+import com.strider.datadefender.database.IDBFactory;
+import com.strider.datadefender.database.metadata.IMetaData;
+import com.strider.datadefender.database.metadata.IndexMetaData;
+import com.strider.datadefender.database.sqlbuilder.ISQLBuilder;
+import com.strider.datadefender.requirement.Column;
+import com.strider.datadefender.requirement.Table;
+import com.strider.datadefender.utils.Throttle;
+
+/**
+ * Anonymizes a table by writing every row, anonymized, into an empty copy of
+ * the table, then swapping the copy in place of the original.
+ *
+ * Inserting into a table without indexes avoids the index maintenance and
+ * row locking of updating every row in place.  The primary key and indexes
+ * are created once the copy is filled.  Rows excluded by the table's
+ * Exclusions are copied unchanged.
+ *
+ * Tables with foreign keys, either referencing or referenced by them, and
+ * tables with triggers are refused.  Grants aren't recreated.  If the copy
+ * lost the default value or auto-increment of a column, the original table
+ * is kept, renamed, rather than dropped.
+ *
+ * The tables are swapped atomically on MySQL, and in the transaction on
+ * PostgreSQL and SQL Server.  H2 and Oracle commit each rename, so other
+ * sessions may find the table missing in between.
+ *
+ * @author Armenak Grigoryan
+ */
+public class TableRebuilder {
+    private static final Logger log = getLogger(TableRebuilder.class);
+
+    public static final String REBUILD = "rebuild";
+
+    private static final String NEW_SUFFIX   = "_dd_new";
+    private static final String OLD_SUFFIX   = "_dd_old";
+    private static final String INDEX_PREFIX = "dd_";
+
+    private final IDBFactory  dbFactory;
+    private final ISQLBuilder sqlBuilder;
+    private final int         batchSize;
+    private Throttle          throttle = Throttle.NONE;
+    private ICommitListener   commitListener;
+
+    public TableRebuilder(final IDBFactory dbFactory, final int batchSize) {
+        this.dbFactory  = dbFactory;
+        this.sqlBuilder = dbFactory.createSQLBuilder();
+        this.batchSize  = batchSize;
+    }
+
+    /**
+     * Sets the throttle limiting the rate at which rows are copied.
+     *
+     * @param throttle
+     */
+    public void setThrottle(final Throttle throttle) {
+        this.throttle = throttle;
+    }
+
+    /**
+     * Sets the listener notified after each batch of copied rows is
+     * committed.
+     *
+     * @param commitListener
+     */
+    public void setCommitListener(final ICommitListener commitListener) {
+        this.commitListener = commitListener;
+    }
+
+    /**
+     * Rebuilds the table with its columns anonymized.
+     *
+     * @param table
+     * @return the number of rows copied
+     * @throws SQLException
+     * @throws DatabaseDiscoveryException if the table can't be rebuilt
+     * @throws NoSuchMethodException
+     * @throws IllegalAccessException
+     * @throws InvocationTargetException
+     */
+    public long rebuild(final Table table)
+            throws SQLException, DatabaseDiscoveryException, NoSuchMethodException, IllegalAccessException,
+                   InvocationTargetException {
+        final String     tableName = table.getName();
+        final String     newTable  = tableName + NEW_SUFFIX;
+        final String     oldTable  = tableName + OLD_SUFFIX;
+        final IMetaData  metaData  = dbFactory.fetchMetaData();
+        final Connection updateCon = dbFactory.getUpdateConnection();
+
+        final List<String> referencing = metaData.getReferencingTables(tableName);
+
+        if (!referencing.isEmpty()) {
+            throw new DatabaseAnonymizerException("Table " + tableName + " is referenced by foreign keys of "
+                                                  + referencing + " and can't be rebuilt");
+        }
+
+        final List<String> referenced = metaData.getReferencedTables(tableName);
+
+        if (!referenced.isEmpty()) {
+            throw new DatabaseAnonymizerException("Table " + tableName + " has foreign keys to " + referenced
+                                                  + ", which wouldn't be recreated, and can't be rebuilt");
+        }
+
+        final List<String> triggers = queryNames(sqlBuilder.buildTriggerQuery(tableName));
+
+        if (!triggers.isEmpty()) {
+            throw new DatabaseAnonymizerException("Table " + tableName + " has triggers " + triggers
+                                                  + ", which wouldn't be recreated, and can't be rebuilt");
+        }
+
+        if (tableExists(oldTable)) {
+            throw new DatabaseAnonymizerException("Table " + oldTable + " is left over from a previous rebuild, "
+                                                  + "check its contents and drop it");
+        }
+
+        final List<String>        primaryKeys = metaData.getPrimaryKeys(tableName);
+        final List<IndexMetaData> indexes     = metaData.getIndexes(tableName);
+
+        if (tableExists(newTable)) {
+            log.warn("Dropping table " + newTable + " left over from a previous rebuild");
+            execute(updateCon, "DROP TABLE " + newTable);
+        }
+
+        execute(updateCon, sqlBuilder.buildCloneTable(newTable, tableName));
+
+        // indexes copied with the table are created again once it's filled
+        final List<String> clonedKeys = metaData.getPrimaryKeys(newTable);
+
+        for (final IndexMetaData index : metaData.getIndexes(newTable)) {
+            if (!isPrimaryKeyIndex(index, clonedKeys)) {
+                execute(updateCon, sqlBuilder.buildDropIndex(newTable, index.getName()));
+            }
+        }
+
+        final List<String> lost = metaData.getGeneratedColumns(tableName);
+
+        lost.removeAll(metaData.getGeneratedColumns(newTable));
+        updateCon.commit();
+
+        final TablePlan plan     = compilePlan(table, updateCon);
+        final long      rowCount = copyRows(table, newTable, plan);
+
+        if (!primaryKeys.isEmpty() && clonedKeys.isEmpty()) {
+            for (final String sql : sqlBuilder.buildAddPrimaryKey(newTable, primaryKeys)) {
+                execute(updateCon, sql);
+            }
+        }
+
+        final Map<String, String> renames = new LinkedHashMap<>();
+
+        for (final IndexMetaData index : indexes) {
+            if (isPrimaryKeyIndex(index, primaryKeys)) {
+                continue;
+            }
+
+            final String tempName = INDEX_PREFIX + index.getName();
+
+            execute(updateCon, "CREATE " + (index.isUnique() ? "UNIQUE " : "") + "INDEX " + tempName + " ON "
+                               + newTable + " (" + StringUtils.join(index.getColumns(), ", ") + ")");
+            renames.put(tempName, index.getName());
+        }
+
+        updateCon.commit();
+        log.info("Swapping " + newTable + " with " + tableName);
+
+        for (final String sql : sqlBuilder.buildSwapTables(tableName, newTable, oldTable)) {
+            execute(updateCon, sql);
+        }
+
+        if (lost.isEmpty()) {
+            execute(updateCon, "DROP TABLE " + oldTable);
+        } else {
+            log.warn("The defaults or auto-increment of columns " + lost + " of " + tableName + " couldn't be "
+                     + "copied to the rebuilt table, the original table is kept as " + oldTable);
+        }
+
+        for (final Map.Entry<String, String> rename : renames.entrySet()) {
+            execute(updateCon, sqlBuilder.buildRenameIndex(tableName, rename.getKey(), rename.getValue()));
+        }
+
+        updateCon.commit();
+
+        return rowCount;
+    }
+
+    /**
+     * Compiles the plan for the table, with the columns that aren't
+     * anonymized as its keys.
+     */
+    private TablePlan compilePlan(final Table table, final Connection updateCon)
+            throws SQLException, NoSuchMethodException, IllegalAccessException, InvocationTargetException {
+        final Set<String> updateColumns = new LinkedHashSet<>();
+
+        for (final Column column : table.getColumns()) {
+            updateColumns.add(column.getName());
+        }
+
+        final Set<String> anonymized = new LinkedHashSet<>();
+
+        for (final String column : updateColumns) {
+            anonymized.add(column.toLowerCase(Locale.ENGLISH));
+        }
+
+        final List<String> copied = new ArrayList<>();
+
+        try (Statement stmt = dbFactory.getConnection().createStatement();
+            ResultSet rs = stmt.executeQuery("SELECT * FROM " + table.getName() + " WHERE 1 = 0")) {
+            final ResultSetMetaData rsmd = rs.getMetaData();
+
+            for (int i = 1; i <= rsmd.getColumnCount(); ++i) {
+                final String column = rsmd.getColumnName(i);
+
+                if (!anonymized.contains(column.toLowerCase(Locale.ENGLISH))) {
+                    copied.add(column);
+                }
+            }
+        }
+
+        return TablePlan.compile(table, copied, updateColumns, updateCon, dbFactory.getVendorName(),
+                                 sqlBuilder.getFetchSize());
+    }
+
+    /**
+     * Reads every row of the table, writing it anonymized into newTable.
+     */
+    private long copyRows(final Table table, final String newTable, final TablePlan plan)
+            throws SQLException, DatabaseDiscoveryException, InvocationTargetException {
+        final String query = "SELECT " + StringUtils.join(plan.getSelectColumns(), ", ") + " FROM " + table.getName();
+
+        log.debug("Querying for: " + query);
+
+        try (PreparedStatement stmt = dbFactory.prepareStreamingQuery(query)) {
+            try (ResultSet rs = stmt.executeQuery()) {
+                final int[] columnTypes = new int[plan.getSelectColumns().size()];
+
+                for (int i = 0; i < columnTypes.length; ++i) {
+                    columnTypes[i] = rs.getMetaData().getColumnType(i + 1);
+                }
+
+                try (RebuildWriter writer = new RebuildWriter(dbFactory.getUpdateConnection(), newTable, plan,
+                                                              dbFactory.fetchMetaData().getMetaDataForRs(rs),
+                                                              columnTypes, batchSize)) {
+                    writer.setThrottle(throttle);
+
+                    if (commitListener != null) {
+                        writer.addCommitListener(commitListener);
+                    }
+
+                    long rowCount = 0;
+
+                    while (rs.next()) {
+                        final RowBuffer row = RowBuffer.readWithObjects(rs, plan);
+
+                        // excluded rows are copied unchanged
+                        if (ColumnPlan.isExcluded(table.getExclusions(), null, row)) {
+                            row.setChanged(new BitSet());
+                        } else {
+                            plan.anonymize(row, rs);
+                        }
+
+                        writer.write(row);
+                        rowCount++;
+                    }
+
+                    writer.flush();
+                    log.debug("Rows copied: " + rowCount);
+
+                    return rowCount;
+                }
+            }
+        }
+    }
+
+    /**
+     * Returns true if the index is the one created for the primary key.
+     */
+    private static boolean isPrimaryKeyIndex(final IndexMetaData index, final List<String> primaryKeys) {
+        if (!index.isUnique() || index.getColumns().size() != primaryKeys.size()) {
+            return false;
+        }
+
+        for (int i = 0; i < primaryKeys.size(); ++i) {
+            if (!primaryKeys.get(i).equalsIgnoreCase(index.getColumns().get(i))) {
+                return false;
+            }
+        }
+
+        return true;
+    }
+
+    /**
+     * Returns true if the table exists, looking its name up as given, then
+     * in upper and lower case.
+     */
+    private boolean tableExists(final String tableName) throws SQLException {
+        final DatabaseMetaData md         = dbFactory.getConnection().getMetaData();
+        final int              dot        = tableName.lastIndexOf('.');
+        final String           schema     = (dot == -1) ? null : tableName.substring(0, dot);
+        final String           name       = tableName.substring(dot + 1);
+
+        final String[][]       candidates = {
+            { schema, name },
+            { (schema == null) ? null : schema.toUpperCase(Locale.ENGLISH), name.toUpperCase(Locale.ENGLISH) },
+            { (schema == null) ? null : schema.toLowerCase(Locale.ENGLISH), name.toLowerCase(Locale.ENGLISH) }
+        };
+
+        for (final String[] candidate : candidates) {
+            try (ResultSet rs = md.getTables(null, candidate[0], candidate[1], new String[] { "TABLE" })) {
+                if (rs.next()) {
+                    return true;
+                }
+            }
+        }
+
+        return false;
+    }
+
+    /**
+     * Returns the first column of the rows selected by the query.
+     */
+    private List<String> queryNames(final String query) throws SQLException {
+        final List<String> names = new ArrayList<>();
+
+        try (Statement stmt = dbFactory.getConnection().createStatement();
+            ResultSet rs = stmt.executeQuery(query)) {
+            while (rs.next()) {
+                names.add(rs.getString(1));
+            }
+        }
+
+        return names;
+    }
+
+    private static void execute(final Connection con, final String sql) throws SQLException {
+        log.debug("Executing: " + sql);
+
+        try (Statement stmt = con.createStatement()) {
+            stmt.execute(sql);
+        }
+    }
+}
@@ -0,0 +1,128 @@
+/*
+ *
+ * Copyright 2014-2018, Armenak Grigoryan, and individual contributors as indicated
+ * by the @authors tag. See the copyright.txt in the distribution for a
+ * full listing of individual contributors.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ */
+
+package com.strider.datadefender.anonymizer;
+
+/**
+ * Outcome of anonymizing a single table, used for the end of run summary.
+ *
+ * @author Armenak Grigoryan
+ */
+public class TableResult {
+    private final String tableName;
+    private final long   startTime;
+    private long         endTime;
+    private long         rowCount;
+    private long         estimatedRows = ProgressReporter.UNKNOWN;
+    private String       error;
+
+    public TableResult(final String tableName) {
+        this.tableName = tableName;
+        this.startTime = System.currentTimeMillis();
+    }
+
+    /**
+     * Sets the number of rows estimated before the table was anonymized, so
+     * tables with stale statistics stand out in the summary.
+     *
+     * @param estimatedRows
+     */
+    public void setEstimatedRows(final long estimatedRows) {
+        this.estimatedRows = estimatedRows;
+    }
+
+    /**
+     * Marks the table as finished, recording the number of rows processed.
+     *
+     * @param rowCount
+     */
+    public void finish(final long rowCount) {
+        this.rowCount = rowCount;
+        this.endTime  = System.currentTimeMillis();
+    }
+
+    /**
+     * Marks the table as failed with the passed error message.
+     *
+     * @param error
+     */
+    public void fail(final String error) {
+        this.error   = error;
+        this.endTime = System.currentTimeMillis();
+    }
+
+    public String getTableName() {
+        return this.tableName;
+    }
+
+    public long getRowCount() {
+        return this.rowCount;
+    }
+
+    /**
+     * Returns the time spent on the table in milliseconds.
+     *
+     * @return long
+     */
+    public long getElapsedTime() {
+        return Math.max(0, this.endTime - this.startTime);
+    }
+
+    public long getEstimatedRows() {
+        return this.estimatedRows;
+    }
+
+    /**
+     * Returns the number of rows processed per second.
+     *
+     * @return double
+     */
+    public double getRowsPerSecond() {
+        final long elapsed = getElapsedTime();
+
+        return (elapsed > 0) ? rowCount * 1000d / elapsed : 0;
+    }
+
+    public String getError() {
+        return this.error;
+    }
+
+    public boolean isSuccess() {
+        return this.error == null;
+    }
+
+    @Override
+    public String toString() {
+        final StringBuilder sb = new StringBuilder("Table [").append(tableName).append("] ");
+
+        if (isSuccess()) {
+            sb.append("OK, ").append(rowCount).append(" rows");
+
+            if (estimatedRows >= 0) {
+                sb.append(" (estimated ").append(estimatedRows).append(")");
+            }
+
+            sb.append(" in ").append(getElapsedTime() / 1000d).append(" seconds, ").append(Math.round(getRowsPerSecond()))
+              .append(" rows/s");
+        } else {
+            sb.append("FAILED: ").append(error);
+        }
+
+        return sb.toString();
+    }
+}
@@ -0,0 +1,432 @@
+/*
+ *
+ * Copyright 2014-2018, Armenak Grigoryan, and individual contributors as indicated
+ * by the @authors tag. See the copyright.txt in the distribution for a
+ * full listing of individual contributors.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ */
+
+package com.strider.datadefender.anonymizer;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+
+import java.util.AbstractMap.SimpleEntry;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.Properties;
+import java.util.Set;
+
+import org.apache.log4j.Logger;
+
+import static org.apache.log4j.Logger.getLogger;
+
+import com.strider.datadefender.database.DatabaseAnonymizerException;
+import com.strider.datadefender.requirement.Table;
+
+/**
+ * Chooses the order tables are anonymized in, so the largest tables don't
+ * start last when tables are anonymized in parallel.
+ *
+ * Each table has an estimated cost: its duration in a previous run if one
+ * was recorded, otherwise its estimated rows times its anonymized columns,
+ * converted to milliseconds with the throughput of the recorded tables if
+ * there are any.  Tables are handed out costliest first, counting the cost
+ * of the tables waiting on them, so long chains of dependent tables start
+ * early.  A table listed in another's DependsOn attribute is finished before
+ * the other one starts, and tables depending on a table that failed are
+ * skipped.
+ *
+ * @author Armenak Grigoryan
+ */
+public class TableScheduler {
+    private static final Logger log = getLogger(TableScheduler.class);
+
+    private final List<Table>                tables;
+    private final Map<String, Double>        costs;
+    private final Map<String, List<Integer>> entries    = new LinkedHashMap<>();
+    private final Map<String, Double>        priorities = new HashMap<>();
+    private final Map<String, Set<String>>   waitingOn  = new HashMap<>();
+    private final Map<String, Set<String>>   dependents = new HashMap<>();
+    private final Map<String, Integer>       unfinished = new HashMap<>();
+    private final List<Integer>              ready      = new ArrayList<>();
+    private final boolean[]                  started;
+    private final Set<String>                failed     = new HashSet<>();
+    private final Set<String>                skipped    = new HashSet<>();
+    private int                              handled;
+    private int                              running;
+
+    /**
+     * Tables are handed out once per entry of the list, so a table listed
+     * twice is anonymized twice, as it would be walking the list.  Tables
+     * depending on it wait until both are finished.
+     *
+     * @param tables the tables to anonymize
+     * @param costs estimated cost of each table
+     * @throws DatabaseAnonymizerException if tables depend on each other
+     */
+    public TableScheduler(final List<Table> tables, final Map<String, Double> costs)
+            throws DatabaseAnonymizerException {
+        this.tables  = new ArrayList<>(tables);
+        this.costs   = costs;
+        this.started = new boolean[tables.size()];
+
+        for (int i = 0; i < tables.size(); ++i) {
+            entries.computeIfAbsent(tables.get(i).getName(), k -> new ArrayList<>()).add(i);
+        }
+
+        for (final Table table : tables) {
+            final Set<String> dependencies = waitingOn.computeIfAbsent(table.getName(), k -> new LinkedHashSet<>());
+
+            for (final String dependency : table.getDependsOn()) {
+                if (entries.containsKey(dependency)) {
+                    dependencies.add(dependency);
+                    dependents.computeIfAbsent(dependency, k -> new LinkedHashSet<>()).add(table.getName());
+                } else {
+                    log.debug("Table [" + table.getName() + "] depends on " + dependency
+                              + ", which isn't anonymized by this run");
+                }
+            }
+        }
+
+        for (final Map.Entry<String, List<Integer>> entry : entries.entrySet()) {
+            priority(entry.getKey(), new LinkedHashSet<>());
+            unfinished.put(entry.getKey(), entry.getValue().size());
+        }
+
+        for (int i = 0; i < tables.size(); ++i) {
+            if (waitingOn.get(tables.get(i).getName()).isEmpty()) {
+                ready.add(i);
+            }
+        }
+    }
+
+    private double getCost(final String name) {
+        final Double cost = costs.get(name);
+
+        return (cost == null) ? 0 : cost;
+    }
+
+    /**
+     * Returns the cost of the table plus the costliest chain of tables
+     * depending on it.
+     */
+    private double priority(final String name, final Set<String> visiting) throws DatabaseAnonymizerException {
+        final Double known = priorities.get(name);
+
+        if (known != null) {
+            return known;
+        }
+
+        if (!visiting.add(name)) {
+            throw new DatabaseAnonymizerException("Tables " + visiting + " depend on each other");
+        }
+
+        double longest = 0;
+
+        for (final String dependent : dependents.getOrDefault(name, Collections.emptySet())) {
+            longest = Math.max(longest, priority(dependent, visiting));
+        }
+
+        visiting.remove(name);
+
+        final double priority = getCost(name) + longest;
+
+        priorities.put(name, priority);
+
+        return priority;
+    }
+
+    /**
+     * Returns the index of the table with the highest priority, the first
+     * listed one if several have the same priority.
+     */
+    private Integer highest(final Collection<Integer> indexes) {
+        Integer best = null;
+
+        for (final Integer index : indexes) {
+            if ((best == null) || (priorities.get(tables.get(index).getName())
+                                   > priorities.get(tables.get(best).getName()))) {
+                best = index;
+            }
+        }
+
+        return best;
+    }
+
+    /**
+     * Returns the ready table with the highest priority, waiting for running
+     * tables to finish if all the remaining tables depend on them.
+     *
+     * @return the next table, or null once every table was handed out or
+     * skipped
+     * @throws InterruptedException
+     */
+    public synchronized Table next() throws InterruptedException {
+        while (ready.isEmpty() && (running > 0) && (handled < tables.size())) {
+            wait();
+        }
+
+        if (ready.isEmpty()) {
+            return null;
+        }
+
+        final Integer next = highest(ready);
+
+        ready.remove(next);
+        started[next] = true;
+        ++handled;
+        ++running;
+
+        return tables.get(next);
+    }
+
+    /**
+     * Marks a table returned by next as finished.  Once every table of that
+     * name is finished, the tables waiting on it are made ready, or skipped
+     * if any of them failed.
+     *
+     * @param tableName
+     * @param success
+     */
+    public synchronized void finished(final String tableName, final boolean success) {
+        --running;
+
+        if (!success) {
+            failed.add(tableName);
+        }
+
+        if (unfinished.merge(tableName, -1, Integer::sum) == 0) {
+            for (final String dependent : dependents.getOrDefault(tableName, Collections.emptySet())) {
+                if (failed.contains(tableName)) {
+                    skip(dependent, tableName);
+                } else if (!skipped.contains(dependent)) {
+                    final Set<String> waiting = waitingOn.get(dependent);
+
+                    waiting.remove(tableName);
+
+                    if (waiting.isEmpty()) {
+                        ready.addAll(entries.get(dependent));
+                    }
+                }
+            }
+        }
+
+        notifyAll();
+    }
+
+    /**
+     * Skips the table and the tables depending on it.
+     */
+    private void skip(final String tableName, final String failed) {
+        if (!skipped.add(tableName)) {
+            return;
+        }
+
+        log.warn("Table [" + tableName + "] skipped, it depends on table " + failed + " which was not anonymized");
+        handled += entries.get(tableName).size();
+
+        for (final String dependent : dependents.getOrDefault(tableName, Collections.emptySet())) {
+            skip(dependent, tableName);
+        }
+    }
+
+    /**
+     * Returns the tables that were never handed out by next, either skipped
+     * or left over when the run was stopped.
+     *
+     * @return List<Table>
+     */
+    public synchronized List<Table> getUnstarted() {
+        final List<Table> unstarted = new ArrayList<>();
+
+        for (int i = 0; i < tables.size(); ++i) {
+            if (!started[i]) {
+                unstarted.add(tables.get(i));
+            }
+        }
+
+        return unstarted;
+    }
+
+    /**
+     * Simulates the run on the passed number of workers with the estimated
+     * costs, describing when each table is expected to start.
+     *
+     * @param workers
+     * @return one line per table, in the planned order, followed by the
+     * estimated total
+     */
+    public synchronized List<String> plan(final int workers) {
+        final Map<String, Integer> waiting   = new HashMap<>();
+        final Map<String, Integer> remaining = new HashMap<>();
+        final List<Integer>        indexes   = new ArrayList<>();
+        final List<String>         lines     = new ArrayList<>();
+        final PriorityQueue<SimpleEntry<Double, Integer>> busy =
+            new PriorityQueue<>(Comparator.comparing(SimpleEntry::getKey));
+        double                     now       = 0;
+
+        for (final Map.Entry<String, List<Integer>> entry : entries.entrySet()) {
+            waiting.put(entry.getKey(), waitingOn.get(entry.getKey()).size());
+            remaining.put(entry.getKey(), entry.getValue().size());
+        }
+
+        for (int i = 0; i < tables.size(); ++i) {
+            if (waiting.get(tables.get(i).getName()) == 0) {
+                indexes.add(i);
+            }
+        }
+
+        while (!indexes.isEmpty() || !busy.isEmpty()) {
+            while ((busy.size() < Math.max(1, workers)) && !indexes.isEmpty()) {
+                final Integer index = highest(indexes);
+                final String  name  = tables.get(index).getName();
+
+                indexes.remove(index);
+                busy.add(new SimpleEntry<>(now + getCost(name), index));
+                lines.add(name + ": cost " + Math.round(getCost(name)) + ", starts at " + Math.round(now));
+            }
+
+            final SimpleEntry<Double, Integer> done = busy.poll();
+            final String                       name = tables.get(done.getValue()).getName();
+
+            now = done.getKey();
+
+            if (remaining.merge(name, -1, Integer::sum) == 0) {
+                for (final String dependent : dependents.getOrDefault(name, Collections.emptySet())) {
+                    if (waiting.merge(dependent, -1, Integer::sum) == 0) {
+                        indexes.addAll(entries.get(dependent));
+                    }
+                }
+            }
+        }
+
+        lines.add("estimated total: " + Math.round(now));
+
+        return lines;
+    }
+
+    /**
+     * Estimates the cost of each table: its duration in milliseconds if it was
+     * recorded by a previous run, otherwise its estimated rows times its
+     * anonymized columns, scaled to milliseconds by the throughput of the
+     * recorded tables.  Without recorded durations, costs are only relative.
+     *
+     * @param tables
+     * @param rowEstimates estimated rows of each table, negative if unknown
+     * @param durations milliseconds taken by tables in previous runs
+     * @return Map<String, Double>
+     */
+    public static Map<String, Double> estimateCosts(final List<Table> tables, final Map<String, Long> rowEstimates,
+                                                    final Map<String, Long> durations) {
+        double recordedCells  = 0;
+        double recordedMillis = 0;
+
+        for (final Table table : tables) {
+            final double cells    = cells(table, rowEstimates);
+            final Long   duration = durations.get(table.getName());
+
+            if ((duration != null) && (cells > 0)) {
+                recordedCells  += cells;
+                recordedMillis += duration;
+            }
+        }
+
+        final double              millisPerCell = (recordedCells > 0) ? recordedMillis / recordedCells : 1;
+        final Map<String, Double> costs         = new HashMap<>();
+
+        for (final Table table : tables) {
+            final Long duration = durations.get(table.getName());
+
+            costs.put(table.getName(), (duration != null) ? duration : cells(table, rowEstimates) * millisPerCell);
+        }
+
+        return costs;
+    }
+
+    /**
+     * Returns the estimated number of values the table's anonymization
+     * writes, 0 if its rows are unknown.
+     */
+    private static double cells(final Table table, final Map<String, Long> rowEstimates) {
+        final Long rows    = rowEstimates.get(table.getName());
+        final int  columns = (table.getColumns() == null) ? 0 : table.getColumns().size();
+
+        return ((rows == null) || (rows < 0)) ? 0 : rows * (double) Math.max(1, columns);
+    }
+
+    /**
+     * Loads the durations in milliseconds recorded by previous runs, or
+     * returns an empty map if the file doesn't exist.
+     *
+     * @param fileName
+     * @return Map<String, Long>
+     * @throws IOException
+     */
+    public static Map<String, Long> loadDurations(final String fileName) throws IOException {
+        final Path              file      = Paths.get(fileName);
+        final Map<String, Long> durations = new HashMap<>();
+
+        if (Files.exists(file)) {
+            final Properties props = new Properties();
+
+            try (InputStream in = Files.newInputStream(file)) {
+                props.load(in);
+            }
+
+            for (final String name : props.stringPropertyNames()) {
+                durations.put(name, Long.parseLong(props.getProperty(name)));
+            }
+        }
+
+        return durations;
+    }
+
+    /**
+     * Saves the durations in milliseconds, replacing the file atomically.
+     *
+     * @param fileName
+     * @param durations
+     * @throws IOException
+     */
+    public static void saveDurations(final String fileName, final Map<String, Long> durations) throws IOException {
+        final Path       file  = Paths.get(fileName);
+        final Path       tmp   = file.resolveSibling(file.getFileName() + ".tmp");
+        final Properties props = new Properties();
+
+        for (final Map.Entry<String, Long> entry : durations.entrySet()) {
+            props.setProperty(entry.getKey(), String.valueOf(entry.getValue()));
+        }
+
+        try (OutputStream out = Files.newOutputStream(tmp)) {
+            props.store(out, "DataDefender table durations in milliseconds");
+        }
+
+        Files.move(tmp, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+}
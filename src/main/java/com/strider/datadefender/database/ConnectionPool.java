@@ -0,0 +1,246 @@
+/*
+ *
+ * Copyright 2014, Armenak Grigoryan, and individual contributors as indicated
+ * by the @authors tag. See the copyright.txt in the distribution for a
+ * full listing of individual contributors.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ */
+
+
+
+package com.strider.datadefender.database;
+
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.sql.SQLFeatureNotSupportedException;
+
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.HashSet;
+import java.util.Properties;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.log4j.Logger;
+
+import static org.apache.log4j.Logger.getLogger;
+
+import com.strider.datadefender.DatabaseDiscoveryException;
+import com.strider.datadefender.utils.ICloseableNoException;
+import com.strider.datadefender.utils.ISupplierWithException;
+
+/**
+ * Pool of connections to a database, shared by a factory and the worker
+ * factories it creates, so connections are opened once per run instead of
+ * once per worker, table or partition.
+ *
+ * Idle connections are validated when borrowed, and replaced if they're no
+ * longer valid.  Returned connections are rolled back, so a connection is
+ * never handed out in the middle of a transaction.  The pool opens at most
+ * 'pool_size' connections (unbounded by default); borrowers wait up to
+ * 'pool_timeout' seconds for one to be returned before failing.
+ *
+ * @author Armenak Grigoryan
+ */
+public class ConnectionPool implements ICloseableNoException {
+    private static final Logger log = getLogger(ConnectionPool.class);
+
+    /** Seconds given to a connection to answer its validation. */
+    private static final int VALIDATION_TIMEOUT = 5;
+
+    private final ISupplierWithException<Connection, DatabaseDiscoveryException> connector;
+    private final int                                                          maxSize;
+    private final long                                                         timeoutMillis;
+    private final Deque<Connection>                                            idle = new ArrayDeque<>();
+    private final Set<Connection>                                              all  = new HashSet<>();
+    private int                                                                opening;
+    private boolean                                                            closed;
+
+    /**
+     * @param connector opens new connections
+     * @param maxSize maximum number of open connections
+     * @param timeoutSeconds time borrowers wait for a connection
+     */
+    public ConnectionPool(final ISupplierWithException<Connection, DatabaseDiscoveryException> connector,
+                          final int maxSize, final int timeoutSeconds) {
+        this.connector     = connector;
+        this.maxSize       = Math.max(1, maxSize);
+        this.timeoutMillis = TimeUnit.SECONDS.toMillis(timeoutSeconds);
+    }
+
+    /**
+     * Creates a pool configured by the 'pool_size' and 'pool_timeout'
+     * database properties.
+     *
+     * @param connector
+     * @param dbProps
+     * @return ConnectionPool
+     */
+    public static ConnectionPool fromProperties(
+            final ISupplierWithException<Connection, DatabaseDiscoveryException> connector,
+            final Properties dbProps) {
+        final String size = dbProps.getProperty("pool_size", "");
+
+        return new ConnectionPool(connector, size.isEmpty() ? Integer.MAX_VALUE : Integer.parseInt(size),
+                                  Integer.parseInt(dbProps.getProperty("pool_timeout", "60")));
+    }
+
+    /**
+     * Returns a valid connection, opening one if none are idle and the pool
+     * isn't full.
+     *
+     * @return Connection
+     * @throws DatabaseDiscoveryException if the connection can't be opened,
+     * or none is returned to a full pool in time
+     */
+    public Connection borrow() throws DatabaseDiscoveryException {
+        final long deadline = System.currentTimeMillis() + timeoutMillis;
+
+        while (true) {
+            Connection con;
+
+            synchronized (this) {
+                while (idle.isEmpty() && all.size() + opening >= maxSize && !closed) {
+                    final long wait = deadline - System.currentTimeMillis();
+
+                    if (wait <= 0) {
+                        throw new DatabaseAnonymizerException("No database connection available after "
+                                                              + timeoutMillis / 1000 + " seconds, increase "
+                                                              + "'pool_size' (" + maxSize + ")");
+                    }
+
+                    try {
+                        wait(wait);
+                    } catch (InterruptedException e) {
+                        Thread.currentThread().interrupt();
+
+                        throw new DatabaseAnonymizerException("Interrupted waiting for a database connection", e);
+                    }
+                }
+
+                if (closed) {
+                    throw new DatabaseAnonymizerException("Connection pool is closed");
+                }
+
+                con = idle.pollFirst();
+
+                if (con == null) {
+                    // reserve the slot while connecting outside the lock
+                    ++opening;
+                }
+            }
+
+            if (con == null) {
+                return open();
+            }
+
+            if (isValid(con)) {
+                return con;
+            }
+
+            log.warn("Discarding invalid database connection");
+            discard(con);
+        }
+    }
+
+    /**
+     * Returns a borrowed connection to the pool, rolling back its pending
+     * transaction.
+     *
+     * @param con
+     */
+    public void release(final Connection con) {
+        try {
+            con.rollback();
+        } catch (SQLException e) {
+            log.warn("Discarding database connection failing to roll back: " + e);
+            discard(con);
+
+            return;
+        }
+
+        synchronized (this) {
+            if (!closed) {
+                idle.addFirst(con);
+                notifyAll();
+
+                return;
+            }
+        }
+
+        discard(con);
+    }
+
+    /**
+     * Closes the idle connections, and the borrowed ones once returned.
+     */
+    @Override
+    public void close() {
+        final Set<Connection> toClose;
+
+        synchronized (this) {
+            closed  = true;
+            toClose = new HashSet<>(idle);
+            idle.clear();
+            notifyAll();
+        }
+
+        for (final Connection con : toClose) {
+            discard(con);
+        }
+    }
+
+    private Connection open() throws DatabaseDiscoveryException {
+        Connection con = null;
+
+        try {
+            con = connector.get();
+
+            return con;
+        } finally {
+            synchronized (this) {
+                --opening;
+
+                if (con != null) {
+                    all.add(con);
+                }
+
+                notifyAll();
+            }
+        }
+    }
+
+    private void discard(final Connection con) {
+        synchronized (this) {
+            all.remove(con);
+            notifyAll();
+        }
+
+        try {
+            con.close();
+        } catch (SQLException e) {
+            log.error(e.toString());
+        }
+    }
+
+    private static boolean isValid(final Connection con) {
+        try {
+            return con.isValid(VALIDATION_TIMEOUT);
+        } catch (SQLFeatureNotSupportedException | AbstractMethodError e) {
+            // drivers predating JDBC 4 can't be validated
+            return true;
+        } catch (SQLException e) {
+            return false;
+        }
+    }
+}
@@ -21,8 +21,11 @@
 package com.strider.datadefender.database;
 
 import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
 import java.sql.SQLException;
 
+import java.util.List;
 import java.util.Properties;
 
 import org.apache.log4j.Logger;
@@ -30,11 +33,19 @@ import org.apache.log4j.Logger;
 import static org.apache.log4j.Logger.getLogger;
 
 import com.strider.datadefender.DatabaseDiscoveryException;
+import com.strider.datadefender.anonymizer.BatchUpdateWriter;
+import com.strider.datadefender.anonymizer.BatchWriter;
+import com.strider.datadefender.anonymizer.IRowWriter;
+import com.strider.datadefender.anonymizer.PostgreSQLCopyWriter;
+import com.strider.datadefender.anonymizer.StagingMergeWriter;
+import com.strider.datadefender.anonymizer.TablePlan;
 import com.strider.datadefender.database.metadata.IMetaData;
+import com.strider.datadefender.database.metadata.MatchMetaData;
 import com.strider.datadefender.database.metadata.MSSQLMetaData;
 import com.strider.datadefender.database.metadata.MySQLMetaData;
 import com.strider.datadefender.database.metadata.OracleMetaData;
 import com.strider.datadefender.database.metadata.PostgreSQLMetaData;
+import com.strider.datadefender.database.sqlbuilder.H2SQLBuilder;
 import com.strider.datadefender.database.sqlbuilder.ISQLBuilder;
 import com.strider.datadefender.database.sqlbuilder.MSSQLSQLBuilder;
 import com.strider.datadefender.database.sqlbuilder.MySQLSQLBuilder;
@@ -45,7 +56,9 @@ import java.util.logging.Level;
 
 /**
  * Aggregate all the various db factories.
- * Will handle the 'pooling' of connections (currently only one).
+ * Connections are borrowed from a pool shared with the worker factories, one
+ * per role: a streaming reader, a writer and, when first needed, one for
+ * metadata queries.
  * All clients should close the connection by calling the close() method of the AutoCloseable interface.
  * @author Akira Matsuo
  */
@@ -54,8 +67,40 @@ public interface IDBFactory extends ICloseableNoException {
 
     IMetaData fetchMetaData() throws DatabaseDiscoveryException;
 
+    /**
+     * Returns the reader connection, streaming the rows of queries.
+     * @return
+     */
     Connection getConnection();
 
+    /**
+     * Returns the connection used for metadata queries, so they don't
+     * interfere with a streaming read.
+     * @return
+     * @throws DatabaseDiscoveryException if no connection can be borrowed
+     */
+    Connection getMetaDataConnection() throws DatabaseDiscoveryException;
+
+    /**
+     * Prepares a forward only, read only query on the read connection,
+     * streaming its rows with the vendor's fetch size instead of loading the
+     * whole result in memory.
+     * @param query
+     * @return the statement, to be closed by the caller
+     * @throws SQLException
+     */
+    PreparedStatement prepareStreamingQuery(String query) throws SQLException;
+
+    /**
+     * Creates a new factory for the same database, holding its own read and
+     * update connections borrowed from this factory's pool.  Used to give
+     * each worker thread its own connections; the caller is responsible for
+     * closing the returned factory, returning them to the pool.
+     * @return db factory instance
+     * @throws DatabaseDiscoveryException
+     */
+    IDBFactory createWorkerFactory() throws DatabaseDiscoveryException;
+
     /**
      * Create db factory for given rdbms. Or illegal argument exception.
      * @param dbProps
@@ -63,35 +108,57 @@ public interface IDBFactory extends ICloseableNoException {
      * @throws DatabaseAnonymizerException
      */
     static IDBFactory get(final Properties dbProps) throws DatabaseDiscoveryException {
+        return get(dbProps, null);
+    }
+
+    /**
+     * Create db factory for given rdbms, borrowing its connections from the
+     * passed pool, or from a new pool if null.
+     * @param dbProps
+     * @param pool
+     * @return db factory instance
+     * @throws DatabaseAnonymizerException
+     */
+    static IDBFactory get(final Properties dbProps, final ConnectionPool pool) throws DatabaseDiscoveryException {
         String vendor = dbProps.getProperty("vendor");
 
         if ("mysql".equalsIgnoreCase(vendor) || "h2".equalsIgnoreCase(vendor)) {
-            return new DBFactory(vendor) {
-                {
-                    updateConnection = createConnection();
-                }
+            return new DBFactory(vendor, dbProps, pool) {
                 @Override
                 public Connection createConnection() throws DatabaseDiscoveryException {
                     return new MySQLDBConnection(dbProps).connect();
                 }
                 @Override
                 public IMetaData fetchMetaData() throws DatabaseDiscoveryException {
-                    return new MySQLMetaData(dbProps, getConnection());
+                    return new MySQLMetaData(dbProps, getMetaDataConnection());
                 }
                 @Override
                 public ISQLBuilder createSQLBuilder() {
+                    if ("h2".equalsIgnoreCase(getVendorName())) {
+                        return new H2SQLBuilder(dbProps);
+                    }
                     return new MySQLSQLBuilder(dbProps);
                 }
+                @Override
+                public BatchWriter createRowWriter(final String strategy, final String tableName, final TablePlan plan,
+                    final List<MatchMetaData> columnMetaData, final int batchSize) throws SQLException {
+                    final String url = dbProps.getProperty("url", "");
+                    if (IRowWriter.BULK.equalsIgnoreCase(strategy) && "mysql".equalsIgnoreCase(getVendorName())
+                        && !url.contains("rewriteBatchedStatements=true")) {
+                        getLogger(IDBFactory.class).warn("Add rewriteBatchedStatements=true to the url to send staged rows as multi-row inserts");
+                    }
+                    return super.createRowWriter(strategy, tableName, plan, columnMetaData, batchSize);
+                }
             };
         } else if ("mssql".equalsIgnoreCase(vendor)) {
-            return new DBFactory(vendor) {
+            return new DBFactory(vendor, dbProps, pool) {
                 @Override
                 public Connection createConnection() throws DatabaseDiscoveryException {
                     return new MSSQLDBConnection(dbProps).connect();
                 }
                 @Override
                 public IMetaData fetchMetaData() throws DatabaseDiscoveryException {
-                    return new MSSQLMetaData(dbProps, getConnection());
+                    return new MSSQLMetaData(dbProps, getMetaDataConnection());
                 }
                 @Override
                 public ISQLBuilder createSQLBuilder() {
@@ -99,14 +166,14 @@ public interface IDBFactory extends ICloseableNoException {
                 }
             };
         } else if ("oracle".equalsIgnoreCase(vendor)) {
-            return new DBFactory(vendor) {
+            return new DBFactory(vendor, dbProps, pool) {
                 @Override
                 public Connection createConnection() throws DatabaseDiscoveryException {
                     return new OracleDBConnection(dbProps).connect();
                 }
                 @Override
                 public IMetaData fetchMetaData() throws DatabaseDiscoveryException {
-                    return new OracleMetaData(dbProps, getConnection());
+                    return new OracleMetaData(dbProps, getMetaDataConnection());
                 }
                 @Override
                 public ISQLBuilder createSQLBuilder() {
@@ -114,7 +181,7 @@ public interface IDBFactory extends ICloseableNoException {
                 }
             };
         }  else if ("postgresql".equalsIgnoreCase(vendor)) {
-            return new DBFactory(vendor) {
+            return new DBFactory(vendor, dbProps, pool) {
                 @Override
                 public Connection createConnection() throws DatabaseDiscoveryException {
                     Connection conn = new PostgreSQLDBConnection(dbProps).connect();
@@ -127,49 +194,108 @@ public interface IDBFactory extends ICloseableNoException {
                 }
                 @Override
                 public IMetaData fetchMetaData() throws DatabaseDiscoveryException {
-                    return new PostgreSQLMetaData(dbProps, getConnection());
+                    return new PostgreSQLMetaData(dbProps, getMetaDataConnection());
                 }
                 @Override
                 public ISQLBuilder createSQLBuilder() {
                     return new PostgreSQLBuilder(dbProps);
                 }
+                @Override
+                public BatchWriter createRowWriter(final String strategy, final String tableName, final TablePlan plan,
+                    final List<MatchMetaData> columnMetaData, final int batchSize) throws SQLException {
+                    if (IRowWriter.BULK.equalsIgnoreCase(strategy) || IRowWriter.COPY.equalsIgnoreCase(strategy)) {
+                        return new PostgreSQLCopyWriter(getUpdateConnection(), createSQLBuilder(), tableName, plan,
+                            columnMetaData, batchSize);
+                    }
+                    return super.createRowWriter(strategy, tableName, plan, columnMetaData, batchSize);
+                }
             };
         }
 
         throw new IllegalArgumentException("Database " + vendor + " is not supported");
     }
 
+    /**
+     * Returns the writer connection, separate from the reader so commits
+     * don't close or interfere with its cursors.
+     * @return
+     */
     Connection getUpdateConnection();
 
     String getVendorName();
 
+    /**
+     * Creates the writer for a table's anonymized rows on the update
+     * connection.  The "bulk" strategy uses the vendor's fastest path; any
+     * other strategy executes batched UPDATE statements.
+     * @param strategy IRowWriter.BATCH or IRowWriter.BULK
+     * @param tableName
+     * @param plan
+     * @param columnMetaData metadata of the selected columns, keys first
+     * @param batchSize
+     * @return the writer
+     * @throws SQLException
+     */
+    BatchWriter createRowWriter(String strategy, String tableName, TablePlan plan,
+                                List<MatchMetaData> columnMetaData, int batchSize) throws SQLException;
+
     // Implements the common logic of get/closing of connections
     static abstract class DBFactory implements IDBFactory {
-        private static final Logger log = getLogger(DBFactory.class);
-        private final Connection    connection;
-        protected Connection        updateConnection;
-        private final String        vendor;
-
-        DBFactory(String vendorName) throws DatabaseDiscoveryException {
-            log.info("Connecting to database");
-            connection       = createConnection();
-            updateConnection = connection;
-            vendor           = vendorName;
+        private static final Logger  log = getLogger(DBFactory.class);
+        private final ConnectionPool pool;
+        private final boolean        ownsPool;
+        private final Connection     connection;
+        private final Connection     updateConnection;
+        private Connection           metaDataConnection;
+        private final String         vendor;
+        private final Properties     dbProps;
+
+        DBFactory(String vendorName, final Properties dbProps, final ConnectionPool sharedPool)
+                throws DatabaseDiscoveryException {
+            vendor       = vendorName;
+            this.dbProps = dbProps;
+            ownsPool     = sharedPool == null;
+
+            if (ownsPool) {
+                log.info("Connecting to database");
+                pool = ConnectionPool.fromProperties(this::createConnection, dbProps);
+            } else {
+                pool = sharedPool;
+            }
+
+            connection = pool.borrow();
+
+            try {
+                updateConnection = pool.borrow();
+            } catch (DatabaseDiscoveryException e) {
+                release(connection);
+                throw e;
+            }
         }
 
         @Override
         public void close() {
-            if (connection == null) {
-                return;
+            release(connection);
+            release(updateConnection);
+            release(metaDataConnection);
+            metaDataConnection = null;
+
+            if (ownsPool) {
+                pool.close();
             }
+        }
 
-            try {
-                connection.close();
-            } catch (SQLException e) {
-                log.error(e);
+        private void release(final Connection con) {
+            if (con != null) {
+                pool.release(con);
             }
         }
 
+        @Override
+        public IDBFactory createWorkerFactory() throws DatabaseDiscoveryException {
+            return IDBFactory.get(dbProps, pool);
+        }
+
         public abstract Connection createConnection() throws DatabaseDiscoveryException;
 
         @Override
@@ -177,6 +303,37 @@ public interface IDBFactory extends ICloseableNoException {
             return connection;
         }
 
+        @Override
+        public synchronized Connection getMetaDataConnection() throws DatabaseDiscoveryException {
+            if (metaDataConnection == null) {
+                metaDataConnection = pool.borrow();
+            }
+
+            return metaDataConnection;
+        }
+
+        @Override
+        public PreparedStatement prepareStreamingQuery(final String query) throws SQLException {
+            final PreparedStatement stmt = connection.prepareStatement(query, ResultSet.TYPE_FORWARD_ONLY,
+                                                                       ResultSet.CONCUR_READ_ONLY);
+
+            stmt.setFetchSize(createSQLBuilder().getStreamingFetchSize());
+
+            return stmt;
+        }
+
+        @Override
+        public BatchWriter createRowWriter(final String strategy, final String tableName, final TablePlan plan,
+                                           final List<MatchMetaData> columnMetaData, final int batchSize)
+                throws SQLException {
+            if (IRowWriter.BULK.equalsIgnoreCase(strategy)) {
+                return new StagingMergeWriter(updateConnection, createSQLBuilder(), tableName, plan, columnMetaData,
+                                              batchSize);
+            }
+
+            return new BatchUpdateWriter(updateConnection, tableName, plan, columnMetaData, batchSize);
+        }
+
         @Override
         public Connection getUpdateConnection() {
             return updateConnection;
@@ -17,4 +17,53 @@ public interface IMetaData {
 
     // List<MatchMetaData> getMetaData(final String columnType);
     List<MatchMetaData> getMetaDataForRs(final ResultSet rs) throws SQLException;
+
+    /**
+     * Returns the lower case names of the table's primary key columns, or an
+     * empty list if the table has no primary key.
+     *
+     * @param tableName
+     * @return
+     * @throws SQLException
+     */
+    List<String> getPrimaryKeys(final String tableName) throws SQLException;
+
+    /**
+     * Returns the table's indexes, including the index backing its primary
+     * key if the database reports it.
+     *
+     * @param tableName
+     * @return
+     * @throws SQLException
+     */
+    List<IndexMetaData> getIndexes(final String tableName) throws SQLException;
+
+    /**
+     * Returns the names of the tables with foreign keys referencing the
+     * table.
+     *
+     * @param tableName
+     * @return
+     * @throws SQLException
+     */
+    List<String> getReferencingTables(final String tableName) throws SQLException;
+
+    /**
+     * Returns the names of the tables referenced by the table's foreign keys.
+     *
+     * @param tableName
+     * @return
+     * @throws SQLException
+     */
+    List<String> getReferencedTables(final String tableName) throws SQLException;
+
+    /**
+     * Returns the lower case names of the table's columns with a default
+     * value or generated by auto-increment.
+     *
+     * @param tableName
+     * @return
+     * @throws SQLException
+     */
+    List<String> getGeneratedColumns(final String tableName) throws SQLException;
 }
\ No newline at end of file
@@ -0,0 +1,71 @@
+/*
+ *
+ * Copyright 2014-2018, Armenak Grigoryan, and individual contributors as indicated
+ * by the @authors tag. See the copyright.txt in the distribution for a
+ * full listing of individual contributors.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ */
+
+package com.strider.datadefender.database.metadata;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static java.util.Collections.unmodifiableList;
+
+/**
+ * Name, uniqueness and columns of a table's index.
+ *
+ * @author Armenak Grigoryan
+ */
+public class IndexMetaData {
+    private final String       name;
+    private final boolean      unique;
+    private final List<String> columns = new ArrayList<>();
+
+    public IndexMetaData(final String name, final boolean unique) {
+        this.name   = name;
+        this.unique = unique;
+    }
+
+    /**
+     * Adds the next column of the index.
+     *
+     * @param column
+     */
+    public void addColumn(final String column) {
+        columns.add(column);
+    }
+
+    public String getName() {
+        return this.name;
+    }
+
+    public boolean isUnique() {
+        return this.unique;
+    }
+
+    /**
+     * Returns the index's columns, in order.
+     *
+     * @return List<String>
+     */
+    public List<String> getColumns() {
+        return unmodifiableList(this.columns);
+    }
+
+    @Override
+    public String toString() {
+        return (unique ? "unique index " : "index ") + name + " " + columns;
+    }
+}
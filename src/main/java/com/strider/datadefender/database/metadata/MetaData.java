@@ -30,7 +30,9 @@ import java.sql.Statement;
 
 import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
 import java.util.Properties;
 import java.util.Set;
 
@@ -38,6 +40,7 @@ import org.apache.log4j.Logger;
 
 import static org.apache.log4j.Logger.getLogger;
 
+import com.strider.datadefender.utils.IConsumerWithException;
 import com.strider.datadefender.utils.SQLToJavaMapping;
 import java.util.Locale;
 
@@ -231,6 +234,113 @@ public abstract class MetaData implements IMetaData {
         return map;
     }
 
+    /**
+     * Runs the metadata query for the table, passing each row to the
+     * consumer.  Identifiers may be stored in upper or lower case depending
+     * on the vendor, so the name is tried as is, then in upper and lower case
+     * until a query returns rows.
+     *
+     * @param tableName table name, optionally prefixed by its schema
+     * @param query
+     * @param consumer
+     * @throws SQLException
+     */
+    private void queryTableMetaData(final String tableName, final ITableMetaDataQuery query,
+                                    final IConsumerWithException<ResultSet, SQLException> consumer)
+            throws SQLException {
+        final DatabaseMetaData md   = connection.getMetaData();
+        final String           name = tableName.substring(tableName.lastIndexOf('.') + 1);
+
+        for (final String candidate : Arrays.asList(name, name.toUpperCase(Locale.ENGLISH), name.toLowerCase(Locale.ENGLISH))) {
+            boolean found = false;
+
+            try (ResultSet rs = query.query(md, candidate)) {
+                while (rs.next()) {
+                    found = true;
+                    consumer.accept(rs);
+                }
+            }
+
+            if (found) {
+                return;
+            }
+        }
+    }
+
+    @Override
+    public List<String> getPrimaryKeys(final String tableName) throws SQLException {
+        final List<String> keys = new ArrayList<>();
+
+        queryTableMetaData(tableName, this::getPKRS, pkRS -> keys.add(pkRS.getString(4).toLowerCase(Locale.ENGLISH)));
+
+        return keys;
+    }
+
+    @Override
+    public List<IndexMetaData> getIndexes(final String tableName) throws SQLException {
+        final Map<String, IndexMetaData> indexes = new LinkedHashMap<>();
+
+        queryTableMetaData(tableName,
+                           (md, name) -> md.getIndexInfo(null, schema, name, false, false),
+                           indexRS -> {
+                               final String indexName = indexRS.getString("INDEX_NAME");
+
+                               // skip table statistics
+                               if (indexName == null || indexRS.getShort("TYPE") == DatabaseMetaData.tableIndexStatistic) {
+                                   return;
+                               }
+
+                               IndexMetaData index = indexes.get(indexName);
+
+                               if (index == null) {
+                                   index = new IndexMetaData(indexName, !indexRS.getBoolean("NON_UNIQUE"));
+                                   indexes.put(indexName, index);
+                               }
+
+                               index.addColumn(indexRS.getString("COLUMN_NAME"));
+                           });
+
+        return new ArrayList<>(indexes.values());
+    }
+
+    @Override
+    public List<String> getReferencingTables(final String tableName) throws SQLException {
+        final List<String> tables = new ArrayList<>();
+
+        queryTableMetaData(tableName,
+                           (md, name) -> md.getExportedKeys(null, schema, name),
+                           fkRS -> tables.add(fkRS.getString("FKTABLE_NAME")));
+
+        return tables;
+    }
+
+    @Override
+    public List<String> getReferencedTables(final String tableName) throws SQLException {
+        final List<String> tables = new ArrayList<>();
+
+        queryTableMetaData(tableName,
+                           (md, name) -> md.getImportedKeys(null, schema, name),
+                           fkRS -> tables.add(fkRS.getString("PKTABLE_NAME")));
+
+        return tables;
+    }
+
+    @Override
+    public List<String> getGeneratedColumns(final String tableName) throws SQLException {
+        final List<String> columns = new ArrayList<>();
+
+        queryTableMetaData(tableName,
+                           (md, name) -> md.getColumns(null, schema, name, null),
+                           columnRS -> {
+                               if (columnRS.getString("COLUMN_DEF") != null
+                                       || "YES".equals(columnRS.getString("IS_AUTOINCREMENT"))) {
+                                   columns.add(columnRS.getString("COLUMN_NAME").toLowerCase(Locale.ENGLISH));
+                               }
+                           });
+
+        return columns;
+    }
+
     protected ResultSet getPKRS(final DatabaseMetaData md, final String tableName) throws SQLException {
         return md.getPrimaryKeys(null, schema, tableName);
     }
@@ -250,6 +360,14 @@ public abstract class MetaData implements IMetaData {
         return rowNum;
     }
 
+    /**
+     * A DatabaseMetaData query for a table.
+     */
+    @FunctionalInterface
+    private interface ITableMetaDataQuery {
+        ResultSet query(DatabaseMetaData md, String tableName) throws SQLException;
+    }
+
     // protected methods that allow subclasses to customize behaviour
     protected ResultSet getTableRS(final DatabaseMetaData md) throws SQLException {
         return md.getTables(null, schema, null, new String[] { "TABLE" });
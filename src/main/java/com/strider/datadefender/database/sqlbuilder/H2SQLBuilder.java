@@ -0,0 +1,161 @@
+/*
+ *
+ * Copyright 2014-2018, Armenak Grigoryan, and individual contributors as indicated
+ * by the @authors tag. See the copyright.txt in the distribution for a
+ * full listing of individual contributors.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ */
+
+package com.strider.datadefender.database.sqlbuilder;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Properties;
+
+import org.apache.commons.lang3.StringUtils;
+
+import com.strider.datadefender.database.metadata.IndexMetaData;
+
+/**
+ * H2 runs in MySQL mode, but has no multi-table UPDATE, so staged updates
+ * are applied with MERGE.
+ *
+ * @author Armenak Grigoryan
+ */
+public class H2SQLBuilder extends MySQLSQLBuilder {
+    public H2SQLBuilder(final Properties databaseProperties) {
+        super(databaseProperties);
+    }
+
+    /**
+     * ORA_HASH returns a bucket between 0 and its maximum, inclusive.
+     */
+    @Override
+    public String buildHashPartitionPredicate(final List<String> keys, final int partitions, final int partition) {
+        return "ORA_HASH(CONCAT_WS('|', " + StringUtils.join(keys, ", ") + "), " + (partitions - 1) + ") = "
+               + partition;
+    }
+
+    @Override
+    public String buildCreateStagingTable(final String stagingTable, final String tableName, final List<String> keys,
+                                          final List<String> columns) {
+        return "CREATE LOCAL TEMPORARY TABLE " + stagingTable + " AS SELECT " + buildStagingColumns(keys, columns)
+               + " FROM " + tableName + " WHERE 1 = 0";
+    }
+
+    @Override
+    public String buildStagingUpdate(final String tableName, final String stagingTable, final List<String> keys,
+                                     final List<String> columns) {
+        return buildStagingMerge(tableName, stagingTable, keys, columns);
+    }
+
+    @Override
+    public String buildDropStagingTable(final String stagingTable) {
+        return "DROP TABLE " + stagingTable;
+    }
+
+    @Override
+    public String buildRowLocator() {
+        return "_ROWID_";
+    }
+
+    @Override
+    public String buildRowLocatorPredicate() {
+        return "_ROWID_ = ?";
+    }
+
+    @Override
+    public String buildRandomInt(final int min, final int max) {
+        return "CAST(FLOOR(" + min + " + RAND() * " + (max - min + 1) + ") AS INT)";
+    }
+
+    /**
+     * H2 has no CREATE TABLE LIKE.
+     */
+    @Override
+    public String buildCloneTable(final String newTable, final String tableName) {
+        return "CREATE TABLE " + newTable + " AS SELECT * FROM " + tableName + " WHERE 1 = 0";
+    }
+
+    /**
+     * CREATE TABLE AS doesn't keep NOT NULL, which H2 requires of key
+     * columns.
+     */
+    @Override
+    public List<String> buildAddPrimaryKey(final String tableName, final List<String> keys) {
+        final List<String> sql = new ArrayList<>(keys.size() + 1);
+
+        for (final String key : keys) {
+            sql.add("ALTER TABLE " + tableName + " ALTER COLUMN " + key + " SET NOT NULL");
+        }
+
+        sql.addAll(super.buildAddPrimaryKey(tableName, keys));
+
+        return sql;
+    }
+
+    @Override
+    public List<String> buildSwapTables(final String tableName, final String newTable, final String oldTable) {
+        return Arrays.asList("ALTER TABLE " + tableName + " RENAME TO " + unqualified(oldTable),
+                             "ALTER TABLE " + newTable + " RENAME TO " + unqualified(tableName));
+    }
+
+    @Override
+    public String buildRenameIndex(final String tableName, final String indexName, final String newName) {
+        return "ALTER INDEX " + schemaPrefix(tableName) + indexName + " RENAME TO " + newName;
+    }
+
+    @Override
+    public List<String> buildBulkSessionSetup() {
+        return Collections.emptyList();
+    }
+
+    @Override
+    public List<String> buildBulkSessionRestore() {
+        return Collections.emptyList();
+    }
+
+    @Override
+    public List<String> buildBulkTableSetup(final String tableName, final List<IndexMetaData> indexes) {
+        return Collections.singletonList("ALTER TABLE " + tableName + " SET REFERENTIAL_INTEGRITY FALSE");
+    }
+
+    @Override
+    public List<String> buildBulkTableRestore(final String tableName, final List<IndexMetaData> indexes) {
+        return Collections.singletonList("ALTER TABLE " + tableName + " SET REFERENTIAL_INTEGRITY TRUE");
+    }
+
+    @Override
+    public String buildDropIndex(final String tableName, final String indexName) {
+        return "DROP INDEX " + schemaPrefix(tableName) + indexName;
+    }
+
+    @Override
+    public String buildRowEstimate(final String tableName) {
+        return "SELECT ROW_COUNT_ESTIMATE FROM INFORMATION_SCHEMA.TABLES WHERE TABLE_SCHEMA = UPPER("
+               + buildSchemaName(tableName, "SCHEMA()") + ") AND TABLE_NAME = UPPER('" + unqualified(tableName) + "')";
+    }
+
+    @Override
+    public String buildTriggerQuery(final String tableName) {
+        return "SELECT TRIGGER_NAME FROM INFORMATION_SCHEMA.TRIGGERS WHERE TABLE_SCHEMA = UPPER("
+               + buildSchemaName(tableName, "SCHEMA()") + ") AND TABLE_NAME = UPPER('" + unqualified(tableName) + "')";
+    }
+
+    @Override
+    public int getStreamingFetchSize() {
+        return getFetchSize();
+    }
+}
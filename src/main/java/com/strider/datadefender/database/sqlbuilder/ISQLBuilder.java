@@ -19,11 +19,19 @@
 
 package com.strider.datadefender.database.sqlbuilder;
 
+import java.util.List;
+
+import com.strider.datadefender.database.metadata.IndexMetaData;
+
 /**
  * Interface for all classes implementing sql builder.
  * @author Armenak Grigoryan
  */
 public interface ISQLBuilder {
+
+    /** Rows fetched per round trip if the 'fetch_size' property isn't set. */
+    int DEFAULT_FETCH_SIZE = 1000;
+
     String buildSelectWithLimit(String sqlString, int limit);
 
     /**
@@ -32,6 +40,219 @@ public interface ISQLBuilder {
      * @return
      */
     String prefixSchema(String tableName);
+
+    /**
+     * Returns a predicate selecting the rows whose key hashes to the given
+     * partition, out of 'partitions' partitions.
+     * @param keys
+     * @param partitions
+     * @param partition zero-based partition index
+     * @return
+     */
+    String buildHashPartitionPredicate(List<String> keys, int partitions, int partition);
+
+    /**
+     * Returns a predicate selecting the rows whose keys sort after the
+     * previous page's last keys.  For keys k1, k2 the predicate is
+     * "(k1 > ?) OR (k1 = ? AND k2 > ?)", so the i-th group of parameters is
+     * bound to the first i last key values.
+     * @param keys
+     * @return
+     */
+    String buildKeysetPredicate(List<String> keys);
+
+    /**
+     * Orders the passed query by its keys, and limits it to pageSize rows.
+     * @param sqlString
+     * @param keys
+     * @param pageSize
+     * @return
+     */
+    String buildKeysetPage(String sqlString, List<String> keys, int pageSize);
+
+    /**
+     * Returns the expression selecting the physical location of a row, as a
+     * string, or null if the database has none for tables without a key.
+     * @return
+     */
+    String buildRowLocator();
+
+    /**
+     * Returns the predicate matching the row at the location selected by
+     * buildRowLocator, bound to a single parameter.
+     * @return
+     */
+    String buildRowLocatorPredicate();
+
+    /**
+     * Returns an integer expression evaluated to a new random number between
+     * min and max, inclusive, for each row.
+     * @param min
+     * @param max
+     * @return
+     */
+    String buildRandomInt(int min, int max);
+
+    /**
+     * Returns an expression for the character with the code of the passed
+     * integer expression.
+     * @param code
+     * @return
+     */
+    String buildChar(String code);
+
+    /**
+     * Returns an expression concatenating the passed expressions as strings.
+     * @param expressions
+     * @return
+     */
+    String buildConcat(List<String> expressions);
+
+    /**
+     * Returns the name of a temporary staging table for bulk updates of
+     * tableName.
+     * @param tableName
+     * @return
+     */
+    String buildStagingTableName(String tableName);
+
+    /**
+     * Returns the DDL creating an empty temporary staging table for bulk
+     * updates of tableName.  The staging table holds the keys, named
+     * dd_key0, dd_key1... followed by the update columns, with the types of
+     * the table's columns.
+     * @param stagingTable
+     * @param tableName
+     * @param keys
+     * @param columns
+     * @return
+     */
+    String buildCreateStagingTable(String stagingTable, String tableName, List<String> keys, List<String> columns);
+
+    /**
+     * Returns the statement updating tableName's columns with the values of
+     * the staging table's matching rows.
+     * @param tableName
+     * @param stagingTable
+     * @param keys
+     * @param columns
+     * @return
+     */
+    String buildStagingUpdate(String tableName, String stagingTable, List<String> keys, List<String> columns);
+
+    /**
+     * Returns the DDL creating newTable, empty, with the columns of tableName
+     * and as much of their definition as the vendor can copy.  Foreign keys
+     * aren't copied, and indexes may or may not be.
+     * @param newTable
+     * @param tableName
+     * @return
+     */
+    String buildCloneTable(String newTable, String tableName);
+
+    /**
+     * Returns the statements adding the primary key to a table created by
+     * buildCloneTable.
+     * @param tableName
+     * @param keys
+     * @return
+     */
+    List<String> buildAddPrimaryKey(String tableName, List<String> keys);
+
+    /**
+     * Returns the statements, run in order in one transaction, renaming
+     * tableName to oldTable and newTable to tableName.
+     * @param tableName
+     * @param newTable
+     * @param oldTable
+     * @return
+     */
+    List<String> buildSwapTables(String tableName, String newTable, String oldTable);
+
+    /**
+     * Returns the statement renaming an index of the table.
+     * @param tableName
+     * @param indexName
+     * @param newName
+     * @return
+     */
+    String buildRenameIndex(String tableName, String indexName, String newName);
+
+    /**
+     * Returns the statements relaxing the connection's checks for the
+     * duration of a table's updates, e.g. foreign key checks.
+     * @return
+     */
+    List<String> buildBulkSessionSetup();
+
+    /**
+     * Returns the statements restoring what buildBulkSessionSetup changed.
+     * @return
+     */
+    List<String> buildBulkSessionRestore();
+
+    /**
+     * Returns the statements disabling the table's triggers, constraint
+     * checks, and maintenance of the passed indexes, while it is updated.
+     * @param tableName
+     * @param indexes non unique indexes on anonymized columns
+     * @return
+     */
+    List<String> buildBulkTableSetup(String tableName, List<IndexMetaData> indexes);
+
+    /**
+     * Returns the statements restoring what buildBulkTableSetup changed,
+     * rebuilding the passed indexes.
+     * @param tableName
+     * @param indexes
+     * @return
+     */
+    List<String> buildBulkTableRestore(String tableName, List<IndexMetaData> indexes);
+
+    /**
+     * Returns the statement dropping an index of the table.
+     * @param tableName
+     * @param indexName
+     * @return
+     */
+    String buildDropIndex(String tableName, String indexName);
+
+    /**
+     * Returns the number of rows fetched per round trip, the 'fetch_size'
+     * database property.
+     * @return
+     */
+    int getFetchSize();
+
+    /**
+     * Returns the fetch size making the driver stream the rows of a query
+     * reading the whole result, instead of loading them all in memory.
+     * @return
+     */
+    int getStreamingFetchSize();
+
+    /**
+     * Returns a query selecting the table's number of rows estimated from the
+     * catalog's statistics, without scanning the table.  The query returns no
+     * row, or NULL, if no statistics were gathered.
+     * @param tableName
+     * @return
+     */
+    String buildRowEstimate(String tableName);
+
+    /**
+     * Returns a query selecting the names of the table's triggers.
+     * @param tableName
+     * @return
+     */
+    String buildTriggerQuery(String tableName);
+
+    /**
+     * Returns the statement dropping the staging table.
+     * @param stagingTable
+     * @return
+     */
+    String buildDropStagingTable(String stagingTable);
 }
 
 
@@ -19,8 +19,15 @@
 
 package com.strider.datadefender.database.sqlbuilder;
 
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Locale;
 import java.util.Properties;
 
+import org.apache.commons.lang3.StringUtils;
+
+import com.strider.datadefender.database.metadata.IndexMetaData;
 import com.strider.datadefender.utils.CommonUtils;
 
 /**
@@ -60,6 +67,134 @@ public class MSSQLSQLBuilder extends SQLBuilder {
 
         return prefixAndTableName;
     }
+
+    @Override
+    public String buildHashPartitionPredicate(final List<String> keys, final int partitions, final int partition) {
+        return "ABS(CAST(CHECKSUM(" + StringUtils.join(keys, ", ") + ") AS BIGINT)) % " + partitions + " = "
+               + partition;
+    }
+
+    @Override
+    public String buildStagingTableName(final String tableName) {
+        return "#" + super.buildStagingTableName(tableName);
+    }
+
+    @Override
+    public String buildCreateStagingTable(final String stagingTable, final String tableName, final List<String> keys,
+                                          final List<String> columns) {
+        return "SELECT " + buildStagingColumns(keys, columns) + " INTO " + stagingTable + " FROM " + tableName
+               + " WHERE 1 = 0";
+    }
+
+    @Override
+    public String buildStagingUpdate(final String tableName, final String stagingTable, final List<String> keys,
+                                     final List<String> columns) {
+        // MERGE has to be terminated by a semicolon
+        return buildStagingMerge(tableName, stagingTable, keys, columns) + ";";
+    }
+
+    @Override
+    public String buildKeysetPage(final String sqlString, final List<String> keys, final int pageSize) {
+        final StringBuilder sql = new StringBuilder(sqlString);
+
+        // TOP has to follow DISTINCT
+        final int top = sqlString.toUpperCase(Locale.ENGLISH).startsWith("SELECT DISTINCT ") ? 16 : 7;
+
+        sql.insert(top, String.format("TOP %d ", pageSize));
+        sql.append(" ORDER BY ").append(StringUtils.join(keys, ", "));
+
+        return sql.toString();
+    }
+
+    /**
+     * %%physloc%% is an undocumented binary(8) of the row's file, page and
+     * slot, selected as a hexadecimal string.
+     */
+    @Override
+    public String buildRowLocator() {
+        return "CONVERT(VARCHAR(18), %%physloc%%, 1)";
+    }
+
+    @Override
+    public String buildRowLocatorPredicate() {
+        return "%%physloc%% = CONVERT(BINARY(8), ?, 1)";
+    }
+
+    /**
+     * RAND() is evaluated once per statement, NEWID() once per row.  CHECKSUM
+     * returns an int, cast before ABS as ABS(-2147483648) overflows.
+     */
+    @Override
+    public String buildRandomInt(final int min, final int max) {
+        return "(" + min + " + ABS(CAST(CHECKSUM(NEWID()) AS BIGINT)) % " + (max - min + 1) + ")";
+    }
+
+    @Override
+    public String buildCloneTable(final String newTable, final String tableName) {
+        return "SELECT * INTO " + newTable + " FROM " + tableName + " WHERE 1 = 0";
+    }
+
+    @Override
+    public List<String> buildSwapTables(final String tableName, final String newTable, final String oldTable) {
+        return Arrays.asList("EXEC sp_rename '" + tableName + "', '" + unqualified(oldTable) + "'",
+                             "EXEC sp_rename '" + newTable + "', '" + unqualified(tableName) + "'");
+    }
+
+    @Override
+    public String buildRenameIndex(final String tableName, final String indexName, final String newName) {
+        return "EXEC sp_rename '" + tableName + "." + indexName + "', '" + newName + "', 'INDEX'";
+    }
+
+    @Override
+    public List<String> buildBulkSessionSetup() {
+        return Collections.emptyList();
+    }
+
+    @Override
+    public List<String> buildBulkSessionRestore() {
+        return Collections.emptyList();
+    }
+
+    @Override
+    public List<String> buildBulkTableSetup(final String tableName, final List<IndexMetaData> indexes) {
+        return Arrays.asList("ALTER TABLE " + tableName + " NOCHECK CONSTRAINT ALL",
+                             "DISABLE TRIGGER ALL ON " + tableName);
+    }
+
+    /**
+     * Constraints are checked again on the existing rows, so they're trusted
+     * by the optimizer.
+     */
+    @Override
+    public List<String> buildBulkTableRestore(final String tableName, final List<IndexMetaData> indexes) {
+        return Arrays.asList("ENABLE TRIGGER ALL ON " + tableName,
+                             "ALTER TABLE " + tableName + " WITH CHECK CHECK CONSTRAINT ALL");
+    }
+
+    @Override
+    public String buildDropIndex(final String tableName, final String indexName) {
+        return "DROP INDEX " + indexName + " ON " + tableName;
+    }
+
+    /**
+     * Counts the rows of the heap or clustered index, kept up to date by SQL
+     * Server without gathering statistics.
+     */
+    @Override
+    public String buildRowEstimate(final String tableName) {
+        return "SELECT SUM(rows) FROM sys.partitions WHERE object_id = OBJECT_ID('" + tableName
+               + "') AND index_id IN (0, 1)";
+    }
+
+    @Override
+    public String buildTriggerQuery(final String tableName) {
+        return "SELECT name FROM sys.triggers WHERE parent_id = OBJECT_ID('" + tableName + "')";
+    }
+
+    @Override
+    public int getStreamingFetchSize() {
+        return getFetchSize();
+    }
 }
 
 
@@ -19,8 +19,13 @@
 
 package com.strider.datadefender.database.sqlbuilder;
 
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
 import java.util.Properties;
 
+import org.apache.commons.lang3.StringUtils;
+
 /**
  * @author Armenak Grigoryan
  */
@@ -28,4 +33,120 @@ public class MySQLSQLBuilder extends SQLBuilder {
     public MySQLSQLBuilder(final Properties databaseProperties) {
         super(databaseProperties);
     }
-}
\ No newline at end of file
+
+    @Override
+    public String buildHashPartitionPredicate(final List<String> keys, final int partitions, final int partition) {
+        return "MOD(CRC32(CONCAT_WS('|', " + StringUtils.join(keys, ", ") + ")), " + partitions + ") = " + partition;
+    }
+
+    @Override
+    public String buildCreateStagingTable(final String stagingTable, final String tableName, final List<String> keys,
+                                          final List<String> columns) {
+        return "CREATE TEMPORARY TABLE " + stagingTable + " AS SELECT " + buildStagingColumns(keys, columns) + " FROM "
+               + tableName + " WHERE 1 = 0";
+    }
+
+    @Override
+    public String buildStagingUpdate(final String tableName, final String stagingTable, final List<String> keys,
+                                     final List<String> columns) {
+        final StringBuilder sql = new StringBuilder("UPDATE ").append(tableName)
+                                                              .append(" tgt JOIN ")
+                                                              .append(stagingTable)
+                                                              .append(" stg ON ")
+                                                              .append(buildStagingJoin(keys))
+                                                              .append(" SET ");
+
+        for (int i = 0; i < columns.size(); ++i) {
+            if (i > 0) {
+                sql.append(", ");
+            }
+
+            sql.append("tgt.").append(columns.get(i)).append(" = stg.").append(columns.get(i));
+        }
+
+        return sql.toString();
+    }
+
+    /**
+     * Dropping the staging table as TEMPORARY neither commits the
+     * transaction, nor drops a permanent table of the same name.
+     */
+    @Override
+    public String buildDropStagingTable(final String stagingTable) {
+        return "DROP TEMPORARY TABLE " + stagingTable;
+    }
+
+    @Override
+    public String buildRandomInt(final int min, final int max) {
+        return "CAST(FLOOR(" + min + " + RAND() * " + (max - min + 1) + ") AS SIGNED)";
+    }
+
+    /**
+     * LIKE copies the column definitions, including defaults and
+     * AUTO_INCREMENT, with the table's indexes and CHECK constraints.
+     */
+    @Override
+    public String buildCloneTable(final String newTable, final String tableName) {
+        return "CREATE TABLE " + newTable + " LIKE " + tableName;
+    }
+
+    /**
+     * MySQL renames both tables atomically in a single statement.
+     */
+    @Override
+    public List<String> buildSwapTables(final String tableName, final String newTable, final String oldTable) {
+        return Collections.singletonList("RENAME TABLE " + tableName + " TO " + oldTable + ", " + newTable + " TO "
+                                         + tableName);
+    }
+
+    @Override
+    public String buildRenameIndex(final String tableName, final String indexName, final String newName) {
+        return "ALTER TABLE " + tableName + " RENAME INDEX " + indexName + " TO " + newName;
+    }
+
+    /**
+     * Saves MySQL's foreign_key_checks and unique_checks in user variables
+     * before turning them off, so they're restored to their previous values.
+     */
+    @Override
+    public List<String> buildBulkSessionSetup() {
+        return Arrays.asList("SET @dd_foreign_key_checks = @@foreign_key_checks, @dd_unique_checks = @@unique_checks",
+                             "SET foreign_key_checks = 0, unique_checks = 0");
+    }
+
+    @Override
+    public List<String> buildBulkSessionRestore() {
+        return Collections.singletonList(
+            "SET foreign_key_checks = @dd_foreign_key_checks, unique_checks = @dd_unique_checks");
+    }
+
+    @Override
+    public String buildDropIndex(final String tableName, final String indexName) {
+        return "DROP INDEX " + indexName + " ON " + tableName;
+    }
+
+    /**
+     * TABLE_ROWS is exact for MyISAM tables, and sampled for InnoDB tables.
+     */
+    @Override
+    public String buildRowEstimate(final String tableName) {
+        return "SELECT TABLE_ROWS FROM information_schema.TABLES WHERE TABLE_SCHEMA = "
+               + buildSchemaName(tableName, "DATABASE()") + " AND TABLE_NAME = '" + unqualified(tableName) + "'";
+    }
+
+    @Override
+    public String buildTriggerQuery(final String tableName) {
+        return "SELECT TRIGGER_NAME FROM information_schema.TRIGGERS WHERE EVENT_OBJECT_SCHEMA = "
+               + buildSchemaName(tableName, "DATABASE()") + " AND EVENT_OBJECT_TABLE = '" + unqualified(tableName) + "'";
+    }
+
+    /**
+     * MySQL's driver only streams rows, one at a time, with a fetch size of
+     * Integer.MIN_VALUE; other statements can't run on the connection until
+     * the result set is closed.
+     */
+    @Override
+    public int getStreamingFetchSize() {
+        return Integer.MIN_VALUE;
+    }
+}
@@ -16,11 +16,21 @@
  */
 package com.strider.datadefender.database.sqlbuilder;
 
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Locale;
 import java.util.Properties;
+import java.util.concurrent.ThreadLocalRandom;
+
+import org.apache.commons.lang3.StringUtils;
 
 import org.apache.log4j.Logger;
 import static org.apache.log4j.Logger.getLogger;
 
+import com.strider.datadefender.database.metadata.IndexMetaData;
+
 /**
  * @author Armenak Grigoryan
  */
@@ -44,6 +54,167 @@ public class OracleSQLBuilder extends SQLBuilder {
         
         return sql.toString();
     }
+
+    @Override
+    public String buildHashPartitionPredicate(final List<String> keys, final int partitions, final int partition) {
+        return "ORA_HASH(" + StringUtils.join(keys, " || '|' || ") + ", " + (partitions - 1) + ") = " + partition;
+    }
+
+    /**
+     * Global temporary tables are shared by all sessions, so the name is made
+     * unique, and short enough for 30 character identifiers.
+     */
+    @Override
+    public String buildStagingTableName(final String tableName) {
+        return "DD_STG_" + Integer.toHexString(ThreadLocalRandom.current().nextInt()).toUpperCase(Locale.ENGLISH);
+    }
+
+    @Override
+    public String buildCreateStagingTable(final String stagingTable, final String tableName, final List<String> keys,
+                                          final List<String> columns) {
+        return "CREATE GLOBAL TEMPORARY TABLE " + stagingTable + " ON COMMIT DELETE ROWS AS SELECT "
+               + buildStagingColumns(keys, columns) + " FROM " + tableName + " WHERE 1 = 0";
+    }
+
+    @Override
+    public String buildStagingUpdate(final String tableName, final String stagingTable, final List<String> keys,
+                                     final List<String> columns) {
+        return buildStagingMerge(tableName, stagingTable, keys, columns);
+    }
+
+    @Override
+    public String buildKeysetPage(final String sqlString, final List<String> keys, final int pageSize) {
+        // rownum is assigned before ORDER BY, so the ordered query is wrapped
+        final String sql = "SELECT * FROM (" + sqlString + " ORDER BY " + StringUtils.join(keys, ", ")
+                           + ") WHERE rownum <= " + pageSize;
+
+        log.debug(sql);
+
+        return sql;
+    }
+
+    @Override
+    public String buildRowLocator() {
+        return "ROWIDTOCHAR(ROWID)";
+    }
+
+    @Override
+    public String buildRowLocatorPredicate() {
+        return "ROWID = CHARTOROWID(?)";
+    }
+
+    @Override
+    public String buildRandomInt(final int min, final int max) {
+        return "TRUNC(DBMS_RANDOM.VALUE(" + min + ", " + (max + 1) + "))";
+    }
+
+    @Override
+    public String buildChar(final String code) {
+        return "CHR(" + code + ")";
+    }
+
+    @Override
+    public String buildConcat(final List<String> expressions) {
+        return "(" + StringUtils.join(expressions, " || ") + ")";
+    }
+
+    /**
+     * Runs the table's DDL from DBMS_METADATA under the new name, keeping
+     * defaults, NOT NULL and identity columns.  Other constraints are left
+     * out, as their names would clash with the original table's.
+     */
+    @Override
+    public String buildCloneTable(final String newTable, final String tableName) {
+        final String transform = "DBMS_METADATA.SET_TRANSFORM_PARAM(DBMS_METADATA.SESSION_TRANSFORM, ";
+
+        return "DECLARE ddl CLOB; old_name VARCHAR2(261) := '\".\"' || UPPER('" + unqualified(tableName) + "') || '\"'; "
+               + "pos INTEGER; BEGIN "
+               + transform + "'SEGMENT_ATTRIBUTES', FALSE); "
+               + transform + "'CONSTRAINTS', FALSE); "
+               + transform + "'REF_CONSTRAINTS', FALSE); "
+               + "ddl := DBMS_METADATA.GET_DDL('TABLE', UPPER('" + unqualified(tableName) + "'), UPPER("
+               + buildSchemaName(tableName, "USER") + ")); "
+               + transform + "'DEFAULT'); "
+               + "pos := INSTR(ddl, old_name); "
+               + "EXECUTE IMMEDIATE SUBSTR(ddl, 1, pos) || '.\"' || UPPER('" + unqualified(newTable) + "') || '\"' "
+               + "|| SUBSTR(ddl, pos + LENGTH(old_name)); END;";
+    }
+
+    @Override
+    public List<String> buildSwapTables(final String tableName, final String newTable, final String oldTable) {
+        return Arrays.asList("ALTER TABLE " + tableName + " RENAME TO " + unqualified(oldTable),
+                             "ALTER TABLE " + newTable + " RENAME TO " + unqualified(tableName));
+    }
+
+    @Override
+    public String buildRenameIndex(final String tableName, final String indexName, final String newName) {
+        return "ALTER INDEX " + schemaPrefix(tableName) + indexName + " RENAME TO " + newName;
+    }
+
+    @Override
+    public List<String> buildBulkSessionSetup() {
+        return Collections.emptyList();
+    }
+
+    @Override
+    public List<String> buildBulkSessionRestore() {
+        return Collections.emptyList();
+    }
+
+    /**
+     * Updates skip unusable non unique indexes, as skip_unusable_indexes is
+     * true by default.
+     */
+    @Override
+    public List<String> buildBulkTableSetup(final String tableName, final List<IndexMetaData> indexes) {
+        final List<String> sql = new ArrayList<>();
+
+        sql.add("ALTER TABLE " + tableName + " DISABLE ALL TRIGGERS");
+
+        for (final IndexMetaData index : indexes) {
+            sql.add("ALTER INDEX " + schemaPrefix(tableName) + index.getName() + " UNUSABLE");
+        }
+
+        return sql;
+    }
+
+    @Override
+    public List<String> buildBulkTableRestore(final String tableName, final List<IndexMetaData> indexes) {
+        final List<String> sql = new ArrayList<>();
+
+        for (final IndexMetaData index : indexes) {
+            sql.add("ALTER INDEX " + schemaPrefix(tableName) + index.getName() + " REBUILD");
+        }
+
+        sql.add("ALTER TABLE " + tableName + " ENABLE ALL TRIGGERS");
+
+        return sql;
+    }
+
+    @Override
+    public String buildDropIndex(final String tableName, final String indexName) {
+        return "DROP INDEX " + schemaPrefix(tableName) + indexName;
+    }
+
+    /**
+     * NUM_ROWS is NULL until the table's statistics are gathered.
+     */
+    @Override
+    public String buildRowEstimate(final String tableName) {
+        return "SELECT NUM_ROWS FROM ALL_TABLES WHERE OWNER = UPPER(" + buildSchemaName(tableName, "USER")
+               + ") AND TABLE_NAME = UPPER('" + unqualified(tableName) + "')";
+    }
+
+    @Override
+    public String buildTriggerQuery(final String tableName) {
+        return "SELECT TRIGGER_NAME FROM ALL_TRIGGERS WHERE TABLE_OWNER = UPPER(" + buildSchemaName(tableName, "USER")
+               + ") AND TABLE_NAME = UPPER('" + unqualified(tableName) + "')";
+    }
+
+    @Override
+    public int getStreamingFetchSize() {
+        return getFetchSize();
+    }
 }
 
 
@@ -17,8 +17,13 @@
 
 package com.strider.datadefender.database.sqlbuilder;
 
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
 import java.util.Properties;
 
+import org.apache.commons.lang3.StringUtils;
+
 /**
  * @author Armenak Grigoryan
  */
@@ -38,4 +43,137 @@ public class PostgreSQLBuilder extends SQLBuilder {
         
         return sql.toString();
     }    
-}
\ No newline at end of file
+
+    /**
+     * hashtext returns an int4, cast before ABS as ABS(-2147483648) is out
+     * of its range.
+     */
+    @Override
+    public String buildHashPartitionPredicate(final List<String> keys, final int partitions, final int partition) {
+        return "MOD(ABS(CAST(hashtext(CONCAT_WS('|', " + StringUtils.join(keys, ", ") + ")) AS BIGINT)), "
+               + partitions + ") = " + partition;
+    }
+
+    /**
+     * The staging table is emptied on every commit, so it only ever holds the
+     * current batch.
+     */
+    @Override
+    public String buildCreateStagingTable(final String stagingTable, final String tableName, final List<String> keys,
+                                          final List<String> columns) {
+        return "CREATE TEMPORARY TABLE " + stagingTable + " ON COMMIT DELETE ROWS AS SELECT "
+               + buildStagingColumns(keys, columns) + " FROM " + tableName + " WITH NO DATA";
+    }
+
+    @Override
+    public String buildStagingUpdate(final String tableName, final String stagingTable, final List<String> keys,
+                                     final List<String> columns) {
+        final StringBuilder sql = new StringBuilder("UPDATE ").append(tableName).append(" AS tgt SET ");
+
+        for (int i = 0; i < columns.size(); ++i) {
+            if (i > 0) {
+                sql.append(", ");
+            }
+
+            sql.append(columns.get(i)).append(" = stg.").append(columns.get(i));
+        }
+
+        return sql.append(" FROM ").append(stagingTable).append(" AS stg WHERE ").append(buildStagingJoin(keys))
+                  .toString();
+    }
+
+    @Override
+    public String buildDropStagingTable(final String stagingTable) {
+        return "DROP TABLE IF EXISTS " + stagingTable;
+    }
+
+    @Override
+    public String buildRowLocator() {
+        return "ctid";
+    }
+
+    @Override
+    public String buildRowLocatorPredicate() {
+        return "ctid = CAST(? AS tid)";
+    }
+
+    @Override
+    public String buildRandomInt(final int min, final int max) {
+        return "(" + min + " + CAST(FLOOR(RANDOM() * " + (max - min + 1) + ") AS INTEGER))";
+    }
+
+    @Override
+    public String buildChar(final String code) {
+        return "CHR(" + code + ")";
+    }
+
+    @Override
+    public String buildConcat(final List<String> expressions) {
+        return "(" + StringUtils.join(expressions, " || ") + ")";
+    }
+
+    /**
+     * LIKE copies NOT NULL, defaults and CHECK constraints, unlike CREATE
+     * TABLE AS.
+     */
+    @Override
+    public String buildCloneTable(final String newTable, final String tableName) {
+        return "CREATE TABLE " + newTable + " (LIKE " + tableName + " INCLUDING DEFAULTS INCLUDING CONSTRAINTS)";
+    }
+
+    @Override
+    public List<String> buildSwapTables(final String tableName, final String newTable, final String oldTable) {
+        return Arrays.asList("ALTER TABLE " + tableName + " RENAME TO " + unqualified(oldTable),
+                             "ALTER TABLE " + newTable + " RENAME TO " + unqualified(tableName));
+    }
+
+    @Override
+    public String buildRenameIndex(final String tableName, final String indexName, final String newName) {
+        return "ALTER INDEX " + schemaPrefix(tableName) + indexName + " RENAME TO " + newName;
+    }
+
+    /**
+     * The replica role skips triggers, including those checking foreign
+     * keys.  Setting it requires superuser privileges.
+     */
+    @Override
+    public List<String> buildBulkSessionSetup() {
+        return Collections.singletonList("SET session_replication_role = replica");
+    }
+
+    @Override
+    public List<String> buildBulkSessionRestore() {
+        return Collections.singletonList("SET session_replication_role = DEFAULT");
+    }
+
+    @Override
+    public String buildDropIndex(final String tableName, final String indexName) {
+        return "DROP INDEX " + schemaPrefix(tableName) + indexName;
+    }
+
+    /**
+     * reltuples is updated by VACUUM and ANALYZE, and is negative (or 0 on
+     * older versions) for tables that were never analyzed.
+     */
+    @Override
+    public String buildRowEstimate(final String tableName) {
+        return "SELECT CAST(reltuples AS BIGINT) FROM pg_class WHERE oid = CAST('" + tableName + "' AS regclass)";
+    }
+
+    /**
+     * PostgreSQL's driver only reads rows through a cursor, fetch size at a
+     * time, when the connection isn't in auto-commit mode.
+     */
+    /**
+     * Internal triggers implement foreign keys, which are checked separately.
+     */
+    @Override
+    public String buildTriggerQuery(final String tableName) {
+        return "SELECT tgname FROM pg_trigger WHERE tgrelid = CAST('" + tableName + "' AS regclass) AND NOT tgisinternal";
+    }
+
+    @Override
+    public int getStreamingFetchSize() {
+        return getFetchSize();
+    }
+}
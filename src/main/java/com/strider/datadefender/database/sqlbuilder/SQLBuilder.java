@@ -19,20 +19,29 @@
 
 package com.strider.datadefender.database.sqlbuilder;
 
+import java.util.Collections;
+import java.util.List;
 import java.util.Properties;
 
+import org.apache.commons.lang3.StringUtils;
+
+import com.strider.datadefender.database.metadata.IndexMetaData;
 import com.strider.datadefender.utils.CommonUtils;
 import org.apache.log4j.Logger;
 import static org.apache.log4j.Logger.getLogger;
 
 /**
- * Provides 'default' implementation which can be overridden.
+ * Provides 'default' implementation which can be overridden.  Statements
+ * without a portable form are left to the vendor's builder.
  * @author Akira Matsuo
  */
 public abstract class SQLBuilder implements ISQLBuilder {
     
     private static final Logger log = getLogger(SQLBuilder.class);    
 
+    /** Prefix of the key columns of staging tables. */
+    protected static final String STAGING_KEY = "dd_key";
+
     /* changed to public to allow use o databaseProperties object in MSSQLSQLBuilder.java */
     public final Properties databaseProperties;
 
@@ -65,4 +74,187 @@ public abstract class SQLBuilder implements ISQLBuilder {
 
         return prefixAndTableName;
     }
+
+    @Override
+    public String buildKeysetPredicate(final List<String> keys) {
+        final StringBuilder sql = new StringBuilder();
+
+        for (int i = 0; i < keys.size(); ++i) {
+            if (i > 0) {
+                sql.append(" OR ");
+            }
+
+            sql.append('(');
+
+            for (int j = 0; j < i; ++j) {
+                sql.append(keys.get(j)).append(" = ? AND ");
+            }
+
+            sql.append(keys.get(i)).append(" > ?)");
+        }
+
+        return sql.toString();
+    }
+
+    /**
+     * Returns the select list of the staging table: the keys aliased as
+     * dd_key0, dd_key1... followed by the columns.
+     * @param keys
+     * @param columns
+     * @return
+     */
+    protected String buildStagingColumns(final List<String> keys, final List<String> columns) {
+        final StringBuilder sql = new StringBuilder();
+
+        for (int i = 0; i < keys.size(); ++i) {
+            sql.append(keys.get(i)).append(" AS ").append(STAGING_KEY).append(i).append(", ");
+        }
+
+        return sql.append(StringUtils.join(columns, ", ")).toString();
+    }
+
+    /**
+     * Returns the join condition of the target table (aliased tgt) and
+     * staging table (aliased stg).
+     * @param keys
+     * @return
+     */
+    protected String buildStagingJoin(final List<String> keys) {
+        final StringBuilder sql = new StringBuilder();
+
+        for (int i = 0; i < keys.size(); ++i) {
+            if (i > 0) {
+                sql.append(" AND ");
+            }
+
+            sql.append("tgt.").append(keys.get(i)).append(" = stg.").append(STAGING_KEY).append(i);
+        }
+
+        return sql.toString();
+    }
+
+    /**
+     * Returns a MERGE statement updating the matched rows of tableName
+     * (aliased tgt) from the staging table (aliased stg).
+     * @param tableName
+     * @param stagingTable
+     * @param keys
+     * @param columns
+     * @return
+     */
+    protected String buildStagingMerge(final String tableName, final String stagingTable, final List<String> keys,
+                                       final List<String> columns) {
+        final StringBuilder sql = new StringBuilder("MERGE INTO ").append(tableName)
+                                                                  .append(" tgt USING ")
+                                                                  .append(stagingTable)
+                                                                  .append(" stg ON (")
+                                                                  .append(buildStagingJoin(keys))
+                                                                  .append(") WHEN MATCHED THEN UPDATE SET ");
+
+        for (int i = 0; i < columns.size(); ++i) {
+            if (i > 0) {
+                sql.append(", ");
+            }
+
+            sql.append(columns.get(i)).append(" = stg.").append(columns.get(i));
+        }
+
+        return sql.toString();
+    }
+
+    @Override
+    public String buildStagingTableName(final String tableName) {
+        return "dd_stg_" + tableName.replaceAll("\\W", "_");
+    }
+
+    @Override
+    public String buildDropStagingTable(final String stagingTable) {
+        return "DROP TABLE " + stagingTable;
+    }
+
+    /**
+     * Returns the schema prefix of the name, including the dot, or an empty
+     * string.
+     * @param name
+     * @return
+     */
+    protected static String schemaPrefix(final String name) {
+        return name.substring(0, name.lastIndexOf('.') + 1);
+    }
+
+    /**
+     * Returns the name without its schema prefix.
+     * @param name
+     * @return
+     */
+    protected static String unqualified(final String name) {
+        return name.substring(name.lastIndexOf('.') + 1);
+    }
+
+    /**
+     * Returns the schema prefix of the name as a string literal, or
+     * currentSchema if the name has no prefix.
+     * @param name
+     * @param currentSchema expression returning the connection's schema
+     * @return
+     */
+    protected static String buildSchemaName(final String name, final String currentSchema) {
+        final String prefix = schemaPrefix(name);
+
+        return prefix.isEmpty() ? currentSchema : "'" + prefix.substring(0, prefix.length() - 1) + "'";
+    }
+
+    /**
+     * There is no row locator by default, so rows are located by their keys.
+     */
+    @Override
+    public String buildRowLocator() {
+        return null;
+    }
+
+    @Override
+    public String buildRowLocatorPredicate() {
+        return null;
+    }
+
+    @Override
+    public String buildChar(final String code) {
+        return "CHAR(" + code + ")";
+    }
+
+    @Override
+    public String buildConcat(final List<String> expressions) {
+        return "CONCAT(" + StringUtils.join(expressions, ", ") + ")";
+    }
+
+    @Override
+    public String buildCloneTable(final String newTable, final String tableName) {
+        return "CREATE TABLE " + newTable + " AS SELECT * FROM " + tableName + " WHERE 1 = 0";
+    }
+
+    @Override
+    public List<String> buildAddPrimaryKey(final String tableName, final List<String> keys) {
+        return Collections.singletonList("ALTER TABLE " + tableName + " ADD PRIMARY KEY (" + StringUtils.join(keys, ", ")
+                                         + ")");
+    }
+
+    @Override
+    public String buildKeysetPage(final String sqlString, final List<String> keys, final int pageSize) {
+        return buildSelectWithLimit(sqlString + " ORDER BY " + StringUtils.join(keys, ", "), pageSize);
+    }
+
+    @Override
+    public List<String> buildBulkTableSetup(final String tableName, final List<IndexMetaData> indexes) {
+        return Collections.emptyList();
+    }
+
+    @Override
+    public List<String> buildBulkTableRestore(final String tableName, final List<IndexMetaData> indexes) {
+        return Collections.emptyList();
+    }
+
+    @Override
+    public int getFetchSize() {
+        return Integer.parseInt(databaseProperties.getProperty("fetch_size", String.valueOf(DEFAULT_FETCH_SIZE)));
+    }
 }
\ No newline at end of file
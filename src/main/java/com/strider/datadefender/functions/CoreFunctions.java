@@ -18,25 +18,43 @@
 
 package com.strider.datadefender.functions;
 
+import com.strider.datadefender.database.sqlbuilder.ISQLBuilder;
+import com.strider.datadefender.utils.FeistelPermutation;
+import com.strider.datadefender.utils.FileMappingStore;
+import com.strider.datadefender.utils.HeapMappingStore;
+import com.strider.datadefender.utils.IMappingStore;
+import com.strider.datadefender.utils.PackedWordList;
 import com.strider.datadefender.utils.Xeger;
 import java.sql.Connection;
 import java.sql.ResultSet;
 import java.sql.SQLException;
+import java.sql.SQLFeatureNotSupportedException;
 import java.sql.Statement;
+import java.io.InputStream;
 import java.io.InputStreamReader;
 import java.io.BufferedReader;
 import java.io.FileReader;
 import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
 import java.text.DecimalFormat;
 import java.util.Collections;
-import java.util.HashMap;
 import java.util.Map;
-import java.util.Iterator;
 import java.util.ArrayList;
 import java.util.List;
 import java.util.Locale;
+import java.util.NoSuchElementException;
 import java.util.Random;
-import java.util.Scanner;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Consumer;
 import org.apache.commons.lang3.RandomStringUtils;
 
 import org.apache.commons.lang3.StringUtils;
@@ -44,19 +62,121 @@ import org.apache.log4j.Logger;
 import static org.apache.log4j.Logger.getLogger;
 
 /**
+ * Anonymizing functions referenced by the requirements.
+ * 
+ * The lists of values read from files and database columns are shared by
+ * all instances and threads: each list is loaded once, and never modified
+ * afterwards.  Lists are walked in a pseudo-random order computed from a
+ * shared counter instead of being shuffled, so functions can be called
+ * concurrently, e.g. by the anonymizer pipeline's transformer threads,
+ * without locking.  Random numbers come from ThreadLocalRandom.
+ * 
  * @author Armenak Grigoryan
  */
 public class CoreFunctions {
     
     private static final Logger log = getLogger(CoreFunctions.class);
 
-    private static Random rand = new Random();    
+    private static final Map<String, List<String>> stringLists = new ConcurrentHashMap<>();
+    private static final Map<String, ShuffleCursor> shuffleCursors = new ConcurrentHashMap<>();
+    private static final Map<String, IMappingStore> predictableShuffle = new ConcurrentHashMap<>();
+    private static final Map<String, SamplePool> samplePools = new ConcurrentHashMap<>();
+    
+    /**
+     * Rows read by TABLESAMPLE for each value of a sample, leaving room for
+     * rows filtered out and for the variance of sampling.
+     */
+    private static final int TABLESAMPLE_ROWS_PER_VALUE = 4;
+    private static volatile List<String> lipsumParagraphs;
+    
+    /**
+     * Directory of the mapping files of mappedColumnShuffle, null to keep
+     * mappings in the heap.
+     */
+    private static volatile Path mappingDirectory;
+    
+    /**
+     * Walks a list in a different pseudo-random order on each pass, every
+     * value being returned once per pass.
+     * 
+     * Positions are taken from an atomic counter, and mapped to the list's
+     * indices by a permutation keyed by the pass number, so the list is never
+     * copied nor reshuffled, and threads share the same cursor.
+     */
+    private static class ShuffleCursor {
+        private final List<String> values;
+        private final FeistelPermutation permutation;
+        private final long seed = ThreadLocalRandom.current().nextLong();
+        private final AtomicLong position = new AtomicLong();
+        
+        ShuffleCursor(final List<String> values) {
+            this.values = values;
+            this.permutation = values.isEmpty() ? null : new FeistelPermutation(values.size());
+        }
+        
+        String next() {
+            if (permutation == null) {
+                throw new NoSuchElementException("No values to choose from");
+            }
+            final long next = position.getAndIncrement();
+            final long pass = next / values.size();
+            return values.get((int) permutation.permute(next % values.size(), seed + pass));
+        }
+        
+        /**
+         * Returns the number of complete passes over the list.
+         */
+        long getPasses() {
+            return values.isEmpty() ? 0 : position.get() / values.size();
+        }
+    }
     
-    private static Map<String, List<String>> stringLists = new HashMap<>();
-    private static Map<String, Iterator<String>> stringIters = new HashMap<>();
-    private static List<String> words = new ArrayList<>();
-    private static Map<String, Map<String, String>> predictableShuffle = new HashMap<>();
-    private static List<String> lipsumParagraphs = new ArrayList<>();
+    /**
+     * Walks a bounded random sample of a column's values, replaced by a new
+     * sample once all of its values have been returned.
+     * 
+     * The next sample is queried by the caller completing the pass, with its
+     * own connection, while other threads keep walking the current sample.
+     * It can't be queried in the background: connections aren't safe to use
+     * from two threads, and the caller's connection is in the middle of its
+     * own transaction.  If the query fails, the current sample is kept until
+     * its next pass is complete.
+     */
+    private static class SamplePool {
+        private final String name;
+        private final AtomicBoolean refreshing = new AtomicBoolean();
+        private volatile ShuffleCursor cursor;
+        private volatile List<String> values;
+        
+        SamplePool(final String name, final List<String> values) {
+            this.name = name;
+            this.values = values;
+            this.cursor = new ShuffleCursor(values);
+        }
+        
+        String next(final Callable<List<String>> sampler) {
+            final ShuffleCursor current = cursor;
+            final String value = current.next();
+            if (current.getPasses() > 0 && refreshing.compareAndSet(false, true)) {
+                refresh(sampler);
+            }
+            return value;
+        }
+        
+        private void refresh(final Callable<List<String>> sampler) {
+            try {
+                final List<String> sample = sampler.call();
+                if (!sample.isEmpty()) {
+                    values = Collections.unmodifiableList(sample);
+                }
+            } catch (Exception e) {
+                log.warn("Unable to refresh the sample of " + name + ", keeping the current one: " + e.toString());
+            } finally {
+                cursor = new ShuffleCursor(values);
+                refreshing.set(false);
+            }
+        }
+    }
     
     /**
      * Set after construction with a call to setDatabaseConnection.
@@ -68,11 +188,34 @@ public class CoreFunctions {
      */
     private String vendor;
     
-    static {        
-        log.debug("*** Adding list of words into array");
-        addWordsIntoArray();
-        log.debug("*** Array is populated with words from dictionary");
-    }    
+    /**
+     * Rows fetched per round trip by queries generating lists of values.
+     */
+    private int fetchSize = ISQLBuilder.DEFAULT_FETCH_SIZE;
+    
+    /**
+     * Mapping file names of this instance's database, by column and query.
+     */
+    private final Map<String, String> mappingFileNames = new ConcurrentHashMap<>();
+    
+    /**
+     * Holds the words of dictionary.txt, loaded on the first call to
+     * generateRandomString rather than when the class is loaded.
+     */
+    private static class Dictionary {
+        private static final PackedWordList WORDS = load();
+        
+        private static PackedWordList load() {
+            log.debug("*** Loading words from dictionary");
+            try (InputStream in = CoreFunctions.class.getClassLoader().getResourceAsStream("dictionary.txt")) {
+                final PackedWordList words = PackedWordList.load(in);
+                log.debug("*** Loaded " + words.size() + " words from dictionary");
+                return words;
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        }
+    }
     
     /**
      * Passes the active database connection.
@@ -91,6 +234,26 @@ public class CoreFunctions {
         this.vendor = vendor;
     }
     
+    public void setFetchSize(final int fetchSize) {
+        this.fetchSize = fetchSize;
+    }
+    
+    /**
+     * Sets the directory mappedColumnShuffle saves its mappings to, one file
+     * per database, column and query, or null to keep them in the heap.
+     * 
+     * Mappings are read back from existing files instead of being created
+     * again, so consecutive runs, and processes sharing the directory, map
+     * values the same way.  The files aren't updated when the columns
+     * change: values which aren't part of a mapping are mapped by their hash
+     * code, and deleting a file creates it again on the next run.
+     * 
+     * @param directory 
+     */
+    public static void setMappingDirectory(final Path directory) {
+        mappingDirectory = directory;
+    }
+    
     /**
      * Returns a List of paragraphs loaded from the lorem ipsum text file.
      * 
@@ -100,43 +263,48 @@ public class CoreFunctions {
      * @return the list of paragraphs
      * @throws IOException if an error occurs reading from the file.
      */
-    private List<String> getLipsumParagraphs() throws IOException {
-        if (lipsumParagraphs.isEmpty()) {
-            final BufferedReader br = new BufferedReader(new InputStreamReader(CoreFunctions.class.getClassLoader().getResourceAsStream("lipsum.txt")));
-            final StringBuilder sb = new StringBuilder();
-            for (String line; (line = br.readLine()) != null; ) {
-                if (line.trim().length() == 0) {
-                    lipsumParagraphs.add(sb.toString());
-                    sb.setLength(0);
-                    continue;
+    private static List<String> getLipsumParagraphs() throws IOException {
+        List<String> paragraphs = lipsumParagraphs;
+        if (paragraphs == null) {
+            synchronized (CoreFunctions.class) {
+                paragraphs = lipsumParagraphs;
+                if (paragraphs == null) {
+                    paragraphs = new ArrayList<>();
+                    try (BufferedReader br = new BufferedReader(new InputStreamReader(CoreFunctions.class.getClassLoader().getResourceAsStream("lipsum.txt")))) {
+                        final StringBuilder sb = new StringBuilder();
+                        for (String line; (line = br.readLine()) != null; ) {
+                            if (line.trim().length() == 0) {
+                                paragraphs.add(sb.toString());
+                                sb.setLength(0);
+                                continue;
+                            }
+                            sb.append(line);
+                        }
+                        paragraphs.add(sb.toString());
+                    }
+                    lipsumParagraphs = paragraphs = Collections.unmodifiableList(paragraphs);
                 }
-                sb.append(line);
             }
-            lipsumParagraphs.add(sb.toString());
         }
-        return lipsumParagraphs;
+        return paragraphs;
     }
     
     /**
      * Returns the next shuffled item from the named collection.
      * 
+     * All values are returned once before any of them is reused, across all
+     * the threads calling for the same collection.
+     * 
      * @param name
      * @return 
      */
     private String getNextShuffledItemFor(final String name) {
-        if (stringIters.containsKey(name)) {
-            final Iterator<String> iter = stringIters.get(name);
-            if (iter.hasNext()) {
-                return iter.next();
-            }
+        // get first, as computeIfAbsent locks the entry even when it's present on Java 8
+        ShuffleCursor cursor = shuffleCursors.get(name);
+        if (cursor == null) {
+            cursor = shuffleCursors.computeIfAbsent(name, k -> new ShuffleCursor(stringLists.get(k)));
         }
-        
-        final List<String> list = stringLists.get(name);
-        Collections.shuffle(list);
-        
-        final Iterator<String> iter = list.iterator();
-        stringIters.put(name, iter);
-        return iter.next();
+        return cursor.next();
     }
     
     /**
@@ -146,31 +314,111 @@ public class CoreFunctions {
      * randomized value for a given column value - however it does not guarantee
      * that more than one column value do not have the same randomized value.
      * 
-     * @param params
+     * @param keyName
+     * @param query
+     * @param value
      * @return 
      */
-    private String getPredictableShuffledValueFor(final String name, final String value) {
-        if (!predictableShuffle.containsKey(name)) {
-            final List<String> list = stringLists.get(name);
-            final List<String> shuffled = new ArrayList<>(list);
-            Collections.shuffle(shuffled);
-
-            final Map<String, String> smap = new HashMap<>();
-            final Iterator<String> lit = list.iterator();
-            final Iterator<String> sit = shuffled.iterator();
-            while (lit.hasNext()) {
-                smap.put(lit.next(), sit.next());
+    private String getPredictableShuffledValueFor(final String keyName, final String query, final String value)
+        throws SQLException, IOException {
+        final IMappingStore store = getMappingStore(keyName, query);
+        
+        final String mapped = store.get(value);
+        if (mapped == null) {
+            final int index = (int) (Math.abs((long) value.hashCode()) % store.size());
+            return store.getValue(index);
+        }
+        return mapped;
+    }
+    
+    private IMappingStore getMappingStore(final String keyName, final String query) throws SQLException, IOException {
+        final Path directory = mappingDirectory;
+        // the directory may hold other databases' mappings, so file names identify the database
+        final String name = (directory == null) ? keyName + query.hashCode() : getMappingFileName(keyName, query);
+        // get first, as computeIfAbsent locks the entry even when it's present on Java 8
+        final IMappingStore store = predictableShuffle.get(name);
+        if (store != null) {
+            return store;
+        }
+        if (directory == null) {
+            generateStringListFromDb(keyName, query);
+            return predictableShuffle.computeIfAbsent(name, k -> new HeapMappingStore(stringLists.get(k)));
+        }
+        
+        try {
+            return predictableShuffle.computeIfAbsent(name, k -> {
+                try {
+                    return openMappingFile(directory.resolve(name), keyName, query);
+                } catch (SQLException | IOException e) {
+                    throw new IllegalStateException(e);
+                }
+            });
+        } catch (IllegalStateException e) {
+            if (e.getCause() instanceof SQLException) {
+                throw (SQLException) e.getCause();
+            } else if (e.getCause() instanceof IOException) {
+                throw (IOException) e.getCause();
+            }
+            throw e;
+        }
+    }
+    
+    /**
+     * Returns the name of the column's mapping file: the column followed by a
+     * digest of the database's URL, catalog and schema and of the query, so
+     * databases sharing the mapping directory never read each other's values.
+     */
+    private String getMappingFileName(final String keyName, final String query) throws SQLException {
+        final String cached = mappingFileNames.get(keyName + query);
+        if (cached != null) {
+            return cached;
+        }
+        String schema = null;
+        try {
+            schema = db.getSchema();
+        } catch (AbstractMethodError | SQLFeatureNotSupportedException e) {
+            // JDBC 4.0 drivers, the URL and catalog identify the database
+        }
+        final String source = db.getMetaData().getURL() + '|' + db.getCatalog() + '|' + schema + '|' + query;
+        try {
+            final byte[] digest = MessageDigest.getInstance("SHA-256").digest(source.getBytes(StandardCharsets.UTF_8));
+            final StringBuilder sb = new StringBuilder(keyName).append('-');
+            for (int i = 0; i < 16; ++i) {
+                sb.append(String.format("%02x", digest[i]));
             }
-            predictableShuffle.put(name, smap);
+            final String fileName = sb.append(".map").toString();
+            mappingFileNames.put(keyName + query, fileName);
+            return fileName;
+        } catch (NoSuchAlgorithmException e) {
+            // every Java platform implements SHA-256
+            throw new IllegalStateException(e);
+        }
+    }
+    
+    /**
+     * Opens the mapping file, or creates it by streaming the query's values
+     * to it, without loading them in the heap.
+     */
+    private FileMappingStore openMappingFile(final Path file, final String keyName, final String query)
+        throws SQLException, IOException {
+        if (Files.exists(file)) {
+            log.info("*** reading mapping of " + keyName + " from " + file);
+            return FileMappingStore.open(file);
         }
         
-        final Map<String, String> map = predictableShuffle.get(name);
-        if (!map.containsKey(value)) {
-            final String[] vals = map.values().toArray(new String[map.size()]);
-            final int index = (int) Math.abs((long) value.hashCode()) % vals.length;
-            return vals[index];
+        log.info("*** writing mapping of " + keyName + " to " + file);
+        try (FileMappingStore.Writer writer = FileMappingStore.create(file)) {
+            streamStringList(keyName, query, value -> {
+                try {
+                    writer.add(value);
+                } catch (IOException e) {
+                    throw new UncheckedIOException(e);
+                }
+            });
+            return writer.finish();
+        } catch (UncheckedIOException e) {
+            throw e.getCause();
         }
-        return map.get(value);
     }
     
     public String generateStringFromPattern(final String regex) {
@@ -190,15 +438,21 @@ public class CoreFunctions {
      * @throws java.io.IOException
      */
     public String randomStringFromFile(final String file) throws IOException {
-        if (!stringLists.containsKey(file)) {
-            log.info("*** reading from " + file);
-            final List<String> values = new ArrayList<>();
-            try (BufferedReader br = new BufferedReader(new FileReader(file))) {
-                for (String line; (line = br.readLine()) != null; ) {
-                    values.add(line);
+        try {
+            stringLists.computeIfAbsent(file, k -> {
+                log.info("*** reading from " + file);
+                final List<String> values = new ArrayList<>();
+                try (BufferedReader br = new BufferedReader(new FileReader(file))) {
+                    for (String line; (line = br.readLine()) != null; ) {
+                        values.add(line);
+                    }
+                } catch (IOException e) {
+                    throw new UncheckedIOException(e);
                 }
-            }
-            stringLists.put(file, values);
+                return Collections.unmodifiableList(values);
+            });
+        } catch (UncheckedIOException e) {
+            throw e.getCause();
         }
 		
         return getNextShuffledItemFor(file);
@@ -213,23 +467,133 @@ public class CoreFunctions {
      * @throws java.sql.SQLException 
      */
     protected void generateStringListFromDb(final String keyName, final String query) throws SQLException {
-        if (!stringLists.containsKey(keyName + query.hashCode())) {
-            log.info("*** reading from database column: " + keyName);
-            final List<String> values = new ArrayList<>();
-            
-            log.debug("Query:" + query);
-            try (Statement stmt = db.createStatement(); ResultSet rs = stmt.executeQuery(query)) {
+        // the list is loaded once, other threads asking for it wait until it's read
+        try {
+            stringLists.computeIfAbsent(keyName + query.hashCode(), k -> {
+                try {
+                    return Collections.unmodifiableList(queryStringList(keyName, query));
+                } catch (SQLException e) {
+                    throw new IllegalStateException(e);
+                }
+            });
+        } catch (IllegalStateException e) {
+            if (e.getCause() instanceof SQLException) {
+                throw (SQLException) e.getCause();
+            }
+            throw e;
+        }
+    }
+    
+    private List<String> queryStringList(final String keyName, final String query) throws SQLException {
+        final List<String> values = new ArrayList<>();
+        streamStringList(keyName, query, values::add);
+        return values;
+    }
+    
+    private void streamStringList(final String keyName, final String query, final Consumer<String> values)
+        throws SQLException {
+        log.info("*** reading from database column: " + keyName);
+        
+        log.debug("Query:" + query);
+        boolean empty = true;
+        // the connection may be in use by other statements, so rows
+        // aren't streamed with MySQL's Integer.MIN_VALUE
+        try (Statement stmt = db.createStatement()) {
+            stmt.setFetchSize(fetchSize);
+            try (ResultSet rs = stmt.executeQuery(query)) {
                 while (rs.next()) {
-                    values.add(rs.getString(1));
+                    values.accept(rs.getString(1));
+                    empty = false;
                 }
             }
-            
-            if (values.isEmpty()) {
-                // TODO: throw a meaningful exception here
-                log.error("!!! Database column " + keyName + " did not return any values");
+        }
+        
+        if (empty) {
+            // TODO: throw a meaningful exception here
+            log.error("!!! Database column " + keyName + " did not return any values");
+        }
+    }
+    
+    /**
+     * Oracle stores empty strings as NULL, and doesn't compare them with ''.
+     */
+    private String buildNotEmptyPredicate(final String column) {
+        if ("oracle".equals(vendor)) {
+            return String.format("%s IS NOT NULL", column);
+        }
+        return String.format("%s IS NOT NULL AND %s <> ''", column, column);
+    }
+    
+    /**
+     * Returns a query selecting the column of at most poolSize random rows.
+     * 
+     * Rows rather than distinct values are sampled, so the database doesn't
+     * have to sort all of the column's values, and values appear in the
+     * sample about as often as they do in the table.
+     */
+    private String buildSampleQuery(final String table, final String column, final boolean excludeEmpty,
+                                    final int poolSize) {
+        final String where = excludeEmpty ? " WHERE " + buildNotEmptyPredicate(column) : "";
+        if ("oracle".equals(vendor)) {
+            return String.format("SELECT %s FROM (SELECT %s FROM %s%s ORDER BY DBMS_RANDOM.VALUE) WHERE ROWNUM <= %d",
+                                 column, column, table, where, poolSize);
+        } else if ("mssql".equals(vendor)) {
+            return String.format("SELECT TOP %d %s FROM %s%s ORDER BY NEWID()", poolSize, column, table, where);
+        } else if ("postgresql".equals(vendor)) {
+            return String.format("SELECT %s FROM %s%s ORDER BY random() LIMIT %d", column, table, where, poolSize);
+        }
+        return String.format("SELECT %s FROM %s%s ORDER BY RAND() LIMIT %d", column, table, where, poolSize);
+    }
+    
+    /**
+     * Returns the table's number of rows estimated from the catalog, or -1 if
+     * it isn't known.
+     */
+    private long estimateRows(final String table) throws SQLException {
+        final int dot = table.lastIndexOf('.');
+        final String query;
+        if ("postgresql".equals(vendor)) {
+            query = String.format("SELECT reltuples FROM pg_class WHERE oid = CAST('%s' AS regclass)", table);
+        } else if ("oracle".equals(vendor)) {
+            query = String.format("SELECT NUM_ROWS FROM ALL_TABLES WHERE OWNER = UPPER(%s) AND TABLE_NAME = UPPER('%s')",
+                                  dot == -1 ? "USER" : "'" + table.substring(0, dot) + "'", table.substring(dot + 1));
+        } else {
+            return -1;
+        }
+        try (Statement stmt = db.createStatement();
+             ResultSet rs = stmt.executeQuery(query)) {
+            final long rows = rs.next() ? rs.getLong(1) : -1;
+            return rs.wasNull() ? -1 : rows;
+        }
+    }
+    
+    /**
+     * Returns a query selecting the column of at most poolSize random rows,
+     * read from a sample of the table's pages with TABLESAMPLE (SAMPLE on
+     * Oracle) where the database supports it, so only the sampled rows are
+     * sorted.  MySQL and H2 have no table sampling, nor do tables without
+     * statistics on PostgreSQL and Oracle, which are sampled with
+     * buildSampleQuery.
+     */
+    String buildTableSampleQuery(final String table, final String column, final boolean excludeEmpty,
+                                 final int poolSize) throws SQLException {
+        final String where = excludeEmpty ? " WHERE " + buildNotEmptyPredicate(column) : "";
+        final long sampledRows = (long) poolSize * TABLESAMPLE_ROWS_PER_VALUE;
+        if ("mssql".equals(vendor)) {
+            return String.format("SELECT TOP %d %s FROM %s TABLESAMPLE (%d ROWS)%s ORDER BY NEWID()",
+                                 poolSize, column, table, sampledRows, where);
+        }
+        final long rows = estimateRows(table);
+        if (rows > sampledRows) {
+            final String percent = String.format(Locale.ENGLISH, "%.6f", Math.max(100.0 * sampledRows / rows, 0.000001));
+            if ("oracle".equals(vendor)) {
+                return String.format("SELECT %s FROM (SELECT %s FROM %s SAMPLE (%s)%s ORDER BY DBMS_RANDOM.VALUE) "
+                                     + "WHERE ROWNUM <= %d", column, column, table, percent, where, poolSize);
             }
-            stringLists.put(keyName + query.hashCode(), values);
+            return String.format("SELECT %s FROM %s TABLESAMPLE SYSTEM (%s)%s ORDER BY random() LIMIT %d",
+                                 column, table, percent, where, poolSize);
         }
+        return buildSampleQuery(table, column, excludeEmpty, poolSize);
     }
     
     /**
@@ -252,11 +616,7 @@ public class CoreFunctions {
         final StringBuilder sb = new StringBuilder();
         sb.append(String.format("SELECT DISTINCT %s FROM %s", column, table));
         if (excludeEmpty) {
-            if ("oracle".equals(vendor)) {
-                sb.append(String.format(" WHERE %s IS NOT NULL", column, column));                
-            } else {
-                sb.append(String.format(" WHERE %s IS NOT NULL AND %s <> ''", column, column));       
-            }
+            sb.append(" WHERE ").append(buildNotEmptyPredicate(column));
         }
         generateStringListFromDb(keyName, sb.toString());
         return getNextShuffledItemFor(keyName + sb.toString().hashCode());
@@ -281,6 +641,53 @@ public class CoreFunctions {
         return this.randomColumnValue(table, column, true);
     }
     
+    /**
+     * Returns a value from a random sample of at most poolSize of the
+     * column's rows, for columns with too many distinct values to be loaded
+     * with randomColumnValue.
+     * 
+     * All values of the sample are returned once before a new sample is used,
+     * the next one being queried on the database connection of the call that
+     * completed the pass, while other threads keep using the current one.
+     * The first sample is sorted from all of the column's rows; the next ones
+     * from a TABLESAMPLE of the table where supported, so the call
+     * completing a pass doesn't stall on a sort of the whole table.  Values
+     * are more likely to be sampled the more often they appear in the column.
+     * 
+     * @param table the table name
+     * @param column the column name
+     * @param excludeEmpty set to true to exclude empty values
+     * @param poolSize the maximum number of values held in memory
+     * @return the next item
+     * @throws SQLException 
+     */
+    public String randomColumnValue(final String table, final String column, final boolean excludeEmpty,
+                                    final int poolSize) throws SQLException {
+        final String keyName = table + "." + column;
+        final String query = buildSampleQuery(table, column, excludeEmpty, poolSize);
+        final String poolName = keyName + query.hashCode();
+        
+        // get first, as computeIfAbsent locks the entry even when it's present on Java 8
+        SamplePool pool = samplePools.get(poolName);
+        if (pool == null) {
+            try {
+                pool = samplePools.computeIfAbsent(poolName, k -> {
+                    try {
+                        return new SamplePool(keyName, Collections.unmodifiableList(queryStringList(keyName, query)));
+                    } catch (SQLException e) {
+                        throw new IllegalStateException(e);
+                    }
+                });
+            } catch (IllegalStateException e) {
+                if (e.getCause() instanceof SQLException) {
+                    throw (SQLException) e.getCause();
+                }
+                throw e;
+            }
+        }
+        return pool.next(() -> queryStringList(keyName, buildTableSampleQuery(table, column, excludeEmpty, poolSize)));
+    }
+    
     /**
      * Returns a 'predictable' shuffled value based on the passed value which is
      * guaranteed to return the same random value for the same column value.
@@ -294,20 +701,17 @@ public class CoreFunctions {
      * @param excludeEmpty
      * @return
      * @throws SQLException 
+     * @throws IOException if the mapping file can't be read or written
      */
-    public String mappedColumnShuffle(final String table, final String column, final String value, final boolean excludeEmpty) throws SQLException {
+    public String mappedColumnShuffle(final String table, final String column, final String value, final boolean excludeEmpty)
+        throws SQLException, IOException {
         final String keyName = table + "." + column;
         final StringBuilder sb = new StringBuilder();
         sb.append(String.format("SELECT DISTINCT %s FROM %s", column, table));
         if (excludeEmpty) {
-            if ("oracle".equals(vendor)) {
-                sb.append(String.format(" WHERE %s IS NOT NULL", column, column));                
-            } else {
-                sb.append(String.format(" WHERE %s IS NOT NULL AND %s <> ''", column, column));                
-            }
+            sb.append(" WHERE ").append(buildNotEmptyPredicate(column));
         }
-        generateStringListFromDb(keyName, sb.toString());
-        return getPredictableShuffledValueFor(keyName + sb.toString().hashCode(), value);
+        return getPredictableShuffledValueFor(keyName, sb.toString(), value);
     }
     
     /**
@@ -325,11 +729,37 @@ public class CoreFunctions {
      * @return
      * @deprecated 
      * @throws SQLException 
+     * @throws IOException if the mapping file can't be read or written
      */
-    public String mappedColumnShuffle(final String table, final String column, final String value) throws SQLException {
+    public String mappedColumnShuffle(final String table, final String column, final String value)
+        throws SQLException, IOException {
         return this.mappedColumnShuffle(table, column, value, false);
     }
     
+    /**
+     * Returns a 'predictable' shuffled value based on the passed value, chosen
+     * from a random sample of at most poolSize of the column's rows.
+     * 
+     * The sample is read once and kept for the whole run, so the same column
+     * value is always given the same shuffled value.  Values which aren't in
+     * the sample are mapped by their hash code.
+     * 
+     * @param table
+     * @param column
+     * @param value
+     * @param excludeEmpty
+     * @param poolSize the maximum number of values held in memory
+     * @return
+     * @throws SQLException 
+     * @throws IOException if the mapping file can't be read or written
+     */
+    public String mappedColumnShuffle(final String table, final String column, final String value,
+                                      final boolean excludeEmpty, final int poolSize) throws SQLException, IOException {
+        final String keyName = table + "." + column;
+        final String query = buildSampleQuery(table, column, excludeEmpty, poolSize);
+        return getPredictableShuffledValueFor(keyName, query, value);
+    }
+    
     public String randomFirstName(final String file) throws IOException {
 		return randomStringFromFile(file);
     }
@@ -415,10 +845,11 @@ public class CoreFunctions {
      * @return 
      */
     public String generateRandomString(final int num, final int length) {
-        final Random random = new Random();
+        final PackedWordList words = Dictionary.WORDS;
+        final Random random = ThreadLocalRandom.current();
         final StringBuilder randomString = new StringBuilder();
         for (int i = 0; i < num && randomString.length() < length; i++) {
-            final int rand = random.nextInt(479617);
+            final int rand = random.nextInt(words.size());
             randomString.append(words.get(rand)).append(' ');
         }
 
@@ -446,7 +877,7 @@ public class CoreFunctions {
      */
     public String lipsumSentences(final int min, final int max) throws IOException {
         final List<String> lp = getLipsumParagraphs();
-        final Random rand = new Random();
+        final Random rand = ThreadLocalRandom.current();
         final StringBuilder sb = new StringBuilder();
         
         final int nSentences = max - rand.nextInt((max + 1) - min);
@@ -489,7 +920,7 @@ public class CoreFunctions {
      */
     public String lipsumParagraphs(final int paragraphs) throws IOException {
         final List<String> lp = getLipsumParagraphs();
-        final Random rand = new Random();
+        final Random rand = ThreadLocalRandom.current();
         final StringBuilder sb = new StringBuilder();
         for (int i = 0, start = rand.nextInt(lp.size()); i < paragraphs; ++i, ++start) {
             sb.append(lp.get(start % lp.size())).append("\r\n\r\n");
@@ -528,7 +959,7 @@ public class CoreFunctions {
     }
  
     public String randomPhoneNumber() {
-        final Random rand = new Random();
+        final Random rand = ThreadLocalRandom.current();
         final int num1 = (rand.nextInt(7) + 1) * 100 + (rand.nextInt(8) * 10) + rand.nextInt(8);
         final int num2 = rand.nextInt(743);
         final int num3 = rand.nextInt(10000);
@@ -541,14 +972,6 @@ public class CoreFunctions {
         return phoneNumber;        
     }
     
-   private static void addWordsIntoArray() {
-        try (Scanner scanner = new Scanner(CoreFunctions.class.getClassLoader().getResourceAsStream("dictionary.txt"))) {
-            while (scanner.hasNext()) {
-                words.add(scanner.next());
-            }
-        }
-    }
-   
     /**
      * Returns a pseudo-random number between min and max, inclusive.
      *
@@ -559,8 +982,7 @@ public class CoreFunctions {
      */
     public static int randInt(final int min, final int max) {
 
-        rand = new Random();
-        final int randomNum = rand.nextInt((max - min) + 1) + min;
+        final int randomNum = ThreadLocalRandom.current().nextInt((max - min) + 1) + min;
 
         return randomNum;
     }   
@@ -20,9 +20,9 @@
 
 package com.strider.datadefender.report;
 
+import java.sql.PreparedStatement;
 import java.sql.ResultSet;
 import java.sql.SQLException;
-import java.sql.Statement;
 
 import java.util.ArrayList;
 import java.util.List;
@@ -52,8 +52,8 @@ public class ReportUtil {
 
         int rowCount = 0;
 
-        try (Statement stmt = factory.getConnection().createStatement();
-            ResultSet resultSet = stmt.executeQuery(queryCount);) {
+        try (PreparedStatement stmt = factory.prepareStreamingQuery(queryCount);
+            ResultSet resultSet = stmt.executeQuery();) {
             resultSet.next();
             rowCount = resultSet.getInt(1);
         } catch (SQLException sqle) {
@@ -75,8 +75,8 @@ public class ReportUtil {
 
         final List<String> sampleDataList = new ArrayList<>();
 
-        try (Statement stmt = factory.getConnection().createStatement();
-            ResultSet resultSet = stmt.executeQuery(querySample);) {
+        try (PreparedStatement stmt = factory.prepareStreamingQuery(querySample);
+            ResultSet resultSet = stmt.executeQuery();) {
             while (resultSet.next()) {
                 sampleDataList.add(resultSet.getString(1));
             }
@@ -20,6 +20,8 @@
 
 package com.strider.datadefender.requirement;
 
+import java.util.Arrays;
+import java.util.Collections;
 import java.util.List;
 
 import javax.xml.bind.annotation.XmlAccessType;
@@ -41,6 +43,10 @@ public class Table {
     private String        name;
     @XmlAttribute(name = "PKey")
     private String        pkey;
+    @XmlAttribute(name = "Strategy")
+    private String        strategy;
+    @XmlAttribute(name = "DependsOn")
+    private String        dependsOn;
     @XmlElementWrapper(name = "Columns")
     @XmlElement(name = "Column")
     private List<Column>  columns;
@@ -109,6 +115,36 @@ public class Table {
         this.pkey = pkey;
     }
 
+    /**
+     * Returns how the table is anonymized: "rebuild" to copy it into a new
+     * table, or null to update its rows in place.
+     * @return String
+     */
+    public String getStrategy() {
+        return this.strategy;
+    }
+
+    public void setStrategy(final String strategy) {
+        this.strategy = strategy;
+    }
+
+    /**
+     * Returns the names of the tables that must be anonymized before this
+     * one, e.g. parents whose mappings are shared with it.
+     * @return List<String>
+     */
+    public List<String> getDependsOn() {
+        if (this.dependsOn == null || this.dependsOn.trim().isEmpty()) {
+            return Collections.emptyList();
+        }
+
+        return Arrays.asList(this.dependsOn.trim().split("\\s*,\\s*"));
+    }
+
+    public void setDependsOn(final String dependsOn) {
+        this.dependsOn = dependsOn;
+    }
+
     /**
      * Returns a List of keys defining the primary key.
      *
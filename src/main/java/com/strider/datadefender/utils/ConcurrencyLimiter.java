@@ -0,0 +1,93 @@
+/*
+ *
+ * Copyright 2014-2018, Armenak Grigoryan, and individual contributors as indicated
+ * by the @authors tag. See the copyright.txt in the distribution for a
+ * full listing of individual contributors.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ */
+
+package com.strider.datadefender.utils;
+
+/**
+ * Limits the number of statements running at the same time with additive
+ * increase, multiplicative decrease (AIMD), as TCP congestion control does.
+ *
+ * Each statement taking longer than the target latency halves the limit, at
+ * most once per round of statements so a single slow period doesn't collapse
+ * it, and each faster one raises it by 1/limit, which adds about one slot per
+ * round.  The limit stays between 1 and the number of workers, so workers
+ * over the limit wait for a slot before querying the database.
+ *
+ * @author Armenak Grigoryan
+ */
+public class ConcurrencyLimiter {
+    private final int  maxLimit;
+    private final long targetNanos;
+    private double     limit;
+    private int        inFlight;
+    private int        sinceDecrease;
+
+    /**
+     * @param maxLimit the number of workers, and initial limit
+     * @param targetLatencyMillis
+     */
+    public ConcurrencyLimiter(final int maxLimit, final long targetLatencyMillis) {
+        this.maxLimit    = Math.max(1, maxLimit);
+        this.targetNanos = targetLatencyMillis * 1000000L;
+        this.limit       = this.maxLimit;
+    }
+
+    /**
+     * Waits until fewer statements than the current limit are running.
+     *
+     * @throws InterruptedException
+     */
+    public synchronized void acquire() throws InterruptedException {
+        while (inFlight >= getLimit()) {
+            wait();
+        }
+
+        ++inFlight;
+    }
+
+    /**
+     * Frees the slot taken by a statement, adjusting the limit with its
+     * latency.
+     *
+     * @param nanos time taken by the statement
+     */
+    public synchronized void release(final long nanos) {
+        --inFlight;
+        ++sinceDecrease;
+
+        if (nanos > targetNanos) {
+            if (sinceDecrease >= getLimit()) {
+                limit         = Math.max(1, limit / 2);
+                sinceDecrease = 0;
+            }
+        } else {
+            limit = Math.min(maxLimit, limit + 1 / limit);
+        }
+
+        notifyAll();
+    }
+
+    /**
+     * Returns the number of statements allowed to run at the same time.
+     *
+     * @return int
+     */
+    public synchronized int getLimit() {
+        return (int) limit;
+    }
+}
@@ -0,0 +1,105 @@
+/*
+ *
+ * Copyright 2014-2018, Armenak Grigoryan, and individual contributors as indicated
+ * by the @authors tag. See the copyright.txt in the distribution for a
+ * full listing of individual contributors.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ */
+
+package com.strider.datadefender.utils;
+
+/**
+ * Keyed pseudo-random permutation of the integers in [0, size), computed
+ * without storing it.
+ *
+ * Indices are encrypted by a balanced Feistel network over the smallest
+ * power of 4 holding size values; results falling outside the range are
+ * encrypted again ("cycle walking") until they land inside it, which takes
+ * fewer than 4 rounds on average.  Each key gives a different permutation,
+ * and permuting the same index with the same key always gives the same
+ * result.  Instances are immutable and can be shared between threads.
+ *
+ * The permutation is meant for shuffling, not for encryption.
+ *
+ * @author Armenak Grigoryan
+ */
+public class FeistelPermutation {
+    private static final int  ROUNDS = 4;
+    private static final long GOLDEN = 0x9E3779B97F4A7C15L;
+
+    private final long size;
+    private final int  halfBits;
+    private final long halfMask;
+
+    /**
+     * @param size number of indices permuted, at least 1
+     */
+    public FeistelPermutation(final long size) {
+        if (size < 1) {
+            throw new IllegalArgumentException("Unable to permute " + size + " values");
+        }
+
+        final int bits = 64 - Long.numberOfLeadingZeros(Math.max(1, size - 1));
+
+        this.size     = size;
+        this.halfBits = (bits + 1) / 2;
+        this.halfMask = (1L << halfBits) - 1;
+    }
+
+    public long getSize() {
+        return size;
+    }
+
+    /**
+     * Returns the position of the index in the permutation chosen by key.
+     *
+     * @param index in [0, size)
+     * @param key
+     * @return the permuted index, in [0, size)
+     */
+    public long permute(final long index, final long key) {
+        long permuted = index;
+
+        do {
+            permuted = encrypt(permuted, key);
+        } while (permuted >= size);
+
+        return permuted;
+    }
+
+    private long encrypt(final long value, final long key) {
+        long left  = value >>> halfBits;
+        long right = value & halfMask;
+
+        for (int round = 0; round < ROUNDS; ++round) {
+            final long next = left ^ (mix(right ^ mix(key + round * GOLDEN)) & halfMask);
+
+            left  = right;
+            right = next;
+        }
+
+        return (left << halfBits) | right;
+    }
+
+    /**
+     * SplitMix64's finalizer, spreading every input bit over the output.
+     */
+    private static long mix(final long value) {
+        long z = value;
+
+        z = (z ^ (z >>> 30)) * 0xBF58476D1CE4E5B9L;
+        z = (z ^ (z >>> 27)) * 0x94D049BB133111EBL;
+
+        return z ^ (z >>> 31);
+    }
+}
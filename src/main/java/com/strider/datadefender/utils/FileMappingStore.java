@@ -0,0 +1,449 @@
+/*
+ *
+ * Copyright 2014-2018, Armenak Grigoryan, and individual contributors as indicated
+ * by the @authors tag. See the copyright.txt in the distribution for a
+ * full listing of individual contributors.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ */
+
+package com.strider.datadefender.utils;
+
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.DataOutputStream;
+import java.io.IOException;
+
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileChannel.MapMode;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.FileAlreadyExistsException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+import java.util.Arrays;
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * Maps each value of a set to another value of the same set through a
+ * memory-mapped file, so the mapping is kept out of the heap and can be
+ * reused by later runs and other processes.
+ *
+ * The file holds the UTF-8 encoded values, the offset of each value, and an
+ * open addressing hash table of (hash code, index + 1) slots, probed
+ * linearly.  The value at index i is mapped to the value at the index given
+ * by a FeistelPermutation of i, keyed by a seed saved in the file's header,
+ * so no shuffled copy of the values is stored.
+ *
+ * Files are created with a Writer, and are never modified once written.
+ *
+ * @author Armenak Grigoryan
+ */
+public class FileMappingStore implements IMappingStore {
+    private static final int MAGIC       = 0x44444d31;
+    private static final int HEADER_SIZE = 32;
+    private static final int SLOT_SIZE   = 8;
+    private static final int MAX_VALUES  = 1 << 29;
+
+    private final Region             region;
+    private final int                count;
+    private final int                slotMask;
+    private final long               seed;
+    private final long               offsetsPosition;
+    private final long               slotsPosition;
+    private final FeistelPermutation permutation;
+
+    private FileMappingStore(final Region region, final Path file) throws IOException {
+        if (region.getInt(0) != MAGIC) {
+            throw new IOException(file + " is not a mapping file");
+        }
+
+        this.region          = region;
+        this.count           = region.getInt(4);
+        this.slotMask        = region.getInt(8) - 1;
+        this.seed            = region.getLong(16);
+        this.offsetsPosition = region.getLong(24);
+        this.slotsPosition   = offsetsPosition + 8L * count;
+        this.permutation     = (count == 0) ? null : new FeistelPermutation(count);
+    }
+
+    /**
+     * Maps an existing file.
+     *
+     * @param file
+     * @return FileMappingStore
+     * @throws IOException
+     */
+    public static FileMappingStore open(final Path file) throws IOException {
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            return new FileMappingStore(new Region(channel, MapMode.READ_ONLY, channel.size()), file);
+        }
+    }
+
+    /**
+     * Starts writing the values of a new file, created in the same directory
+     * under a temporary name.
+     *
+     * @param file
+     * @return Writer
+     * @throws IOException
+     */
+    public static Writer create(final Path file) throws IOException {
+        return new Writer(file);
+    }
+
+    @Override
+    public String get(final String value) {
+        if (count == 0) {
+            return null;
+        }
+
+        final byte[] bytes = encode(value);
+        final int    hash  = hash(value);
+
+        for (int slot = hash & slotMask; ; slot = (slot + 1) & slotMask) {
+            final long position = slotsPosition + (long) slot * SLOT_SIZE;
+            final int  entry    = region.getInt(position + 4);
+
+            if (entry == 0) {
+                return null;
+            }
+
+            if ((region.getInt(position) == hash) && matches(region, offsetsPosition, entry - 1, bytes)) {
+                return getValue((int) permutation.permute(entry - 1, seed));
+            }
+        }
+    }
+
+    @Override
+    public int size() {
+        return count;
+    }
+
+    @Override
+    public String getValue(final int index) {
+        final long position = region.getLong(offsetsPosition + 8L * index);
+        final int  length   = region.getInt(position);
+
+        if (length < 0) {
+            return null;
+        }
+
+        final byte[] bytes = new byte[length];
+
+        region.get(position + 4, bytes);
+
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    private static byte[] encode(final String value) {
+        return (value == null) ? null : value.getBytes(StandardCharsets.UTF_8);
+    }
+
+    /**
+     * String's hash code, spread by MurmurHash3's finalizer so consecutive
+     * codes don't fill consecutive slots.
+     */
+    private static int hash(final String value) {
+        int h = (value == null) ? 0 : value.hashCode();
+
+        h ^= h >>> 16;
+        h *= 0x85ebca6b;
+        h ^= h >>> 13;
+        h *= 0xc2b2ae35;
+        h ^= h >>> 16;
+
+        return h;
+    }
+
+    private static boolean matches(final Region region, final long offsetsPosition, final int index,
+                                   final byte[] bytes) {
+        final long position = region.getLong(offsetsPosition + 8L * index);
+        final int  length   = region.getInt(position);
+
+        if (bytes == null) {
+            return length < 0;
+        }
+
+        if (length != bytes.length) {
+            return false;
+        }
+
+        final byte[] stored = new byte[length];
+
+        region.get(position + 4, stored);
+
+        return Arrays.equals(stored, bytes);
+    }
+
+    /**
+     * Writes the values of a new mapping file.
+     *
+     * Values are streamed to the file as they are added, only their offsets
+     * and hash codes being kept in memory until the file is finished.
+     */
+    public static class Writer implements Closeable {
+        private final Path             file;
+        private final Path             temp;
+        private final DataOutputStream out;
+        private long                   position = HEADER_SIZE;
+        private long[]                 offsets  = new long[1024];
+        private int[]                  hashes   = new int[1024];
+        private int                    count;
+        private boolean                closed;
+
+        private Writer(final Path file) throws IOException {
+            this.file = file;
+            this.temp = Files.createTempFile(file.toAbsolutePath().getParent(), file.getFileName().toString(), ".tmp");
+            this.out  = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(temp), 65536));
+            out.write(new byte[HEADER_SIZE]);
+        }
+
+        /**
+         * Adds a value, which may be null, to the set.
+         *
+         * @param value
+         * @throws IOException
+         */
+        public void add(final String value) throws IOException {
+            if (count == MAX_VALUES) {
+                throw new IOException("Unable to map more than " + MAX_VALUES + " values in " + file);
+            }
+
+            if (count == offsets.length) {
+                offsets = Arrays.copyOf(offsets, count * 2);
+                hashes  = Arrays.copyOf(hashes, count * 2);
+            }
+
+            final byte[] bytes = encode(value);
+
+            offsets[count] = position;
+            hashes[count]  = hash(value);
+            ++count;
+
+            if (bytes == null) {
+                out.writeInt(-1);
+                position += 4;
+            } else {
+                out.writeInt(bytes.length);
+                out.write(bytes);
+                position += 4 + bytes.length;
+            }
+        }
+
+        /**
+         * Writes the offsets and the hash table, and renames the file into
+         * place.  If another process created the file in the meantime, its
+         * file is kept, so all processes use the same mapping.
+         *
+         * @return the FileMappingStore of the file
+         * @throws IOException
+         */
+        public FileMappingStore finish() throws IOException {
+            final long offsetsPosition = position;
+            int        slotCount       = 2;
+
+            while (slotCount < count * 2) {
+                slotCount <<= 1;
+            }
+
+            for (int i = 0; i < count; ++i) {
+                out.writeLong(offsets[i]);
+            }
+
+            // empty slots are zeros, written rather than left to the file system
+            final byte[] zeros = new byte[65536];
+
+            for (long left = (long) slotCount * SLOT_SIZE; left > 0; left -= zeros.length) {
+                out.write(zeros, 0, (int) Math.min(left, zeros.length));
+            }
+
+            out.close();
+            closed = true;
+
+            final long slotsPosition = offsetsPosition + 8L * count;
+            final int  slotMask      = slotCount - 1;
+
+            try (FileChannel channel = FileChannel.open(temp, StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+                final Region region = new Region(channel, MapMode.READ_WRITE, channel.size());
+
+                region.putInt(0, MAGIC);
+                region.putInt(4, count);
+                region.putInt(8, slotCount);
+                region.putLong(16, ThreadLocalRandom.current().nextLong());
+                region.putLong(24, offsetsPosition);
+
+                for (int i = 0; i < count; ++i) {
+                    insert(region, slotsPosition, slotMask, offsetsPosition, i);
+                }
+
+                region.force();
+            }
+
+            try {
+                Files.move(temp, file);
+            } catch (FileAlreadyExistsException e) {
+                Files.delete(temp);
+            }
+
+            return open(file);
+        }
+
+        /**
+         * Adds the value at index to the hash table, unless it's a duplicate
+         * of a value already added.
+         */
+        private void insert(final Region region, final long slotsPosition, final int slotMask,
+                            final long offsetsPosition, final int index) {
+            final int    hash   = hashes[index];
+            final int    length = region.getInt(offsets[index]);
+            final byte[] bytes  = (length < 0) ? null : new byte[length];
+
+            if (bytes != null) {
+                region.get(offsets[index] + 4, bytes);
+            }
+
+            for (int slot = hash & slotMask; ; slot = (slot + 1) & slotMask) {
+                final long position = slotsPosition + (long) slot * SLOT_SIZE;
+                final int  entry    = region.getInt(position + 4);
+
+                if (entry == 0) {
+                    region.putInt(position, hash);
+                    region.putInt(position + 4, index + 1);
+
+                    return;
+                }
+
+                if ((region.getInt(position) == hash) && matches(region, offsetsPosition, entry - 1, bytes)) {
+                    return;
+                }
+            }
+        }
+
+        /**
+         * Deletes the temporary file if the mapping wasn't finished.
+         */
+        @Override
+        public void close() throws IOException {
+            if (!closed) {
+                out.close();
+                closed = true;
+            }
+
+            Files.deleteIfExists(temp);
+        }
+    }
+
+
+    /**
+     * A file mapped in chunks of 1 GB, the most a MappedByteBuffer can hold
+     * being 2 GB.  Values crossing the end of a chunk are read byte by byte.
+     */
+    private static class Region {
+        private static final int  CHUNK_BITS = 30;
+        private static final long CHUNK_MASK = (1L << CHUNK_BITS) - 1;
+
+        private final MappedByteBuffer[] chunks;
+
+        Region(final FileChannel channel, final MapMode mode, final long size) throws IOException {
+            chunks = new MappedByteBuffer[(int) ((size + CHUNK_MASK) >>> CHUNK_BITS)];
+
+            for (int i = 0; i < chunks.length; ++i) {
+                final long start = (long) i << CHUNK_BITS;
+
+                chunks[i] = channel.map(mode, start, Math.min(CHUNK_MASK + 1, size - start));
+            }
+        }
+
+        private ByteBuffer chunk(final long position) {
+            return chunks[(int) (position >>> CHUNK_BITS)];
+        }
+
+        private boolean fits(final long position, final int length) {
+            return (position & CHUNK_MASK) + length <= chunk(position).limit();
+        }
+
+        int getInt(final long position) {
+            if (fits(position, 4)) {
+                return chunk(position).getInt((int) (position & CHUNK_MASK));
+            }
+
+            return (int) getBytes(position, 4);
+        }
+
+        long getLong(final long position) {
+            if (fits(position, 8)) {
+                return chunk(position).getLong((int) (position & CHUNK_MASK));
+            }
+
+            return getBytes(position, 8);
+        }
+
+        private long getBytes(final long position, final int length) {
+            long value = 0;
+
+            for (int i = 0; i < length; ++i) {
+                value = (value << 8) | (chunk(position + i).get((int) ((position + i) & CHUNK_MASK)) & 0xff);
+            }
+
+            return value;
+        }
+
+        void get(final long position, final byte[] dst) {
+            for (int done = 0; done < dst.length; ) {
+                final ByteBuffer chunk = chunk(position + done).duplicate();
+
+                chunk.position((int) ((position + done) & CHUNK_MASK));
+
+                final int length = Math.min(dst.length - done, chunk.remaining());
+
+                chunk.get(dst, done, length);
+                done += length;
+            }
+        }
+
+        void putInt(final long position, final int value) {
+            if (fits(position, 4)) {
+                chunk(position).putInt((int) (position & CHUNK_MASK), value);
+            } else {
+                putBytes(position, value, 4);
+            }
+        }
+
+        void putLong(final long position, final long value) {
+            if (fits(position, 8)) {
+                chunk(position).putLong((int) (position & CHUNK_MASK), value);
+            } else {
+                putBytes(position, value, 8);
+            }
+        }
+
+        private void putBytes(final long position, final long value, final int length) {
+            for (int i = 0; i < length; ++i) {
+                chunk(position + i).put((int) ((position + i) & CHUNK_MASK),
+                                        (byte) (value >>> (8 * (length - 1 - i))));
+            }
+        }
+
+        void force() {
+            for (final MappedByteBuffer chunk : chunks) {
+                chunk.force();
+            }
+        }
+    }
+}
+
+
+//~ Formatted by Jindent --- http://www.jindent.com
@@ -0,0 +1,71 @@
+/*
+ *
+ * Copyright 2014-2018, Armenak Grigoryan, and individual contributors as indicated
+ * by the @authors tag. See the copyright.txt in the distribution for a
+ * full listing of individual contributors.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ */
+
+package com.strider.datadefender.utils;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * Maps each value of a list to a value of the same list, shuffled, in a
+ * HashMap.
+ *
+ * @author Armenak Grigoryan
+ */
+public class HeapMappingStore implements IMappingStore {
+    private final Map<String, String> map = new HashMap<>();
+    private final String[]            values;
+
+    public HeapMappingStore(final List<String> list) {
+        final List<String> shuffled = new ArrayList<>(list);
+
+        Collections.shuffle(shuffled, ThreadLocalRandom.current());
+
+        final Iterator<String> lit = list.iterator();
+        final Iterator<String> sit = shuffled.iterator();
+
+        while (lit.hasNext()) {
+            map.put(lit.next(), sit.next());
+        }
+
+        values = map.values().toArray(new String[map.size()]);
+    }
+
+    @Override
+    public String get(final String value) {
+        return map.get(value);
+    }
+
+    @Override
+    public int size() {
+        return values.length;
+    }
+
+    @Override
+    public String getValue(final int index) {
+        return values[index];
+    }
+}
+
+
+//~ Formatted by Jindent --- http://www.jindent.com
@@ -0,0 +1,54 @@
+/*
+ *
+ * Copyright 2014-2018, Armenak Grigoryan, and individual contributors as indicated
+ * by the @authors tag. See the copyright.txt in the distribution for a
+ * full listing of individual contributors.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ */
+
+package com.strider.datadefender.utils;
+
+/**
+ * Maps each value of a set to another value of the same set.
+ *
+ * @author Armenak Grigoryan
+ */
+public interface IMappingStore {
+
+    /**
+     * Returns the value the passed value is mapped to.
+     *
+     * @param value
+     * @return the mapped value, or null if the value isn't part of the set
+     */
+    String get(String value);
+
+    /**
+     * Returns the number of values of the set.
+     *
+     * @return int
+     */
+    int size();
+
+    /**
+     * Returns the value at the passed index, so values outside of the set
+     * can be mapped by their hash code.
+     *
+     * @param index in [0, size)
+     * @return String
+     */
+    String getValue(int index);
+}
+
+
+//~ Formatted by Jindent --- http://www.jindent.com
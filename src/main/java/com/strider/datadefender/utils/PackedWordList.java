@@ -0,0 +1,121 @@
+/*
+ *
+ * Copyright 2014-2018, Armenak Grigoryan, and individual contributors as indicated
+ * by the @authors tag. See the copyright.txt in the distribution for a
+ * full listing of individual contributors.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ */
+
+package com.strider.datadefender.utils;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+
+import java.nio.charset.StandardCharsets;
+
+import java.util.Arrays;
+
+/**
+ * Read-only list of words packed into a single UTF-8 byte array, with the
+ * offset of each word in an int array.
+ *
+ * Compared to a List of Strings, a word costs its bytes plus 4 bytes of
+ * index instead of a String and its char array, so a dictionary of a few
+ * hundred thousand words takes a few megabytes.  Strings are only created
+ * by get.
+ *
+ * @author Armenak Grigoryan
+ */
+public class PackedWordList {
+    private final byte[] data;
+    private final int[]  offsets;
+
+    private PackedWordList(final byte[] data, final int[] offsets) {
+        this.data    = data;
+        this.offsets = offsets;
+    }
+
+    /**
+     * Reads the UTF-8 encoded, whitespace separated words of the stream.
+     *
+     * @param in
+     * @return PackedWordList
+     * @throws IOException
+     */
+    public static PackedWordList load(final InputStream in) throws IOException {
+        final ByteArrayOutputStream out    = new ByteArrayOutputStream();
+        final byte[]                buffer = new byte[8192];
+
+        for (int read; (read = in.read(buffer)) != -1; ) {
+            out.write(buffer, 0, read);
+        }
+
+        return pack(out.toByteArray());
+    }
+
+    /**
+     * Packs the words of text in place, dropping the whitespace between them.
+     */
+    private static PackedWordList pack(final byte[] text) {
+        int count = 0;
+
+        for (int i = 0; i < text.length; ++i) {
+            if (!isSpace(text[i]) && ((i == 0) || isSpace(text[i - 1]))) {
+                ++count;
+            }
+        }
+
+        final int[] offsets = new int[count + 1];
+        int         length  = 0;
+        int         word    = 0;
+
+        for (int i = 0; i < text.length; ++i) {
+            if (isSpace(text[i])) {
+                continue;
+            }
+
+            if ((i == 0) || isSpace(text[i - 1])) {
+                offsets[word++] = length;
+            }
+
+            text[length++] = text[i];
+        }
+
+        offsets[count] = length;
+
+        return new PackedWordList(Arrays.copyOf(text, length), offsets);
+    }
+
+    /**
+     * ASCII whitespace and control characters; bytes of multi-byte UTF-8
+     * characters are all negative.
+     */
+    private static boolean isSpace(final byte b) {
+        return (b >= 0) && (b <= ' ');
+    }
+
+    public int size() {
+        return offsets.length - 1;
+    }
+
+    /**
+     * Returns the word at the passed index.
+     *
+     * @param index
+     * @return String
+     */
+    public String get(final int index) {
+        return new String(data, offsets[index], offsets[index + 1] - offsets[index], StandardCharsets.UTF_8);
+    }
+}
@@ -0,0 +1,90 @@
+/*
+ *
+ * Copyright 2014-2018, Armenak Grigoryan, and individual contributors as indicated
+ * by the @authors tag. See the copyright.txt in the distribution for a
+ * full listing of individual contributors.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ */
+
+package com.strider.datadefender.utils;
+
+/**
+ * Token bucket limiting the number of permits (rows, statements) acquired per
+ * second, shared by all the threads of a run.
+ *
+ * The bucket holds up to a second's worth of permits, so short bursts go
+ * through unthrottled.  Permits acquired beyond the bucket's content are
+ * borrowed from the future: the caller sleeps until they would have been
+ * added, and later callers wait for the debt to be repaid first.  A rate of
+ * 0 or less doesn't limit anything.
+ *
+ * @author Armenak Grigoryan
+ */
+public class RateLimiter {
+    private final double rate;
+    private final double capacity;
+    private double       available;
+    private long         lastRefill;
+
+    /**
+     * @param permitsPerSecond maximum rate, or 0 for no limit
+     */
+    public RateLimiter(final double permitsPerSecond) {
+        this.rate       = permitsPerSecond;
+        this.capacity   = Math.max(1, permitsPerSecond);
+        this.available  = capacity;
+        this.lastRefill = System.nanoTime();
+    }
+
+    public boolean isLimited() {
+        return rate > 0;
+    }
+
+    /**
+     * Takes the passed number of permits, sleeping as long as needed to stay
+     * under the rate.
+     *
+     * @param permits
+     * @throws InterruptedException
+     */
+    public void acquire(final int permits) throws InterruptedException {
+        if (!isLimited() || permits <= 0) {
+            return;
+        }
+
+        final long wait = reserve(permits, System.nanoTime());
+
+        if (wait > 0) {
+            Thread.sleep(wait / 1000000L, (int) (wait % 1000000L));
+        }
+    }
+
+    /**
+     * Takes the passed number of permits at the passed time, returning how
+     * long the caller has to wait before using them.
+     *
+     * @param permits
+     * @param now time in nanoseconds, as returned by System.nanoTime()
+     * @return the time to wait in nanoseconds
+     */
+    synchronized long reserve(final int permits, final long now) {
+        if (now > lastRefill) {
+            available  = Math.min(capacity, available + (now - lastRefill) * rate / 1e9);
+            lastRefill = now;
+        }
+
+        available -= permits;
+
+        return (available >= 0) ? 0 : (long) (-available * 1e9 / rate);
+    }
+}
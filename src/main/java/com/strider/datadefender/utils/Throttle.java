@@ -0,0 +1,125 @@
+/*
+ *
+ * Copyright 2014-2018, Armenak Grigoryan, and individual contributors as indicated
+ * by the @authors tag. See the copyright.txt in the distribution for a
+ * full listing of individual contributors.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ */
+
+package com.strider.datadefender.utils;
+
+import java.util.Properties;
+
+import org.apache.log4j.Logger;
+
+import static org.apache.log4j.Logger.getLogger;
+
+/**
+ * Caps the load put on the database: rows and statements per second, and
+ * optionally the number of statements running at the same time, cut when
+ * their latency rises above a target.
+ *
+ * Read from the 'max_rows_per_second', 'max_statements_per_second' and
+ * 'target_latency_ms' properties; none of them are set by default, and the
+ * throttle then doesn't wait at all.
+ *
+ * @author Armenak Grigoryan
+ */
+public class Throttle {
+    private static final Logger log = getLogger(Throttle.class);
+
+    /** Throttle not limiting anything. */
+    public static final Throttle NONE = new Throttle(new RateLimiter(0), new RateLimiter(0), null);
+
+    private final RateLimiter        rows;
+    private final RateLimiter        statements;
+    private final ConcurrencyLimiter concurrency;
+
+    Throttle(final RateLimiter rows, final RateLimiter statements, final ConcurrencyLimiter concurrency) {
+        this.rows        = rows;
+        this.statements  = statements;
+        this.concurrency = concurrency;
+    }
+
+    /**
+     * Creates the throttle configured in the passed properties.
+     *
+     * @param props
+     * @param workers the number of threads querying the database, used as
+     *        the initial concurrency limit
+     * @return Throttle
+     */
+    public static Throttle fromProperties(final Properties props, final int workers) {
+        final double rowRate       = Double.parseDouble(props.getProperty("max_rows_per_second", "0"));
+        final double statementRate = Double.parseDouble(props.getProperty("max_statements_per_second", "0"));
+        final long   targetLatency = Long.parseLong(props.getProperty("target_latency_ms", "0"));
+
+        if (rowRate <= 0 && statementRate <= 0 && targetLatency <= 0) {
+            return NONE;
+        }
+
+        log.info("Throttling to " + (rowRate > 0 ? rowRate : "unlimited") + " rows/s, "
+                 + (statementRate > 0 ? statementRate : "unlimited") + " statements/s"
+                 + (targetLatency > 0 ? ", target latency " + targetLatency + " ms" : ""));
+
+        return new Throttle(new RateLimiter(rowRate), new RateLimiter(statementRate),
+                            (targetLatency > 0) ? new ConcurrencyLimiter(workers, targetLatency) : null);
+    }
+
+    /**
+     * Waits until the passed number of rows can be read or written.
+     *
+     * @param count
+     */
+    public void acquireRows(final int count) {
+        try {
+            rows.acquire(count);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /**
+     * Runs a statement once the rate and concurrency limits allow it,
+     * feeding its latency back to the concurrency limit.
+     *
+     * @param <T>
+     * @param <E>
+     * @param statement
+     * @return the statement's result
+     * @throws E
+     */
+    public <T, E extends Exception> T execute(final ISupplierWithException<T, E> statement) throws E {
+        try {
+            statements.acquire(1);
+
+            if (concurrency != null) {
+                concurrency.acquire();
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+
+            return statement.get();
+        }
+
+        final long start = System.nanoTime();
+
+        try {
+            return statement.get();
+        } finally {
+            if (concurrency != null) {
+                concurrency.release(System.nanoTime() - start);
+            }
+        }
+    }
+}
@@ -0,0 +1,594 @@
+/*
+ * Copyright 2014, Armenak Grigoryan, and individual contributors as indicated
+ * by the @authors tag. See the copyright.txt in the distribution for a
+ * full listing of individual contributors.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ */
+
+
+
+package com.strider.datadefender;
+
+import java.io.Reader;
+
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.sql.Timestamp;
+import java.sql.Types;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+
+import java.util.Arrays;
+import java.util.Properties;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import com.strider.datadefender.database.DatabaseAnonymizerException;
+import com.strider.datadefender.database.H2DB;
+
+/**
+ * Runs the anonymizer against the in memory h2 database.
+ *
+ * @author Armenak Grigoryan
+ */
+public class DatabaseAnonymizerTest extends H2DB {
+    private static final String TEST_DIR = "target/test-classes";
+
+    private Properties anonymizerProperties(final int parallelism) {
+        return anonymizerProperties(parallelism, 1);
+    }
+
+    private Properties anonymizerProperties(final int parallelism, final int partitions) {
+        final Properties props = new Properties();
+
+        props.setProperty("requirement", TEST_DIR + "/Requirement-H2DB-Anonymizer.xml");
+        props.setProperty("batch_size", "1");
+        props.setProperty("parallelism", String.valueOf(parallelism));
+        props.setProperty("partitions", String.valueOf(partitions));
+
+        return props;
+    }
+
+    private void assertAnonymized() throws SQLException {
+        consumeQuery(rs -> {
+            int rows = 0;
+
+            while (rs.next()) {
+                assertEquals("user@example.com", rs.getString("fname"));
+                assertEquals("", rs.getString("lname"));
+                rows++;
+            }
+
+            assertEquals(2, rows);
+        });
+
+        try (Statement stmt = con.createStatement();
+            ResultSet rs = stmt.executeQuery("SELECT login FROM ju_accounts")) {
+            int rows = 0;
+
+            while (rs.next()) {
+                assertEquals("login@example.com", rs.getString("login"));
+                rows++;
+            }
+
+            assertEquals(3, rows);
+        }
+    }
+
+    @Before
+    public void setUp() throws SQLException {
+        try (Statement stmt = con.createStatement()) {
+            stmt.executeUpdate("CREATE TABLE ju_accounts ( id INT NOT NULL, login VARCHAR(50), PRIMARY KEY (id) )");
+            stmt.executeUpdate("INSERT INTO ju_accounts ( id, login ) VALUES ( 1, 'cbravo' ), ( 2, 'ubernasconi' ), ( 3, 'admin' )");
+        }
+
+        con.commit();
+    }
+
+    @After
+    public void tearDown() throws SQLException {
+        try (Statement stmt = con.createStatement()) {
+            stmt.executeUpdate("DROP TABLE ju_accounts");
+            stmt.executeUpdate("UPDATE ju_users SET fname = 'Claudio', lname = 'Bravo' WHERE id = 1");
+            stmt.executeUpdate("UPDATE ju_users SET fname = 'Ugo', lname = 'Bernasconi' WHERE id = 2");
+        }
+
+        con.commit();
+    }
+
+    @Test
+    public void testAnonymize() throws DatabaseAnonymizerException, SQLException {
+        consumeQuery(this::assertInitialData);
+        new DatabaseAnonymizer().anonymize(factory, anonymizerProperties(1));
+        assertAnonymized();
+    }
+
+    @Test
+    public void testAnonymizeInParallel() throws DatabaseAnonymizerException, SQLException {
+        consumeQuery(this::assertInitialData);
+        new DatabaseAnonymizer().anonymize(factory, anonymizerProperties(2));
+        assertAnonymized();
+    }
+
+    @Test
+    public void testAnonymizePartitioned() throws DatabaseAnonymizerException, SQLException {
+        consumeQuery(this::assertInitialData);
+        new DatabaseAnonymizer().anonymize(factory, anonymizerProperties(1, 2));
+        assertAnonymized();
+    }
+
+    @Test
+    public void testAnonymizeHashPartitioned() throws DatabaseAnonymizerException, SQLException {
+        final Properties props = anonymizerProperties(2, 3);
+
+        props.setProperty("partition_mode", "hash");
+        consumeQuery(this::assertInitialData);
+        new DatabaseAnonymizer().anonymize(factory, props);
+        assertAnonymized();
+    }
+
+    @Test
+    public void testAnonymizePipelined() throws DatabaseAnonymizerException, SQLException {
+        final Properties props = anonymizerProperties(1);
+
+        props.setProperty("pipeline_transformers", "2");
+        props.setProperty("pipeline_queue_depth", "1");
+        consumeQuery(this::assertInitialData);
+        new DatabaseAnonymizer().anonymize(factory, props);
+        assertAnonymized();
+    }
+
+    @Test
+    public void testAnonymizeKeysetPages() throws DatabaseAnonymizerException, SQLException {
+        final Properties props = anonymizerProperties(1);
+
+        props.setProperty("page_size", "2");
+        consumeQuery(this::assertInitialData);
+        new DatabaseAnonymizer().anonymize(factory, props);
+        assertAnonymized();
+    }
+
+    @Test
+    public void testAnonymizeAdaptiveBatch() throws DatabaseAnonymizerException, SQLException {
+        final Properties props = anonymizerProperties(1);
+
+        props.setProperty("adaptive_batch", "true");
+        props.setProperty("batch_size", "1");
+        props.setProperty("min_batch_size", "1");
+        props.setProperty("max_batch_size", "2");
+        consumeQuery(this::assertInitialData);
+        new DatabaseAnonymizer().anonymize(factory, props);
+        assertAnonymized();
+    }
+
+    @Test
+    public void testAnonymizeThrottled() throws DatabaseAnonymizerException, SQLException {
+        final Properties props = anonymizerProperties(2);
+
+        props.setProperty("batch_size", "1");
+        props.setProperty("max_rows_per_second", "1000");
+        props.setProperty("max_statements_per_second", "1000");
+        props.setProperty("target_latency_ms", "1000");
+        consumeQuery(this::assertInitialData);
+        new DatabaseAnonymizer().anonymize(factory, props);
+        assertAnonymized();
+    }
+
+    @Test
+    public void testScheduleHistory() throws Exception {
+        final Path       history = Paths.get(TEST_DIR, "anonymizer.history");
+        final Properties props   = anonymizerProperties(2);
+
+        props.setProperty("requirement", TEST_DIR + "/Requirement-H2DB-DependsOn.xml");
+        props.setProperty("schedule_history", history.toString());
+
+        try {
+            new DatabaseAnonymizer().anonymize(factory, props);
+            assertAnonymized();
+
+            final Properties durations = new Properties();
+
+            try (Reader in = Files.newBufferedReader(history)) {
+                durations.load(in);
+            }
+
+            assertTrue(durations.containsKey("ju_users"));
+            assertTrue(durations.containsKey("ju_accounts"));
+        } finally {
+            Files.deleteIfExists(history);
+        }
+    }
+
+    @Test
+    public void testFunctionFailure() throws Exception {
+        final Path       history = Paths.get(TEST_DIR, "anonymizer-failure.history");
+        final Properties props   = anonymizerProperties(1);
+
+        // generateStringFromPattern throws an IllegalArgumentException for the invalid pattern
+        props.setProperty("requirement", TEST_DIR + "/Requirement-H2DB-Failing.xml");
+        props.setProperty("schedule_history", history.toString());
+
+        try {
+            new DatabaseAnonymizer().anonymize(factory, props);
+            consumeQuery(rs -> {
+                while (rs.next()) {
+                    assertEquals("user@example.com", rs.getString("fname"));
+                }
+            });
+
+            final Properties durations = new Properties();
+
+            try (Reader in = Files.newBufferedReader(history)) {
+                durations.load(in);
+            }
+
+            assertTrue(durations.containsKey("ju_users"));
+            assertFalse(durations.containsKey("ju_accounts"));
+        } finally {
+            Files.deleteIfExists(history);
+        }
+    }
+
+    @Test
+    public void testAnonymizeBulk() throws DatabaseAnonymizerException, SQLException {
+        final Properties props = anonymizerProperties(1);
+
+        props.setProperty("write_strategy", "bulk");
+        props.setProperty("batch_size", "2");
+        consumeQuery(this::assertInitialData);
+        new DatabaseAnonymizer().anonymize(factory, props);
+        assertAnonymized();
+    }
+
+    @Test
+    public void testAnonymizeCursor() throws DatabaseAnonymizerException, SQLException {
+        final Properties props = anonymizerProperties(1);
+
+        props.setProperty("write_strategy", "cursor");
+        props.setProperty("batch_size", "2");
+        consumeQuery(this::assertInitialData);
+        new DatabaseAnonymizer().anonymize(factory, props);
+        assertAnonymized();
+    }
+
+    @Test
+    public void testAnonymizePushdown() throws DatabaseAnonymizerException, SQLException {
+        final Properties props = anonymizerProperties(1);
+
+        props.setProperty("pushdown", "true");
+        consumeQuery(this::assertInitialData);
+        new DatabaseAnonymizer().anonymize(factory, props);
+        assertAnonymized();
+    }
+
+    private void assertExcludedColumn(final boolean pushdown, final boolean filter)
+            throws DatabaseAnonymizerException, SQLException {
+        final Properties props = anonymizerProperties(1);
+
+        props.setProperty("requirement", TEST_DIR + "/Requirement-H2DB-Exclusions.xml");
+        props.setProperty("pushdown", String.valueOf(pushdown));
+        props.setProperty("exclusion_filter", String.valueOf(filter));
+        new DatabaseAnonymizer().anonymize(factory, props);
+
+        try (Statement stmt = con.createStatement();
+            ResultSet rs = stmt.executeQuery("SELECT id, login FROM ju_accounts ORDER BY id")) {
+            assertTrue(rs.next());
+            assertEquals("login@example.com", rs.getString("login"));
+            assertTrue(rs.next());
+            assertEquals("login@example.com", rs.getString("login"));
+            assertTrue(rs.next());
+            assertEquals("admin", rs.getString("login"));
+            assertFalse(rs.next());
+        }
+    }
+
+    @Test
+    public void testExcludedColumn() throws DatabaseAnonymizerException, SQLException {
+        assertExcludedColumn(false, false);
+    }
+
+    @Test
+    public void testExcludedColumnPushdown() throws DatabaseAnonymizerException, SQLException {
+        assertExcludedColumn(true, false);
+    }
+
+    @Test
+    public void testExcludedColumnFilter() throws DatabaseAnonymizerException, SQLException {
+        assertExcludedColumn(false, true);
+    }
+
+    @Test
+    public void testCrossColumnExclusionPushdown() throws DatabaseAnonymizerException, SQLException {
+        final Properties props = anonymizerProperties(1);
+
+        props.setProperty("requirement", TEST_DIR + "/Requirement-H2DB-CrossExclusions.xml");
+        props.setProperty("pushdown", "true");
+        new DatabaseAnonymizer().anonymize(factory, props);
+
+        // lname is excluded by fname's original value
+        try (Statement stmt = con.createStatement();
+            ResultSet rs = stmt.executeQuery("SELECT fname, lname FROM ju_users ORDER BY id")) {
+            assertTrue(rs.next());
+            assertEquals("", rs.getString("fname"));
+            assertEquals("Bravo", rs.getString("lname"));
+            assertTrue(rs.next());
+            assertEquals("", rs.getString("fname"));
+            assertEquals("", rs.getString("lname"));
+            assertFalse(rs.next());
+        }
+    }
+
+    @Test
+    public void testRowLocator() throws DatabaseAnonymizerException, SQLException {
+        final Properties props = anonymizerProperties(1, 2);
+
+        props.setProperty("requirement", TEST_DIR + "/Requirement-H2DB-NoKey.xml");
+        props.setProperty("row_locator", "true");
+        props.setProperty("page_size", "1");
+
+        try (Statement stmt = con.createStatement()) {
+            stmt.executeUpdate("CREATE TABLE ju_nokey ( login VARCHAR(50) )");
+            stmt.executeUpdate("INSERT INTO ju_nokey ( login ) VALUES ( 'cbravo' ), ( 'cbravo' ), ( NULL )");
+        }
+
+        con.commit();
+
+        try {
+            new DatabaseAnonymizer().anonymize(factory, props);
+
+            try (Statement stmt = con.createStatement();
+                ResultSet rs = stmt.executeQuery("SELECT login FROM ju_nokey")) {
+                int rows = 0;
+
+                while (rs.next()) {
+                    assertEquals("login@example.com", rs.getString("login"));
+                    rows++;
+                }
+
+                assertEquals(3, rows);
+            }
+        } finally {
+            try (Statement stmt = con.createStatement()) {
+                stmt.executeUpdate("DROP TABLE ju_nokey");
+            }
+
+            con.commit();
+        }
+    }
+
+    @Test
+    public void testBulkSession() throws DatabaseAnonymizerException, SQLException {
+        final Properties props = anonymizerProperties(1, 2);
+
+        props.setProperty("bulk_session", "true");
+        props.setProperty("drop_indexes", "true");
+
+        try (Statement stmt = con.createStatement()) {
+            stmt.executeUpdate("CREATE INDEX ju_accounts_login ON ju_accounts ( login )");
+        }
+
+        con.commit();
+        new DatabaseAnonymizer().anonymize(factory, props);
+        assertAnonymized();
+
+        boolean hasIndex = false;
+
+        try (ResultSet rs = con.getMetaData().getIndexInfo(null, null, "JU_ACCOUNTS", false, false)) {
+            while (rs.next()) {
+                hasIndex |= "JU_ACCOUNTS_LOGIN".equals(rs.getString("INDEX_NAME"));
+            }
+        }
+
+        assertTrue(hasIndex);
+    }
+
+    @Test
+    public void testRebuild() throws DatabaseAnonymizerException, SQLException {
+        final Properties props = anonymizerProperties(1);
+
+        props.setProperty("requirement", TEST_DIR + "/Requirement-H2DB-Rebuild.xml");
+
+        try (Statement stmt = con.createStatement()) {
+            stmt.executeUpdate("CREATE INDEX ju_accounts_login ON ju_accounts ( login )");
+        }
+
+        con.commit();
+        new DatabaseAnonymizer().anonymize(factory, props);
+
+        try (Statement stmt = con.createStatement();
+            ResultSet rs = stmt.executeQuery("SELECT id, login FROM ju_accounts ORDER BY id")) {
+            assertTrue(rs.next());
+            assertEquals(1, rs.getInt("id"));
+            assertEquals("login@example.com", rs.getString("login"));
+            assertTrue(rs.next());
+            assertEquals(2, rs.getInt("id"));
+            assertEquals("login@example.com", rs.getString("login"));
+            assertTrue(rs.next());
+            assertEquals(3, rs.getInt("id"));
+            assertEquals("admin", rs.getString("login"));
+            assertFalse(rs.next());
+        }
+
+        try (ResultSet rs = con.getMetaData().getPrimaryKeys(null, null, "JU_ACCOUNTS")) {
+            assertTrue(rs.next());
+            assertEquals("ID", rs.getString("COLUMN_NAME"));
+        }
+
+        boolean hasIndex = false;
+
+        try (ResultSet rs = con.getMetaData().getIndexInfo(null, null, "JU_ACCOUNTS", false, false)) {
+            while (rs.next()) {
+                hasIndex |= "JU_ACCOUNTS_LOGIN".equals(rs.getString("INDEX_NAME"));
+            }
+        }
+
+        assertTrue(hasIndex);
+
+        try (ResultSet rs = con.getMetaData().getTables(null, null, "JU_ACCOUNTS_DD_%", null)) {
+            assertFalse(rs.next());
+        }
+    }
+
+    @Test
+    public void testRebuildTypes() throws DatabaseAnonymizerException, SQLException {
+        final Properties props   = anonymizerProperties(1);
+        final byte[]     photo   = { 0, 1, (byte) 0xff, 0x7f };
+        final byte[]     hash    = { (byte) 0xca, (byte) 0xfe };
+        final Timestamp  created = Timestamp.valueOf("2018-03-04 05:06:07.891");
+
+        props.setProperty("requirement", TEST_DIR + "/Requirement-H2DB-Rebuild.xml");
+
+        try (Statement stmt = con.createStatement()) {
+            stmt.executeUpdate("ALTER TABLE ju_accounts ADD COLUMN photo BLOB");
+            stmt.executeUpdate("ALTER TABLE ju_accounts ADD COLUMN notes CLOB");
+            stmt.executeUpdate("ALTER TABLE ju_accounts ADD COLUMN created TIMESTAMP");
+            stmt.executeUpdate("ALTER TABLE ju_accounts ADD COLUMN hash VARBINARY(8)");
+        }
+
+        try (PreparedStatement stmt = con.prepareStatement(
+                 "UPDATE ju_accounts SET photo = ?, notes = ?, created = ?, hash = ?")) {
+            stmt.setBytes(1, photo);
+            stmt.setString(2, "Line\nbreak");
+            stmt.setTimestamp(3, created);
+            stmt.setBytes(4, hash);
+            stmt.executeUpdate();
+        }
+
+        con.commit();
+        new DatabaseAnonymizer().anonymize(factory, props);
+
+        try (Statement stmt = con.createStatement();
+            ResultSet rs = stmt.executeQuery("SELECT login, photo, notes, created, hash FROM ju_accounts ORDER BY id")) {
+            int rows = 0;
+
+            while (rs.next()) {
+                assertArrayEquals(photo, rs.getBytes("photo"));
+                assertEquals("Line\nbreak", rs.getString("notes"));
+                assertEquals(created, rs.getTimestamp("created"));
+                assertArrayEquals(hash, rs.getBytes("hash"));
+                rows++;
+            }
+
+            assertEquals(3, rows);
+        }
+    }
+
+    @Test
+    public void testRebuildKeepsDefaults() throws DatabaseAnonymizerException, SQLException {
+        final Properties props = anonymizerProperties(1);
+
+        props.setProperty("requirement", TEST_DIR + "/Requirement-H2DB-Rebuild.xml");
+
+        try (Statement stmt = con.createStatement()) {
+            stmt.executeUpdate("ALTER TABLE ju_accounts ADD COLUMN status VARCHAR(10) DEFAULT 'active'");
+        }
+
+        con.commit();
+
+        try {
+            new DatabaseAnonymizer().anonymize(factory, props);
+
+            try (Statement stmt = con.createStatement();
+                ResultSet rs = stmt.executeQuery("SELECT login, status FROM ju_accounts WHERE id = 1")) {
+                assertTrue(rs.next());
+                assertEquals("login@example.com", rs.getString("login"));
+                assertEquals("active", rs.getString("status"));
+            }
+
+            // CREATE TABLE AS doesn't copy the default, so the original is kept
+            try (ResultSet rs = con.getMetaData().getTables(null, null, "JU_ACCOUNTS_DD_OLD", null)) {
+                assertTrue(rs.next());
+            }
+        } finally {
+            try (Statement stmt = con.createStatement()) {
+                stmt.executeUpdate("DROP TABLE IF EXISTS ju_accounts_dd_old");
+            }
+
+            con.commit();
+        }
+    }
+
+    @Test
+    public void testRebuildForeignKey() throws DatabaseAnonymizerException, SQLException {
+        final Properties props = anonymizerProperties(1);
+
+        props.setProperty("requirement", TEST_DIR + "/Requirement-H2DB-Rebuild.xml");
+
+        try (Statement stmt = con.createStatement()) {
+            stmt.executeUpdate("ALTER TABLE ju_accounts ADD COLUMN user_id MEDIUMINT REFERENCES ju_users ( id )");
+        }
+
+        con.commit();
+        new DatabaseAnonymizer().anonymize(factory, props);
+
+        try (Statement stmt = con.createStatement();
+            ResultSet rs = stmt.executeQuery("SELECT login FROM ju_accounts WHERE id = 1")) {
+            assertTrue(rs.next());
+            assertEquals("cbravo", rs.getString("login"));
+        }
+
+        try (ResultSet rs = con.getMetaData().getTables(null, null, "JU_ACCOUNTS_DD_%", null)) {
+            assertFalse(rs.next());
+        }
+    }
+
+    @Test
+    public void testResume() throws Exception {
+        final Path       checkpoint = Paths.get(TEST_DIR, "anonymizer.checkpoint");
+        final Properties props      = anonymizerProperties(1);
+
+        // ju_users is done, ju_accounts was interrupted after its first row
+        Files.write(checkpoint,
+                    Arrays.asList("table.ju_users.done=true",
+                                  "slice.ju_accounts.keys=1",
+                                  "slice.ju_accounts.key.0=1",
+                                  "slice.ju_accounts.type.0=" + Types.INTEGER,
+                                  "slice.ju_accounts.rows=1"));
+        props.setProperty("page_size", "2");
+        props.setProperty("checkpoint_file", checkpoint.toString());
+        props.setProperty("resume", "true");
+
+        try {
+            new DatabaseAnonymizer().anonymize(factory, props);
+            consumeQuery(this::assertInitialData);
+
+            try (Statement stmt = con.createStatement();
+                ResultSet rs = stmt.executeQuery("SELECT id, login FROM ju_accounts ORDER BY id")) {
+                assertTrue(rs.next());
+                assertEquals("cbravo", rs.getString("login"));
+                assertTrue(rs.next());
+                assertEquals("login@example.com", rs.getString("login"));
+                assertTrue(rs.next());
+                assertEquals("login@example.com", rs.getString("login"));
+            }
+
+            assertTrue(Files.readAllLines(checkpoint).contains("table.ju_accounts.done=true"));
+        } finally {
+            Files.deleteIfExists(checkpoint);
+        }
+    }
+}
+
+
+//~ Formatted by Jindent --- http://www.jindent.com
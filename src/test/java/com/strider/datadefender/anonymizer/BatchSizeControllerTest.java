@@ -0,0 +1,97 @@
+/*
+ *
+ * Copyright 2014-2018, Armenak Grigoryan, and individual contributors as indicated
+ * by the @authors tag. See the copyright.txt in the distribution for a
+ * full listing of individual contributors.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ */
+
+package com.strider.datadefender.anonymizer;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * @author Armenak Grigoryan
+ */
+public class BatchSizeControllerTest {
+    private static final long MILLI = 1000000L;
+
+    @Test
+    public void testFixed() {
+        final BatchSizeController controller = BatchSizeController.fixed(100);
+
+        controller.batchExecuted(100, 10 * MILLI);
+        controller.committed(100 * MILLI);
+        assertEquals(100, controller.getBatchSize());
+        assertEquals(100, controller.getCommitInterval());
+        assertEquals("batch size 100, commit interval 100, 10000 rows/s executed", controller.toString());
+    }
+
+    @Test
+    public void testGrowsWhileThroughputImproves() {
+        final BatchSizeController controller = BatchSizeController.adaptive(100, 10, 1000, 1000);
+
+        controller.batchExecuted(100, 10 * MILLI);
+        assertEquals(150, controller.getBatchSize());
+        controller.batchExecuted(150, 10 * MILLI);
+        assertEquals(225, controller.getBatchSize());
+
+        // throughput drops: turn back
+        controller.batchExecuted(225, 100 * MILLI);
+        assertEquals(150, controller.getBatchSize());
+
+        // partial batches aren't used for tuning
+        controller.batchExecuted(20, 100 * MILLI);
+        assertEquals(150, controller.getBatchSize());
+    }
+
+    @Test
+    public void testBounds() {
+        final BatchSizeController controller = BatchSizeController.adaptive(100, 50, 120, 1000);
+
+        controller.batchExecuted(100, 10 * MILLI);
+        assertEquals(120, controller.getBatchSize());
+        controller.batchExecuted(120, 10 * MILLI);
+        assertEquals(80, controller.getBatchSize());
+        controller.batchExecuted(80, (BatchSizeController.MAX_BATCH_MILLIS + 1) * MILLI);
+        assertEquals(53, controller.getBatchSize());
+        controller.batchExecuted(53, (BatchSizeController.MAX_BATCH_MILLIS + 1) * MILLI);
+        assertEquals(50, controller.getBatchSize());
+    }
+
+    @Test
+    public void testCommitInterval() {
+        final BatchSizeController controller = BatchSizeController.adaptive(100, 100, 100, 400);
+
+        controller.batchExecuted(100, 10 * MILLI);
+        controller.committed(5 * MILLI);
+        assertEquals(200, controller.getCommitInterval());
+        controller.batchExecuted(100, 10 * MILLI);
+        controller.committed(5 * MILLI);
+        controller.batchExecuted(100, 10 * MILLI);
+        controller.committed(5 * MILLI);
+        assertEquals(400, controller.getCommitInterval());
+
+        // cheap commits shrink it back towards the batch size
+        controller.batchExecuted(100, 100 * MILLI);
+        controller.committed(MILLI / 10);
+        assertEquals(200, controller.getCommitInterval());
+        assertTrue(controller.getBatchSize() <= controller.getCommitInterval());
+    }
+}
+
+
+//~ Formatted by Jindent --- http://www.jindent.com
@@ -0,0 +1,109 @@
+/*
+ *
+ * Copyright 2014-2018, Armenak Grigoryan, and individual contributors as indicated
+ * by the @authors tag. See the copyright.txt in the distribution for a
+ * full listing of individual contributors.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ */
+
+package com.strider.datadefender.anonymizer;
+
+import java.sql.Types;
+
+import java.util.Arrays;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * @author Armenak Grigoryan
+ */
+public class CheckpointTest {
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private RowBuffer row(final long sequence, final String key) {
+        final RowBuffer row = new RowBuffer(null, new String[] { key });
+
+        row.setSequence(sequence);
+
+        return row;
+    }
+
+    @Test
+    public void testTrackOutOfOrderCommits() throws Exception {
+        final String          file     = folder.getRoot() + "/anonymizer.checkpoint";
+        final ICommitListener listener = Checkpoint.create(file).track("users", new int[] { Types.INTEGER }, 10);
+
+        listener.committed(Arrays.asList(row(0, "a"), row(2, "c")));
+
+        Checkpoint checkpoint = Checkpoint.load(file);
+
+        assertArrayEquals(new String[] { "a" }, checkpoint.getLastKey("users"));
+        assertArrayEquals(new int[] { Types.INTEGER }, checkpoint.getKeyTypes("users"));
+        assertEquals(11, checkpoint.getRows("users"));
+
+        // the gap at 1 is filled, so everything up to 3 has been committed
+        listener.committed(Arrays.asList(row(1, "b"), row(3, "d")));
+        checkpoint = Checkpoint.load(file);
+        assertArrayEquals(new String[] { "d" }, checkpoint.getLastKey("users"));
+        assertEquals(14, checkpoint.getRows("users"));
+        assertFalse(checkpoint.isFinished("users"));
+    }
+
+    @Test
+    public void testFinish() throws Exception {
+        final String     file       = folder.getRoot() + "/anonymizer.checkpoint";
+        final Checkpoint checkpoint = Checkpoint.create(file);
+
+        checkpoint.track("users#0", new int[] { Types.INTEGER }, 0).committed(Arrays.asList(row(0, "1")));
+        checkpoint.finish("users");
+
+        final Checkpoint loaded = Checkpoint.load(file);
+
+        assertTrue(loaded.isFinished("users"));
+        assertNull(loaded.getLastKey("users#0"));
+        assertFalse(loaded.isFinished("accounts"));
+    }
+
+    @Test
+    public void testDottedNames() throws Exception {
+        final String     file       = folder.getRoot() + "/anonymizer.checkpoint";
+        final Checkpoint checkpoint = Checkpoint.create(file);
+        final String     schema     = Checkpoint.sliceId("a.b");
+        final String     partition  = Checkpoint.sliceId("a#1", 0);
+
+        checkpoint.track(schema, new int[] { Types.INTEGER }, 0).committed(Arrays.asList(row(0, "1")));
+        checkpoint.track(partition, new int[] { Types.INTEGER }, 0).committed(Arrays.asList(row(0, "2")));
+
+        // neither table's progress belongs to table "a"
+        checkpoint.finish("a");
+
+        final Checkpoint loaded = Checkpoint.load(file);
+
+        assertArrayEquals(new String[] { "1" }, loaded.getLastKey(schema));
+        assertArrayEquals(new String[] { "2" }, loaded.getLastKey(partition));
+        assertFalse(loaded.isFinished("a.b"));
+        assertNull(loaded.getLastKey(Checkpoint.sliceId("a", 1)));
+    }
+}
+
+
+//~ Formatted by Jindent --- http://www.jindent.com
@@ -0,0 +1,88 @@
+/*
+ * Copyright 2014, Armenak Grigoryan, and individual contributors as indicated
+ * by the @authors tag. See the copyright.txt in the distribution for a
+ * full listing of individual contributors.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ */
+
+
+package com.strider.datadefender.anonymizer;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import com.strider.datadefender.requirement.Column;
+import com.strider.datadefender.requirement.Exclude;
+
+/**
+ * @author Armenak Grigoryan
+ */
+public class ExclusionPlannerTest {
+    private Column column(final String name, final Exclude... exclusions) {
+        final Column column = new Column();
+
+        column.setName(name);
+
+        if (exclusions.length > 0) {
+            column.setExclusions(Arrays.asList(exclusions));
+        }
+
+        return column;
+    }
+
+    private Exclude exclude(final String name) {
+        final Exclude exclude = new Exclude();
+
+        exclude.setName(name);
+
+        return exclude;
+    }
+
+    @Test
+    public void testChangedRowPredicate() {
+        final Exclude admin = exclude("login");
+        final Exclude like  = exclude(null);
+        final Exclude only  = exclude(null);
+
+        admin.setEquals("admin");
+        like.setLike("%@Example.com");
+        only.setNotEquals("Active");
+
+        final List<Object> params = new ArrayList<>();
+
+        assertEquals("NOT ((login IS NOT NULL AND login = ?) OR (email IS NOT NULL AND LOWER(email) LIKE ?)) OR "
+                     + "NOT (NOT ((status IS NOT NULL AND status = ?)))",
+                     ExclusionPlanner.buildChangedRowPredicate(Arrays.asList(column("email", admin, like),
+                                                                             column("status", only)), params));
+        assertEquals(Arrays.asList("admin", "%@example.com", "Active"), params);
+    }
+
+    @Test
+    public void testNoPredicate() {
+        final List<Object> params = new ArrayList<>();
+        final Exclude      escape = exclude(null);
+
+        escape.setLike("100\\%");
+        assertNull(ExclusionPlanner.buildChangedRowPredicate(Arrays.asList(column("a", exclude("b")), column("c")),
+                                                             params));
+        assertNull(ExclusionPlanner.buildChangedRowPredicate(Arrays.asList(column("a", escape)), params));
+        assertTrue(params.isEmpty());
+    }
+}
@@ -0,0 +1,218 @@
+/*
+ * Copyright 2014, Armenak Grigoryan, and individual contributors as indicated
+ * by the @authors tag. See the copyright.txt in the distribution for a
+ * full listing of individual contributors.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ */
+
+
+package com.strider.datadefender.anonymizer;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.Reader;
+
+import java.lang.reflect.Proxy;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Properties;
+
+import org.junit.Test;
+
+import org.postgresql.PGConnection;
+import org.postgresql.copy.CopyManager;
+import org.postgresql.core.BaseConnection;
+
+import static org.junit.Assert.assertEquals;
+
+import com.strider.datadefender.database.H2DB;
+import com.strider.datadefender.database.metadata.MatchMetaData;
+import com.strider.datadefender.database.sqlbuilder.H2SQLBuilder;
+import com.strider.datadefender.database.sqlbuilder.ISQLBuilder;
+import com.strider.datadefender.requirement.Column;
+import com.strider.datadefender.requirement.Parameter;
+import com.strider.datadefender.requirement.Table;
+
+/**
+ * Runs the writer against h2, with COPY replaced by inserts into the staging
+ * table.
+ *
+ * @author Armenak Grigoryan
+ */
+public class PostgreSQLCopyWriterTest extends H2DB {
+
+    /**
+     * Inserts the rows of COPY's text format into the staging table.
+     */
+    private static class InsertCopyManager extends CopyManager {
+        InsertCopyManager() throws SQLException {
+            super((BaseConnection) Proxy.newProxyInstance(BaseConnection.class.getClassLoader(),
+                                                          new Class<?>[] { BaseConnection.class },
+                                                          (proxy, method, args) -> null));
+        }
+
+        @Override
+        public long copyIn(final String sql, final Reader from) throws SQLException, IOException {
+            final String         table  = sql.split(" ")[1];
+            final BufferedReader reader = new BufferedReader(from);
+            long                 rows   = 0;
+
+            for (String line = reader.readLine(); line != null; line = reader.readLine()) {
+                final String[] values = line.split("\t", -1);
+
+                try (PreparedStatement stmt = con.prepareStatement("INSERT INTO " + table + " VALUES ( ?, ?, ? )")) {
+                    for (int i = 0; i < values.length; ++i) {
+                        stmt.setString(i + 1, "\\N".equals(values[i]) ? null : values[i]);
+                    }
+
+                    rows += stmt.executeUpdate();
+                }
+            }
+
+            return rows;
+        }
+    }
+
+    /**
+     * Returns the test connection, unwrapping to a PGConnection whose COPY
+     * API inserts the rows.
+     */
+    private Connection copyConnection() throws SQLException {
+        final CopyManager  copyManager  = new InsertCopyManager();
+        final PGConnection pgConnection = (PGConnection) Proxy.newProxyInstance(
+                                              PGConnection.class.getClassLoader(),
+                                              new Class<?>[] { PGConnection.class },
+                                              (proxy, method, args) -> "getCopyAPI".equals(method.getName())
+                                                                       ? copyManager
+                                                                       : null);
+
+        return (Connection) Proxy.newProxyInstance(Connection.class.getClassLoader(),
+                                                   new Class<?>[] { Connection.class },
+                                                   (proxy, method, args) -> "unwrap".equals(method.getName())
+                                                                            ? pgConnection
+                                                                            : method.invoke(con, args));
+    }
+
+    /**
+     * Returns an h2 builder dropping the staging table if it exists, as the
+     * writer drops any left over staging table first.
+     */
+    private ISQLBuilder sqlBuilder() {
+        return new H2SQLBuilder(new Properties()) {
+            @Override
+            public String buildDropStagingTable(final String stagingTable) {
+                return "DROP TABLE IF EXISTS " + stagingTable;
+            }
+        };
+    }
+
+    private long countRows(final String table) throws SQLException {
+        try (Statement stmt = con.createStatement();
+            ResultSet rs = stmt.executeQuery("SELECT COUNT(*) FROM " + table)) {
+            rs.next();
+
+            return rs.getLong(1);
+        }
+    }
+
+    private Column column(final String name, final String function, final String email) {
+        final Column column = new Column();
+
+        column.setName(name);
+        column.setFunction("com.strider.datadefender.functions.CoreFunctions." + function);
+
+        if (email != null) {
+            final Parameter param = new Parameter();
+
+            param.setName("email");
+            param.setValue(email);
+            param.setType("String");
+            column.setParameters(Arrays.asList(param));
+        }
+
+        return column;
+    }
+
+    @Test
+    public void testCommitIntervalAboveBatchSize() throws Exception {
+        final Table table = new Table();
+
+        table.setColumns(Arrays.asList(column("fname", "staticEmail", "user@example.com"),
+                                       column("lname", "setEmptyString", null)));
+
+        final TablePlan           plan     = TablePlan.compile(table, Arrays.asList("id"),
+                                                 Arrays.asList("fname", "lname"), null, "h2");
+        final List<MatchMetaData> metaData = Arrays.asList(
+                                                 new MatchMetaData(null, "ju_users", null, null, "id", "Integer", 10),
+                                                 new MatchMetaData(null, "ju_users", null, null, "fname", "String", 50),
+                                                 new MatchMetaData(null, "ju_users", null, null, "lname", "String", 50));
+        final String              staging  = sqlBuilder().buildStagingTableName("ju_users");
+        final List<Long>          staged   = new ArrayList<>();
+
+        try {
+            final PostgreSQLCopyWriter writer = new PostgreSQLCopyWriter(copyConnection(), sqlBuilder(),
+                                                    "ju_users", plan, metaData, 1);
+
+            // the batch size grows to 2 after the first row, and so does the
+            // commit interval: both rows are committed together
+            writer.setBatchSizeController(BatchSizeController.adaptive(1, 1, 4, 4));
+            writer.addCommitListener(rows -> {
+                try {
+                    staged.add(countRows(staging));
+                } catch (SQLException e) {
+                    throw new IllegalStateException(e);
+                }
+            });
+
+            for (final String id : new String[] { "1", "2" }) {
+                final RowBuffer row = new RowBuffer(plan, new String[] { id, "fname", "lname" });
+
+                plan.anonymize(row, null);
+                writer.write(row);
+            }
+
+            writer.flush();
+            writer.close();
+            assertEquals(Arrays.asList(0L), staged);
+            consumeQuery(rs -> {
+                int rows = 0;
+
+                while (rs.next()) {
+                    assertEquals("user@example.com", rs.getString("fname"));
+                    assertEquals("", rs.getString("lname"));
+                    rows++;
+                }
+
+                assertEquals(2, rows);
+            });
+        } finally {
+            try (Statement stmt = con.createStatement()) {
+                stmt.executeUpdate("UPDATE ju_users SET fname = 'Claudio', lname = 'Bravo' WHERE id = 1");
+                stmt.executeUpdate("UPDATE ju_users SET fname = 'Ugo', lname = 'Bernasconi' WHERE id = 2");
+            }
+
+            con.commit();
+        }
+    }
+}
+
+
+//~ Formatted by Jindent --- http://www.jindent.com
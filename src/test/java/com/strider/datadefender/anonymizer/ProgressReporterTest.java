@@ -0,0 +1,64 @@
+/*
+ * Copyright 2014, Armenak Grigoryan, and individual contributors as indicated
+ * by the @authors tag. See the copyright.txt in the distribution for a
+ * full listing of individual contributors.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ */
+
+
+package com.strider.datadefender.anonymizer;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+
+import com.strider.datadefender.anonymizer.ProgressReporter.TableProgress;
+
+/**
+ * @author Armenak Grigoryan
+ */
+public class ProgressReporterTest {
+    private static final long SECOND = 1000000000L;
+
+    @Test
+    public void testProgress() {
+        final Map<String, Long> estimates = new LinkedHashMap<>();
+
+        estimates.put("users", 1000L);
+        estimates.put("orders", ProgressReporter.UNKNOWN);
+
+        final ProgressReporter reporter = new ProgressReporter(estimates, 0, 0);
+        final TableProgress    users    = reporter.start("users", 0);
+        final TableProgress    orders   = reporter.start("orders", 0);
+
+        users.add(250);
+        orders.add(50);
+        assertEquals(1000, reporter.getTotalEstimate());
+        assertEquals("Table [users] 250 of ~1000 rows (25%), 250 rows/s, 00:00:03 left", users.describe(SECOND));
+        assertEquals("Table [orders] 50 rows, 50 rows/s", orders.describe(SECOND));
+        assertEquals("All tables: 300 of ~1000 rows, 300 rows/s, 00:00:02 left", reporter.describe(SECOND));
+
+        // stale statistics: the table has more rows than estimated
+        users.add(1000);
+        assertEquals("Table [users] 1250 of ~1000 rows (125%), 1250 rows/s, 00:00:00 left", users.describe(SECOND));
+        reporter.finish(users);
+        assertEquals(0, reporter.getRemainingEstimate());
+        assertEquals(1300, reporter.getRows());
+    }
+}
+
+
+//~ Formatted by Jindent --- http://www.jindent.com
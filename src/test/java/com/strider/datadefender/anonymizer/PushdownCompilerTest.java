@@ -0,0 +1,105 @@
+/*
+ * Copyright 2014, Armenak Grigoryan, and individual contributors as indicated
+ * by the @authors tag. See the copyright.txt in the distribution for a
+ * full listing of individual contributors.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ */
+
+
+package com.strider.datadefender.anonymizer;
+
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+
+import java.util.Arrays;
+import java.util.Collections;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import com.strider.datadefender.database.H2DB;
+import com.strider.datadefender.requirement.Column;
+import com.strider.datadefender.requirement.Exclude;
+import com.strider.datadefender.requirement.Parameter;
+import com.strider.datadefender.requirement.Table;
+
+/**
+ * @author Armenak Grigoryan
+ */
+public class PushdownCompilerTest extends H2DB {
+    private static final String CORE = "com.strider.datadefender.functions.CoreFunctions.";
+
+    private Column column(final String name, final String function, final Parameter... params) {
+        final Column column = new Column();
+
+        column.setName(name);
+        column.setFunction(CORE + function);
+
+        if (params.length > 0) {
+            column.setParameters(Arrays.asList(params));
+        }
+
+        return column;
+    }
+
+    private Parameter param(final String name, final String value, final String type) {
+        final Parameter param = new Parameter();
+
+        param.setName(name);
+        param.setValue(value);
+        param.setType(type);
+
+        return param;
+    }
+
+    @Test
+    public void testCompile() throws SQLException {
+        final Table   table    = new Table();
+        final Column  lname    = column("lname", "randomLastName", param("file", "names.txt", "String"));
+        final Exclude excluded = new Exclude();
+
+        excluded.setEquals("Bravo");
+        lname.setExclusions(Collections.singletonList(excluded));
+        table.setName("ju_users");
+        table.setPkey("id");
+        table.setColumns(Arrays.asList(column("fname", "staticEmail", param("email", "user@example.com", "String")),
+                                       lname));
+
+        final PushdownPlan plan = new PushdownCompiler(factory.createSQLBuilder()).compile(table, con);
+
+        assertEquals(Arrays.asList("fname"), plan.getColumns());
+        assertEquals("fname = ?", plan.getSetClause());
+        assertEquals(Arrays.asList("user@example.com"), plan.getParameters());
+        assertEquals(1, plan.getRemainingTable().getColumns().size());
+        assertEquals("lname", plan.getRemainingTable().getColumns().get(0).getName());
+        assertEquals("id", plan.getRemainingTable().getPKey());
+    }
+
+    @Test
+    public void testRandomPostalCode() throws SQLException {
+        final String expression = new PushdownCompiler(factory.createSQLBuilder()).compile(column("fname",
+                                                                                                  "randomPostalCode"),
+                                                                                           50,
+                                                                                           Collections.emptyList());
+
+        try (Statement stmt = con.createStatement();
+            ResultSet rs = stmt.executeQuery("SELECT " + expression + " FROM ju_users")) {
+            while (rs.next()) {
+                assertTrue(rs.getString(1), rs.getString(1).matches("([A-Z][1-9]){3}"));
+            }
+        }
+    }
+}
@@ -0,0 +1,108 @@
+/*
+ * Copyright 2014, Armenak Grigoryan, and individual contributors as indicated
+ * by the @authors tag. See the copyright.txt in the distribution for a
+ * full listing of individual contributors.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ */
+
+
+package com.strider.datadefender.anonymizer;
+
+import java.lang.reflect.Proxy;
+
+import java.sql.Connection;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.Properties;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.fail;
+
+import com.strider.datadefender.database.H2DB;
+import com.strider.datadefender.database.metadata.MatchMetaData;
+import com.strider.datadefender.database.sqlbuilder.H2SQLBuilder;
+import com.strider.datadefender.requirement.Column;
+import com.strider.datadefender.requirement.Table;
+
+/**
+ * @author Armenak Grigoryan
+ */
+public class StagingMergeWriterTest extends H2DB {
+
+    @Test
+    public void testDropAfterFailedCommit() throws Exception {
+        final Table  table = new Table();
+        final Column lname = new Column();
+
+        lname.setName("lname");
+        lname.setFunction("com.strider.datadefender.functions.CoreFunctions.setEmptyString");
+        table.setColumns(Arrays.asList(lname));
+
+        final TablePlan           plan      = TablePlan.compile(table, Arrays.asList("id"), Arrays.asList("lname"),
+                                                  null, "h2");
+        final List<MatchMetaData> metaData  = Arrays.asList(
+                                                  new MatchMetaData(null, "ju_users", null, null, "id", "Integer", 10),
+                                                  new MatchMetaData(null, "ju_users", null, null, "lname", "String",
+                                                                    50));
+        final Connection          failing   = (Connection) Proxy.newProxyInstance(
+                                                  Connection.class.getClassLoader(),
+                                                  new Class<?>[] { Connection.class },
+                                                  (proxy, method, args) -> {
+                                                      if ("commit".equals(method.getName())) {
+                                                          throw new SQLException("Commit failed");
+                                                      }
+
+                                                      return method.invoke(con, args);
+                                                  });
+        final StagingMergeWriter  writer    = new StagingMergeWriter(failing, new H2SQLBuilder(new Properties()),
+                                                  "ju_users", plan, metaData, 2);
+        final RowBuffer           row       = new RowBuffer(plan, new String[] { "1", "Bravo" });
+
+        plan.anonymize(row, null);
+        writer.write(row);
+        writer.executeBatch();
+
+        try {
+            writer.close();
+            fail("The commit should have failed");
+        } catch (SQLException e) {
+            assertEquals("Commit failed", e.getMessage());
+        }
+
+        try (ResultSet rs = con.getMetaData().getTables(null, null, "DD_STG_JU_USERS", null)) {
+            assertFalse(rs.next());
+        }
+
+        // dropping the staging table commits on h2, so the update is only
+        // undone if it was rolled back first
+        try {
+            consumeQuery(this::assertInitialData);
+        } finally {
+            try (Statement stmt = con.createStatement()) {
+                stmt.executeUpdate("UPDATE ju_users SET lname = 'Bravo' WHERE id = 1");
+            }
+
+            con.commit();
+        }
+    }
+}
+
+
+//~ Formatted by Jindent --- http://www.jindent.com
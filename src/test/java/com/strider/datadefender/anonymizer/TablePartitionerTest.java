@@ -0,0 +1,89 @@
+/*
+ * Copyright 2014, Armenak Grigoryan, and individual contributors as indicated
+ * by the @authors tag. See the copyright.txt in the distribution for a
+ * full listing of individual contributors.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ */
+
+
+package com.strider.datadefender.anonymizer;
+
+import java.math.BigDecimal;
+
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+
+import java.util.Arrays;
+import java.util.List;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+
+import com.strider.datadefender.database.H2DB;
+
+/**
+ * @author Armenak Grigoryan
+ */
+public class TablePartitionerTest extends H2DB {
+
+    /**
+     * Counts the rows of each partition, which must add up to the table's.
+     */
+    private long countRows(final List<Partition> partitions) throws SQLException {
+        long rows = 0;
+
+        for (final Partition partition : partitions) {
+            try (PreparedStatement stmt = con.prepareStatement("SELECT COUNT(*) FROM ju_big WHERE "
+                                                               + partition.getPredicate())) {
+                for (int i = 0; i < partition.getParameters().size(); ++i) {
+                    stmt.setObject(i + 1, partition.getParameters().get(i));
+                }
+
+                try (ResultSet rs = stmt.executeQuery()) {
+                    rs.next();
+                    rows += rs.getLong(1);
+                }
+            }
+        }
+
+        return rows;
+    }
+
+    @Test
+    public void testRangeBeyondLong() throws SQLException {
+        try (Statement stmt = con.createStatement()) {
+            stmt.executeUpdate("CREATE TABLE ju_big ( id DECIMAL(30, 0) NOT NULL, PRIMARY KEY (id) )");
+            stmt.executeUpdate("INSERT INTO ju_big ( id ) VALUES ( -1 ), ( 9223372036854775807 ), "
+                               + "( 9223372036854775808 ), ( 18446744073709551615 )");
+        }
+
+        try {
+            final List<Partition> partitions = new TablePartitioner(con, factory.createSQLBuilder()).partition(
+                                                   "ju_big", Arrays.asList("id"), 3, TablePartitioner.RANGE);
+
+            assertEquals(3, partitions.size());
+            assertEquals(BigDecimal.class, partitions.get(2).getParameters().get(1).getClass());
+            assertEquals(4, countRows(partitions));
+        } finally {
+            try (Statement stmt = con.createStatement()) {
+                stmt.executeUpdate("DROP TABLE ju_big");
+            }
+        }
+    }
+}
+
+
+//~ Formatted by Jindent --- http://www.jindent.com
@@ -0,0 +1,125 @@
+/*
+ * Copyright 2014, Armenak Grigoryan, and individual contributors as indicated
+ * by the @authors tag. See the copyright.txt in the distribution for a
+ * full listing of individual contributors.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ */
+
+
+
+package com.strider.datadefender.anonymizer;
+
+import java.util.Arrays;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import com.strider.datadefender.requirement.Column;
+import com.strider.datadefender.requirement.Exclude;
+import com.strider.datadefender.requirement.Parameter;
+import com.strider.datadefender.requirement.Table;
+
+/**
+ * @author Armenak Grigoryan
+ */
+public class TablePlanTest {
+    private static final String CORE = "com.strider.datadefender.functions.CoreFunctions.";
+
+    private Column column(final String name, final String function, final Parameter... params) {
+        final Column column = new Column();
+
+        column.setName(name);
+        column.setFunction(CORE + function);
+
+        if (params.length > 0) {
+            column.setParameters(Arrays.asList(params));
+        }
+
+        return column;
+    }
+
+    private Parameter param(final String name, final String value, final String type) {
+        final Parameter param = new Parameter();
+
+        param.setName(name);
+        param.setValue(value);
+        param.setType(type);
+
+        return param;
+    }
+
+    @Test
+    public void testCompile() throws Exception {
+        final Table table = new Table();
+
+        table.setName("test_table");
+        table.setColumns(Arrays.asList(column("email", "staticEmail", param("email", "a@b.com", "String")),
+                                       column("empty", "setEmptyString"),
+                                       column("text", "lipsumSentences", param("min", "2", "int"),
+                                              param("max", "2", "int")),
+                                       column("similar", "lipsumSimilar", param("text", "@@value@@", "String"))));
+
+        final TablePlan plan = TablePlan.compile(table, Arrays.asList("id"),
+                                                 Arrays.asList("email", "empty", "text", "similar"), null, "h2");
+
+        assertEquals(4, plan.getColumns().size());
+        assertFalse(plan.usesRow());
+        assertEquals("a@b.com", plan.getColumns().get(0).anonymize(null, null));
+        assertEquals("", plan.getColumns().get(1).anonymize(null, null));
+        assertTrue(((String) plan.getColumns().get(2).anonymize(null, null)).matches("([^\\.]+\\.){2}"));
+        assertTrue(((String) plan.getColumns().get(3).anonymize("One.\n\nTwo.", null)).contains("\r\n"));
+    }
+
+    @Test
+    public void testAnonymizeRow() throws Exception {
+        final Table   table    = new Table();
+        final Column  email    = column("email", "staticEmail", param("email", "a@b.com", "String"));
+        final Exclude excluded = new Exclude();
+
+        excluded.setName("login");
+        excluded.setEquals("admin");
+        email.setExclusions(Arrays.asList(excluded));
+        table.setColumns(Arrays.asList(email, column("empty", "setEmptyString")));
+
+        final TablePlan plan = TablePlan.compile(table, Arrays.asList("id"), Arrays.asList("email", "empty", "login"),
+                                                 null, "h2");
+        final RowBuffer row   = new RowBuffer(plan, new String[] { "1", "x@y.com", "text", "user" });
+        final RowBuffer admin = new RowBuffer(plan, new String[] { "2", "x@y.com", "text", "admin" });
+
+        assertEquals(Arrays.asList("id", "email", "empty", "login"), plan.getSelectColumns());
+        plan.anonymize(row, null);
+        plan.anonymize(admin, null);
+        assertEquals("1", row.getKey(0));
+        assertEquals("a@b.com", row.getValue(0));
+        assertEquals("", row.getValue(1));
+        assertEquals("x@y.com", admin.getValue(0));
+        assertEquals("", admin.getValue(1));
+        assertEquals("{0, 1}", row.getChanged().toString());
+        assertEquals("{1}", admin.getChanged().toString());
+        assertTrue(admin.hasChanges());
+    }
+
+    @Test(expected = NoSuchMethodException.class)
+    public void testMissingMethod() throws Exception {
+        final Table table = new Table();
+
+        table.setColumns(Arrays.asList(column("email", "staticEmail", param("address", "a@b.com", "String"))));
+        TablePlan.compile(table, Arrays.asList("id"), Arrays.asList("email"), null, "h2");
+    }
+}
+
+
+//~ Formatted by Jindent --- http://www.jindent.com
@@ -0,0 +1,150 @@
+/*
+ * Copyright 2014, Armenak Grigoryan, and individual contributors as indicated
+ * by the @authors tag. See the copyright.txt in the distribution for a
+ * full listing of individual contributors.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ */
+
+
+package com.strider.datadefender.anonymizer;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import com.strider.datadefender.database.DatabaseAnonymizerException;
+import com.strider.datadefender.requirement.Column;
+import com.strider.datadefender.requirement.Table;
+
+/**
+ * @author Armenak Grigoryan
+ */
+public class TableSchedulerTest {
+    private Table table(final String name, final String dependsOn, final int columns) {
+        final Table table = new Table();
+
+        table.setName(name);
+        table.setDependsOn(dependsOn);
+        table.setColumns(Arrays.asList(new Column[columns]));
+
+        return table;
+    }
+
+    private Map<String, Double> costs(final Object... namesAndCosts) {
+        final Map<String, Double> costs = new HashMap<>();
+
+        for (int i = 0; i < namesAndCosts.length; i += 2) {
+            costs.put((String) namesAndCosts[i], ((Number) namesAndCosts[i + 1]).doubleValue());
+        }
+
+        return costs;
+    }
+
+    @Test
+    public void testCostliestFirst() throws Exception {
+        final List<Table>    tables    = Arrays.asList(table("small", null, 1), table("large", null, 1),
+                                                       table("medium", null, 1));
+        final TableScheduler scheduler = new TableScheduler(tables, costs("small", 1, "large", 100, "medium", 10));
+
+        assertEquals("large", scheduler.next().getName());
+        assertEquals("medium", scheduler.next().getName());
+        assertEquals("small", scheduler.next().getName());
+        assertNull(scheduler.next());
+        assertEquals(Arrays.asList("large: cost 100, starts at 0", "medium: cost 10, starts at 0",
+                                   "small: cost 1, starts at 10", "estimated total: 100"),
+                     scheduler.plan(2));
+    }
+
+    @Test
+    public void testDependencies() throws Exception {
+        // the parent is cheap, but the large child waits on it
+        final List<Table>    tables    = Arrays.asList(table("medium", null, 1), table("child", "parent", 1),
+                                                       table("parent", null, 1));
+        final TableScheduler scheduler = new TableScheduler(tables, costs("medium", 10, "child", 100, "parent", 1));
+
+        assertEquals("parent", scheduler.next().getName());
+        assertEquals("medium", scheduler.next().getName());
+        scheduler.finished("parent", true);
+        assertEquals("child", scheduler.next().getName());
+        assertNull(scheduler.next());
+        assertEquals(Arrays.asList("parent: cost 1, starts at 0", "child: cost 100, starts at 1",
+                                   "medium: cost 10, starts at 101", "estimated total: 111"),
+                     scheduler.plan(1));
+    }
+
+    @Test
+    public void testFailedDependency() throws Exception {
+        final List<Table>    tables    = Arrays.asList(table("parent", null, 1), table("child", "parent", 1),
+                                                       table("grandchild", "child, other", 1));
+        final TableScheduler scheduler = new TableScheduler(tables, costs());
+
+        assertEquals("parent", scheduler.next().getName());
+        scheduler.finished("parent", false);
+        assertNull(scheduler.next());
+        assertEquals(2, scheduler.getUnstarted().size());
+    }
+
+    @Test
+    public void testDuplicateNames() throws Exception {
+        // each entry is handed out, and the child waits on both
+        final Table          first     = table("users", null, 1);
+        final Table          second    = table("users", null, 2);
+        final List<Table>    tables    = Arrays.asList(first, table("child", "users", 1), second);
+        final TableScheduler scheduler = new TableScheduler(tables, costs("users", 10, "child", 1));
+
+        assertSame(first, scheduler.next());
+        assertSame(second, scheduler.next());
+        scheduler.finished("users", true);
+        scheduler.finished("users", true);
+        assertEquals("child", scheduler.next().getName());
+        scheduler.finished("child", true);
+        assertNull(scheduler.next());
+        assertTrue(scheduler.getUnstarted().isEmpty());
+        assertEquals(Arrays.asList("users: cost 10, starts at 0", "users: cost 10, starts at 10",
+                                   "child: cost 1, starts at 20", "estimated total: 21"),
+                     scheduler.plan(1));
+    }
+
+    @Test(expected = DatabaseAnonymizerException.class)
+    public void testCycle() throws Exception {
+        new TableScheduler(Arrays.asList(table("a", "b", 1), table("b", "a", 1)), costs());
+    }
+
+    @Test
+    public void testEstimateCosts() {
+        final List<Table>       tables    = Arrays.asList(table("a", null, 2), table("b", null, 1),
+                                                          table("c", null, 1));
+        final Map<String, Long> estimates = new HashMap<>();
+        final Map<String, Long> durations = new HashMap<>();
+
+        estimates.put("a", 1000L);
+        estimates.put("b", 500L);
+        estimates.put("c", ProgressReporter.UNKNOWN);
+        assertEquals(costs("a", 2000, "b", 500, "c", 0), TableScheduler.estimateCosts(tables, estimates, durations));
+
+        // a took 4 seconds for 2000 values: b is expected to take 1 second
+        durations.put("a", 4000L);
+        assertEquals(costs("a", 4000, "b", 1000, "c", 0), TableScheduler.estimateCosts(tables, estimates, durations));
+    }
+}
+
+
+//~ Formatted by Jindent --- http://www.jindent.com
@@ -0,0 +1,89 @@
+/*
+ * Copyright 2014, Armenak Grigoryan, and individual contributors as indicated
+ * by the @authors tag. See the copyright.txt in the distribution for a
+ * full listing of individual contributors.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ */
+
+
+
+
+
+package com.strider.datadefender.database;
+
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.SQLException;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertSame;
+
+import com.strider.datadefender.DatabaseDiscoveryException;
+
+/**
+ * @author Armenak Grigoryan
+ */
+public class ConnectionPoolTest {
+    private static Connection connect() throws DatabaseDiscoveryException {
+        try {
+            final Connection con = DriverManager.getConnection("jdbc:h2:mem:pooltest", "test", "");
+
+            con.setAutoCommit(false);
+
+            return con;
+        } catch (SQLException e) {
+            throw new DatabaseAnonymizerException(e.toString(), e);
+        }
+    }
+
+    @Test
+    public void testReuse() throws DatabaseDiscoveryException {
+        try (ConnectionPool pool = new ConnectionPool(ConnectionPoolTest::connect, 2, 0)) {
+            final Connection first  = pool.borrow();
+            final Connection second = pool.borrow();
+
+            assertNotSame(first, second);
+            pool.release(first);
+            assertSame(first, pool.borrow());
+        }
+    }
+
+    @Test
+    public void testValidateOnBorrow() throws DatabaseDiscoveryException, SQLException {
+        try (ConnectionPool pool = new ConnectionPool(ConnectionPoolTest::connect, 1, 0)) {
+            final Connection con = pool.borrow();
+
+            pool.release(con);
+            con.close();
+
+            final Connection replaced = pool.borrow();
+
+            assertNotSame(con, replaced);
+            assertFalse(replaced.isClosed());
+        }
+    }
+
+    @Test(expected = DatabaseAnonymizerException.class)
+    public void testExhausted() throws DatabaseDiscoveryException {
+        try (ConnectionPool pool = new ConnectionPool(ConnectionPoolTest::connect, 1, 0)) {
+            pool.borrow();
+            pool.borrow();
+        }
+    }
+}
+
+
+//~ Formatted by Jindent --- http://www.jindent.com
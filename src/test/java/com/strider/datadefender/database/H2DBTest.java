@@ -19,6 +19,8 @@
 
 package com.strider.datadefender.database;
 
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
 import java.sql.SQLException;
 
 import java.util.Arrays;
@@ -33,6 +35,7 @@ import static org.junit.Assert.assertTrue;
 
 import com.strider.datadefender.DatabaseDiscoveryException;
 import com.strider.datadefender.database.metadata.MatchMetaData;
+import com.strider.datadefender.database.sqlbuilder.ISQLBuilder;
 
 /**
  * Simple tests for h2 db in mysql-mode.
@@ -55,6 +58,29 @@ public class H2DBTest extends H2DB {
 //      final List<String> expected = Arrays.asList("null.ju_users.id(integer)", "null.ju_users.fname(varchar)", "null.ju_users.lname(varchar)");
 //      assertTrue(expected.equals(actual));
 //  }
+    @Test
+    public void testStreamingQuery() throws SQLException {
+        try (PreparedStatement stmt = factory.prepareStreamingQuery("SELECT * FROM ju_users")) {
+            assertEquals(ISQLBuilder.DEFAULT_FETCH_SIZE, stmt.getFetchSize());
+            assertEquals(ResultSet.CONCUR_READ_ONLY, stmt.getResultSetConcurrency());
+        }
+
+        try (PreparedStatement stmt = factory.prepareStreamingQuery("SELECT * FROM ju_users");
+            ResultSet rs = stmt.executeQuery()) {
+            assertInitialData(rs);
+        }
+    }
+
+    @Test
+    public void testRowEstimate() throws SQLException {
+        try (PreparedStatement stmt = factory.getConnection().prepareStatement(
+                factory.createSQLBuilder().buildRowEstimate("ju_users"));
+            ResultSet rs = stmt.executeQuery()) {
+            assertTrue(rs.next());
+            assertEquals(2, rs.getLong(1));
+        }
+    }
+
     @Test
     public void testSQLBuilder() {
         final String sql = factory.createSQLBuilder().buildSelectWithLimit("SELECT * FROM blah", 1);
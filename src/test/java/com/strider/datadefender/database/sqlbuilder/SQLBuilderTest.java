@@ -19,12 +19,16 @@
 
 package com.strider.datadefender.database.sqlbuilder;
 
+import java.util.Arrays;
+import java.util.List;
 import java.util.Properties;
 
 import org.junit.Test;
 
 import static org.junit.Assert.*;
 
+import com.strider.datadefender.database.metadata.IndexMetaData;
+
 /**
  * One class to test all sqlbuilder.  Split out if this class becomes too large.
  * @author Akira Matsuo
@@ -55,6 +59,161 @@ public class SQLBuilderTest {
         assertEquals("", builder.buildSelectWithLimit("", 0));
     }
 
+    @Test
+    public void testHashPartitionPredicate() {
+        final List<String> keys = Arrays.asList("id", "code");
+
+        assertEquals("MOD(CRC32(CONCAT_WS('|', id, code)), 4) = 1",
+                     new MySQLSQLBuilder(noSchema).buildHashPartitionPredicate(keys, 4, 1));
+        assertEquals("ABS(CAST(CHECKSUM(id, code) AS BIGINT)) % 4 = 1",
+                     new MSSQLSQLBuilder(noSchema).buildHashPartitionPredicate(keys, 4, 1));
+        assertEquals("MOD(ABS(CAST(hashtext(CONCAT_WS('|', id, code)) AS BIGINT)), 4) = 1",
+                     new PostgreSQLBuilder(noSchema).buildHashPartitionPredicate(keys, 4, 1));
+        assertEquals("ORA_HASH(id || '|' || code, 3) = 1",
+                     new OracleSQLBuilder(noSchema).buildHashPartitionPredicate(keys, 4, 1));
+        assertEquals("ORA_HASH(CONCAT_WS('|', id, code), 3) = 1",
+                     new H2SQLBuilder(noSchema).buildHashPartitionPredicate(keys, 4, 1));
+    }
+
+    @Test
+    public void testKeysetPage() {
+        final List<String> keys = Arrays.asList("id", "code");
+
+        assertEquals("(id > ?) OR (id = ? AND code > ?)", new MySQLSQLBuilder(noSchema).buildKeysetPredicate(keys));
+        assertEquals("SELECT id FROM t ORDER BY id, code LIMIT 10",
+                     new MySQLSQLBuilder(noSchema).buildKeysetPage("SELECT id FROM t", keys, 10));
+        assertEquals("SELECT DISTINCT TOP 10 id FROM t ORDER BY id, code",
+                     new MSSQLSQLBuilder(noSchema).buildKeysetPage("SELECT DISTINCT id FROM t", keys, 10));
+        assertEquals("SELECT * FROM (SELECT id FROM t ORDER BY id, code) WHERE rownum <= 10",
+                     new OracleSQLBuilder(noSchema).buildKeysetPage("SELECT id FROM t", keys, 10));
+    }
+
+    @Test
+    public void testStagingTable() {
+        final List<String> keys    = Arrays.asList("id");
+        final List<String> columns = Arrays.asList("fname", "lname");
+        final ISQLBuilder  builder = new PostgreSQLBuilder(noSchema);
+
+        assertEquals("CREATE TEMPORARY TABLE stage ON COMMIT DELETE ROWS AS SELECT id AS dd_key0, fname, lname "
+                     + "FROM users WITH NO DATA",
+                     builder.buildCreateStagingTable("stage", "users", keys, columns));
+        assertEquals("UPDATE users AS tgt SET fname = stg.fname, lname = stg.lname FROM stage AS stg "
+                     + "WHERE tgt.id = stg.dd_key0",
+                     builder.buildStagingUpdate("users", "stage", keys, columns));
+        assertEquals("UPDATE users tgt JOIN stage stg ON tgt.id = stg.dd_key0 SET tgt.fname = stg.fname, "
+                     + "tgt.lname = stg.lname",
+                     new MySQLSQLBuilder(noSchema).buildStagingUpdate("users", "stage", keys, columns));
+        assertEquals("#dd_stg_users", new MSSQLSQLBuilder(noSchema).buildStagingTableName("users"));
+        assertEquals("SELECT id AS dd_key0, fname, lname INTO #stage FROM users WHERE 1 = 0",
+                     new MSSQLSQLBuilder(noSchema).buildCreateStagingTable("#stage", "users", keys, columns));
+        assertEquals("MERGE INTO users tgt USING #stage stg ON (tgt.id = stg.dd_key0) WHEN MATCHED THEN UPDATE SET "
+                     + "fname = stg.fname, lname = stg.lname;",
+                     new MSSQLSQLBuilder(noSchema).buildStagingUpdate("users", "#stage", keys, columns));
+        assertTrue(new OracleSQLBuilder(noSchema).buildStagingTableName("users").matches("DD_STG_[0-9A-F]{1,8}"));
+        assertEquals("CREATE GLOBAL TEMPORARY TABLE stage ON COMMIT DELETE ROWS AS SELECT id AS dd_key0, fname, "
+                     + "lname FROM users WHERE 1 = 0",
+                     new OracleSQLBuilder(noSchema).buildCreateStagingTable("stage", "users", keys, columns));
+        assertEquals("DROP TEMPORARY TABLE stage", new MySQLSQLBuilder(noSchema).buildDropStagingTable("stage"));
+        assertEquals("DROP TABLE stage", new H2SQLBuilder(noSchema).buildDropStagingTable("stage"));
+    }
+
+    @Test
+    public void testExpressions() {
+        assertEquals("CONCAT(CHAR(CAST(FLOOR(65 + RAND() * 26) AS SIGNED)), 'x')",
+                     new MySQLSQLBuilder(noSchema).buildConcat(Arrays.asList(new MySQLSQLBuilder(noSchema).buildChar(
+                         new MySQLSQLBuilder(noSchema).buildRandomInt(65, 90)), "'x'")));
+        assertEquals("(1 + ABS(CAST(CHECKSUM(NEWID()) AS BIGINT)) % 9)", new MSSQLSQLBuilder(noSchema).buildRandomInt(1, 9));
+        assertEquals("TRUNC(DBMS_RANDOM.VALUE(1, 10))", new OracleSQLBuilder(noSchema).buildRandomInt(1, 9));
+        assertEquals("(CHR(a) || b)",
+                     new PostgreSQLBuilder(noSchema).buildConcat(Arrays.asList(new PostgreSQLBuilder(noSchema)
+                         .buildChar("a"), "b")));
+    }
+
+    @Test
+    public void testRowLocator() {
+        assertNull(new MySQLSQLBuilder(noSchema).buildRowLocator());
+        assertEquals("ctid = CAST(? AS tid)", new PostgreSQLBuilder(noSchema).buildRowLocatorPredicate());
+        assertEquals("ROWID = CHARTOROWID(?)", new OracleSQLBuilder(noSchema).buildRowLocatorPredicate());
+        assertEquals("CONVERT(VARCHAR(18), %%physloc%%, 1)", new MSSQLSQLBuilder(noSchema).buildRowLocator());
+        assertEquals("_ROWID_", new H2SQLBuilder(noSchema).buildRowLocator());
+    }
+
+    @Test
+    public void testRebuildTable() {
+        assertEquals("CREATE TABLE users_new LIKE users",
+                     new MySQLSQLBuilder(noSchema).buildCloneTable("users_new", "users"));
+        assertEquals("CREATE TABLE users_new AS SELECT * FROM users WHERE 1 = 0",
+                     new H2SQLBuilder(noSchema).buildCloneTable("users_new", "users"));
+        assertTrue(new OracleSQLBuilder(noSchema).buildCloneTable("users_new", "users").contains(
+            "DBMS_METADATA.GET_DDL('TABLE', UPPER('users'), UPPER(USER))"));
+        assertEquals(Arrays.asList("RENAME TABLE users TO users_old, users_new TO users"),
+                     new MySQLSQLBuilder(noSchema).buildSwapTables("users", "users_new", "users_old"));
+        assertEquals(Arrays.asList("ALTER TABLE s.users RENAME TO users_old", "ALTER TABLE s.users_new RENAME TO users"),
+                     new PostgreSQLBuilder(noSchema).buildSwapTables("s.users", "s.users_new", "s.users_old"));
+        assertEquals("ALTER INDEX s.dd_idx RENAME TO idx",
+                     new PostgreSQLBuilder(noSchema).buildRenameIndex("s.users", "dd_idx", "idx"));
+        assertEquals("EXEC sp_rename 'users.dd_idx', 'idx', 'INDEX'",
+                     new MSSQLSQLBuilder(noSchema).buildRenameIndex("users", "dd_idx", "idx"));
+        assertEquals(Arrays.asList("ALTER TABLE users ALTER COLUMN id SET NOT NULL",
+                                   "ALTER TABLE users ADD PRIMARY KEY (id)"),
+                     new H2SQLBuilder(noSchema).buildAddPrimaryKey("users", Arrays.asList("id")));
+    }
+
+    @Test
+    public void testBulkSession() {
+        final IndexMetaData index = new IndexMetaData("users_name", false);
+
+        index.addColumn("name");
+        assertEquals(Arrays.asList("SET @dd_foreign_key_checks = @@foreign_key_checks, @dd_unique_checks = @@unique_checks",
+                                   "SET foreign_key_checks = 0, unique_checks = 0"),
+                     new MySQLSQLBuilder(noSchema).buildBulkSessionSetup());
+        assertEquals(Arrays.asList("SET session_replication_role = replica"),
+                     new PostgreSQLBuilder(noSchema).buildBulkSessionSetup());
+        assertEquals(Arrays.asList("ALTER TABLE users NOCHECK CONSTRAINT ALL", "DISABLE TRIGGER ALL ON users"),
+                     new MSSQLSQLBuilder(noSchema).buildBulkTableSetup("users", Arrays.asList(index)));
+        assertEquals(Arrays.asList("ALTER TABLE s.users DISABLE ALL TRIGGERS", "ALTER INDEX s.users_name UNUSABLE"),
+                     new OracleSQLBuilder(noSchema).buildBulkTableSetup("s.users", Arrays.asList(index)));
+        assertEquals(Arrays.asList("ALTER INDEX s.users_name REBUILD", "ALTER TABLE s.users ENABLE ALL TRIGGERS"),
+                     new OracleSQLBuilder(noSchema).buildBulkTableRestore("s.users", Arrays.asList(index)));
+        assertEquals("DROP INDEX users_name ON users", new MySQLSQLBuilder(noSchema).buildDropIndex("users", "users_name"));
+    }
+
+    @Test
+    public void testFetchSize() {
+        assertEquals(Integer.MIN_VALUE, new MySQLSQLBuilder(withSchema).getStreamingFetchSize());
+        assertEquals(ISQLBuilder.DEFAULT_FETCH_SIZE, new OracleSQLBuilder(withSchema).getStreamingFetchSize());
+
+        final Properties props = new Properties();
+
+        props.setProperty("fetch_size", "50");
+        assertEquals(50, new PostgreSQLBuilder(props).getStreamingFetchSize());
+        assertEquals(50, new MySQLSQLBuilder(props).getFetchSize());
+    }
+
+    @Test
+    public void testRowEstimate() {
+        assertEquals("SELECT TABLE_ROWS FROM information_schema.TABLES WHERE TABLE_SCHEMA = DATABASE() AND "
+                     + "TABLE_NAME = 'users'", new MySQLSQLBuilder(noSchema).buildRowEstimate("users"));
+        assertEquals("SELECT TABLE_ROWS FROM information_schema.TABLES WHERE TABLE_SCHEMA = 'db' AND "
+                     + "TABLE_NAME = 'users'", new MySQLSQLBuilder(noSchema).buildRowEstimate("db.users"));
+        assertEquals("SELECT CAST(reltuples AS BIGINT) FROM pg_class WHERE oid = CAST('s.users' AS regclass)",
+                     new PostgreSQLBuilder(noSchema).buildRowEstimate("s.users"));
+        assertEquals("SELECT SUM(rows) FROM sys.partitions WHERE object_id = OBJECT_ID('users') AND index_id IN (0, 1)",
+                     new MSSQLSQLBuilder(noSchema).buildRowEstimate("users"));
+        assertEquals("SELECT NUM_ROWS FROM ALL_TABLES WHERE OWNER = UPPER(USER) AND TABLE_NAME = UPPER('users')",
+                     new OracleSQLBuilder(noSchema).buildRowEstimate("users"));
+    }
+
+    @Test
+    public void testTriggerQuery() {
+        assertEquals("SELECT TRIGGER_NAME FROM information_schema.TRIGGERS WHERE EVENT_OBJECT_SCHEMA = 'db' AND "
+                     + "EVENT_OBJECT_TABLE = 'users'", new MySQLSQLBuilder(noSchema).buildTriggerQuery("db.users"));
+        assertEquals("SELECT tgname FROM pg_trigger WHERE tgrelid = CAST('s.users' AS regclass) AND NOT tgisinternal",
+                     new PostgreSQLBuilder(noSchema).buildTriggerQuery("s.users"));
+        assertEquals("SELECT name FROM sys.triggers WHERE parent_id = OBJECT_ID('users')",
+                     new MSSQLSQLBuilder(noSchema).buildTriggerQuery("users"));
+    }
+
     @Test
     public void testSchemaPrefix() {
         ISQLBuilder builder = new MSSQLSQLBuilder(noSchema);
@@ -20,6 +20,27 @@
 
 package com.strider.datadefender.functions;
 
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.Statement;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.stream.Stream;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
 import org.apache.log4j.Logger;
 
 import org.junit.Test;
@@ -39,6 +60,7 @@ import junit.framework.TestCase;
 public class CoreFunctionsTest extends TestCase {
     private static final Logger log           = getLogger(XegerTest.class);
     private final static String regExpPattern = "[0-9]{3}-[0-9]{3}-[0-9]{3}";
+    private static final int    THREADS       = 8;
 
     public CoreFunctionsTest(final String testName) {
         super(testName);
@@ -101,6 +123,216 @@ public class CoreFunctionsTest extends TestCase {
         assertNotNull(postalCode);
     }
 
+    /**
+     * Runs the task on THREADS threads at the same time, returning each
+     * thread's result.
+     */
+    private <T> List<T> runConcurrently(final Callable<T> task) throws Exception {
+        final ExecutorService executor = Executors.newFixedThreadPool(THREADS);
+
+        try {
+            final List<Future<T>> futures = new ArrayList<>();
+
+            for (int i = 0; i < THREADS; ++i) {
+                futures.add(executor.submit(task));
+            }
+
+            final List<T> results = new ArrayList<>();
+
+            for (final Future<T> future : futures) {
+                results.add(future.get());
+            }
+
+            return results;
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    @Test
+    public void testConcurrentStringFromFile() throws Exception {
+        final Path         file   = Files.createTempFile("names", ".txt");
+        final List<String> values = new ArrayList<>();
+
+        for (int i = 0; i < 100; ++i) {
+            values.add("name" + i);
+        }
+
+        Files.write(file, values);
+
+        try {
+            final Map<String, Integer> counts = new HashMap<>();
+
+            for (final List<String> names : runConcurrently(() -> {
+                final CoreFunctions cf    = new CoreFunctions();
+                final List<String>  names = new ArrayList<>();
+
+                for (int i = 0; i < values.size(); ++i) {
+                    names.add(cf.randomFirstName(file.toString()));
+                    cf.lipsumSentences(1, 3);
+                    cf.generateRandomString(2, 20);
+                    CoreFunctions.randInt(1, 9);
+                }
+
+                return names;
+            })) {
+                for (final String name : names) {
+                    counts.merge(name, 1, Integer::sum);
+                }
+            }
+
+            // the threads share the cursor: every value was returned once per pass over the list
+            assertEquals(new HashSet<>(values), counts.keySet());
+            assertEquals(Collections.singleton(THREADS), new HashSet<>(counts.values()));
+        } finally {
+            Files.deleteIfExists(file);
+        }
+    }
+
+    @Test
+    public void testConcurrentMappedColumnShuffle() throws Exception {
+        try (Connection con = DriverManager.getConnection("jdbc:h2:mem:cftest;DB_CLOSE_DELAY=-1");
+            Statement stmt = con.createStatement()) {
+            stmt.executeUpdate("CREATE TABLE cities (name VARCHAR(20))");
+
+            for (int i = 0; i < 50; ++i) {
+                stmt.executeUpdate("INSERT INTO cities VALUES ('city" + i + "')");
+            }
+
+            // the mapping is created once, so every thread maps values the same way
+            final List<List<String>> mapped = runConcurrently(() -> {
+                final CoreFunctions cf     = new CoreFunctions();
+                final List<String>  result = new ArrayList<>();
+
+                cf.setDatabaseConnection(con);
+
+                for (int i = 0; i < 50; ++i) {
+                    result.add(cf.mappedColumnShuffle("cities", "name", "city" + i, true));
+                }
+
+                return result;
+            });
+
+            for (final List<String> result : mapped) {
+                assertEquals(mapped.get(0), result);
+            }
+
+            assertEquals(50, new HashSet<>(mapped.get(0)).size());
+            stmt.executeUpdate("DROP TABLE cities");
+        }
+    }
+
+    @Test
+    public void testMappedColumnShuffleFile() throws Exception {
+        final Path dir = Files.createTempDirectory("mappings");
+
+        try (Connection con = DriverManager.getConnection("jdbc:h2:mem:cfmapping;DB_CLOSE_DELAY=-1");
+            Statement stmt = con.createStatement()) {
+            stmt.executeUpdate("CREATE TABLE streets (name VARCHAR(20))");
+
+            for (int i = 0; i < 50; ++i) {
+                stmt.executeUpdate("INSERT INTO streets VALUES ('street" + i + "')");
+            }
+
+            final CoreFunctions cf     = new CoreFunctions();
+            final Set<String>   mapped = new HashSet<>();
+
+            CoreFunctions.setMappingDirectory(dir);
+            cf.setDatabaseConnection(con);
+
+            for (int i = 0; i < 50; ++i) {
+                mapped.add(cf.mappedColumnShuffle("streets", "name", "street" + i, true));
+            }
+
+            assertEquals(50, mapped.size());
+            assertTrue(mapped.contains(cf.mappedColumnShuffle("streets", "name", "unknown", true)));
+
+            // another database with the same column gets its own file
+            try (Connection other = DriverManager.getConnection("jdbc:h2:mem:cfmapping2;DB_CLOSE_DELAY=-1");
+                Statement otherStmt = other.createStatement()) {
+                otherStmt.executeUpdate("CREATE TABLE streets (name VARCHAR(20))");
+                otherStmt.executeUpdate("INSERT INTO streets VALUES ('avenue0'), ('avenue1')");
+
+                final CoreFunctions otherCf = new CoreFunctions();
+
+                otherCf.setDatabaseConnection(other);
+                assertTrue(otherCf.mappedColumnShuffle("streets", "name", "street0", true).startsWith("avenue"));
+                otherStmt.executeUpdate("DROP TABLE streets");
+            }
+
+            try (Stream<Path> files = Files.list(dir)) {
+                assertEquals(2, files.filter(file -> file.toString().endsWith(".map")).count());
+            }
+
+            stmt.executeUpdate("DROP TABLE streets");
+        } finally {
+            CoreFunctions.setMappingDirectory(null);
+
+            // the mapping files hold the column's values
+            try (Stream<Path> files = Files.walk(dir)) {
+                files.sorted(Comparator.reverseOrder()).forEach(file -> file.toFile().delete());
+            }
+        }
+    }
+
+    @Test
+    public void testSampledColumnValue() throws Exception {
+        try (Connection con = DriverManager.getConnection("jdbc:h2:mem:cfsample;DB_CLOSE_DELAY=-1");
+            Statement stmt = con.createStatement()) {
+            stmt.executeUpdate("CREATE TABLE emails (address VARCHAR(20))");
+
+            for (int i = 0; i < 1000; ++i) {
+                stmt.executeUpdate("INSERT INTO emails VALUES ('user" + i + "@test')");
+            }
+
+            final CoreFunctions cf = new CoreFunctions();
+
+            cf.setDatabaseConnection(con);
+            cf.setVendor("h2");
+
+            // the whole sample is returned before any value is reused
+            final Set<String> sample = new HashSet<>();
+
+            for (int i = 0; i < 10; ++i) {
+                final String value = cf.randomColumnValue("emails", "address", true, 10);
+
+                assertTrue(value.matches("user\\d+@test"));
+                sample.add(value);
+            }
+
+            assertEquals(10, sample.size());
+
+            // then the sample is replaced by the call that used its last value
+            final Set<String> next = new HashSet<>();
+
+            for (int i = 0; i < 20; ++i) {
+                next.add(cf.randomColumnValue("emails", "address", true, 10));
+            }
+
+            next.removeAll(sample);
+            assertFalse(next.isEmpty());
+
+            final String mapped = cf.mappedColumnShuffle("emails", "address", "user1@test", true, 10);
+
+            assertEquals(mapped, cf.mappedColumnShuffle("emails", "address", "user1@test", true, 10));
+            stmt.executeUpdate("DROP TABLE emails");
+        }
+    }
+
+    @Test
+    public void testTableSampleQuery() throws Exception {
+        final CoreFunctions cf = new CoreFunctions();
+
+        cf.setVendor("mssql");
+        assertEquals("SELECT TOP 10 address FROM emails TABLESAMPLE (40 ROWS) ORDER BY NEWID()",
+                     cf.buildTableSampleQuery("emails", "address", false, 10));
+
+        // MySQL and H2 have no table sampling
+        cf.setVendor("h2");
+        assertEquals("SELECT address FROM emails ORDER BY RAND() LIMIT 10",
+                     cf.buildTableSampleQuery("emails", "address", false, 10));
+    }
+
     @Override
     protected void setUp() throws Exception {
         super.setUp();
@@ -0,0 +1,76 @@
+/*
+ * Copyright 2014, Armenak Grigoryan, and individual contributors as indicated
+ * by the @authors tag. See the copyright.txt in the distribution for a
+ * full listing of individual contributors.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ */
+
+
+package com.strider.datadefender.utils;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * @author Armenak Grigoryan
+ */
+public class FeistelPermutationTest {
+    private List<Long> order(final FeistelPermutation permutation, final long key) {
+        final List<Long> order = new ArrayList<>();
+
+        for (long i = 0; i < permutation.getSize(); ++i) {
+            order.add(permutation.permute(i, key));
+        }
+
+        return order;
+    }
+
+    @Test
+    public void testBijection() {
+        for (final long size : new long[] { 1, 2, 3, 4, 5, 17, 100, 1000, 4097 }) {
+            final FeistelPermutation permutation = new FeistelPermutation(size);
+
+            for (long key = 0; key < 5; ++key) {
+                final boolean[] seen = new boolean[(int) size];
+
+                for (final long index : order(permutation, key)) {
+                    assertTrue(index >= 0 && index < size);
+                    assertFalse("Index " + index + " repeated for size " + size, seen[(int) index]);
+                    seen[(int) index] = true;
+                }
+            }
+        }
+    }
+
+    @Test
+    public void testKeys() {
+        final FeistelPermutation permutation = new FeistelPermutation(1000);
+
+        assertEquals(order(permutation, 42), order(permutation, 42));
+        assertFalse(order(permutation, 42).equals(order(permutation, 43)));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testEmpty() {
+        new FeistelPermutation(0);
+    }
+}
+
+
+//~ Formatted by Jindent --- http://www.jindent.com
@@ -0,0 +1,109 @@
+/*
+ * Copyright 2014, Armenak Grigoryan, and individual contributors as indicated
+ * by the @authors tag. See the copyright.txt in the distribution for a
+ * full listing of individual contributors.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ */
+
+
+package com.strider.datadefender.utils;
+
+import java.io.IOException;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+import java.util.HashSet;
+import java.util.Set;
+import java.util.stream.Stream;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * @author Armenak Grigoryan
+ */
+public class FileMappingStoreTest {
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private FileMappingStore write(final Path file, final int count) throws IOException {
+        try (FileMappingStore.Writer writer = FileMappingStore.create(file)) {
+            for (int i = 0; i < count; ++i) {
+                writer.add("välue" + i);
+            }
+
+            writer.add("välue0");
+            writer.add(null);
+
+            return writer.finish();
+        }
+    }
+
+    @Test
+    public void testMapping() throws IOException {
+        final Path             dir    = folder.newFolder("mappings").toPath();
+        final Path             file   = dir.resolve("test.map");
+        final FileMappingStore store  = write(file, 1000);
+        final Set<String>      mapped = new HashSet<>();
+
+        assertEquals(1002, store.size());
+
+        for (int i = 0; i < 1000; ++i) {
+            final String value = store.get("välue" + i);
+
+            assertTrue(value, (value == null) || value.startsWith("välue"));
+            mapped.add(value);
+        }
+
+        // a duplicate takes one of the mapped values, so at most 2 are lost
+        assertTrue(mapped.size() >= 998);
+        assertNull(store.get("other"));
+        assertEquals("välue0", store.getValue(0));
+        assertNull(store.getValue(1001));
+
+        // the file is reused rather than replaced
+        final FileMappingStore reopened = FileMappingStore.open(file);
+
+        for (int i = 0; i < 1000; ++i) {
+            assertEquals(store.get("välue" + i), reopened.get("välue" + i));
+        }
+
+        assertEquals(store.get(null), reopened.get(null));
+        assertEquals(store.get(null), write(file, 10).get(null));
+
+        try (Stream<Path> files = Files.list(dir)) {
+            assertEquals(1, files.count());
+        }
+    }
+
+    @Test
+    public void testEmpty() throws IOException {
+        final Path file = folder.getRoot().toPath().resolve("empty.map");
+
+        try (FileMappingStore.Writer writer = FileMappingStore.create(file)) {
+            final FileMappingStore store = writer.finish();
+
+            assertEquals(0, store.size());
+            assertNull(store.get("value"));
+        }
+    }
+}
+
+
+//~ Formatted by Jindent --- http://www.jindent.com
@@ -0,0 +1,58 @@
+/*
+ * Copyright 2014, Armenak Grigoryan, and individual contributors as indicated
+ * by the @authors tag. See the copyright.txt in the distribution for a
+ * full listing of individual contributors.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ */
+
+
+package com.strider.datadefender.utils;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+
+import java.nio.charset.StandardCharsets;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+
+/**
+ * @author Armenak Grigoryan
+ */
+public class PackedWordListTest {
+    private PackedWordList load(final String text) throws IOException {
+        return PackedWordList.load(new ByteArrayInputStream(text.getBytes(StandardCharsets.UTF_8)));
+    }
+
+    @Test
+    public void testLoad() throws IOException {
+        final PackedWordList words = load("  alpha\r\nbravo\t\tcharlie\n\nélan café\n");
+
+        assertEquals(5, words.size());
+        assertEquals("alpha", words.get(0));
+        assertEquals("bravo", words.get(1));
+        assertEquals("charlie", words.get(2));
+        assertEquals("élan", words.get(3));
+        assertEquals("café", words.get(4));
+    }
+
+    @Test
+    public void testEmpty() throws IOException {
+        assertEquals(0, load("").size());
+        assertEquals(0, load(" \n ").size());
+    }
+}
+
+
+//~ Formatted by Jindent --- http://www.jindent.com
@@ -0,0 +1,93 @@
+/*
+ *
+ * Copyright 2014, Armenak Grigoryan, and individual contributors as indicated
+ * by the @authors tag. See the copyright.txt in the distribution for a
+ * full listing of individual contributors.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ */
+
+
+
+package com.strider.datadefender.utils;
+
+import java.util.Properties;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * @author Armenak Grigoryan
+ */
+public class ThrottleTest {
+    private static final long SECOND = 1000000000L;
+
+    @Test
+    public void testRateLimiter() {
+        final RateLimiter limiter = new RateLimiter(10);
+        final long        now     = System.nanoTime() + SECOND;
+
+        // a second's worth of permits goes through, the rest is borrowed
+        assertEquals(0, limiter.reserve(10, now));
+        assertEquals(SECOND / 10, limiter.reserve(1, now));
+        assertEquals(SECOND / 2, limiter.reserve(4, now));
+
+        // refilled at 10 permits per second
+        assertEquals(0, limiter.reserve(1, now + SECOND));
+        assertTrue(limiter.isLimited());
+        assertFalse(new RateLimiter(0).isLimited());
+    }
+
+    @Test
+    public void testConcurrencyLimiter() throws InterruptedException {
+        final ConcurrencyLimiter limiter = new ConcurrencyLimiter(8, 100);
+
+        // slow statements halve the limit, once per round
+        limiter.acquire();
+        limiter.release(SECOND);
+        assertEquals(8, limiter.getLimit());
+
+        for (int i = 0; i < 7; ++i) {
+            limiter.acquire();
+            limiter.release(SECOND);
+        }
+
+        assertEquals(4, limiter.getLimit());
+
+        // fast ones add about one slot per round
+        for (int i = 0; i < 4; ++i) {
+            limiter.acquire();
+            limiter.release(0);
+        }
+
+        assertEquals(4, limiter.getLimit());
+        limiter.acquire();
+        limiter.release(0);
+        assertEquals(5, limiter.getLimit());
+    }
+
+    @Test
+    public void testFromProperties() throws Exception {
+        final Properties props = new Properties();
+
+        assertSame(Throttle.NONE, Throttle.fromProperties(props, 4));
+        props.setProperty("max_statements_per_second", "1000");
+        assertEquals("done", Throttle.fromProperties(props, 4).execute(() -> "done"));
+    }
+}
+
+
+//~ Formatted by Jindent --- http://www.jindent.com